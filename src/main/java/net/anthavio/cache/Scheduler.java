@@ -12,6 +12,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Asynchronous (re)loading of cache entries using provided ExecutorService. 
+ * ReentrantLocks are used instead of monitors, so ExecutorService with virtual threads
+ * (see ExecutorServiceBuilder.setVirtualThreads) can be used.
  * 
  * @author martin.vanek
  *
@@ -22,6 +25,8 @@ public class Scheduler<K, V> {
 
 	private ReentrantLock reloadLock = new ReentrantLock(true); //Lock for the refreshing Map
 
+	private ReentrantLock scheduleLock = new ReentrantLock(); //Lock for the scheduled Map and scheduler thread
+
 	private Map<K, CacheLoadRequest<K, V>> reloading = new HashMap<K, CacheLoadRequest<K, V>>();
 
 	private ExecutorService executor;
@@ -97,7 +102,8 @@ public class Scheduler<K, V> {
 			throw new IllegalStateException("Executor for asynchronous loading is not configured");
 		}
 		K userKey = request.getUserKey();
-		synchronized (scheduled) {
+		scheduleLock.lock();
+		try {
 			if (scheduled.get(userKey) != null) {
 				scheduled.put(userKey, new ScheduledRequest<K, V>(request.getCaching(), request.getLoading()));
 				if (logger.isDebugEnabled()) {
@@ -110,13 +116,13 @@ public class Scheduler<K, V> {
 				}
 
 				//delayed create & start of the scheduler thread 
-				synchronized (this) {
-					if (scheduler == null) {
-						scheduler = new SchedulerThread(schedulerInterval, TimeUnit.SECONDS);
-						scheduler.start();
-					}
+				if (scheduler == null) {
+					scheduler = new SchedulerThread(schedulerInterval, TimeUnit.SECONDS);
+					scheduler.start();
 				}
 			}
+		} finally {
+			scheduleLock.unlock();
 		}
 	}
 
@@ -175,7 +181,12 @@ public class Scheduler<K, V> {
 			} catch (Exception x) {
 				logger.warn("Request load failed: " + request, x);
 			} finally {
-				reloading.remove(request.getUserKey());
+				reloadLock.lock();
+				try {
+					reloading.remove(request.getUserKey());
+				} finally {
+					reloadLock.unlock();
+				}
 			}
 		}
 	}
@@ -1,5 +1,6 @@
 package net.anthavio.httl;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.Reader;
 
@@ -12,21 +13,34 @@ import java.io.Reader;
 public class HttlBody {
 
 	public static enum Type {
-		STRING, BYTES, READER, STREAM, MARSHALL;
+		STRING, BYTES, READER, STREAM, MARSHALL, FILE;
 	}
 
 	private Object payload;
 
 	private Type type;
 
+	private int length = -1; //of BYTES payload
+
 	public HttlBody(String string) {
 		this.payload = string;
 		this.type = Type.STRING;
 	}
 
 	public HttlBody(byte[] bytes) {
+		this(bytes, bytes.length);
+	}
+
+	/**
+	 * Only first length bytes are sent, so buffer of ByteArrayOutputStream can be used without copying it
+	 */
+	public HttlBody(byte[] bytes, int length) {
+		if (length < 0 || length > bytes.length) {
+			throw new IllegalArgumentException("Length " + length + " is out of range 0-" + bytes.length);
+		}
 		this.payload = bytes;
 		this.type = Type.BYTES;
+		this.length = length;
 	}
 
 	public HttlBody(InputStream stream) {
@@ -39,6 +53,14 @@ public class HttlBody {
 		this.type = Type.READER;
 	}
 
+	/**
+	 * File is not read into memory. Transport sends it with exact Content-Length, zero-copy where possible
+	 */
+	public HttlBody(File file) {
+		this.payload = file;
+		this.type = Type.FILE;
+	}
+
 	/**
 	 * Sky is the limit! Just implement Marshaller and you can send even JDBC connections
 	 */
@@ -63,6 +85,13 @@ public class HttlBody {
 		return type;
 	}
 
+	/**
+	 * @return number of bytes to send from BYTES payload or -1 for other types
+	 */
+	public int getLength() {
+		return length;
+	}
+
 	@Override
 	public String toString() {
 		return "HttlBody [type=" + type + ", payload=" + payload + "]";
@@ -74,6 +103,7 @@ public class HttlBody {
 		int result = 1;
 		result = prime * result + ((payload == null) ? 0 : payload.hashCode());
 		result = prime * result + ((type == null) ? 0 : type.hashCode());
+		result = prime * result + length;
 		return result;
 	}
 
@@ -93,6 +123,8 @@ public class HttlBody {
 			return false;
 		if (type != other.type)
 			return false;
+		if (length != other.length)
+			return false;
 		return true;
 	}
 
@@ -1,10 +1,17 @@
 package net.anthavio.httl;
 
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
 import net.anthavio.httl.api.HttlApiBuilder;
+import net.anthavio.httl.transport.HedgingConfig;
+import net.anthavio.httl.transport.Http2Config;
+import net.anthavio.httl.transport.HttpAsyncClient4Config;
 import net.anthavio.httl.transport.HttpClient3Config;
 import net.anthavio.httl.transport.HttpClient4Config;
 import net.anthavio.httl.transport.HttpUrlConfig;
 import net.anthavio.httl.transport.HttpUrlTransport;
+import net.anthavio.httl.transport.LoadBalancingConfig;
+import net.anthavio.httl.transport.NingConfig;
+import net.anthavio.httl.transport.NioConfig;
 import net.anthavio.httl.util.MockTransport;
 import net.anthavio.httl.util.OptionalLibs;
 import net.anthavio.httl.util.SSLContextBuilder;
@@ -27,6 +34,20 @@ public class HttlBuilder {
 		return new TransportChooser(url);
 	}
 
+	/**
+	 * Commence new client side load balancing Transport creation
+	 */
+	public static LoadBalancingConfig loadBalancing(BaseTransBuilder<?>... backends) {
+		return new LoadBalancingConfig(backends);
+	}
+
+	/**
+	 * Commence new hedged requests Transport creation
+	 */
+	public static HedgingConfig hedging(BaseTransBuilder<?> delegate) {
+		return new HedgingConfig(delegate);
+	}
+
 	/**
 	 * Commence new HttpClient4 Transport creation
 	 */
@@ -38,6 +59,17 @@ public class HttlBuilder {
 		}
 	}
 
+	/**
+	 * Commence new HttpAsyncClient4 Transport creation
+	 */
+	public static HttpAsyncClient4Config httpAsyncClient4(String url) {
+		if (OptionalLibs.isHttpAsyncClient4) {
+			return new HttpAsyncClient4Config(url);
+		} else {
+			throw new IllegalStateException("HttpAsyncClient 4 classes not found in classpath");
+		}
+	}
+
 	/**
 	 * Commence new HttpClient3 Transport creation
 	 */
@@ -49,6 +81,31 @@ public class HttlBuilder {
 		}
 	}
 
+	/**
+	 * Commence new Ning AsyncHttpClient Transport creation
+	 */
+	public static NingConfig ning(String url) {
+		if (OptionalLibs.isNing) {
+			return new NingConfig(url);
+		} else {
+			throw new IllegalStateException("Ning AsyncHttpClient classes not found in classpath");
+		}
+	}
+
+	/**
+	 * Commence new Java NIO Transport creation
+	 */
+	public static NioConfig nio(String url) {
+		return new NioConfig(url);
+	}
+
+	/**
+	 * Commence new HTTP/2 Transport creation
+	 */
+	public static Http2Config http2(String url) {
+		return new Http2Config(url);
+	}
+
 	/**
 	 * Commence new HttpURLConnection Transport creation
 	 */
@@ -134,6 +191,20 @@ public class HttlBuilder {
 			return new HttpUrlConfig(url);
 		}
 
+		/**
+		 * @return Java NIO SocketChannel based Transport Configurer
+		 */
+		public NioConfig nio() {
+			return new NioConfig(url);
+		}
+
+		/**
+		 * @return HTTP/2 (h2c or ALPN h2) Transport Configurer
+		 */
+		public Http2Config http2() {
+			return new Http2Config(url);
+		}
+
 		/**
 		 * @return Apache HttpClient 3 based Transport Configurer
 		 */
@@ -156,6 +227,28 @@ public class HttlBuilder {
 			}
 		}
 
+		/**
+		 * @return Apache HttpAsyncClient 4 based Transport Configurer
+		 */
+		public HttpAsyncClient4Config httpAsyncClient4() {
+			if (OptionalLibs.isHttpAsyncClient4) {
+				return new HttpAsyncClient4Config(url);
+			} else {
+				throw new IllegalStateException("HttpAsyncClient 4 classes not found in classpath");
+			}
+		}
+
+		/**
+		 * @return Ning AsyncHttpClient based Transport Configurer
+		 */
+		public NingConfig ning() {
+			if (OptionalLibs.isNing) {
+				return new NingConfig(url);
+			} else {
+				throw new IllegalStateException("Ning AsyncHttpClient classes not found in classpath");
+			}
+		}
+
 		/**
 		 * @return Mocking Transport Configurer
 		 */
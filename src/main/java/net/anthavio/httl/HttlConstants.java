@@ -54,4 +54,11 @@ public interface HttlConstants {
 	 */
 	public static final String Content_Length = "Content-Length";
 
+	/**
+	 * HTTP response header Retry-After (seconds or http date)
+	 * 
+	 * Retry-After: 120
+	 */
+	public static final String Retry_After = "Retry-After";
+
 }
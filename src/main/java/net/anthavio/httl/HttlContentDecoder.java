@@ -0,0 +1,37 @@
+package net.anthavio.httl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompression stage of HttlResponse body according to Content-Encoding header
+ *
+ * @author martin.vanek
+ *
+ */
+public interface HttlContentDecoder {
+
+	/**
+	 * @return stream decoding content or original stream when encoding is not supported
+	 */
+	public InputStream decode(String contentEncoding, InputStream stream) throws IOException;
+
+	/**
+	 * Plain JDK streams allocating new Inflater for every response
+	 */
+	public static class JdkContentDecoder implements HttlContentDecoder {
+
+		@Override
+		public InputStream decode(String contentEncoding, InputStream stream) throws IOException {
+			if (contentEncoding.indexOf("gzip") != -1) {
+				return new GZIPInputStream(stream);
+			} else if (contentEncoding.indexOf("deflate") != -1) {
+				return new InflaterInputStream(stream);
+			} else {
+				return stream;
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package net.anthavio.httl;
+
+import java.io.InterruptedIOException;
+
+/**
+ * 
+ * @author martin.vanek
+ * 
+ * When HttlRequest total timeout (deadline) elapses - in any phase: pool acquire, connect, send or read
+ *
+ */
+public class HttlDeadlineException extends InterruptedIOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public HttlDeadlineException(HttlRequest request) {
+		this(request, null);
+	}
+
+	public HttlDeadlineException(HttlRequest request, Exception cause) {
+		super("Deadline " + (request.getTotalTimeoutMillis() != null ? request.getTotalTimeoutMillis() + " ms " : "")
+				+ "exceeded for " + request.getMethod() + " " + request.getPathAndQuery());
+		if (cause != null) {
+			initCause(cause);
+		}
+	}
+}
@@ -15,6 +15,8 @@ public interface HttlExecutionChain {
 	/**
 	 * Standard HttlSender backed implementation with List of HttlExecutionFilters
 	 * 
+	 * Chain is immutable so filter can call next() repeatedly (retry) or concurrently (hedge)
+	 * 
 	 * @author martin.vanek
 	 *
 	 */
@@ -24,16 +26,21 @@ public interface HttlExecutionChain {
 
 		private final HttlSender sender;
 
-		private int index = 0;
+		private final int index;
 
 		public SenderExecutionChain(List<HttlExecutionFilter> fiters, HttlSender sender) {
+			this(fiters, sender, 0);
+		}
+
+		private SenderExecutionChain(List<HttlExecutionFilter> fiters, HttlSender sender, int index) {
 			this.fiters = fiters;
 			this.sender = sender;
+			this.index = index;
 		}
 
 		public HttlResponse next(HttlRequest request) throws IOException {
 			if (index < fiters.size()) {
-				return fiters.get(index++).filter(request, this);
+				return fiters.get(index).filter(request, new SenderExecutionChain(fiters, sender, index + 1));
 			} else {
 				return sender.doExecute(request); //last
 			}
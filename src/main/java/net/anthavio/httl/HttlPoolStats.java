@@ -0,0 +1,117 @@
+package net.anthavio.httl;
+
+import java.io.Serializable;
+
+/**
+ * Transport neutral snapshot of connection pool state and counters (since transport creation)
+ * 
+ * @author martin.vanek
+ *
+ */
+public class HttlPoolStats implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int maximum;
+
+	private final int leased;
+
+	private final int available;
+
+	private final int pending;
+
+	private final long created;
+
+	private final long closed;
+
+	private final long acquired;
+
+	private final long acquireNanos;
+
+	private final long acquireMaxNanos;
+
+	public HttlPoolStats(int maximum, int leased, int available, int pending, long created, long closed, long acquired,
+			long acquireNanos, long acquireMaxNanos) {
+		this.maximum = maximum;
+		this.leased = leased;
+		this.available = available;
+		this.pending = pending;
+		this.created = created;
+		this.closed = closed;
+		this.acquired = acquired;
+		this.acquireNanos = acquireNanos;
+		this.acquireMaxNanos = acquireMaxNanos;
+	}
+
+	/**
+	 * @return pool maximum size
+	 */
+	public int getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * @return connections used by requests
+	 */
+	public int getLeased() {
+		return leased;
+	}
+
+	/**
+	 * @return idle connections kept in pool
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	/**
+	 * @return requests waiting for connection
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * @return connections opened
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * @return connections closed
+	 */
+	public long getClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return connections leased from pool
+	 */
+	public long getAcquired() {
+		return acquired;
+	}
+
+	/**
+	 * @return total time spent waiting for connection lease
+	 */
+	public long getAcquireWaitMillis() {
+		return acquireNanos / 1000000;
+	}
+
+	public double getAcquireWaitMillisAverage() {
+		return acquired == 0 ? 0 : acquireNanos / 1000000d / acquired;
+	}
+
+	public long getAcquireWaitMillisMax() {
+		return acquireMaxNanos / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return "HttlPoolStats [maximum=" + maximum + ", leased=" + leased + ", available=" + available + ", pending="
+				+ pending + ", created=" + created + ", closed=" + closed + ", acquired=" + acquired
+				+ ", acquireWaitMillisMax=" + getAcquireWaitMillisMax() + "]";
+	}
+
+}
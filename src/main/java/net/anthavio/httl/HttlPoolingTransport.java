@@ -0,0 +1,21 @@
+package net.anthavio.httl;
+
+/**
+ * HttlTransport keeping pool of persistent connections
+ * 
+ * Implemented by HttpClient4Transport, HttpClient3Transport, HttpAsyncClient4Transport and NioTransport
+ * (HedgingTransport and LoadBalancingTransport report stats of their delegates).
+ * Http2Transport multiplexes streams over connections without leasing them and NingTransport has no access 
+ * to connection counters of async-http-client, so they do not implement it. HttpUrlTransport leaves pooling to JDK.
+ * 
+ * @author martin.vanek
+ *
+ */
+public interface HttlPoolingTransport extends HttlTransport {
+
+	/**
+	 * @return current state of connection pool
+	 */
+	public HttlPoolStats getPoolStats();
+
+}
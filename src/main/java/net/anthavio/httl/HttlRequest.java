@@ -43,6 +43,20 @@ public class HttlRequest implements Serializable {
 		public boolean isBodyAllowed() {
 			return this.bodyAllowed;
 		}
+
+		/**
+		 * @return true when request is read-only and can be pipelined
+		 */
+		public boolean isSafe() {
+			return this.safe;
+		}
+
+		/**
+		 * @return true when request can be repeated without additional side effects
+		 */
+		public boolean isIdempotent() {
+			return this.idempotent;
+		}
 	}
 
 	protected static final String DEFAULT_URI = "/";
@@ -65,12 +79,36 @@ public class HttlRequest implements Serializable {
 
 	private final Integer readTimeoutMillis; //millis - override config value
 
+	private final String operation; //logical name - HttlApi method
+
+	private final Integer totalTimeoutMillis; //millis - whole request execution
+
+	private final long deadline; //absolute millis - set when execution starts
+
 	protected HttlRequest(HttlSender sender, Method method, String urlPath) {
 		this(sender, method, urlPath, null, null, null, null);
 	}
 
 	public HttlRequest(HttlSender sender, Method method, String urlPath, Multival<String> parameters,
 			Multival<String> headers, HttlBody body, Integer readTimeoutMillis) {
+		this(sender, method, urlPath, parameters, headers, body, readTimeoutMillis, null);
+	}
+
+	/**
+	 * @param operation - logical operation name used by HttlExecutionFilters to keep per operation state
+	 */
+	public HttlRequest(HttlSender sender, Method method, String urlPath, Multival<String> parameters,
+			Multival<String> headers, HttlBody body, Integer readTimeoutMillis, String operation) {
+		this(sender, method, urlPath, parameters, headers, body, readTimeoutMillis, null, operation);
+	}
+
+	/**
+	 * @param totalTimeoutMillis - deadline for whole execution (pool acquire, connect, send and read)
+	 * @param operation - logical operation name used by HttlExecutionFilters to keep per operation state
+	 */
+	public HttlRequest(HttlSender sender, Method method, String urlPath, Multival<String> parameters,
+			Multival<String> headers, HttlBody body, Integer readTimeoutMillis, Integer totalTimeoutMillis,
+			String operation) {
 
 		if (sender == null) {
 			throw new IllegalArgumentException("Null sender");
@@ -171,6 +209,106 @@ public class HttlRequest implements Serializable {
 		}
 
 		this.readTimeoutMillis = readTimeoutMillis;
+		if (totalTimeoutMillis != null && totalTimeoutMillis < 1) {
+			throw new HttlRequestException("Total timeout must be > 0: " + totalTimeoutMillis);
+		}
+		this.totalTimeoutMillis = totalTimeoutMillis;
+		this.deadline = 0;
+		this.operation = operation;
+	}
+
+	/**
+	 * Copy constructor for HttlExecutionFilter transforming request headers and body
+	 */
+	protected HttlRequest(HttlRequest request, Multival<String> headers, HttlBody body) {
+		this.sender = request.sender;
+		this.method = request.method;
+		this.urlPath = request.urlPath;
+		this.pathAndQuery = request.pathAndQuery;
+		this.parameters = request.parameters;
+		this.contentType = request.contentType;
+		this.readTimeoutMillis = request.readTimeoutMillis;
+		this.totalTimeoutMillis = request.totalTimeoutMillis;
+		this.deadline = request.deadline;
+		this.operation = request.operation;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	/**
+	 * Copy constructor for started deadline
+	 */
+	private HttlRequest(HttlRequest request, long deadline, Integer readTimeoutMillis) {
+		this.sender = request.sender;
+		this.method = request.method;
+		this.urlPath = request.urlPath;
+		this.pathAndQuery = request.pathAndQuery;
+		this.parameters = request.parameters;
+		this.contentType = request.contentType;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.totalTimeoutMillis = request.totalTimeoutMillis;
+		this.deadline = deadline;
+		this.operation = request.operation;
+		this.headers = request.headers;
+		this.body = request.body;
+	}
+
+	/**
+	 * @return copy with deadline started now or this when there is no total timeout or deadline is already started
+	 */
+	HttlRequest startDeadline() {
+		if (totalTimeoutMillis == null || deadline != 0) {
+			return this;
+		}
+		return new HttlRequest(this, System.currentTimeMillis() + totalTimeoutMillis, readTimeoutMillis);
+	}
+
+	/**
+	 * Outer deadline (of batch for example) is enforced by transport like total timeout
+	 * 
+	 * @param deadline - absolute time (millis)
+	 * @return copy with deadline not later than given one or this when own deadline is sooner
+	 */
+	public HttlRequest withDeadline(long deadline) {
+		if (deadline < 1) {
+			throw new IllegalArgumentException("Deadline must be > 0: " + deadline);
+		}
+		long own = this.deadline;
+		if (own == 0 && totalTimeoutMillis != null) {
+			own = System.currentTimeMillis() + totalTimeoutMillis;
+		}
+		if (own != 0 && own <= deadline) {
+			return own == this.deadline ? this : new HttlRequest(this, own, readTimeoutMillis);
+		}
+		return new HttlRequest(this, deadline, readTimeoutMillis);
+	}
+
+	/**
+	 * @return copy with read timeout capped to remaining time until deadline
+	 */
+	HttlRequest capReadTimeout(int configReadTimeoutMillis) {
+		if (deadline == 0) {
+			return this;
+		}
+		long remaining = getRemainingMillis();
+		int readTimeout = readTimeoutMillis != null ? readTimeoutMillis : configReadTimeoutMillis;
+		if (remaining >= readTimeout && readTimeout != 0) {
+			return this;
+		}
+		return new HttlRequest(this, deadline, (int) Math.max(1, remaining));
+	}
+
+	/**
+	 * @return copy of this request with different headers and body
+	 */
+	public HttlRequest copy(Multival<String> headers, HttlBody body) {
+		if (headers == null) {
+			throw new IllegalArgumentException("Null headers");
+		}
+		if (body != null && !method.isBodyAllowed()) {
+			throw new HttlRequestException("Method " + method + " cannot have body: " + this);
+		}
+		return new HttlRequest(this, headers, body);
 	}
 
 	public HttlSender getSender() {
@@ -252,6 +390,37 @@ public class HttlRequest implements Serializable {
 		return readTimeoutMillis;
 	}
 
+	/**
+	 * @return total timeout of whole request execution or null
+	 */
+	public Integer getTotalTimeoutMillis() {
+		return totalTimeoutMillis;
+	}
+
+	/**
+	 * @return absolute time (millis) when request must be completed or 0 when there is no deadline (yet)
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @return millis remaining until deadline or Long.MAX_VALUE when there is no deadline
+	 */
+	public long getRemainingMillis() {
+		if (deadline == 0) {
+			return Long.MAX_VALUE;
+		}
+		return deadline - System.currentTimeMillis();
+	}
+
+	/**
+	 * @return logical operation name (Interface.method for HttlApi calls) or null
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -326,7 +495,7 @@ public class HttlRequest implements Serializable {
 		}
 		if (body != null) {
 			if (body.getType() == Type.BYTES) {
-				digest.update((byte[]) body.getPayload());
+				digest.update((byte[]) body.getPayload(), 0, body.getLength());
 			} else if (body.getType() == Type.STRING) {
 				digest.update(((String) body.getPayload()).getBytes());
 			} else {
@@ -1,6 +1,7 @@
 package net.anthavio.httl;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -43,6 +44,10 @@ public abstract class HttlRequestBuilder<X extends HttlRequestBuilder<?>> {
 
 	protected Integer readTimeoutMillis;
 
+	protected Integer totalTimeoutMillis;
+
+	protected String operation;
+
 	public HttlRequestBuilder(HttlSender sender, Method method, String urlPath) {
 		if (sender == null) {
 			throw new IllegalArgumentException("sender is null");
@@ -86,6 +91,23 @@ public abstract class HttlRequestBuilder<X extends HttlRequestBuilder<?>> {
 		return getX();
 	}
 
+	/**
+	 * Deadline for whole request execution - pool acquire, connect, send and read (including retries and hedges).
+	 * Exceeded deadline fails request with HttlDeadlineException
+	 */
+	public X totalTimeout(int value, TimeUnit unit) {
+		this.totalTimeoutMillis = (int) unit.toMillis(value);
+		return getX();
+	}
+
+	/**
+	 * Name request so HttlExecutionFilters can keep per operation state (circuit breaker, rate limiter)
+	 */
+	public X operation(String name) {
+		this.operation = name;
+		return getX();
+	}
+
 	// headers section...
 
 	/**
@@ -386,7 +408,8 @@ public abstract class HttlRequestBuilder<X extends HttlRequestBuilder<?>> {
 			for (HttlBuilderVisitor interceptor : interceptors) {
 				interceptor.visit(this);
 			}
-			return new HttlRequest(sender, method, urlPath, parameters, headers, null, readTimeoutMillis);
+			return new HttlRequest(sender, method, urlPath, parameters, headers, null, readTimeoutMillis,
+					totalTimeoutMillis, operation);
 		}
 	}
 
@@ -428,6 +451,21 @@ public abstract class HttlRequestBuilder<X extends HttlRequestBuilder<?>> {
 			return this;
 		}
 
+		/**
+		 * Set body as File. It is streamed from disk with Content-Length of the file
+		 */
+		public BodyfulRequestBuilder body(File file, String mediaType) {
+			if (file == null) {
+				throw new HttlRequestException("Payload file is null");
+			}
+			if (!file.isFile() || !file.canRead()) {
+				throw new HttlRequestException("Payload file is not readable: " + file);
+			}
+			setContentType(mediaType);
+			this.body = new HttlBody(file);
+			return this;
+		}
+
 		/**
 		 * Set body as InputStream
 		 */
@@ -517,6 +555,8 @@ public abstract class HttlRequestBuilder<X extends HttlRequestBuilder<?>> {
 				return body((String) payload, mediaType);
 			} else if (payload instanceof byte[]) {
 				return body((byte[]) payload, mediaType);
+			} else if (payload instanceof File) {
+				return body((File) payload, mediaType);
 			} else {
 				//marshalling...
 				String[] contentType = setContentType(mediaType);
@@ -541,7 +581,8 @@ public abstract class HttlRequestBuilder<X extends HttlRequestBuilder<?>> {
 			for (HttlBuilderVisitor visitor : visitors) {
 				visitor.visit(this);
 			}
-			return new HttlRequest(sender, method, urlPath, parameters, headers, body, readTimeoutMillis);
+			return new HttlRequest(sender, method, urlPath, parameters, headers, body, readTimeoutMillis,
+					totalTimeoutMillis, operation);
 		}
 
 		@Override
@@ -1,17 +1,18 @@
 package net.anthavio.httl;
 
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
 import java.nio.charset.Charset;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.InflaterInputStream;
 
 import net.anthavio.httl.HttlSender.Multival;
 import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.PooledContentDecoder;
+import net.anthavio.httl.util.TimerWheel.Timeout;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,12 @@ public abstract class HttlResponse implements Closeable, Serializable {
 
 	protected transient InputStreamWrapper stream;
 
+	protected transient InputStream rawStream; //not decoded
+
+	private transient volatile boolean aborted;
+
+	private transient volatile Timeout deadlineTimeout;
+
 	protected final String mediaType;
 
 	protected final String encoding;// = "utf-8";//"ISO-8859-1";
@@ -57,17 +64,19 @@ public abstract class HttlResponse implements Closeable, Serializable {
 			this.encoding = "utf-8";
 		}
 
+		this.rawStream = stream;
 		if (stream != null) {
+			stream = new AbortGuard(stream);
 			String responseEncoding = headers.getFirst("Content-Encoding");
 			if (responseEncoding != null) {
-				if (responseEncoding.indexOf("gzip") != -1) {
-					try {
-						stream = new GZIPInputStream(stream);
-					} catch (IOException iox) {
-						throw new HttlResponseException(this, iox);
-					}
-				} else if (responseEncoding.indexOf("deflate") != -1) {
-					stream = new InflaterInputStream(stream);
+				HttlContentDecoder decoder = PooledContentDecoder.DEFAULT;
+				if (request != null && request.getSender() != null) {
+					decoder = request.getSender().getConfig().getContentDecoder();
+				}
+				try {
+					stream = decoder.decode(responseEncoding, stream);
+				} catch (IOException iox) {
+					throw new HttlResponseException(this, iox);
 				}
 			}
 			this.stream = new InputStreamWrapper(stream);
@@ -112,7 +121,7 @@ public abstract class HttlResponse implements Closeable, Serializable {
 	 * @return guess if Content-Type is NOT of any known textual media types.
 	 */
 	public boolean isBinaryContent() {
-		return !HttlUtil.isTextContent(mediaType);
+		return mediaType == null || !HttlUtil.isTextContent(mediaType); //application/octet-stream is default
 	}
 
 	/**
@@ -138,12 +147,61 @@ public abstract class HttlResponse implements Closeable, Serializable {
 
 	@Override
 	public void close() {
-		if (stream != null && !stream.isClosed()) {
-			try {
-				HttlUtil.close(this);
-			} catch (IOException iox) {
-				logger.warn("Closing problem: " + iox);
+		try {
+			if (stream != null && !stream.isClosed()) {
+				if (aborted) {
+					stream.close(); //nothing to read from aborted connection
+				} else {
+					HttlUtil.close(this);
+				}
 			}
+		} catch (IOException iox) {
+			logger.warn("Closing problem: " + iox);
+		} finally {
+			disarm();
+		}
+	}
+
+	/**
+	 * Abort response without reading rest of the body. Connection is closed instead of being returned into pool
+	 * and pending read fails. Response still must be closed by reading thread to release its resources.
+	 * 
+	 * Called from timer thread when request deadline expires, so it must not block.
+	 */
+	public void abort() {
+		aborted = true;
+		try {
+			abortConnection();
+		} catch (Exception x) {
+			logger.debug("Abort problem: " + x);
+		}
+	}
+
+	/**
+	 * Closes undecoded stream. Transports, which drain stream on close to reuse connection, must override this 
+	 */
+	protected void abortConnection() throws IOException {
+		if (rawStream != null) {
+			rawStream.close();
+		}
+	}
+
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Deadline timer is cancelled when response is closed
+	 */
+	void setDeadlineTimeout(Timeout timeout) {
+		this.deadlineTimeout = timeout;
+	}
+
+	private void disarm() {
+		Timeout timeout = deadlineTimeout;
+		if (timeout != null) {
+			timeout.cancel();
+			deadlineTimeout = null;
 		}
 	}
 
@@ -152,6 +210,44 @@ public abstract class HttlResponse implements Closeable, Serializable {
 		return "HttlResponse {" + httpStatusCode + ", " + httpStatusMessage + ", " + mediaType + ", " + encoding + "}";
 	}
 
+	/**
+	 * Fails reads once response is aborted, so reading thread stops even when transport cannot close connection
+	 */
+	class AbortGuard extends FilterInputStream {
+
+		AbortGuard(InputStream stream) {
+			super(stream);
+		}
+
+		@Override
+		public int read() throws IOException {
+			check();
+			int read = in.read();
+			check();
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			check();
+			int read = in.read(b, off, len);
+			check();
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			check();
+			return in.skip(n);
+		}
+
+		private void check() throws IOException {
+			if (aborted) {
+				throw new IOException("Response aborted");
+			}
+		}
+	}
+
 	/**
 	 * Tracking close call to prevent IOException
 	 * 
@@ -171,7 +267,11 @@ public abstract class HttlResponse implements Closeable, Serializable {
 		@Override
 		public void close() throws IOException {
 			closed = true;
-			stream.close();
+			try {
+				stream.close();
+			} finally {
+				disarm();
+			}
 		}
 
 		public boolean isClosed() {
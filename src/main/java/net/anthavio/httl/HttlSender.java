@@ -16,6 +16,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -25,9 +26,16 @@ import net.anthavio.httl.HttlRequest.Method;
 import net.anthavio.httl.HttlRequestBuilder.BodyfulRequestBuilder;
 import net.anthavio.httl.HttlRequestBuilder.BodylessRequestBuilder;
 import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.HttlTransport.HttlTransportCallback;
+import net.anthavio.httl.async.HttlBatch;
+import net.anthavio.httl.async.HttlFuture;
 import net.anthavio.httl.cache.CachedResponse;
+import net.anthavio.httl.filter.ConcurrencyLimitFilter;
 import net.anthavio.httl.util.Cutils;
 import net.anthavio.httl.util.GenericType;
+import net.anthavio.httl.util.PoolStatsMonitor;
+import net.anthavio.httl.util.TimerWheel;
+import net.anthavio.httl.util.TimerWheel.Timeout;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +72,12 @@ public class HttlSender implements SenderOperations, Closeable {
 
 	private final List<HttlExecutionFilter> executionFilters;
 
+	private final PoolStatsMonitor poolMonitor; //can be null
+
+	private final ConcurrencyLimitFilter limiter; //can be null
+
+	private SenderWarmup.WarmupReport warmupReport; //can be null
+
 	public HttlSender(SenderConfigurer config) {
 		if (config == null) {
 			throw new IllegalArgumentException("null config");
@@ -74,6 +88,20 @@ public class HttlSender implements SenderOperations, Closeable {
 		this.marshaller = config.getMarshaller();
 		this.unmarshaller = config.getUnmarshaller();
 		this.executionFilters = config.getExecutionFilters();
+		ConcurrencyLimitFilter limiter = null;
+		for (HttlExecutionFilter filter : executionFilters) {
+			if (filter instanceof ConcurrencyLimitFilter) {
+				limiter = (ConcurrencyLimitFilter) filter;
+				break;
+			}
+		}
+		this.limiter = limiter;
+		if (config.getPoolMBeanName() != null && transport instanceof HttlPoolingTransport) {
+			this.poolMonitor = new PoolStatsMonitor((HttlPoolingTransport) transport, config.getPoolMBeanName());
+			this.poolMonitor.register();
+		} else {
+			this.poolMonitor = null;
+		}
 	}
 
 	public HttlTransport getTransport() {
@@ -96,7 +124,21 @@ public class HttlSender implements SenderOperations, Closeable {
 		return config;
 	}
 
+	/**
+	 * @return outcome of warm-up done when this sender was built or null
+	 */
+	public SenderWarmup.WarmupReport getWarmupReport() {
+		return warmupReport;
+	}
+
+	void setWarmupReport(SenderWarmup.WarmupReport warmupReport) {
+		this.warmupReport = warmupReport;
+	}
+
 	public void close() {
+		if (poolMonitor != null) {
+			poolMonitor.unregister();
+		}
 		transport.close();
 	}
 
@@ -104,7 +146,93 @@ public class HttlSender implements SenderOperations, Closeable {
 		if (this.logger.isDebugEnabled()) {
 			this.logger.debug(request.getMethod() + " " + request.getUrl());
 		}
-		return transport.call(request);
+		if (request.getDeadline() == 0) {
+			return transport.call(request);
+		}
+		long remaining = request.getRemainingMillis();
+		if (remaining <= 0) {
+			throw new HttlDeadlineException(request);
+		}
+		request = request.capReadTimeout(transport.getConfig().getReadTimeoutMillis());
+		Expiry expiry = new Expiry(Thread.currentThread());
+		Timeout timeout = TimerWheel.shared().schedule(expiry, remaining);
+		HttlResponse response;
+		try {
+			response = transport.call(request);
+		} catch (IOException iox) {
+			timeout.cancel();
+			if (expiry.finished(null) && request.getRemainingMillis() > 0) {
+				throw iox;
+			}
+			throw new HttlDeadlineException(request, iox); //includes read timeout capped by deadline
+		} catch (RuntimeException rx) {
+			timeout.cancel();
+			if (expiry.finished(null)) {
+				throw rx;
+			}
+			throw new HttlDeadlineException(request, rx);
+		}
+		if (!expiry.finished(response)) {
+			response.abort();
+			Cutils.close(response);
+			throw new HttlDeadlineException(request);
+		}
+		response.setDeadlineTimeout(timeout); //timer stays armed until response is closed
+		return response;
+	}
+
+	/**
+	 * Deadline expiration interrupts calling thread while transport call is running (pool acquire, connect, send).
+	 * When response is already returned, its connection is aborted instead so reading of trickling body fails.
+	 * Response is never read or closed here - that would block timer thread and race with reading thread.
+	 */
+	private static class Expiry implements Runnable {
+
+		private final Thread caller;
+
+		private boolean expired;
+
+		private boolean finished;
+
+		private boolean interrupted; //by this expiry, not by application
+
+		private HttlResponse response;
+
+		Expiry(Thread caller) {
+			this.caller = caller;
+		}
+
+		@Override
+		public void run() {
+			HttlResponse response;
+			synchronized (this) {
+				expired = true;
+				if (!finished) {
+					if (!caller.isInterrupted()) {
+						interrupted = true;
+						caller.interrupt();
+					}
+					return;
+				}
+				response = this.response;
+			}
+			response.abort();
+		}
+
+		/**
+		 * @return false when deadline expired during transport call
+		 */
+		synchronized boolean finished(HttlResponse response) {
+			finished = true;
+			this.response = response;
+			if (expired) {
+				if (interrupted) {
+					Thread.interrupted(); //clear only interrupt sent by expiration, application's one is kept
+				}
+				return false;
+			}
+			return true;
+		}
 	}
 
 	/**
@@ -113,6 +241,7 @@ public class HttlSender implements SenderOperations, Closeable {
 	 */
 	public HttlResponse execute(HttlRequest request) throws HttlRequestException {
 
+		request = request.startDeadline();
 		HttlResponse response = null;
 		try {
 			if (executionFilters != null && executionFilters.size() != 0) {
@@ -207,12 +336,22 @@ public class HttlSender implements SenderOperations, Closeable {
 			return new ExtractedResponse<T>(response, (T) payload);//XXX this cast is erased!
 
 		} catch (IOException iox) {
-			throw new HttlResponseException(response, iox);
+			throw new HttlResponseException(response, deadline(response, iox));
 		} finally {
 			Cutils.close(response);
 		}
 	}
 
+	/**
+	 * Reading of body failed because deadline expired and connection was aborted
+	 */
+	private static Exception deadline(HttlResponse response, Exception x) {
+		if (response != null && response.isAborted() && x instanceof IOException) {
+			return new HttlDeadlineException(response.getRequest(), x);
+		}
+		return x;
+	}
+
 	/**
 	 * Extracted response version. Response is extracted, closed and result is returned to caller.
 	 * 
@@ -240,7 +379,7 @@ public class HttlSender implements SenderOperations, Closeable {
 				}
 			*/
 		} catch (Exception x) {
-			throw new HttlResponseException(response, x);
+			throw new HttlResponseException(response, deadline(response, x));
 		} finally {
 			Cutils.close(response);
 		}
@@ -250,10 +389,7 @@ public class HttlSender implements SenderOperations, Closeable {
 	 * Asynchronous extraction with Future as response
 	 */
 	public <T> Future<ExtractedResponse<T>> start(final HttlRequest request, final HttlResponseExtractor<T> extractor) {
-		if (executor == null) {
-			throw new IllegalStateException("Executor for asynchronous requests is not configured");
-		}
-		return executor.submit(new Callable<ExtractedResponse<T>>() {
+		return submit(new Callable<ExtractedResponse<T>>() {
 
 			@Override
 			public ExtractedResponse<T> call() throws Exception {
@@ -266,10 +402,7 @@ public class HttlSender implements SenderOperations, Closeable {
 	 * Asynchronous extraction with Future as response
 	 */
 	public <T> Future<ExtractedResponse<T>> start(final HttlRequest request, final Class<T> resultType) {
-		if (executor == null) {
-			throw new IllegalStateException("Executor for asynchronous requests is not configured");
-		}
-		return executor.submit(new Callable<ExtractedResponse<T>>() {
+		return submit(new Callable<ExtractedResponse<T>>() {
 
 			@Override
 			public ExtractedResponse<T> call() throws Exception {
@@ -282,17 +415,15 @@ public class HttlSender implements SenderOperations, Closeable {
 	 * Asynchronous execution whith ResponseHandler
 	 */
 	public void start(final HttlRequest request, final HttlResponseHandler handler) {
-		if (executor == null) {
-			throw new IllegalStateException("Executor for asynchronous requests is not configured");
-		}
-		executor.execute(new Runnable() {
+		submit(new Callable<Void>() {
 			@Override
-			public void run() {
+			public Void call() {
 				try {
 					execute(request, handler);
 				} catch (Exception x) {
 					logger.warn("Failed asynchronous request", x);
 				}
+				return null;
 			}
 		});
 	}
@@ -301,10 +432,7 @@ public class HttlSender implements SenderOperations, Closeable {
 	 * Asynchronous execution with Future as response
 	 */
 	public Future<HttlResponse> start(final HttlRequest request) {
-		if (executor == null) {
-			throw new IllegalStateException("Executor for asynchronous requests is not configured");
-		}
-		return executor.submit(new Callable<HttlResponse>() {
+		return submit(new Callable<HttlResponse>() {
 
 			@Override
 			public HttlResponse call() throws Exception {
@@ -316,6 +444,256 @@ public class HttlSender implements SenderOperations, Closeable {
 		});
 	}
 
+	/**
+	 * Asynchronous extraction driven by HttlTransport callback. With non-blocking transport no thread waits for response.
+	 * Extraction runs in transport callback thread
+	 */
+	public <T> HttlFuture<ExtractedResponse<T>> startAsync(HttlRequest request, Class<T> resultType) {
+		return startAsync(request, resultType, null);
+	}
+
+	/**
+	 * Asynchronous extraction driven by HttlTransport callback. 
+	 * 
+	 * @param extraction - Executor extraction runs in. Response is buffered in memory before it is passed to it.
+	 * When null, extraction runs in transport callback thread
+	 */
+	public <T> HttlFuture<ExtractedResponse<T>> startAsync(HttlRequest request, Class<T> resultType, Executor extraction) {
+		if (resultType == null) {
+			throw new IllegalArgumentException("resultType is null");
+		}
+		return startAsync(request, resultType, null, extraction);
+	}
+
+	/**
+	 * Asynchronous extraction driven by HttlTransport callback. Extraction runs in transport callback thread
+	 */
+	public <T> HttlFuture<ExtractedResponse<T>> startAsync(HttlRequest request, HttlResponseExtractor<T> extractor) {
+		return startAsync(request, extractor, null);
+	}
+
+	/**
+	 * Asynchronous extraction driven by HttlTransport callback.
+	 * 
+	 * @param extraction - Executor extraction runs in. Response is buffered in memory before it is passed to it.
+	 * When null, extraction runs in transport callback thread
+	 */
+	public <T> HttlFuture<ExtractedResponse<T>> startAsync(HttlRequest request, HttlResponseExtractor<T> extractor,
+			Executor extraction) {
+		if (extractor == null) {
+			throw new IllegalArgumentException("ResponseExtractor is null");
+		}
+		return startAsync(request, null, extractor, extraction);
+	}
+
+	/**
+	 * HttlExecutionFilters are blocking so request goes through executor when any is configured
+	 */
+	private <T> HttlFuture<ExtractedResponse<T>> startAsync(HttlRequest original, final Type resultType,
+			final HttlResponseExtractor<T> extractor, final Executor extraction) {
+		final HttlRequest request = original.startDeadline().capReadTimeout(transport.getConfig().getReadTimeoutMillis());
+		final HttlFuture<ExtractedResponse<T>> future = new HttlFuture<ExtractedResponse<T>>();
+		if (request.getDeadline() != 0) {
+			final Timeout timeout = TimerWheel.shared().schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					future.fail(new HttlDeadlineException(request));
+				}
+			}, request.getRemainingMillis());
+			future.addListener(new HttlFuture.Listener<ExtractedResponse<T>>() {
+
+				@Override
+				public void onSuccess(ExtractedResponse<T> result) {
+					timeout.cancel();
+				}
+
+				@Override
+				public void onFailure(Throwable failure) {
+					timeout.cancel();
+				}
+			});
+		}
+		if (executionFilters != null && executionFilters.size() != 0) {
+			future.attach(submit(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					try {
+						future.complete(extractAsync(execute(request), resultType, extractor));
+					} catch (Exception x) {
+						future.fail(x);
+					}
+					return null;
+				}
+			}));
+			return future;
+		}
+
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug(request.getMethod() + " " + request.getUrl());
+		}
+		try {
+			transport.call(request, new HttlTransportCallback() {
+
+				@Override
+				public void onRequestFailure(HttlRequest request, Exception exception) {
+					future.fail(exception);
+				}
+
+				@Override
+				public void onResponseFailure(HttlRequest request, Exception exception) {
+					future.fail(exception);
+				}
+
+				@Override
+				public void onResponse(HttlResponse response) {
+					if (response == null || future.isDone()) {
+						return; //failure already reported or cancelled
+					}
+					if (extraction == null) {
+						complete(future, response, resultType, extractor);
+					} else {
+						final CachedResponse buffered;
+						try {
+							buffered = new CachedResponse(request, response);
+						} catch (Exception x) {
+							future.fail(x);
+							return;
+						}
+						extraction.execute(new Runnable() {
+
+							@Override
+							public void run() {
+								complete(future, buffered, resultType, extractor);
+							}
+						});
+					}
+				}
+			});
+		} catch (Exception x) {
+			future.fail(x);
+		}
+		return future;
+	}
+
+	private <T> void complete(HttlFuture<ExtractedResponse<T>> future, HttlResponse response, Type resultType,
+			HttlResponseExtractor<T> extractor) {
+		try {
+			future.complete(extractAsync(response, resultType, extractor));
+		} catch (Exception x) {
+			future.fail(x);
+		}
+	}
+
+	private <T> ExtractedResponse<T> extractAsync(HttlResponse response, Type resultType,
+			HttlResponseExtractor<T> extractor) {
+		if (extractor == null) {
+			return extract(response, resultType);
+		}
+		try {
+			return new ExtractedResponse<T>(response, extractor.extract(response));
+		} catch (Exception x) {
+			throw new HttlResponseException(response, deadline(response, x));
+		} finally {
+			Cutils.close(response);
+		}
+	}
+
+	/**
+	 * Execute requests using Executor with at most parallelism of them in flight. Blocks until all are completed.
+	 * 
+	 * @return results in order of requests
+	 */
+	public <T> List<HttlBatch.Result<T>> executeAll(List<HttlRequest> requests, HttlResponseExtractor<T> extractor,
+			int parallelism) throws InterruptedException {
+		return new HttlBatch<T>(this, requests, extractor, parallelism, 0).execute();
+	}
+
+	/**
+	 * Execute requests using Executor with at most parallelism of them in flight. Blocks until all are completed
+	 * or timeoutMillis elapses. Requests not completed by then are cancelled and they fail with TimeoutException.
+	 * 
+	 * @param listener - notified as every request completes (can be null)
+	 * @return results in order of requests
+	 */
+	public <T> List<HttlBatch.Result<T>> executeAll(List<HttlRequest> requests, HttlResponseExtractor<T> extractor,
+			int parallelism, long timeoutMillis, HttlBatch.Listener<T> listener) throws InterruptedException {
+		return new HttlBatch<T>(this, requests, extractor, parallelism, timeoutMillis).setListener(listener).execute();
+	}
+
+	/**
+	 * Execute requests using Executor with at most parallelism of them in flight. Blocks until all are completed.
+	 * 
+	 * @return results in order of requests
+	 */
+	public <T> List<HttlBatch.Result<T>> executeAll(List<HttlRequest> requests, Class<T> resultType, int parallelism)
+			throws InterruptedException {
+		return new HttlBatch<T>(this, requests, resultType, parallelism, 0).execute();
+	}
+
+	/**
+	 * Execute requests using Executor with at most parallelism of them in flight. Blocks until all are completed
+	 * or timeoutMillis elapses. Requests not completed by then are cancelled and they fail with TimeoutException.
+	 * 
+	 * @param listener - notified as every request completes (can be null)
+	 * @return results in order of requests
+	 */
+	public <T> List<HttlBatch.Result<T>> executeAll(List<HttlRequest> requests, Class<T> resultType, int parallelism,
+			long timeoutMillis, HttlBatch.Listener<T> listener) throws InterruptedException {
+		return new HttlBatch<T>(this, requests, resultType, parallelism, timeoutMillis).setListener(listener).execute();
+	}
+
+	/**
+	 * Scatter-gather - execute all requests in parallel and wait at most timeoutMillis for them. 
+	 * Stragglers are cancelled, so results are available (partially) even when some backends are slow.
+	 */
+	public <T> HttlBatch.Gathered<T> scatterGather(List<HttlRequest> requests, HttlResponseExtractor<T> extractor,
+			long timeoutMillis) throws InterruptedException {
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("Timeout must be > 0");
+		}
+		return new HttlBatch<T>(this, requests, extractor, Math.max(1, requests.size()), timeoutMillis).gather();
+	}
+
+	/**
+	 * Scatter-gather - execute all requests in parallel and wait at most timeoutMillis for them. 
+	 * Stragglers are cancelled, so results are available (partially) even when some backends are slow.
+	 */
+	public <T> HttlBatch.Gathered<T> scatterGather(List<HttlRequest> requests, Class<T> resultType, long timeoutMillis)
+			throws InterruptedException {
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("Timeout must be > 0");
+		}
+		return new HttlBatch<T>(this, requests, resultType, Math.max(1, requests.size()), timeoutMillis).gather();
+	}
+
+	/**
+	 * Submit into executor. ConcurrencyLimitFilter admits request before it is queued in executor
+	 */
+	private <T> Future<T> submit(final Callable<T> task) {
+		if (executor == null) {
+			throw new IllegalStateException("Executor for asynchronous requests is not configured");
+		}
+		if (limiter == null) {
+			return executor.submit(task);
+		}
+		limiter.admit();
+		try {
+			return executor.submit(new Callable<T>() {
+
+				@Override
+				public T call() throws Exception {
+					limiter.started();
+					return task.call();
+				}
+			});
+		} catch (RuntimeException rx) {
+			limiter.started(); //RejectedExecutionException
+			throw rx;
+		}
+	}
+
 	/**
 	 * Fluent builders 
 	 */
@@ -8,10 +8,13 @@ import java.util.concurrent.ExecutorService;
 import net.anthavio.httl.HttlParameterSetter.ConfigurableParamSetter;
 import net.anthavio.httl.HttlSender.Multival;
 import net.anthavio.httl.api.HttlApiBuilder;
+import net.anthavio.httl.async.ExecutorServiceBuilder;
+import net.anthavio.httl.filter.RateLimitFilter;
 import net.anthavio.httl.marshall.HttlBytesExtractor;
 import net.anthavio.httl.marshall.HttlStringExtractor;
 import net.anthavio.httl.marshall.MediaTypeMarshaller;
 import net.anthavio.httl.marshall.MediaTypeUnmarshaller;
+import net.anthavio.httl.util.PooledContentDecoder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +48,12 @@ public class SenderConfigurer {
 
 	private HttlResponseExtractor<byte[]> bytesExtractor = new HttlBytesExtractor(200, 299);
 
+	private HttlContentDecoder contentDecoder = PooledContentDecoder.DEFAULT;
+
+	private SenderWarmup warmup;
+
+	private String poolMBeanName;
+
 	private final HttlTransport transport;
 
 	private final URL url;
@@ -75,7 +84,11 @@ public class SenderConfigurer {
 	 * Build final HttlSender
 	 */
 	public HttlSender build() {
-		return new HttlSender(this);
+		HttlSender sender = new HttlSender(this);
+		if (warmup != null) {
+			sender.setWarmupReport(warmup.execute(sender));
+		}
+		return sender;
 	}
 
 	public HttlTransport getTransport() {
@@ -160,6 +173,59 @@ public class SenderConfigurer {
 		this.bytesExtractor = extractor;
 	}
 
+	public HttlContentDecoder getContentDecoder() {
+		return contentDecoder;
+	}
+
+	/**
+	 * Decompression of gzip/deflate Content-Encoding responses
+	 */
+	public SenderConfigurer setContentDecoder(HttlContentDecoder decoder) {
+		if (decoder == null) {
+			throw new IllegalArgumentException("Null decoder");
+		}
+		this.contentDecoder = decoder;
+		return this;
+	}
+
+	public SenderWarmup getWarmup() {
+		return warmup;
+	}
+
+	/**
+	 * Open connections in build() using concurrent HEAD requests
+	 * 
+	 * @param connections - number of connections (limited by transport pool maximum size)
+	 * @param path - HEAD request path
+	 * @param timeoutMillis - maximum time build() waits for warm-up
+	 */
+	public SenderConfigurer setWarmup(int connections, String path, int timeoutMillis) {
+		this.warmup = new SenderWarmup(connections, path, timeoutMillis);
+		return this;
+	}
+
+	public String getPoolMBeanName() {
+		return poolMBeanName;
+	}
+
+	/**
+	 * Publish connection pool stats of HttlPoolingTransport as JMX MBean net.anthavio.httl:type=ConnectionPool,name=...
+	 * MBean is unregistered when HttlSender is closed. Ignored for transports not implementing HttlPoolingTransport
+	 */
+	public SenderConfigurer setPoolMBeanName(String name) {
+		this.poolMBeanName = name;
+		return this;
+	}
+
+	/**
+	 * Add RateLimitFilter keeping request rate under permitsPerSecond
+	 * 
+	 * @param timeoutMillis - maximum wait for permit (0 for non-blocking)
+	 */
+	public SenderConfigurer setRateLimit(double permitsPerSecond, int burst, int timeoutMillis) {
+		return addExecutionFilter(new RateLimitFilter(permitsPerSecond, burst, timeoutMillis));
+	}
+
 	public SenderConfigurer addExecutionFilter(HttlExecutionFilter filter) {
 		if (filter == null) {
 			throw new IllegalArgumentException("Null filter");
@@ -224,6 +290,19 @@ public class SenderConfigurer {
 		return this;
 	}
 
+	/**
+	 * Executor for asynchronous requests starting virtual thread per request (JDK 21+, ThreadPoolExecutor otherwise).
+	 * Suitable for blocking transports serving thousands of concurrent requests.
+	 * 
+	 * @param maxConcurrency - maximum number of requests executed at the same time
+	 * @param maxWaiting - maximum number of requests waiting for execution, others are rejected
+	 */
+	public SenderConfigurer setVirtualThreads(int maxConcurrency, int maxWaiting) {
+		this.executorService = ExecutorServiceBuilder.begin().setVirtualThreads(true).setMaximumPoolSize(maxConcurrency)
+				.setMaximumQueueSize(maxWaiting).buildExecutorService();
+		return this;
+	}
+
 	public boolean isSkipCharset() {
 		return skipCharset;
 	}
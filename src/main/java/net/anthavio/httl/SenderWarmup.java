@@ -0,0 +1,200 @@
+package net.anthavio.httl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.anthavio.httl.async.NamedDeamonThreadFactory;
+import net.anthavio.httl.util.Cutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opens pooled connections before first real request. Concurrent requests are sent directly into HttlTransport
+ * (bypassing HttlExecutionFilters) so every one of them opens (and handshakes) separate connection, which is
+ * returned into transport's pool afterwards. Works with every pooling transport.
+ *
+ * Any http response counts as success, because connection was established. Warm-up requests have total timeout
+ * of timeoutMillis, so requests unfinished when it elapses are cancelled by the transport.
+ *
+ * @author martin.vanek
+ *
+ */
+public class SenderWarmup {
+
+	private static final Logger logger = LoggerFactory.getLogger(SenderWarmup.class);
+
+	private final int connections;
+
+	private final String path;
+
+	private final int timeoutMillis;
+
+	/**
+	 * @param connections - number of connections to open (limited by transport pool maximum size)
+	 * @param path - HEAD request path
+	 * @param timeoutMillis - maximum time SenderConfigurer.build() waits for warm-up to complete. Unfinished requests are cancelled
+	 */
+	public SenderWarmup(int connections, String path, int timeoutMillis) {
+		if (connections < 1) {
+			throw new IllegalArgumentException("Connections must be > 0");
+		}
+		if (Cutils.isEmpty(path)) {
+			throw new IllegalArgumentException("Empty path");
+		}
+		if (timeoutMillis < 1) {
+			throw new IllegalArgumentException("Timeout must be > 0");
+		}
+		this.connections = connections;
+		this.path = path;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * Blocks until all connections are opened or timeout elapses
+	 */
+	public WarmupReport execute(final HttlSender sender) {
+		HttlTransport transport = sender.getTransport();
+		int count = Math.min(connections, transport.getConfig().getPoolMaximumSize());
+		long started = System.currentTimeMillis();
+		//deadline is shared by all requests
+		final HttlRequest request = sender.HEAD(path).totalTimeout(timeoutMillis, TimeUnit.MILLISECONDS).build()
+				.startDeadline();
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(count);
+		final AtomicInteger succeeded = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		ExecutorService executor = Executors.newFixedThreadPool(count, new NamedDeamonThreadFactory("httl-warmup-"));
+		for (int i = 0; i < count; ++i) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					HttlResponse response = null;
+					try {
+						start.await();
+						response = sender.doExecute(request);
+						succeeded.incrementAndGet();
+					} catch (HttlDeadlineException dx) {
+						//cancelled - counted as pending
+					} catch (Exception x) {
+						failed.incrementAndGet();
+						failure.compareAndSet(null, x);
+					} finally {
+						Cutils.close(response);
+						done.countDown();
+					}
+				}
+			});
+		}
+		executor.shutdown(); //threads end with their requests
+		start.countDown(); //all at once to force separate connections
+
+		try {
+			done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdownNow(); //deadline cancels blocked requests, interrupt those still starting
+		WarmupReport report = new WarmupReport(count, succeeded.get(), failed.get(), System.currentTimeMillis()
+				- started, failure.get());
+		if (report.getFailed() != 0 || report.getPending() != 0) {
+			logger.warn("Warm-up of " + transport + " incomplete " + report, report.getFailure());
+		} else {
+			logger.info("Warm-up of " + transport + " completed " + report);
+		}
+		return report;
+	}
+
+	@Override
+	public String toString() {
+		return "SenderWarmup [connections=" + connections + ", path=" + path + ", timeoutMillis=" + timeoutMillis + "]";
+	}
+
+	/**
+	 * Outcome of the warm-up
+	 *
+	 * @author martin.vanek
+	 *
+	 */
+	public static class WarmupReport {
+
+		private final int requested;
+
+		private final int succeeded;
+
+		private final int failed;
+
+		private final long millis;
+
+		private final Exception failure;
+
+		public WarmupReport(int requested, int succeeded, int failed, long millis, Exception failure) {
+			this.requested = requested;
+			this.succeeded = succeeded;
+			this.failed = failed;
+			this.millis = millis;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return number of connections warm-up tried to open
+		 */
+		public int getRequested() {
+			return requested;
+		}
+
+		/**
+		 * @return number of connections opened
+		 */
+		public int getSucceeded() {
+			return succeeded;
+		}
+
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return number of connections still being opened when timeout elapsed. Those are cancelled
+		 */
+		public int getPending() {
+			return requested - succeeded - failed;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		/**
+		 * @return first failure or null
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+
+		@Override
+		public String toString() {
+			return "WarmupReport [requested=" + requested + ", succeeded=" + succeeded + ", failed=" + failed
+					+ ", pending=" + getPending() + ", millis=" + millis + "]";
+		}
+	}
+}
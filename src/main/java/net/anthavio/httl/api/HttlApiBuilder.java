@@ -24,6 +24,7 @@ import net.anthavio.httl.api.HttlCall.HttpMethod;
 import net.anthavio.httl.api.HttlVar.NoopParamSetter;
 import net.anthavio.httl.api.VarSetter.BeanMetaVarSetter;
 import net.anthavio.httl.api.VarSetter.FieldApiVarMeta;
+import net.anthavio.httl.filter.RateLimitFilter;
 import net.anthavio.httl.util.HttlUtil;
 
 /**
@@ -104,13 +105,14 @@ public class HttlApiBuilder {
 			}
 		}
 
-		Map<Method, ApiMethodMeta> methods = doApiMethods(apiInterface, urlPathPrefix, sharedSetters);
+		Map<Method, ApiMethodMeta> methods = doApiMethods(apiInterface, urlPathPrefix, sharedSetters,
+				doRateLimit(apiInterface.getAnnotation(HttlRateLimit.class)));
 		InvocationHandler handler = new HttlApiHandler<T>(apiInterface, sender, headers, params, methods);
 		return (T) Proxy.newProxyInstance(apiInterface.getClassLoader(), new Class<?>[] { apiInterface }, handler);
 	}
 
 	private static Map<Method, ApiMethodMeta> doApiMethods(Class<?> apiInterface, String urlPathPrefix,
-			Map<Type, VarSetter<Object>> sharedSetters) {
+			Map<Type, VarSetter<Object>> sharedSetters, RateLimitFilter sharedRateLimit) {
 		Map<Method, ApiMethodMeta> metaMap = new HashMap<Method, ApiMethodMeta>();
 		for (Method method : apiInterface.getDeclaredMethods()) {
 			HttlCall operation = method.getAnnotation(HttlCall.class);
@@ -215,12 +217,28 @@ public class HttlApiBuilder {
 				builderMeta = new BuilderMeta(builderInterface, returnType, builderMethods);
 			}
 
-			ApiMethodMeta methodMeta = new ApiMethodMeta(method, http, urlPath, params, headers, builderMeta);
+			RateLimitFilter rateLimit = doRateLimit(method.getAnnotation(HttlRateLimit.class));
+			if (rateLimit == null) {
+				rateLimit = sharedRateLimit;
+			}
+
+			ApiMethodMeta methodMeta = new ApiMethodMeta(method, http, urlPath, params, headers, builderMeta, rateLimit,
+					operation.timeout());
 			metaMap.put(method, methodMeta);
 		}
 		return metaMap;
 	}
 
+	private static RateLimitFilter doRateLimit(HttlRateLimit annotation) {
+		if (annotation == null) {
+			return null;
+		}
+		if (annotation.timeoutMillis() < 0) {
+			throw new IllegalArgumentException("Negative @HttlRateLimit timeoutMillis " + annotation.timeoutMillis());
+		}
+		return new RateLimitFilter(annotation.value(), annotation.burst(), annotation.timeoutMillis());
+	}
+
 	private static Map<Method, BuilderMethodMeta> doBuilderMethods(Class<? extends HttlCallBuilder> builderInterface) {
 		Map<Method, BuilderMethodMeta> metaMap = new HashMap<Method, BuilderMethodMeta>();
 		Method[] methods = builderInterface.getDeclaredMethods();
@@ -619,9 +637,11 @@ public class HttlApiBuilder {
 		final ApiHeaderMeta[] headers;
 		final Map<String, ApiHeaderMeta> headersMap;
 		final BuilderMeta builder;
+		final RateLimitFilter rateLimit;
+		final int timeout;
 
 		public ApiMethodMeta(Method method, HttpMethod httpMethod, String urlPath, ApiVarMeta[] parameters,
-				ApiHeaderMeta[] headers, BuilderMeta builderMeta) {
+				ApiHeaderMeta[] headers, BuilderMeta builderMeta, RateLimitFilter rateLimit, int timeout) {
 			this.method = method;
 			this.httpMethod = httpMethod;
 			this.urlPath = urlPath;
@@ -632,7 +652,8 @@ public class HttlApiBuilder {
 				headersMap.put(header.name, header);
 			}
 			this.builder = builderMeta;
-
+			this.rateLimit = rateLimit;
+			this.timeout = timeout;
 		}
 
 	}
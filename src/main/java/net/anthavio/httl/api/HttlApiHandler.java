@@ -9,6 +9,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import net.anthavio.httl.HttlBuilderVisitor;
 import net.anthavio.httl.HttlConstants;
@@ -78,6 +79,10 @@ public class HttlApiHandler<T> implements InvocationHandler {
 
 		BodyfulRequestBuilder builder = new BodyfulRequestBuilder(sender, metaMethod.httpMethod.getMethod(),
 				metaMethod.urlPath);
+		builder.operation(apiInterface.getSimpleName() + "." + method.getName());
+		if (metaMethod.timeout > 0) {
+			builder.totalTimeout(metaMethod.timeout, TimeUnit.MILLISECONDS);
+		}
 
 		//Class declared headers
 		ApiHeaderMeta[] mheaders = metaMethod.headers;
@@ -205,6 +210,10 @@ public class HttlApiHandler<T> implements InvocationHandler {
 
 		HttlRequest request = builder.build();
 
+		if (metaMethod.rateLimit != null) {
+			metaMethod.rateLimit.acquire(request);
+		}
+
 		HttlResponse response;
 		if (executionFilter != null) {
 			response = new ApiHandlerChain(executionFilter).next(request);
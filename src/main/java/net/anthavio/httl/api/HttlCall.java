@@ -25,9 +25,9 @@ public @interface HttlCall {
 	String value();
 
 	/**
-	 * @return
+	 * @return total timeout (deadline) of request execution in millis, -1 means none
 	 */
-	//TODO next version int timeout() default -1;
+	int timeout() default -1;
 
 	public static enum HttpMethod {
 		GET(HttlRequest.Method.GET), //
@@ -0,0 +1,38 @@
+package net.anthavio.httl.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Request rate limit of @HttlApi interface (shared by all methods) or @HttlCall method (own limit)
+ * 
+ * Examples:
+ * 
+ * @HttlRateLimit(10)
+ * 
+ * @HttlRateLimit(value = 0.5, burst = 5, timeoutMillis = 2000)
+ * 
+ * @author martin.vanek
+ *
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface HttlRateLimit {
+
+	/**
+	 * @return permits per second
+	 */
+	double value();
+
+	/**
+	 * @return requests allowed at once after idle period
+	 */
+	int burst() default 1;
+
+	/**
+	 * @return maximum wait for permit. 0 means non-blocking - fail immediately
+	 */
+	int timeoutMillis() default 0;
+}
@@ -2,6 +2,7 @@ package net.anthavio.httl.async;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
@@ -9,6 +10,9 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * 
  * @author martin.vanek
@@ -16,6 +20,8 @@ import java.util.concurrent.TimeUnit;
  */
 public class ExecutorServiceBuilder {
 
+	private static final Logger logger = LoggerFactory.getLogger(ExecutorServiceBuilder.class);
+
 	public static ExecutorServiceBuilder begin() {
 		return new ExecutorServiceBuilder();
 	}
@@ -27,7 +33,42 @@ public class ExecutorServiceBuilder {
 	private TimeUnit timeUnit = TimeUnit.SECONDS;
 	private ThreadFactory threadFactory = new NamedDeamonThreadFactory();
 	private RejectedExecutionHandler rejectionHandler = new RejectingPolicy();
+	private boolean virtualThreads = false;
+	private String virtualNamePrefix = "httl-virtual-";
+
+	/**
+	 * With virtual threads enabled and running on JDK 21+, ThreadPerTaskExecutor with virtual threads is built.
+	 * maximumPoolSize then bounds number of concurrently running tasks and maximumQueueSize number of tasks 
+	 * waiting for it. Before JDK 21, ThreadPoolExecutor with same bounds is built (see buildBounded()).
+	 * Without virtual threads enabled, ThreadPoolExecutor is built.
+	 */
+	public ExecutorService buildExecutorService() {
+		if (virtualThreads) {
+			if (VirtualThreads.isAvailable()) {
+				return new ThreadPerTaskExecutor(VirtualThreads.newThreadFactory(virtualNamePrefix), maximumPoolSize,
+						maximumQueueSize);
+			} else {
+				logger.info("Virtual threads are not available on JDK " + System.getProperty("java.version")
+						+ ", using ThreadPoolExecutor");
+				return buildBounded();
+			}
+		}
+		return build();
+	}
 
+	/**
+	 * ThreadPoolExecutor starts threads above corePoolSize only when queue is full, so core size is raised 
+	 * to maximumPoolSize to run maximumPoolSize tasks before queueing. Idle threads still time out.
+	 */
+	ThreadPoolExecutor buildBounded() {
+		ThreadPoolExecutor executor = setCorePoolSize(maximumPoolSize).build();
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Always builds ThreadPoolExecutor with platform threads
+	 */
 	public ThreadPoolExecutor build() {
 		BlockingQueue<Runnable> queue;
 		if (maximumQueueSize == 0) {
@@ -73,6 +114,22 @@ public class ExecutorServiceBuilder {
 		return this;
 	}
 
+	/**
+	 * Use virtual threads when available (JDK 21+). See buildExecutorService()
+	 */
+	public ExecutorServiceBuilder setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+
+	public ExecutorServiceBuilder setVirtualNamePrefix(String virtualNamePrefix) {
+		if (virtualNamePrefix == null || virtualNamePrefix.isEmpty()) {
+			throw new IllegalArgumentException("Null or empty virtualNamePrefix");
+		}
+		this.virtualNamePrefix = virtualNamePrefix;
+		return this;
+	}
+
 }
 
 /**
@@ -0,0 +1,396 @@
+package net.anthavio.httl.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.anthavio.httl.HttlDeadlineException;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponseExtractor;
+import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.HttlSender;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes list of requests using HttlSender ExecutorService with at most parallelism of them in flight.
+ * Requests are submitted by calling thread only when permit is available (back-pressure), so neither executor
+ * nor backend is flooded by big batch.
+ *
+ * Results are in the same order as requests. Requests not completed until deadline fail with TimeoutException.
+ * Batch deadline is also deadline of every request (HttlRequest#withDeadline), so transport stops straggler
+ * like on total timeout - read timeout is capped and connection of late response is aborted. Cancelling 
+ * straggler's task additionally interrupts it while waiting for pooled connection or in execution filter.
+ * When calling thread is interrupted, requests not completed fail with CancellationException.
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttlBatch<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttlBatch.class);
+
+	/**
+	 * Notified as every request completes. Called from executor threads concurrently, so it must be thread-safe
+	 */
+	public static interface Listener<T> {
+
+		public void onResult(Result<T> result);
+	}
+
+	private final HttlSender sender;
+
+	private final List<HttlRequest> requests;
+
+	private final Class<T> resultType;
+
+	private final HttlResponseExtractor<T> extractor;
+
+	private final int parallelism;
+
+	private final long timeoutMillis;
+
+	private Listener<T> listener;
+
+	private AtomicReferenceArray<Result<T>> results;
+
+	private CountDownLatch completed;
+
+	/**
+	 * @param timeoutMillis - batch deadline, 0 means no deadline
+	 */
+	public HttlBatch(HttlSender sender, List<HttlRequest> requests, HttlResponseExtractor<T> extractor,
+			int parallelism, long timeoutMillis) {
+		this(sender, requests, null, extractor, parallelism, timeoutMillis);
+		if (extractor == null) {
+			throw new IllegalArgumentException("ResponseExtractor is null");
+		}
+	}
+
+	/**
+	 * @param timeoutMillis - batch deadline, 0 means no deadline
+	 */
+	public HttlBatch(HttlSender sender, List<HttlRequest> requests, Class<T> resultType, int parallelism,
+			long timeoutMillis) {
+		this(sender, requests, resultType, null, parallelism, timeoutMillis);
+		if (resultType == null) {
+			throw new IllegalArgumentException("resultType is null");
+		}
+	}
+
+	private HttlBatch(HttlSender sender, List<HttlRequest> requests, Class<T> resultType,
+			HttlResponseExtractor<T> extractor, int parallelism, long timeoutMillis) {
+		if (sender == null) {
+			throw new IllegalArgumentException("Null sender");
+		}
+		if (sender.getExecutor() == null) {
+			throw new IllegalStateException("Executor for asynchronous requests is not configured");
+		}
+		if (requests == null) {
+			throw new IllegalArgumentException("Null requests");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be > 0");
+		}
+		if (timeoutMillis < 0) {
+			throw new IllegalArgumentException("Negative timeout " + timeoutMillis);
+		}
+		this.sender = sender;
+		this.requests = requests;
+		this.resultType = resultType;
+		this.extractor = extractor;
+		this.parallelism = parallelism;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public HttlBatch<T> setListener(Listener<T> listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * Blocks until all requests are completed or deadline passes.
+	 *
+	 * @return results in order of requests
+	 */
+	public List<Result<T>> execute() throws InterruptedException {
+		int size = requests.size();
+		results = new AtomicReferenceArray<Result<T>>(size);
+		completed = new CountDownLatch(size);
+		List<Future<?>> futures = new ArrayList<Future<?>>(size);
+		Semaphore permits = new Semaphore(parallelism);
+		ExecutorService executor = sender.getExecutor();
+		long deadline = timeoutMillis == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMillis;
+		boolean interrupted = false;
+		try {
+			for (int i = 0; i < size; ++i) {
+				if (!acquire(permits, deadline)) {
+					break; //deadline passed - rest will time out
+				}
+				Task task = new Task(i, requests.get(i), deadline, permits);
+				try {
+					futures.add(executor.submit(task));
+				} catch (RuntimeException rx) {
+					permits.release();
+					futures.add(null);
+					complete(new Result<T>(i, requests.get(i), null, rx));
+				}
+			}
+			if (deadline == Long.MAX_VALUE) {
+				completed.await();
+			} else {
+				completed.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException ix) {
+			interrupted = true;
+			throw ix;
+		} finally {
+			//cancel stragglers (or everything when interrupted)
+			for (int i = 0; i < size; ++i) {
+				if (results.get(i) == null) {
+					//result first, so it is not replaced by failure of interrupted request
+					Exception failure;
+					if (interrupted) {
+						failure = new CancellationException("Batch interrupted");
+					} else {
+						failure = new TimeoutException("Batch timeout " + timeoutMillis + " ms");
+					}
+					complete(new Result<T>(i, requests.get(i), null, failure));
+					if (i < futures.size() && futures.get(i) != null) {
+						futures.get(i).cancel(true);
+					}
+				}
+			}
+		}
+		List<Result<T>> list = new ArrayList<Result<T>>(size);
+		for (int i = 0; i < size; ++i) {
+			list.add(results.get(i));
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Scatter-gather - blocks until all requests are completed or deadline passes. Stragglers are cancelled.
+	 *
+	 * @return results completed before deadline and stragglers
+	 */
+	public Gathered<T> gather() throws InterruptedException {
+		List<Result<T>> results = execute();
+		List<Result<T>> completed = new ArrayList<Result<T>>(results.size());
+		List<HttlRequest> stragglers = new ArrayList<HttlRequest>();
+		for (Result<T> result : results) {
+			if (result.isTimeout()) {
+				stragglers.add(result.getRequest());
+			} else {
+				completed.add(result);
+			}
+		}
+		return new Gathered<T>(Collections.unmodifiableList(completed), Collections.unmodifiableList(stragglers));
+	}
+
+	private boolean acquire(Semaphore permits, long deadline) throws InterruptedException {
+		if (deadline == Long.MAX_VALUE) {
+			permits.acquire();
+			return true;
+		} else {
+			return permits.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * First result wins - late result of cancelled request is ignored
+	 */
+	private void complete(Result<T> result) {
+		if (!results.compareAndSet(result.index, null, result)) {
+			return;
+		}
+		try {
+			if (listener != null) {
+				listener.onResult(result);
+			}
+		} catch (Exception x) {
+			logger.warn("Listener " + listener + " failed", x);
+		} finally {
+			completed.countDown(); //after listener, so every result is notified when execute returns
+		}
+	}
+
+	private class Task implements Callable<Void> {
+
+		private final int index;
+
+		private final HttlRequest request;
+
+		private final long deadline;
+
+		private final Semaphore permits;
+
+		Task(int index, HttlRequest request, long deadline, Semaphore permits) {
+			this.index = index;
+			this.request = request;
+			this.deadline = deadline;
+			this.permits = permits;
+		}
+
+		@Override
+		public Void call() {
+			try {
+				HttlRequest executed = deadline == Long.MAX_VALUE ? request : request.withDeadline(deadline);
+				ExtractedResponse<T> response;
+				if (extractor != null) {
+					response = sender.extract(executed, extractor);
+				} else {
+					response = sender.extract(executed, resultType);
+				}
+				complete(new Result<T>(index, request, response, null));
+			} catch (Exception x) {
+				complete(new Result<T>(index, request, null, x));
+			} finally {
+				permits.release();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Scatter-gather outcome - requests completed (successfully or not) before deadline and stragglers
+	 */
+	public static class Gathered<T> {
+
+		private final List<Result<T>> completed;
+
+		private final List<HttlRequest> stragglers;
+
+		public Gathered(List<Result<T>> completed, List<HttlRequest> stragglers) {
+			this.completed = completed;
+			this.stragglers = stragglers;
+		}
+
+		/**
+		 * @return results completed before deadline in order of requests
+		 */
+		public List<Result<T>> getCompleted() {
+			return completed;
+		}
+
+		/**
+		 * @return successfully extracted bodies in order of requests
+		 */
+		public List<T> getBodies() {
+			List<T> bodies = new ArrayList<T>(completed.size());
+			for (Result<T> result : completed) {
+				if (result.isSuccess()) {
+					bodies.add(result.getBody());
+				}
+			}
+			return bodies;
+		}
+
+		/**
+		 * @return requests not completed before deadline (they were cancelled)
+		 */
+		public List<HttlRequest> getStragglers() {
+			return stragglers;
+		}
+
+		/**
+		 * @return true when every request completed before deadline
+		 */
+		public boolean isComplete() {
+			return stragglers.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return "Gathered [completed=" + completed.size() + ", stragglers=" + stragglers.size() + "]";
+		}
+	}
+
+	/**
+	 * Outcome of single request in batch - response or failure
+	 */
+	public static class Result<T> {
+
+		private final int index;
+
+		private final HttlRequest request;
+
+		private final ExtractedResponse<T> response;
+
+		private final Exception failure;
+
+		public Result(int index, HttlRequest request, ExtractedResponse<T> response, Exception failure) {
+			this.index = index;
+			this.request = request;
+			this.response = response;
+			this.failure = failure;
+		}
+
+		/**
+		 * @return position of request in batch
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public HttlRequest getRequest() {
+			return request;
+		}
+
+		public boolean isSuccess() {
+			return failure == null;
+		}
+
+		/**
+		 * @return true when request was not completed until deadline (of batch or it's own)
+		 */
+		public boolean isTimeout() {
+			return failure instanceof TimeoutException
+					|| (failure != null && failure.getCause() instanceof HttlDeadlineException);
+		}
+
+		/**
+		 * @return true when request was not completed because batch was interrupted
+		 */
+		public boolean isCancelled() {
+			return failure instanceof CancellationException;
+		}
+
+		/**
+		 * @return null when request failed
+		 */
+		public ExtractedResponse<T> getResponse() {
+			return response;
+		}
+
+		/**
+		 * @return extracted body or null when request failed
+		 */
+		public T getBody() {
+			return response != null ? response.getBody() : null;
+		}
+
+		/**
+		 * @return null when request succeeded
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+
+		@Override
+		public String toString() {
+			return "Result [index=" + index + ", " + request.getMethod() + " " + request.getPathAndQuery() + ", "
+					+ (failure == null ? "response=" + response : "failure=" + failure) + "]";
+		}
+	}
+}
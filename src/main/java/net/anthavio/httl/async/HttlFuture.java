@@ -0,0 +1,248 @@
+package net.anthavio.httl.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Future completed by HttlTransportCallback (or executor task) with completion listeners.
+ * Listeners are notified by completing thread (nio reactor thread for non-blocking transports) unless Executor
+ * is specified, so they must not block.
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttlFuture<T> implements Future<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(HttlFuture.class);
+
+	/**
+	 * Completion listener
+	 */
+	public static interface Listener<T> {
+
+		public void onSuccess(T result);
+
+		/**
+		 * Also called with CancellationException when future is cancelled
+		 */
+		public void onFailure(Throwable failure);
+	}
+
+	private static final int PENDING = 0;
+	private static final int SUCCEEDED = 1;
+	private static final int FAILED = 2;
+	private static final int CANCELLED = 3;
+
+	private final ReentrantLock lock = new ReentrantLock(); //not monitor - waiting must not pin virtual thread
+
+	private final Condition completed = lock.newCondition();
+
+	private volatile int state = PENDING;
+
+	private T result;
+
+	private Throwable failure;
+
+	private List<Runnable> listeners;
+
+	private volatile Future<?> task;
+
+	/**
+	 * @return false when already completed (or cancelled)
+	 */
+	public boolean complete(T result) {
+		return finish(SUCCEEDED, result, null);
+	}
+
+	/**
+	 * @return false when already completed (or cancelled)
+	 */
+	public boolean fail(Throwable failure) {
+		if (failure == null) {
+			throw new IllegalArgumentException("Null failure");
+		}
+		return finish(FAILED, null, failure);
+	}
+
+	/**
+	 * Task executing this future. Cancellation is propagated into it
+	 */
+	public void attach(Future<?> task) {
+		this.task = task;
+		if (isCancelled()) {
+			task.cancel(true);
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (!finish(CANCELLED, null, new CancellationException())) {
+			return false;
+		}
+		Future<?> task = this.task;
+		if (task != null) {
+			task.cancel(mayInterruptIfRunning);
+		}
+		return true;
+	}
+
+	private boolean finish(int state, T result, Throwable failure) {
+		List<Runnable> listeners;
+		lock.lock();
+		try {
+			if (this.state != PENDING) {
+				return false;
+			}
+			this.result = result;
+			this.failure = failure;
+			this.state = state;
+			listeners = this.listeners;
+			this.listeners = null;
+			completed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (listeners != null) {
+			for (Runnable listener : listeners) {
+				listener.run();
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return state == CANCELLED;
+	}
+
+	@Override
+	public boolean isDone() {
+		return state != PENDING;
+	}
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		lock.lock();
+		try {
+			while (state == PENDING) {
+				completed.await();
+			}
+			return report();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long remaining = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (state == PENDING) {
+				if (remaining <= 0) {
+					throw new TimeoutException("Timeout " + unit.toMillis(timeout) + " ms");
+				}
+				remaining = completed.awaitNanos(remaining);
+			}
+			return report();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private T report() throws ExecutionException {
+		switch (state) {
+		case SUCCEEDED:
+			return result;
+		case CANCELLED:
+			throw (CancellationException) failure;
+		default:
+			throw new ExecutionException(failure);
+		}
+	}
+
+	/**
+	 * Listener is notified by completing thread or immediately when already completed
+	 */
+	public HttlFuture<T> addListener(Listener<? super T> listener) {
+		return addListener(listener, null);
+	}
+
+	/**
+	 * @param executor - listener is notified using this Executor
+	 */
+	public HttlFuture<T> addListener(final Listener<? super T> listener, final Executor executor) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Null listener");
+		}
+		Runnable notification = new Runnable() {
+
+			@Override
+			public void run() {
+				if (executor != null) {
+					executor.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							deliver(listener);
+						}
+					});
+				} else {
+					deliver(listener);
+				}
+			}
+		};
+		lock.lock();
+		try {
+			if (state == PENDING) {
+				if (listeners == null) {
+					listeners = new ArrayList<Runnable>(2);
+				}
+				listeners.add(notification);
+				return this;
+			}
+		} finally {
+			lock.unlock();
+		}
+		notification.run();
+		return this;
+	}
+
+	private void deliver(Listener<? super T> listener) {
+		T result;
+		Throwable failure;
+		lock.lock();
+		try {
+			result = this.result;
+			failure = this.failure;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			if (failure == null) {
+				listener.onSuccess(result);
+			} else {
+				listener.onFailure(failure);
+			}
+		} catch (Exception x) {
+			logger.warn("Listener " + listener + " failed", x);
+		}
+	}
+
+	@Override
+	public String toString() {
+		String[] names = { "PENDING", "SUCCEEDED", "FAILED", "CANCELLED" };
+		return "HttlFuture [state=" + names[state] + "]";
+	}
+}
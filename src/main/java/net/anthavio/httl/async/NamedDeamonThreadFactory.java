@@ -8,7 +8,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @author martin.vanek
  *
  */
-class NamedDeamonThreadFactory implements ThreadFactory {
+public class NamedDeamonThreadFactory implements ThreadFactory {
 	//namePrefix counter
 	static final AtomicInteger poolNumber = new AtomicInteger(1);
 
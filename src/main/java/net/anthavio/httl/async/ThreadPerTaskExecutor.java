@@ -0,0 +1,199 @@
+package net.anthavio.httl.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Starts new thread for every task. Intended for virtual threads (see VirtualThreads), where thread is cheap but
+ * unbounded number of them would still flood backend and connection pool.
+ *
+ * Concurrency is bounded by semaphore with maxConcurrency permits. Tasks above it wait for permit (parked in their
+ * own thread) up to maxWaiting of them, others are rejected with RejectedExecutionException.
+ *
+ * @author martin.vanek
+ *
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+	private final ThreadFactory threadFactory;
+
+	private final int maxConcurrency;
+
+	private final int maxWaiting;
+
+	private final Semaphore permits;
+
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition terminated = lock.newCondition();
+
+	private volatile boolean shutdown;
+
+	/**
+	 * @param maxConcurrency - maximum number of tasks running at the same time
+	 * @param maxWaiting - maximum number of tasks waiting for permit to run
+	 */
+	public ThreadPerTaskExecutor(ThreadFactory threadFactory, int maxConcurrency, int maxWaiting) {
+		if (threadFactory == null) {
+			throw new IllegalArgumentException("Null threadFactory");
+		}
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("maxConcurrency must be > 0");
+		}
+		if (maxWaiting < 0) {
+			throw new IllegalArgumentException("Negative maxWaiting " + maxWaiting);
+		}
+		this.threadFactory = threadFactory;
+		this.maxConcurrency = maxConcurrency;
+		this.maxWaiting = maxWaiting;
+		this.permits = new Semaphore(maxConcurrency);
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		if (command == null) {
+			throw new NullPointerException("Null command");
+		}
+		if (shutdown) {
+			throw new RejectedExecutionException("Cannot start " + command + " executor is shut down");
+		}
+		final boolean acquired = permits.tryAcquire();
+		if (!acquired && waiting.incrementAndGet() > maxWaiting) {
+			waiting.decrementAndGet();
+			throw new RejectedExecutionException("Cannot start " + command + " running: " + getRunning() + " of "
+					+ maxConcurrency + ", waiting: " + waiting.get() + " of " + maxWaiting);
+		}
+		Thread thread = threadFactory.newThread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					if (acquired || acquire()) {
+						try {
+							command.run();
+						} finally {
+							permits.release();
+						}
+					}
+				} finally {
+					threads.remove(Thread.currentThread());
+					if (shutdown && threads.isEmpty()) {
+						signalTerminated();
+					}
+				}
+			}
+		});
+		threads.add(thread);
+		thread.start();
+	}
+
+	private boolean acquire() {
+		try {
+			permits.acquire();
+			return true;
+		} catch (InterruptedException ix) {
+			return false; //shutdownNow
+		} finally {
+			waiting.decrementAndGet();
+		}
+	}
+
+	private void signalTerminated() {
+		lock.lock();
+		try {
+			terminated.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		if (threads.isEmpty()) {
+			signalTerminated();
+		}
+	}
+
+	/**
+	 * Interrupts running and waiting tasks. Tasks are not queued, so returned list is always empty
+	 */
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown();
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		return new ArrayList<Runnable>(0);
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown && threads.isEmpty();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while (!isTerminated()) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = terminated.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of tasks running right now
+	 */
+	public int getRunning() {
+		return maxConcurrency - permits.availablePermits();
+	}
+
+	/**
+	 * @return number of tasks waiting for permit
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	public int getMaxWaiting() {
+		return maxWaiting;
+	}
+
+	@Override
+	public String toString() {
+		return "ThreadPerTaskExecutor [running=" + getRunning() + ", maxConcurrency=" + maxConcurrency + ", waiting="
+				+ waiting + ", maxWaiting=" + maxWaiting + ", shutdown=" + shutdown + "]";
+	}
+}
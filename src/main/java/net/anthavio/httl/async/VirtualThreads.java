@@ -0,0 +1,77 @@
+package net.anthavio.httl.async;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reflective access to JDK 21+ virtual threads, so library still compiles and runs on older JDKs.
+ * 
+ * Virtual thread is unmounted from it's carrier when it blocks on socket or ReentrantLock, but it stays pinned
+ * when it blocks inside synchronized block (JDK 21-23). Use ReentrantLock around blocking code paths.
+ * 
+ * @author martin.vanek
+ *
+ */
+public class VirtualThreads {
+
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private static final Method ofVirtual;
+
+	private static final Method name;
+
+	private static final Method factory;
+
+	static {
+		Method ofVirtualM = null;
+		Method nameM = null;
+		Method factoryM = null;
+		try {
+			ofVirtualM = Thread.class.getMethod("ofVirtual");
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			nameM = builderClass.getMethod("name", String.class, long.class);
+			factoryM = builderClass.getMethod("factory");
+		} catch (Exception x) {
+			ofVirtualM = null; //JDK < 21
+		}
+		ofVirtual = ofVirtualM;
+		name = nameM;
+		factory = factoryM;
+	}
+
+	/**
+	 * @return true when running on JDK with virtual threads
+	 */
+	public static boolean isAvailable() {
+		return ofVirtual != null;
+	}
+
+	/**
+	 * @param namePrefix - thread name prefix followed by sequence number
+	 * @throws UnsupportedOperationException when virtual threads are not available 
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix) {
+		if (namePrefix == null || namePrefix.isEmpty()) {
+			throw new IllegalArgumentException("Null or empty namePrefix");
+		}
+		if (ofVirtual == null) {
+			throw new UnsupportedOperationException("Virtual threads require JDK 21+, running "
+					+ System.getProperty("java.version"));
+		}
+		try {
+			Object builder = ofVirtual.invoke(null);
+			builder = name.invoke(builder, namePrefix, 0L);
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception x) {
+			logger.warn("Virtual ThreadFactory creation failed", x);
+			throw new UnsupportedOperationException("Virtual ThreadFactory creation failed", x);
+		}
+	}
+
+	private VirtualThreads() {
+		//no instances
+	}
+}
@@ -58,6 +58,16 @@ public class CachedResponse extends HttlResponse implements Serializable {
 		}
 	}
 
+	/**
+	 * Copy sharing (immutable) content of other CachedResponse
+	 */
+	public CachedResponse(HttlRequest request, CachedResponse response) {
+		super(request, response.getHttpStatusCode(), response.getHttpStatusMessage(), response.getHeaders(), DUMMY_STREAM);
+		this.request = request;
+		this.contentBinary = response.contentBinary;
+		this.contentString = response.contentString;
+	}
+
 	//for testing purposes only - remove later
 	public CachedResponse(HttlRequest request, int code, String message, Multival<String> headers, String data)
 			throws IOException {
@@ -0,0 +1,436 @@
+package net.anthavio.httl.filter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fails fast while backend is failing or too slow instead of waiting out connect and read timeouts.
+ *
+ * Outcomes of last windowSize calls are kept in sliding window. Circuit opens when failure rate or slow call rate
+ * reaches threshold (after minimumCalls). Open circuit rejects calls with CircuitOpenException for openMillis, then
+ * half-open circuit lets halfOpenProbes calls through. Circuit closes when all of them succeed, otherwise opens again.
+ *
+ * IOException and 5xx response are failures. Call is slow when it takes slowCallMillis or longer.
+ *
+ * Circuit is kept per sender or per operation (HttlApi method) - see Scope. Hot path uses atomics only.
+ *
+ * sender.addExecutionFilter(new CircuitBreakerFilter().setSlowCall(2000, 80))
+ *
+ * @author martin.vanek
+ *
+ */
+public class CircuitBreakerFilter implements HttlExecutionFilter {
+
+	private static final Logger logger = LoggerFactory.getLogger(CircuitBreakerFilter.class);
+
+	public static enum State {
+		CLOSED, OPEN, HALF_OPEN;
+	}
+
+	public static enum Scope {
+		/**
+		 * Single circuit for all requests
+		 */
+		SENDER, //
+		/**
+		 * Circuit per HttlRequest operation (HttlApi method). Requests without operation share single circuit
+		 */
+		OPERATION;
+	}
+
+	/**
+	 * Notified about every circuit state transition
+	 */
+	public static interface StateListener {
+
+		public void onStateChange(String key, State from, State to);
+	}
+
+	private static final String SENDER_KEY = "*";
+
+	private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+	private final Scope scope;
+
+	private final int windowSize;
+
+	private final int minimumCalls;
+
+	private final int failureRateThreshold;
+
+	private final int openMillis;
+
+	private final int halfOpenProbes;
+
+	private int slowCallMillis = 0; //disabled
+
+	private int slowCallRateThreshold = 100;
+
+	private StateListener listener;
+
+	private final AtomicLong opened = new AtomicLong();
+
+	private final AtomicLong halfOpened = new AtomicLong();
+
+	private final AtomicLong closed = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Per sender circuit, window of 100 calls, 50% failure rate, 30 seconds open, 5 probes
+	 */
+	public CircuitBreakerFilter() {
+		this(Scope.SENDER, 100, 20, 50, 30000, 5);
+	}
+
+	/**
+	 * @param scope - circuit per sender or per operation
+	 * @param windowSize - number of recent calls rates are calculated from
+	 * @param minimumCalls - rates are not evaluated until this number of calls is recorded
+	 * @param failureRateThreshold - percent of failed calls opening circuit
+	 * @param openMillis - time open circuit rejects calls before going half-open
+	 * @param halfOpenProbes - calls let through half-open circuit
+	 */
+	public CircuitBreakerFilter(Scope scope, int windowSize, int minimumCalls, int failureRateThreshold, int openMillis,
+			int halfOpenProbes) {
+		if (scope == null) {
+			throw new IllegalArgumentException("Null scope");
+		}
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be > 0");
+		}
+		if (minimumCalls < 1 || minimumCalls > windowSize) {
+			throw new IllegalArgumentException("Minimum calls must be 1-" + windowSize + ": " + minimumCalls);
+		}
+		if (failureRateThreshold < 1 || failureRateThreshold > 100) {
+			throw new IllegalArgumentException("Failure rate threshold must be 1-100: " + failureRateThreshold);
+		}
+		if (openMillis < 1) {
+			throw new IllegalArgumentException("Open millis must be > 0");
+		}
+		if (halfOpenProbes < 1) {
+			throw new IllegalArgumentException("Half-open probes must be > 0");
+		}
+		this.scope = scope;
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.openMillis = openMillis;
+		this.halfOpenProbes = halfOpenProbes;
+	}
+
+	/**
+	 * @param slowCallMillis - call taking this long or longer is slow
+	 * @param slowCallRateThreshold - percent of slow calls opening circuit
+	 */
+	public CircuitBreakerFilter setSlowCall(int slowCallMillis, int slowCallRateThreshold) {
+		if (slowCallMillis < 1) {
+			throw new IllegalArgumentException("Slow call millis must be > 0");
+		}
+		if (slowCallRateThreshold < 1 || slowCallRateThreshold > 100) {
+			throw new IllegalArgumentException("Slow call rate threshold must be 1-100: " + slowCallRateThreshold);
+		}
+		this.slowCallMillis = slowCallMillis;
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		return this;
+	}
+
+	public CircuitBreakerFilter setListener(StateListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	@Override
+	public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+		Circuit circuit = getCircuit(getKey(request));
+		Phase phase = circuit.acquire();
+		if (phase == null) {
+			rejected.incrementAndGet();
+			throw new CircuitOpenException(circuit.key);
+		}
+		long started = System.nanoTime();
+		HttlResponse response;
+		try {
+			response = chain.next(request);
+		} catch (IOException iox) {
+			circuit.record(phase, false, System.nanoTime() - started);
+			throw iox;
+		} catch (RuntimeException rx) {
+			circuit.record(phase, false, System.nanoTime() - started);
+			throw rx;
+		}
+		circuit.record(phase, response.getHttpStatusCode() < 500, System.nanoTime() - started);
+		return response;
+	}
+
+	private String getKey(HttlRequest request) {
+		if (scope == Scope.OPERATION && request.getOperation() != null) {
+			return request.getOperation();
+		}
+		return SENDER_KEY;
+	}
+
+	private Circuit getCircuit(String key) {
+		Circuit circuit = circuits.get(key);
+		if (circuit == null) {
+			circuit = new Circuit(key);
+			Circuit existing = circuits.putIfAbsent(key, circuit);
+			if (existing != null) {
+				circuit = existing;
+			}
+		}
+		return circuit;
+	}
+
+	/**
+	 * @return circuit state for operation name (operation is ignored for Scope.SENDER)
+	 */
+	public State getState(String operation) {
+		Circuit circuit = circuits.get(operation == null || scope == Scope.SENDER ? SENDER_KEY : operation);
+		return circuit != null ? circuit.phase.get().state : State.CLOSED;
+	}
+
+	/**
+	 * @return all circuits by key. Single "*" keyed for Scope.SENDER
+	 */
+	public Map<String, Circuit> getCircuits() {
+		return Collections.<String, Circuit> unmodifiableMap(circuits);
+	}
+
+	/**
+	 * @return number of CLOSED/HALF_OPEN -> OPEN transitions
+	 */
+	public long getOpened() {
+		return opened.get();
+	}
+
+	/**
+	 * @return number of OPEN -> HALF_OPEN transitions
+	 */
+	public long getHalfOpened() {
+		return halfOpened.get();
+	}
+
+	/**
+	 * @return number of HALF_OPEN -> CLOSED transitions
+	 */
+	public long getClosed() {
+		return closed.get();
+	}
+
+	/**
+	 * @return number of calls rejected without execution
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public Scope getScope() {
+		return scope;
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreakerFilter [scope=" + scope + ", windowSize=" + windowSize + ", failureRateThreshold="
+				+ failureRateThreshold + ", slowCallMillis=" + slowCallMillis + ", openMillis=" + openMillis + "]";
+	}
+
+	/**
+	 * Immutable circuit state. Calls are recorded only into phase they were started in
+	 */
+	private static class Phase {
+
+		private final State state;
+
+		private final long since;
+
+		private final AtomicInteger permits; //HALF_OPEN only
+
+		private final AtomicInteger successes; //HALF_OPEN only
+
+		Phase(State state, int probes) {
+			this.state = state;
+			this.since = System.currentTimeMillis();
+			this.permits = new AtomicInteger(probes);
+			this.successes = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Circuit of single key with sliding window of outcomes
+	 */
+	public class Circuit {
+
+		private static final int SUCCESS = 1;
+
+		private static final int FAILURE = 2;
+
+		private static final int SLOW = 4;
+
+		private final String key;
+
+		private final AtomicReference<Phase> phase = new AtomicReference<Phase>(new Phase(State.CLOSED, 0));
+
+		private final AtomicIntegerArray window = new AtomicIntegerArray(windowSize);
+
+		private final AtomicInteger cursor = new AtomicInteger();
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		private final AtomicInteger slows = new AtomicInteger();
+
+		Circuit(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * @return phase call is permitted in or null when rejected
+		 */
+		Phase acquire() {
+			Phase current = phase.get();
+			switch (current.state) {
+			case CLOSED:
+				return current;
+			case OPEN:
+				if (System.currentTimeMillis() - current.since < openMillis) {
+					return null;
+				}
+				Phase half = new Phase(State.HALF_OPEN, halfOpenProbes);
+				if (transition(current, half)) {
+					halfOpened.incrementAndGet();
+				}
+				return acquire();
+			case HALF_OPEN:
+				return current.permits.decrementAndGet() >= 0 ? current : null;
+			default:
+				throw new IllegalStateException("Unknown state " + current.state);
+			}
+		}
+
+		void record(Phase started, boolean success, long nanos) {
+			boolean slow = slowCallMillis != 0 && nanos >= slowCallMillis * 1000000L;
+			if (started != phase.get()) {
+				return; //outcome of previous phase
+			}
+			if (started.state == State.HALF_OPEN) {
+				if (!success || slow) {
+					open(started);
+				} else if (started.successes.incrementAndGet() == halfOpenProbes) {
+					reset();
+					if (transition(started, new Phase(State.CLOSED, 0))) {
+						closed.incrementAndGet();
+					}
+				}
+				return;
+			}
+			//CLOSED
+			int outcome = (success ? SUCCESS : FAILURE) | (slow ? SLOW : 0);
+			int index = (cursor.getAndIncrement() & Integer.MAX_VALUE) % windowSize;
+			int previous = window.getAndSet(index, outcome);
+			if (previous == 0) {
+				calls.incrementAndGet();
+			}
+			failures.addAndGet(((outcome & FAILURE) != 0 ? 1 : 0) - ((previous & FAILURE) != 0 ? 1 : 0));
+			slows.addAndGet(((outcome & SLOW) != 0 ? 1 : 0) - ((previous & SLOW) != 0 ? 1 : 0));
+
+			int total = calls.get();
+			if (total >= minimumCalls
+					&& (getFailureRate() >= failureRateThreshold || (slowCallMillis != 0 && getSlowCallRate() >= slowCallRateThreshold))) {
+				open(started);
+			}
+		}
+
+		private void open(Phase from) {
+			if (transition(from, new Phase(State.OPEN, 0))) {
+				opened.incrementAndGet();
+				logger.warn("Circuit " + key + " opened " + this);
+			}
+		}
+
+		private void reset() {
+			for (int i = 0; i < windowSize; ++i) {
+				window.set(i, 0);
+			}
+			calls.set(0);
+			failures.set(0);
+			slows.set(0);
+		}
+
+		private boolean transition(Phase from, Phase to) {
+			if (phase.compareAndSet(from, to)) {
+				if (listener != null) {
+					listener.onStateChange(key, from.state, to.state);
+				}
+				return true;
+			}
+			return false;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public State getState() {
+			return phase.get().state;
+		}
+
+		/**
+		 * @return percent of failed calls in window
+		 */
+		public int getFailureRate() {
+			int total = calls.get();
+			return total == 0 ? 0 : failures.get() * 100 / total;
+		}
+
+		/**
+		 * @return percent of slow calls in window
+		 */
+		public int getSlowCallRate() {
+			int total = calls.get();
+			return total == 0 ? 0 : slows.get() * 100 / total;
+		}
+
+		@Override
+		public String toString() {
+			return "Circuit [key=" + key + ", state=" + getState() + ", calls=" + calls + ", failureRate="
+					+ getFailureRate() + "%, slowCallRate=" + getSlowCallRate() + "%]";
+		}
+	}
+
+	/**
+	 * Thrown when call is rejected by open (or fully probed half-open) circuit
+	 */
+	public static class CircuitOpenException extends HttlRequestException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String key;
+
+		public CircuitOpenException(String key) {
+			super("Circuit " + key + " is open");
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+}
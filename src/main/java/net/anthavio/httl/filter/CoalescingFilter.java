@@ -0,0 +1,137 @@
+package net.anthavio.httl.filter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.anthavio.httl.HttlDeadlineException;
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.cache.CachedResponse;
+import net.anthavio.httl.util.Base64;
+
+/**
+ * Single-flight execution of identical safe requests. While request is in flight, concurrent identical requests
+ * (same method, path, query and headers - see HttlRequest.update(MessageDigest)) wait for its response instead of
+ * being sent too. Every caller gets own CachedResponse copy, so response is fully buffered in memory.
+ *
+ * Nothing is kept after response arrives - this is not a cache.
+ *
+ * sender.addExecutionFilter(new CoalescingFilter())
+ *
+ * @author martin.vanek
+ *
+ */
+public class CoalescingFilter implements HttlExecutionFilter {
+
+	private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	@Override
+	public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+		if (!request.getMethod().isSafe() || request.getBody() != null) {
+			return chain.next(request);
+		}
+		String key = getKey(request);
+		Flight flight = new Flight();
+		Flight leader = flights.putIfAbsent(key, flight);
+		if (leader != null) {
+			coalesced.incrementAndGet();
+			return leader.await(request);
+		}
+		try {
+			HttlResponse response = chain.next(request);
+			flight.response = new CachedResponse(request, response); //closes response
+		} catch (IOException iox) {
+			flight.failure = iox;
+			throw iox;
+		} catch (RuntimeException rx) {
+			flight.failure = rx;
+			throw rx;
+		} finally {
+			flights.remove(key, flight);
+			flight.landed.countDown();
+		}
+		return flight.response;
+	}
+
+	private String getKey(HttlRequest request) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException nsax) {
+			throw new IllegalStateException("SHA-1 MessageDigest failed", nsax);
+		}
+		digest.update(request.getSender().getConfig().getUrl().toString().getBytes());
+		request.update(digest);
+		return new String(Base64.encode(digest.digest()));
+	}
+
+	/**
+	 * @return number of requests served by response of other in-flight request
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return number of requests being executed right now
+	 */
+	public int getInFlight() {
+		return flights.size();
+	}
+
+	@Override
+	public String toString() {
+		return "CoalescingFilter [inFlight=" + flights.size() + ", coalesced=" + coalesced + "]";
+	}
+
+	/**
+	 * Executed request others are waiting for
+	 */
+	private static class Flight {
+
+		private final CountDownLatch landed = new CountDownLatch(1);
+
+		private volatile CachedResponse response;
+
+		private volatile Exception failure;
+
+		/**
+		 * Waits for leader, but not longer than own deadline. Leader failure is rethrown as it is, so followers
+		 * fail with the same exception type as leader (ConnectException, SocketTimeoutException...)
+		 */
+		HttlResponse await(HttlRequest request) throws IOException {
+			try {
+				if (request.getDeadline() == 0) {
+					landed.await();
+				} else if (!landed.await(Math.max(0, request.getRemainingMillis()), TimeUnit.MILLISECONDS)) {
+					throw new HttlDeadlineException(request);
+				}
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for coalesced request");
+				iiox.initCause(ix);
+				throw iiox;
+			}
+			if (response != null) {
+				return new CachedResponse(request, response);
+			} else if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else {
+				throw new IOException("Coalesced request failed");
+			}
+		}
+	}
+}
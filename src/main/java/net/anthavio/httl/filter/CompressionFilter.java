@@ -0,0 +1,294 @@
+package net.anthavio.httl.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlConstants;
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.util.DeflaterPool;
+import net.anthavio.httl.util.HttlUtil;
+
+/**
+ * Compresses request body and sets Content-Encoding header. Server must support it!
+ *
+ * BYTES and STRING bodies are compressed when they are at least threshold bytes long. MARSHALL body is marshalled
+ * directly into Deflater once threshold is reached, so uncompressed form is never buffered whole.
+ * Streaming (STREAM, READER, FILE) bodies are sent untouched.
+ *
+ * sender.addExecutionFilter(new CompressionFilter(Encoding.GZIP, 4096))
+ *
+ * @author martin.vanek
+ *
+ */
+public class CompressionFilter implements HttlExecutionFilter {
+
+	public static enum Encoding {
+		GZIP("gzip"), DEFLATE("deflate");
+
+		private final String value;
+
+		private Encoding(String value) {
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+
+	private final Encoding encoding;
+
+	private final int threshold;
+
+	private final DeflaterPool pool;
+
+	/**
+	 * GZIP bodies of 1024 bytes or bigger
+	 */
+	public CompressionFilter() {
+		this(Encoding.GZIP, 1024);
+	}
+
+	public CompressionFilter(Encoding encoding, int threshold) {
+		this(encoding, threshold, Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * @param threshold - minimal size of body to be compressed
+	 * @param level - compression level 0-9
+	 * @param poolSize - maximum number of idle Deflaters kept
+	 */
+	public CompressionFilter(Encoding encoding, int threshold, int level, int poolSize) {
+		if (encoding == null) {
+			throw new IllegalArgumentException("Null encoding");
+		}
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Negative threshold " + threshold);
+		}
+		this.encoding = encoding;
+		this.threshold = threshold;
+		this.pool = new DeflaterPool(level, encoding == Encoding.GZIP, poolSize);
+	}
+
+	@Override
+	public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+		HttlBody body = request.getBody();
+		if (body == null || request.getFirstHeader(HttlConstants.Content_Encoding) != null) {
+			return chain.next(request);
+		}
+		Compressor compressor;
+		switch (body.getType()) {
+		case BYTES:
+			byte[] bytes = (byte[]) body.getPayload();
+			if (body.getLength() < threshold) {
+				return chain.next(request);
+			}
+			compressor = compress(bytes, body.getLength());
+			break;
+		case STRING:
+			byte[] string = ((String) body.getPayload()).getBytes(Charset.forName(request.getCharset()));
+			if (string.length < threshold) {
+				return chain.next(request);
+			}
+			compressor = compress(string, string.length);
+			break;
+		case MARSHALL:
+			compressor = new Compressor(pool, encoding, threshold);
+			try {
+				request.getSender().getMarshaller()
+						.marshall(body.getPayload(), request.getMediaType(), request.getCharset(), compressor);
+				compressor.close();
+			} finally {
+				compressor.release();
+			}
+			break;
+		default:
+			return chain.next(request);
+		}
+
+		Multival<String> headers = new Multival<String>();
+		for (String name : request.getHeaders()) {
+			headers.set(name, request.getHeaders().get(name));
+		}
+		if (compressor.isCompressed()) {
+			headers.set(HttlConstants.Content_Encoding, encoding.getValue());
+		}
+		return chain.next(request.copy(headers, compressor.toBody()));
+	}
+
+	private Compressor compress(byte[] bytes, int length) throws IOException {
+		Compressor compressor = new Compressor(pool, encoding, 0);
+		try {
+			compressor.write(bytes, 0, length);
+			compressor.close();
+		} finally {
+			compressor.release();
+		}
+		return compressor;
+	}
+
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public String toString() {
+		return "CompressionFilter [encoding=" + encoding + ", threshold=" + threshold + "]";
+	}
+
+	/**
+	 * Buffers written bytes until threshold is reached, then compresses everything written.
+	 */
+	private static class Compressor extends OutputStream {
+
+		private final DeflaterPool pool;
+
+		private final Encoding encoding;
+
+		private final int threshold;
+
+		private Output output;
+
+		private Deflater deflater;
+
+		private boolean compressed;
+
+		private CRC32 crc;
+
+		private byte[] buffer;
+
+		private final byte[] single = new byte[1];
+
+		private boolean closed;
+
+		public Compressor(DeflaterPool pool, Encoding encoding, int threshold) {
+			this.pool = pool;
+			this.encoding = encoding;
+			this.threshold = threshold;
+			this.output = new Output(Math.max(threshold, 512));
+		}
+
+		public boolean isCompressed() {
+			return compressed;
+		}
+
+		/**
+		 * Body is backed directly by output buffer - no copying
+		 */
+		public HttlBody toBody() {
+			return new HttlBody(output.getBuffer(), output.size());
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			single[0] = (byte) b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (!compressed) {
+				if (output.size() + length < threshold) {
+					output.write(bytes, offset, length);
+					return;
+				}
+				start();
+			}
+			deflate(bytes, offset, length);
+		}
+
+		/**
+		 * Threshold reached - compress what was buffered so far
+		 */
+		private void start() {
+			Output buffered = output;
+			output = new Output(Math.max(buffered.size() / 2, 512));
+			compressed = true;
+			deflater = pool.acquire();
+			buffer = new byte[HttlUtil.KILO16];
+			if (encoding == Encoding.GZIP) {
+				crc = new CRC32();
+				//magic, CM deflate, no flags, no mtime, XFL, OS unknown
+				output.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff }, 0, 10);
+			}
+			deflate(buffered.getBuffer(), 0, buffered.size());
+		}
+
+		private void deflate(byte[] bytes, int offset, int length) {
+			if (crc != null) {
+				crc.update(bytes, offset, length);
+			}
+			deflater.setInput(bytes, offset, length);
+			while (!deflater.needsInput()) {
+				int count = deflater.deflate(buffer, 0, buffer.length);
+				output.write(buffer, 0, count);
+			}
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (deflater != null) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int count = deflater.deflate(buffer, 0, buffer.length);
+					output.write(buffer, 0, count);
+				}
+				if (crc != null) {
+					writeIntLE((int) crc.getValue());
+					writeIntLE(deflater.getTotalIn());
+				}
+			}
+		}
+
+		private void writeIntLE(int value) {
+			output.write(value);
+			output.write(value >>> 8);
+			output.write(value >>> 16);
+			output.write(value >>> 24);
+		}
+
+		/**
+		 * Return Deflater into pool
+		 */
+		public void release() {
+			if (deflater != null) {
+				pool.release(deflater);
+				deflater = null;
+			}
+		}
+	}
+
+	/**
+	 * Exposes internal buffer so it is not copied by toByteArray()
+	 */
+	private static class Output extends ByteArrayOutputStream {
+
+		public Output(int size) {
+			super(size);
+		}
+
+		public byte[] getBuffer() {
+			return buf;
+		}
+	}
+}
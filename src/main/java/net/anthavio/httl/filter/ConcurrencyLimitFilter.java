@@ -0,0 +1,386 @@
+package net.anthavio.httl.filter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+
+/**
+ * Limits number of in-flight requests. Limit is adjusted from observed round trip times by Limit algorithm
+ * (AimdLimit or GradientLimit) so latency stays near unloaded RTT when backend is overloaded.
+ *
+ * Requests above limit wait in queue (maxQueue, queueTimeoutMillis) or they are rejected with LimitExceededException.
+ *
+ * Asynchronous HttlSender.start() requests are admitted before they are submitted into executor, so they are
+ * rejected immediately instead of piling up in executor queue.
+ *
+ * sender.addExecutionFilter(new ConcurrencyLimitFilter(new GradientLimit()))
+ *
+ * @author martin.vanek
+ *
+ */
+public class ConcurrencyLimitFilter implements HttlExecutionFilter {
+
+	/**
+	 * Concurrency limit algorithm
+	 */
+	public static interface Limit {
+
+		public int getLimit();
+
+		/**
+		 * @param rttNanos - request round trip time
+		 * @param inflight - in-flight requests when request was started
+		 * @param dropped - request timed out or was refused by overloaded server
+		 */
+		public void onSample(long rttNanos, int inflight, boolean dropped);
+	}
+
+	private final Limit limit;
+
+	private final int maxQueue;
+
+	private final int queueTimeoutMillis;
+
+	private final AtomicInteger inflight = new AtomicInteger();
+
+	private final AtomicInteger pending = new AtomicInteger(); //admitted async requests
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final ReentrantLock lock = new ReentrantLock(); //not monitor - waiting must not pin virtual thread
+
+	private final Condition released = lock.newCondition();
+
+	/**
+	 * Rejects requests above limit
+	 */
+	public ConcurrencyLimitFilter(Limit limit) {
+		this(limit, 0, 0);
+	}
+
+	/**
+	 * @param maxQueue - maximum number of requests waiting for limit
+	 * @param queueTimeoutMillis - maximum time request waits in queue
+	 */
+	public ConcurrencyLimitFilter(Limit limit, int maxQueue, int queueTimeoutMillis) {
+		if (limit == null) {
+			throw new IllegalArgumentException("Null limit");
+		}
+		if (maxQueue < 0) {
+			throw new IllegalArgumentException("Negative maxQueue " + maxQueue);
+		}
+		if (maxQueue > 0 && queueTimeoutMillis < 1) {
+			throw new IllegalArgumentException("Queue timeout must be > 0");
+		}
+		this.limit = limit;
+		this.maxQueue = maxQueue;
+		this.queueTimeoutMillis = queueTimeoutMillis;
+	}
+
+	@Override
+	public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+		int current = acquire();
+		long started = System.nanoTime();
+		try {
+			HttlResponse response = chain.next(request);
+			int status = response.getHttpStatusCode();
+			limit.onSample(System.nanoTime() - started, current, status == 503 || status == 429);
+			return response;
+		} catch (SocketTimeoutException stx) {
+			limit.onSample(System.nanoTime() - started, current, true);
+			throw stx;
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Admit asynchronous request before it is submitted into executor
+	 *
+	 * @throws LimitExceededException when in-flight and already admitted requests exceed limit
+	 */
+	public void admit() {
+		int admitted = pending.incrementAndGet();
+		if (inflight.get() + admitted > limit.getLimit() + maxQueue) {
+			pending.decrementAndGet();
+			rejected.incrementAndGet();
+			throw new LimitExceededException(limit.getLimit());
+		}
+	}
+
+	/**
+	 * Admitted asynchronous request is being executed (or it was not submitted at all)
+	 */
+	public void started() {
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * @return number of in-flight requests when request was allowed
+	 */
+	private int acquire() throws InterruptedIOException {
+		int current = tryAcquire();
+		if (current != -1) {
+			return current;
+		}
+		if (maxQueue == 0 || queued.incrementAndGet() > maxQueue) {
+			if (maxQueue != 0) {
+				queued.decrementAndGet();
+			}
+			rejected.incrementAndGet();
+			throw new LimitExceededException(limit.getLimit());
+		}
+		try {
+			long remaining = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+			lock.lock();
+			try {
+				while ((current = tryAcquire()) == -1) {
+					if (remaining <= 0) {
+						rejected.incrementAndGet();
+						throw new LimitExceededException(limit.getLimit());
+					}
+					remaining = released.awaitNanos(remaining);
+				}
+				return current;
+			} finally {
+				lock.unlock();
+			}
+		} catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting in queue");
+			iiox.initCause(ix);
+			throw iiox;
+		} finally {
+			queued.decrementAndGet();
+		}
+	}
+
+	private int tryAcquire() {
+		for (;;) {
+			int current = inflight.get();
+			if (current >= limit.getLimit()) {
+				return -1;
+			}
+			if (inflight.compareAndSet(current, current + 1)) {
+				return current + 1;
+			}
+		}
+	}
+
+	private void release() {
+		inflight.decrementAndGet();
+		if (queued.get() != 0) {
+			lock.lock();
+			try {
+				released.signalAll(); //limit might have grown too
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	public Limit getLimit() {
+		return limit;
+	}
+
+	public int getInflight() {
+		return inflight.get();
+	}
+
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * @return number of requests rejected because of exceeded limit
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ConcurrencyLimitFilter [limit=" + limit + ", inflight=" + inflight + ", maxQueue=" + maxQueue
+				+ ", rejected=" + rejected + "]";
+	}
+
+	/**
+	 * Additive increase, multiplicative decrease. Limit grows by one when at least half of it is used,
+	 * and it is multiplied by backoffRatio when request is dropped or it takes longer than timeoutMillis
+	 */
+	public static class AimdLimit implements Limit {
+
+		private final AtomicInteger limit;
+
+		private final int minLimit;
+
+		private final int maxLimit;
+
+		private final double backoffRatio;
+
+		private final long timeoutNanos;
+
+		/**
+		 * Initial limit 20 in range 1-200, backoff 0.9, no timeout
+		 */
+		public AimdLimit() {
+			this(20, 1, 200, 0.9, 0);
+		}
+
+		public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, int timeoutMillis) {
+			if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+				throw new IllegalArgumentException("Invalid limits initial " + initialLimit + ", min " + minLimit
+						+ ", max " + maxLimit);
+			}
+			if (backoffRatio <= 0 || backoffRatio >= 1) {
+				throw new IllegalArgumentException("Backoff ratio must be in (0,1): " + backoffRatio);
+			}
+			this.limit = new AtomicInteger(initialLimit);
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.backoffRatio = backoffRatio;
+			this.timeoutNanos = timeoutMillis * 1000000L;
+		}
+
+		@Override
+		public int getLimit() {
+			return limit.get();
+		}
+
+		@Override
+		public void onSample(long rttNanos, int inflight, boolean dropped) {
+			for (;;) {
+				int current = limit.get();
+				int next;
+				if (dropped || (timeoutNanos != 0 && rttNanos > timeoutNanos)) {
+					next = Math.max(minLimit, (int) (current * backoffRatio));
+				} else if (inflight * 2 >= current) {
+					next = Math.min(maxLimit, current + 1);
+				} else {
+					return; //not enough load to judge
+				}
+				if (next == current || limit.compareAndSet(current, next)) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "AimdLimit [limit=" + limit + "]";
+		}
+	}
+
+	/**
+	 * Gradient between unloaded (minimal) RTT and recent (smoothed) RTT. Limit shrinks as queuing in backend
+	 * makes RTT grow, and it grows by sqrt(limit) queue allowance while RTT stays close to unloaded one.
+	 * Minimal RTT is forgotten every resetSamples, so change of backend latency baseline is picked up.
+	 */
+	public static class GradientLimit implements Limit {
+
+		private final int minLimit;
+
+		private final int maxLimit;
+
+		private final double smoothing;
+
+		private final int resetSamples;
+
+		private volatile int limit;
+
+		private double estimatedLimit;
+
+		private long rttNoLoad;
+
+		private double rttRecent;
+
+		private int samples;
+
+		/**
+		 * Initial limit 20 in range 1-200, smoothing 0.2, minimal RTT reset every 1000 samples
+		 */
+		public GradientLimit() {
+			this(20, 1, 200, 0.2, 1000);
+		}
+
+		public GradientLimit(int initialLimit, int minLimit, int maxLimit, double smoothing, int resetSamples) {
+			if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+				throw new IllegalArgumentException("Invalid limits initial " + initialLimit + ", min " + minLimit
+						+ ", max " + maxLimit);
+			}
+			if (smoothing <= 0 || smoothing > 1) {
+				throw new IllegalArgumentException("Smoothing must be in (0,1]: " + smoothing);
+			}
+			if (resetSamples < 1) {
+				throw new IllegalArgumentException("Reset samples must be > 0");
+			}
+			this.limit = initialLimit;
+			this.estimatedLimit = initialLimit;
+			this.minLimit = minLimit;
+			this.maxLimit = maxLimit;
+			this.smoothing = smoothing;
+			this.resetSamples = resetSamples;
+		}
+
+		@Override
+		public int getLimit() {
+			return limit;
+		}
+
+		@Override
+		public synchronized void onSample(long rttNanos, int inflight, boolean dropped) {
+			if (++samples >= resetSamples) {
+				samples = 0;
+				rttNoLoad = 0;
+			}
+			if (rttNoLoad == 0 || rttNanos < rttNoLoad) {
+				rttNoLoad = rttNanos;
+			}
+			rttRecent = rttRecent == 0 ? rttNanos : rttRecent * 0.9 + rttNanos * 0.1;
+
+			if (!dropped && inflight * 2 < estimatedLimit) {
+				return; //application limited - RTT tells nothing about capacity
+			}
+			double gradient;
+			if (dropped) {
+				gradient = 0.5;
+			} else {
+				gradient = Math.max(0.5, Math.min(1.0, 2.0 * rttNoLoad / rttRecent)); //tolerate 2x RTT
+			}
+			double next = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+			next = estimatedLimit * (1 - smoothing) + next * smoothing;
+			estimatedLimit = Math.max(minLimit, Math.min(maxLimit, next));
+			limit = (int) estimatedLimit;
+		}
+
+		@Override
+		public String toString() {
+			return "GradientLimit [limit=" + limit + ", rttNoLoad=" + rttNoLoad + ", rttRecent=" + (long) rttRecent + "]";
+		}
+	}
+
+	/**
+	 * Thrown when request is rejected because of concurrency limit
+	 */
+	public static class LimitExceededException extends HttlRequestException {
+
+		private static final long serialVersionUID = 1L;
+
+		public LimitExceededException(int limit) {
+			super("Concurrency limit " + limit + " exceeded");
+		}
+	}
+}
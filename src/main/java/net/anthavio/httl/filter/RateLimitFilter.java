@@ -0,0 +1,140 @@
+package net.anthavio.httl.filter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.util.TokenBucket;
+
+/**
+ * Keeps request rate under upstream quota using lock-free TokenBucket.
+ * 
+ * Request waits up to timeoutMillis for permit, then it is rejected with RateLimitExceededException.
+ * Zero timeoutMillis means non-blocking mode - request is rejected immediately when bucket is empty.
+ * 
+ * Operation (HttlApi method) can have own limit, applied in addition to sender wide one.
+ * @HttlRateLimit annotated HttlApi methods are limited by own instance of this class.
+ * 
+ * sender.setRateLimit(10, 5, 1000) or sender.addExecutionFilter(new RateLimitFilter(10, 5, 1000))
+ * 
+ * @author martin.vanek
+ *
+ */
+public class RateLimitFilter implements HttlExecutionFilter {
+
+	private final TokenBucket bucket;
+
+	private final int timeoutMillis;
+
+	private final ConcurrentMap<String, TokenBucket> operations = new ConcurrentHashMap<String, TokenBucket>();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param permitsPerSecond - sustained request rate
+	 * @param burst - requests allowed at once after idle period
+	 * @param timeoutMillis - maximum wait for permit (0 for non-blocking)
+	 */
+	public RateLimitFilter(double permitsPerSecond, int burst, int timeoutMillis) {
+		if (timeoutMillis < 0) {
+			throw new IllegalArgumentException("Negative timeout " + timeoutMillis);
+		}
+		this.bucket = new TokenBucket(permitsPerSecond, burst);
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Additional limit for requests of operation
+	 */
+	public RateLimitFilter setOperationLimit(String operation, double permitsPerSecond, int burst) {
+		if (operation == null) {
+			throw new IllegalArgumentException("Null operation");
+		}
+		operations.put(operation, new TokenBucket(permitsPerSecond, burst));
+		return this;
+	}
+
+	@Override
+	public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+		acquire(request);
+		return chain.next(request);
+	}
+
+	/**
+	 * Sender wide permit is reserved first and it is returned when operation limit rejects request.
+	 * Both permits are then awaited at once, so request never waits longer than timeoutMillis.
+	 */
+	public void acquire(HttlRequest request) throws InterruptedIOException {
+		long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		long wait = bucket.reserve(maxWaitNanos);
+		if (wait == -1) {
+			throw reject(bucket, request.getOperation());
+		}
+		TokenBucket operation = request.getOperation() != null ? operations.get(request.getOperation()) : null;
+		if (operation != null) {
+			long operationWait = operation.reserve(maxWaitNanos);
+			if (operationWait == -1) {
+				bucket.refund();
+				throw reject(operation, request.getOperation());
+			}
+			wait = Math.max(wait, operationWait);
+		}
+		if (wait > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+				InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for rate limit");
+				iiox.initCause(ix);
+				throw iiox;
+			}
+		}
+	}
+
+	private RateLimitExceededException reject(TokenBucket bucket, String operation) {
+		rejected.incrementAndGet();
+		return new RateLimitExceededException(bucket, operation);
+	}
+
+	public TokenBucket getBucket() {
+		return bucket;
+	}
+
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @return number of requests rejected because of exceeded rate
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RateLimitFilter [bucket=" + bucket + ", timeoutMillis=" + timeoutMillis + ", operations="
+				+ operations.keySet() + "]";
+	}
+
+	/**
+	 * Thrown when permit is not available within timeout
+	 */
+	public static class RateLimitExceededException extends HttlRequestException {
+
+		private static final long serialVersionUID = 1L;
+
+		public RateLimitExceededException(TokenBucket bucket, String operation) {
+			super("Rate limit " + bucket.getPermitsPerSecond() + "/s exceeded"
+					+ (operation != null ? " for " + operation : ""));
+		}
+	}
+}
@@ -0,0 +1,308 @@
+package net.anthavio.httl.filter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLException;
+
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlConstants;
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.util.Cutils;
+import net.anthavio.httl.util.HttlUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries failed requests with exponential backoff and full jitter.
+ *
+ * Failures are classified like FakeAsyncTransport does:
+ * - request failures (ConnectException, SSLException) - request was not delivered, so any method is retried
+ * - response failures (SocketTimeoutException and other IOExceptions) - only idempotent methods are retried
+ * - 502, 503 and 504 responses - only idempotent methods are retried, Retry-After header is honoured
+ *
+ * Retries are limited by token bucket budget. Every request deposits budgetPercent of token, every retry takes
+ * whole token, so retries cannot amplify outage. Use one filter instance per sender to keep budgets separated.
+ *
+ * One-shot STREAM and READER bodies are not retried, unless bufferStreams is enabled.
+ * Request is not retried when backoff would exceed it's deadline (HttlRequestBuilder.totalTimeout)
+ *
+ * sender.addExecutionFilter(new RetryFilter(3, 100, 5000))
+ *
+ * @author martin.vanek
+ *
+ */
+public class RetryFilter implements HttlExecutionFilter {
+
+	private static final Logger logger = LoggerFactory.getLogger(RetryFilter.class);
+
+	private static final int TOKEN = 100; //budget tokens per retry
+
+	private final Random random = new Random();
+
+	private final int maxRetries;
+
+	private final int baseDelayMillis;
+
+	private final int maxDelayMillis;
+
+	private final int budgetPercent;
+
+	private final int maxTokens;
+
+	private final AtomicInteger budget;
+
+	private final AtomicLong retries = new AtomicLong();
+
+	private final AtomicLong exhausted = new AtomicLong();
+
+	private boolean bufferStreams = false;
+
+	/**
+	 * 3 retries, 100 ms base delay, 5 seconds maximum delay, 10% retry budget
+	 */
+	public RetryFilter() {
+		this(3, 100, 5000);
+	}
+
+	public RetryFilter(int maxRetries, int baseDelayMillis, int maxDelayMillis) {
+		this(maxRetries, baseDelayMillis, maxDelayMillis, 10, 10);
+	}
+
+	/**
+	 * @param maxRetries - maximum retries of single request
+	 * @param baseDelayMillis - backoff of first retry (doubled with every next one)
+	 * @param maxDelayMillis - backoff cap
+	 * @param budgetPercent - retries allowed as percent of requests
+	 * @param budgetBurst - retries allowed when budget is full (also initial budget)
+	 */
+	public RetryFilter(int maxRetries, int baseDelayMillis, int maxDelayMillis, int budgetPercent, int budgetBurst) {
+		if (maxRetries < 0) {
+			throw new IllegalArgumentException("Negative maxRetries " + maxRetries);
+		}
+		if (baseDelayMillis < 0) {
+			throw new IllegalArgumentException("Negative baseDelayMillis " + baseDelayMillis);
+		}
+		if (maxDelayMillis < baseDelayMillis) {
+			throw new IllegalArgumentException("maxDelayMillis " + maxDelayMillis + " < baseDelayMillis "
+					+ baseDelayMillis);
+		}
+		if (budgetPercent < 0 || budgetPercent > 100) {
+			throw new IllegalArgumentException("Budget percent must be 0-100: " + budgetPercent);
+		}
+		if (budgetBurst < 1) {
+			throw new IllegalArgumentException("Budget burst must be > 0");
+		}
+		this.maxRetries = maxRetries;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.budgetPercent = budgetPercent;
+		this.maxTokens = budgetBurst * TOKEN;
+		this.budget = new AtomicInteger(maxTokens);
+	}
+
+	@Override
+	public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+		deposit();
+		HttlBody body = request.getBody();
+		if (body != null && (body.getType() == HttlBody.Type.STREAM || body.getType() == HttlBody.Type.READER)) {
+			if (!bufferStreams) {
+				return chain.next(request); //one-shot
+			}
+			request = buffer(request);
+		}
+		boolean idempotent = request.getMethod().isIdempotent();
+
+		for (int attempt = 0;; ++attempt) {
+			HttlResponse response;
+			try {
+				response = chain.next(request);
+			} catch (HttlRequestException hrx) {
+				throw hrx; //misconfiguration - retry will not help
+			} catch (IOException iox) {
+				if (iox instanceof InterruptedIOException && !(iox instanceof SocketTimeoutException)) {
+					throw iox;
+				}
+				boolean delivered = !(iox instanceof ConnectException || iox instanceof SSLException);
+				long delay = getDelayMillis(attempt, -1);
+				if ((delivered && !idempotent) || !retry(request, attempt, delay, iox)) {
+					throw iox;
+				}
+				backoff(delay, iox);
+				continue;
+			}
+
+			int status = response.getHttpStatusCode();
+			if (idempotent && (status == 502 || status == 503 || status == 504)) {
+				long delay = getDelayMillis(attempt, getRetryAfterMillis(response));
+				if (retry(request, attempt, delay, "status " + status)) {
+					Cutils.close(response);
+					backoff(delay, null);
+					continue;
+				}
+			}
+			return response;
+		}
+	}
+
+	private boolean retry(HttlRequest request, int attempt, long delay, Object cause) {
+		if (attempt >= maxRetries) {
+			return false;
+		}
+		if (delay >= request.getRemainingMillis()) {
+			logger.debug("Retry would exceed deadline of " + request.getMethod() + " " + request.getUrl());
+			return false; //no time left for backoff and another attempt
+		}
+		if (!withdraw()) {
+			exhausted.incrementAndGet();
+			logger.debug("Retry budget exhausted for " + request.getMethod() + " " + request.getUrl());
+			return false;
+		}
+		retries.incrementAndGet();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Retry " + (attempt + 1) + " of " + request.getMethod() + " " + request.getUrl() + " after "
+					+ cause);
+		}
+		return true;
+	}
+
+	/**
+	 * Full jitter - random delay between 0 and exponential backoff
+	 */
+	private long getDelayMillis(int attempt, long retryAfterMillis) {
+		long cap = Math.min(maxDelayMillis, (long) baseDelayMillis << Math.min(attempt, 30));
+		long delay;
+		synchronized (random) {
+			delay = cap == 0 ? 0 : (long) (random.nextDouble() * cap);
+		}
+		if (retryAfterMillis > delay) {
+			delay = Math.min(retryAfterMillis, maxDelayMillis);
+		}
+		return delay;
+	}
+
+	private void backoff(long delay, IOException failure) throws IOException {
+		if (delay == 0) {
+			return;
+		}
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			if (failure != null) {
+				throw failure;
+			}
+			InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for retry");
+			iiox.initCause(ix);
+			throw iiox;
+		}
+	}
+
+	/**
+	 * Only delta seconds form is supported
+	 */
+	private long getRetryAfterMillis(HttlResponse response) {
+		String value = response.getFirstHeader(HttlConstants.Retry_After);
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim()) * 1000;
+			} catch (NumberFormatException nfx) {
+				//http date
+			}
+		}
+		return -1;
+	}
+
+	private HttlRequest buffer(HttlRequest request) throws IOException {
+		HttlBody body = request.getBody();
+		HttlBody buffered;
+		if (body.getType() == HttlBody.Type.STREAM) {
+			buffered = new HttlBody(HttlUtil.readAsBytes((InputStream) body.getPayload(), HttlUtil.KILO16));
+		} else {
+			buffered = new HttlBody(HttlUtil.readAsString((Reader) body.getPayload(), HttlUtil.KILO16));
+		}
+		return request.copy(request.getHeaders(), buffered);
+	}
+
+	private void deposit() {
+		int tokens;
+		do {
+			tokens = budget.get();
+			if (tokens >= maxTokens) {
+				return;
+			}
+		} while (!budget.compareAndSet(tokens, Math.min(maxTokens, tokens + budgetPercent)));
+	}
+
+	private boolean withdraw() {
+		int tokens;
+		do {
+			tokens = budget.get();
+			if (tokens < TOKEN) {
+				return false;
+			}
+		} while (!budget.compareAndSet(tokens, tokens - TOKEN));
+		return true;
+	}
+
+	/**
+	 * Read STREAM and READER bodies into memory so they can be retried
+	 */
+	public RetryFilter setBufferStreams(boolean bufferStreams) {
+		this.bufferStreams = bufferStreams;
+		return this;
+	}
+
+	public boolean isBufferStreams() {
+		return bufferStreams;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public int getBaseDelayMillis() {
+		return baseDelayMillis;
+	}
+
+	public int getMaxDelayMillis() {
+		return maxDelayMillis;
+	}
+
+	public int getBudgetPercent() {
+		return budgetPercent;
+	}
+
+	/**
+	 * @return number of retries performed
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return number of retries refused because of exhausted budget
+	 */
+	public long getBudgetExhausted() {
+		return exhausted.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RetryFilter [maxRetries=" + maxRetries + ", baseDelayMillis=" + baseDelayMillis + ", maxDelayMillis="
+				+ maxDelayMillis + ", budgetPercent=" + budgetPercent + ", retries=" + retries + "]";
+	}
+}
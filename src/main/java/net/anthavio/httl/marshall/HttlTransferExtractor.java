@@ -0,0 +1,189 @@
+package net.anthavio.httl.marshall;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlResponseExtractor;
+import net.anthavio.httl.HttlStatusException;
+import net.anthavio.httl.marshall.HttlTransferExtractor.Transfer;
+import net.anthavio.httl.util.HttlUtil;
+
+/**
+ * Streams response body into File, WritableByteChannel or OutputStream without buffering it whole in memory.
+ *
+ * File is written using FileChannel.transferFrom, other targets through reusable per thread buffer.
+ * Extracted body is Transfer report with number of bytes and throughput. Target channel or stream is not closed.
+ *
+ * sender.GET("/export").extract(HttlTransferExtractor.toFile(new File("export.csv")))
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttlTransferExtractor implements HttlResponseExtractor<Transfer> {
+
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(HttlUtil.KILO64);
+		}
+	};
+
+	/**
+	 * transferFrom chunk size
+	 */
+	private static final long CHUNK_SIZE = 1024 * 1024;
+
+	public static HttlTransferExtractor toFile(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException("Null file");
+		}
+		return new HttlTransferExtractor(file, null, 200, 299);
+	}
+
+	public static HttlTransferExtractor toChannel(WritableByteChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException("Null channel");
+		}
+		return new HttlTransferExtractor(null, channel, 200, 299);
+	}
+
+	public static HttlTransferExtractor toStream(OutputStream stream) {
+		if (stream == null) {
+			throw new IllegalArgumentException("Null stream");
+		}
+		return new HttlTransferExtractor(null, Channels.newChannel(stream), 200, 299);
+	}
+
+	private final File file;
+
+	private final WritableByteChannel channel;
+
+	private final int httpMin;
+
+	private final int httpMax;
+
+	protected HttlTransferExtractor(File file, WritableByteChannel channel, int httpMin, int httpMax) {
+		this.file = file;
+		this.channel = channel;
+		this.httpMin = httpMin;
+		this.httpMax = httpMax;
+	}
+
+	/**
+	 * @return copy accepting different range of http status codes
+	 */
+	public HttlTransferExtractor status(int httpMin, int httpMax) {
+		return new HttlTransferExtractor(file, channel, httpMin, httpMax);
+	}
+
+	@Override
+	public Transfer extract(HttlResponse response) throws IOException {
+		if (response.getHttpStatusCode() > httpMax || response.getHttpStatusCode() < httpMin) {
+			throw new HttlStatusException(response);
+		}
+		long started = System.currentTimeMillis();
+		long bytes;
+		InputStream stream = response.getStream();
+		if (stream == null) {
+			bytes = 0; //HEAD, 204, 304
+			if (file != null) {
+				new FileOutputStream(file).close(); //still create empty file
+			}
+		} else if (file != null) {
+			bytes = transferToFile(Channels.newChannel(stream), file);
+		} else {
+			bytes = transfer(Channels.newChannel(stream), channel);
+		}
+		return new Transfer(bytes, System.currentTimeMillis() - started);
+	}
+
+	private static long transferToFile(ReadableByteChannel source, File file) throws IOException {
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			FileChannel target = output.getChannel();
+			long position = 0;
+			long transferred;
+			//blocking source returns 0 only at the end of stream
+			while ((transferred = target.transferFrom(source, position, CHUNK_SIZE)) > 0) {
+				position += transferred;
+			}
+			return position;
+		} finally {
+			output.close();
+		}
+	}
+
+	private static long transfer(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+		ByteBuffer buffer = buffers.get();
+		long bytes = 0;
+		buffer.clear();
+		while (source.read(buffer) != -1) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				bytes += target.write(buffer);
+			}
+			buffer.clear();
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return "HttlTransferExtractor [" + (file != null ? file : channel) + ", httpMin=" + httpMin + ", httpMax="
+				+ httpMax + "]";
+	}
+
+	/**
+	 * Result of response body transfer
+	 *
+	 * @author martin.vanek
+	 *
+	 */
+	public static class Transfer {
+
+		private final long bytes;
+
+		private final long millis;
+
+		public Transfer(long bytes, long millis) {
+			this.bytes = bytes;
+			this.millis = millis;
+		}
+
+		/**
+		 * @return number of body bytes transfered
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return duration of transfer
+		 */
+		public long getMillis() {
+			return millis;
+		}
+
+		/**
+		 * @return throughput in bytes per second
+		 */
+		public long getBytesPerSecond() {
+			return millis != 0 ? bytes * 1000 / millis : bytes * 1000;
+		}
+
+		@Override
+		public String toString() {
+			return "Transfer [bytes=" + bytes + ", millis=" + millis + ", bytesPerSecond=" + getBytesPerSecond() + "]";
+		}
+	}
+}
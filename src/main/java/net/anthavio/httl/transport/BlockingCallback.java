@@ -0,0 +1,68 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlTransport.HttlTransportCallback;
+
+/**
+ * Turns asynchronous call into synchronous
+ *
+ * @author martin.vanek
+ *
+ */
+class BlockingCallback implements HttlTransportCallback {
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+
+	private volatile HttlResponse response;
+
+	private volatile Exception exception;
+
+	@Override
+	public void onRequestFailure(HttlRequest request, Exception exception) {
+		this.exception = exception;
+		latch.countDown();
+	}
+
+	@Override
+	public void onResponseFailure(HttlRequest request, Exception exception) {
+		this.exception = exception;
+		latch.countDown();
+	}
+
+	@Override
+	public void onResponse(HttlResponse response) {
+		this.response = response;
+		latch.countDown();
+	}
+
+	/**
+	 * Interrupted caller fails the exchange, so it is not sent when still queued and it's stream or connection 
+	 * is cancelled when already in flight
+	 */
+	public HttlResponse await(NioExchange exchange) throws IOException {
+		try {
+			latch.await();
+		} catch (InterruptedException ix) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for response");
+			iiox.initCause(ix);
+			exchange.fail(iiox);
+			throw iiox;
+		}
+		if (exception != null) {
+			if (exception instanceof IOException) {
+				throw (IOException) exception;
+			} else if (exception instanceof RuntimeException) {
+				throw (RuntimeException) exception;
+			} else {
+				throw new IOException(exception.getMessage(), exception);
+			}
+		}
+		return response;
+	}
+}
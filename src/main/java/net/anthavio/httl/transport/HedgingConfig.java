@@ -0,0 +1,146 @@
+package net.anthavio.httl.transport;
+
+import java.util.concurrent.ExecutorService;
+
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+
+/**
+ * Hedged requests - duplicate of slow idempotent request is sent and first response wins. 
+ * 
+ * Wrapping LoadBalancingConfig makes hedge to be (most probably) sent to another backend.
+ * 
+ * Url, charset and timeouts are taken from delegate configuration.
+ * 
+ * @author martin.vanek
+ *
+ */
+public class HedgingConfig extends BaseTransBuilder<HedgingConfig> {
+
+	private final BaseTransBuilder<?> delegate;
+
+	private int percentile = 95;
+
+	private int delayMillis = 0; //percentile is used
+
+	private int minDelayMillis = 5;
+
+	private int window = 1000;
+
+	private int budgetPercent = 10;
+
+	private ExecutorService executor;
+
+	public HedgingConfig(BaseTransBuilder<?> delegate) {
+		super(checkDelegate(delegate).getUrl());
+		this.delegate = delegate;
+		setCharset(delegate.getCharset());
+		setConnectTimeoutMillis(delegate.getConnectTimeoutMillis());
+		setReadTimeoutMillis(delegate.getReadTimeoutMillis());
+		setFollowRedirects(delegate.getFollowRedirects());
+		setPoolMaximumSize(delegate.getPoolMaximumSize());
+	}
+
+	private static BaseTransBuilder<?> checkDelegate(BaseTransBuilder<?> delegate) {
+		if (delegate == null) {
+			throw new IllegalArgumentException("Null delegate");
+		}
+		return delegate;
+	}
+
+	@Override
+	public HedgingTransport build() {
+		return new HedgingTransport(this, delegate.build());
+	}
+
+	@Override
+	public HedgingConfig getSelf() {
+		return this;
+	}
+
+	public BaseTransBuilder<?> getDelegate() {
+		return delegate;
+	}
+
+	public int getPercentile() {
+		return percentile;
+	}
+
+	/**
+	 * Hedge is sent when request takes longer than this percentile of recent response times. Default is 95
+	 */
+	public HedgingConfig setPercentile(int percentile) {
+		if (percentile < 1 || percentile > 99) {
+			throw new IllegalArgumentException("Percentile must be 1-99");
+		}
+		this.percentile = percentile;
+		return getSelf();
+	}
+
+	public int getDelayMillis() {
+		return delayMillis;
+	}
+
+	/**
+	 * Fixed hedge delay instead of percentile. 0 (default) means percentile is used
+	 */
+	public HedgingConfig setDelayMillis(int millis) {
+		this.delayMillis = millis;
+		return getSelf();
+	}
+
+	public int getMinDelayMillis() {
+		return minDelayMillis;
+	}
+
+	/**
+	 * Lower bound of percentile hedge delay
+	 */
+	public HedgingConfig setMinDelayMillis(int millis) {
+		this.minDelayMillis = millis;
+		return getSelf();
+	}
+
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Number of recent response times percentile is computed from. No hedging happens until tenth of window is 
+	 * collected
+	 */
+	public HedgingConfig setWindow(int window) {
+		if (window < 10) {
+			throw new IllegalArgumentException("Window must be >= 10");
+		}
+		this.window = window;
+		return getSelf();
+	}
+
+	public int getBudgetPercent() {
+		return budgetPercent;
+	}
+
+	/**
+	 * Maximum hedges as percent of requests, so hedging cannot multiply load of struggling backend. Default is 10
+	 */
+	public HedgingConfig setBudgetPercent(int percent) {
+		if (percent < 0 || percent > 100) {
+			throw new IllegalArgumentException("Budget must be 0-100");
+		}
+		this.budgetPercent = percent;
+		return getSelf();
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Executor for primary and hedge requests. Default is cached daemon thread pool owned by transport
+	 */
+	public HedgingConfig setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return getSelf();
+	}
+
+}
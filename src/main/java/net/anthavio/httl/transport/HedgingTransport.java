@@ -0,0 +1,510 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLException;
+
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlTransport;
+import net.anthavio.httl.async.NamedDeamonThreadFactory;
+import net.anthavio.httl.util.Cutils;
+import net.anthavio.httl.util.TimerWheel;
+import net.anthavio.httl.util.TimerWheel.Timeout;
+
+/**
+ * Sends duplicate (hedge) of safe or idempotent request when it takes longer than percentile of recent response 
+ * times. First response wins, the other attempt is cancelled and it's response is aborted (connection is closed 
+ * instead of waiting for rest of the body).
+ * 
+ * Attempts run in executor. Asynchronous call does not occupy executor thread while waiting - callback is invoked 
+ * from winning attempt and hedge is launched by timer, so bounded executor is never exhausted by waiting calls.
+ * 
+ * Failure of attempt does not trigger hedge - that's what retrying is for.
+ * Hedge is not sent when request deadline (HttlRequestBuilder.totalTimeout) comes sooner than hedge delay.
+ * Hedges are limited by budget (percent of requests) so they cannot multiply load of already struggling backend.
+ * 
+ * @author martin.vanek
+ *
+ */
+public class HedgingTransport implements HttlPoolingTransport {
+
+	private static final int TOKEN = 100; //budget tokens per hedge
+
+	private static final int MAX_TOKENS = 10 * TOKEN; //hedge burst
+
+	private final HedgingConfig config;
+
+	private final HttlTransport delegate;
+
+	private final ExecutorService executor;
+
+	private final boolean ownExecutor;
+
+	private final LatencyWindow latencies;
+
+	private final AtomicInteger budget = new AtomicInteger(MAX_TOKENS);
+
+	private final AtomicLong hedged = new AtomicLong();
+
+	private final AtomicLong hedgeWins = new AtomicLong();
+
+	public HedgingTransport(HedgingConfig config, HttlTransport delegate) {
+		this.config = config;
+		this.delegate = delegate;
+		if (config.getExecutor() != null) {
+			this.executor = config.getExecutor();
+			this.ownExecutor = false;
+		} else {
+			this.executor = Executors.newCachedThreadPool(new NamedDeamonThreadFactory("httl-hedge-"));
+			this.ownExecutor = true;
+		}
+		this.latencies = new LatencyWindow(config.getWindow(), config.getPercentile());
+	}
+
+	@Override
+	public HedgingConfig getConfig() {
+		return config;
+	}
+
+	public HttlTransport getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * @return number of hedges sent
+	 */
+	public long getHedged() {
+		return hedged.get();
+	}
+
+	/**
+	 * @return number of hedges that responded before original request
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/**
+	 * @return current hedge delay or -1 when not enough response times is collected yet
+	 */
+	public long getHedgeDelayMillis() {
+		if (config.getDelayMillis() > 0) {
+			return config.getDelayMillis();
+		}
+		long nanos = latencies.getPercentileNanos();
+		if (nanos == -1) {
+			return -1;
+		}
+		return Math.max(config.getMinDelayMillis(), nanos / 1000000);
+	}
+
+	@Override
+	public void close() {
+		if (ownExecutor) {
+			executor.shutdownNow();
+		}
+		delegate.close();
+	}
+
+	@Override
+	public HttlPoolStats getPoolStats() {
+		if (delegate instanceof HttlPoolingTransport) {
+			return ((HttlPoolingTransport) delegate).getPoolStats();
+		}
+		return null;
+	}
+
+	@Override
+	public HttlResponse call(HttlRequest request) throws IOException {
+		if (!isHedgeable(request)) {
+			long started = System.nanoTime();
+			HttlResponse response = delegate.call(request);
+			latencies.add(System.nanoTime() - started);
+			return response;
+		}
+		deposit();
+		Hedge hedge = new Hedge(request, null);
+		hedge.launch();
+		long delay = getHedgeDelayMillis();
+		try {
+			HttlResponse response = hedge.await(delay > 0 ? delay : 0);
+			//hedge takes about delay to complete - don't waste it when deadline comes sooner
+			if (response == null && delay > 0 && delay < request.getRemainingMillis() && withdraw()) {
+				hedged.incrementAndGet();
+				hedge.launch();
+			}
+			if (response == null) {
+				response = hedge.await(0);
+			}
+			return response;
+		} catch (InterruptedException ix) {
+			hedge.cancel();
+			Thread.currentThread().interrupt();
+			InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for response");
+			iiox.initCause(ix);
+			throw iiox;
+		}
+	}
+
+	/**
+	 * Nothing waits here. Winning attempt invokes callback and hedge is launched by timer
+	 */
+	@Override
+	public void call(final HttlRequest request, final HttlTransportCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("Null callback");
+		}
+		if (!isHedgeable(request)) {
+			final long started = System.nanoTime();
+			delegate.call(request, new HttlTransportCallback() {
+
+				@Override
+				public void onRequestFailure(HttlRequest request, Exception exception) {
+					callback.onRequestFailure(request, exception);
+				}
+
+				@Override
+				public void onResponseFailure(HttlRequest request, Exception exception) {
+					callback.onResponseFailure(request, exception);
+				}
+
+				@Override
+				public void onResponse(HttlResponse response) {
+					latencies.add(System.nanoTime() - started);
+					callback.onResponse(response);
+				}
+			});
+			return;
+		}
+		deposit();
+		Hedge hedge = new Hedge(request, callback);
+		try {
+			hedge.launch();
+		} catch (RejectedExecutionException rex) {
+			callback.onRequestFailure(request, rex);
+			return;
+		}
+		long delay = getHedgeDelayMillis();
+		if (delay > 0 && delay < request.getRemainingMillis()) {
+			hedge.schedule(delay);
+		}
+	}
+
+	private boolean isHedgeable(HttlRequest request) {
+		if (!request.getMethod().isIdempotent() || config.getBudgetPercent() == 0) {
+			return false;
+		}
+		HttlBody body = request.getBody();
+		return body == null || (body.getType() != HttlBody.Type.STREAM && body.getType() != HttlBody.Type.READER);
+	}
+
+	private void deposit() {
+		int tokens;
+		do {
+			tokens = budget.get();
+			if (tokens >= MAX_TOKENS) {
+				return;
+			}
+		} while (!budget.compareAndSet(tokens, Math.min(MAX_TOKENS, tokens + config.getBudgetPercent())));
+	}
+
+	private boolean withdraw() {
+		int tokens;
+		do {
+			tokens = budget.get();
+			if (tokens < TOKEN) {
+				return false;
+			}
+		} while (!budget.compareAndSet(tokens, tokens - TOKEN));
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "HedgingTransport [delegate=" + delegate + ", hedged=" + hedged + ", hedgeWins=" + hedgeWins + "]";
+	}
+
+	/**
+	 * Original request and it's hedge racing for response
+	 */
+	private class Hedge {
+
+		private final HttlRequest request;
+
+		private final HttlTransportCallback callback; //null for blocking call
+
+		private final List<Future<?>> attempts = new ArrayList<Future<?>>(2);
+
+		private int failed;
+
+		private Exception failure;
+
+		private HttlResponse winner;
+
+		private int winnerIndex = -1;
+
+		private boolean decided;
+
+		private Timeout hedgeTimer; //asynchronous call only
+
+		private final ReentrantLock lock = new ReentrantLock(); //not monitor - waiting must not pin virtual thread
+
+		private final Condition changed = lock.newCondition();
+
+		Hedge(HttlRequest request, HttlTransportCallback callback) {
+			this.request = request;
+			this.callback = callback;
+		}
+
+		void launch() {
+			final int index;
+			lock.lock();
+			try {
+				index = attempts.size();
+				attempts.add(executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						long started = System.nanoTime();
+						HttlResponse response;
+						try {
+							response = delegate.call(request);
+						} catch (Exception x) {
+							failed(x);
+							return;
+						}
+						latencies.add(System.nanoTime() - started);
+						if (!won(response, index)) {
+							discard(response);
+						} else if (callback != null) {
+							try {
+								callback.onResponse(response);
+							} finally {
+								Cutils.close(response);
+							}
+						}
+					}
+				}));
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Launch hedge after delay unless decided sooner
+		 */
+		void schedule(long delay) {
+			Timeout timer = TimerWheel.shared().schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					lock.lock();
+					try {
+						if (decided || !withdraw()) {
+							return;
+						}
+					} finally {
+						lock.unlock();
+					}
+					hedged.incrementAndGet();
+					try {
+						launch();
+					} catch (RejectedExecutionException rex) {
+						//executor is full - original attempt continues alone
+					}
+				}
+			}, delay);
+			lock.lock();
+			try {
+				if (decided) {
+					timer.cancel();
+				} else {
+					hedgeTimer = timer;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Loser's connection is aborted. Draining it would hold the connection until whole body arrives
+		 */
+		private void discard(HttlResponse response) {
+			response.abort();
+			Cutils.close(response);
+		}
+
+		private boolean won(HttlResponse response, int index) {
+			lock.lock();
+			try {
+				if (decided) {
+					return false;
+				}
+				if (index != 0) {
+					hedgeWins.incrementAndGet();
+				}
+				decided = true;
+				winner = response;
+				winnerIndex = index;
+				changed.signalAll();
+				if (callback != null) {
+					decide();
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void failed(Exception exception) {
+			lock.lock();
+			try {
+				++failed;
+				if (failure == null) {
+					failure = exception;
+				}
+				changed.signalAll();
+				if (callback == null || decided || failed < attempts.size()) {
+					return;
+				}
+				decided = true; //all attempts failed
+				decide();
+			} finally {
+				lock.unlock();
+			}
+			if (failure instanceof ConnectException || failure instanceof SSLException
+					|| failure instanceof HttlRequestException) {
+				callback.onRequestFailure(request, failure);
+			} else {
+				callback.onResponseFailure(request, failure);
+			}
+		}
+
+		/**
+		 * Asynchronous call is decided - stop timer and losers
+		 */
+		private void decide() {
+			if (hedgeTimer != null) {
+				hedgeTimer.cancel();
+			}
+			cancelLosers();
+		}
+
+		/**
+		 * @param millis - 0 means wait until decided or all attempts failed
+		 * @return winning response or null when millis elapsed
+		 */
+		HttlResponse await(long millis) throws IOException, InterruptedException {
+			lock.lock();
+			try {
+				long deadline = System.currentTimeMillis() + millis;
+				while (!decided && failed < attempts.size()) {
+					if (millis == 0) {
+						changed.await();
+					} else {
+						long remaining = deadline - System.currentTimeMillis();
+						if (remaining <= 0) {
+							return null;
+						}
+						changed.await(remaining, TimeUnit.MILLISECONDS);
+					}
+				}
+				if (decided) {
+					cancelLosers();
+					return winner;
+				}
+				decided = true;
+				if (failure instanceof IOException) {
+					throw (IOException) failure;
+				} else if (failure instanceof RuntimeException) {
+					throw (RuntimeException) failure;
+				} else {
+					throw new IOException(failure);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void cancelLosers() {
+			for (int i = 0; i < attempts.size(); ++i) {
+				Future<?> attempt = attempts.get(i);
+				if (i != winnerIndex && !attempt.isDone()) {
+					attempt.cancel(true); //interrupts waiting for pooled connection, late response is aborted
+				}
+			}
+		}
+
+		void cancel() {
+			lock.lock();
+			try {
+				decided = true; //late responses will be closed
+				cancelLosers();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Ring buffer of recent response times. Percentile is recomputed after every tenth of window
+	 */
+	static class LatencyWindow {
+
+		private final long[] samples;
+
+		private final int percentile;
+
+		private final int recompute;
+
+		private int count;
+
+		private volatile long percentileNanos = -1;
+
+		LatencyWindow(int size, int percentile) {
+			this.samples = new long[size];
+			this.percentile = percentile;
+			this.recompute = Math.max(1, size / 10);
+		}
+
+		synchronized void add(long nanos) {
+			samples[count % samples.length] = nanos;
+			++count;
+			if (count % recompute == 0) {
+				int size = Math.min(count, samples.length);
+				long[] sorted = Arrays.copyOf(samples, size);
+				Arrays.sort(sorted);
+				percentileNanos = sorted[Math.min(size - 1, size * percentile / 100)];
+				if (count >= samples.length * 2) {
+					count -= samples.length; //prevent overflow while keeping window full
+				}
+			}
+		}
+
+		/**
+		 * @return -1 until first tenth of window is collected
+		 */
+		long getPercentileNanos() {
+			return percentileNanos;
+		}
+	}
+}
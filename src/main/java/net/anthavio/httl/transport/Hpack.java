@@ -0,0 +1,481 @@
+package net.anthavio.httl.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HPACK - Header Compression for HTTP/2 (RFC 7541)
+ * 
+ * Header names and values are treated as ISO-8859-1 octets. Encoder and Decoder are stateful
+ * and must be used by single thread (or under connection write/read lock) in order of header blocks on the wire.
+ * 
+ * @author martin.vanek
+ *
+ */
+class Hpack {
+
+	static final int DEFAULT_TABLE_SIZE = 4096;
+
+	private static final String[][] STATIC_TABLE = { { ":authority", "" }, { ":method", "GET" }, { ":method", "POST" },
+			{ ":path", "/" }, { ":path", "/index.html" }, { ":scheme", "http" }, { ":scheme", "https" }, { ":status", "200" },
+			{ ":status", "204" }, { ":status", "206" }, { ":status", "304" }, { ":status", "400" }, { ":status", "404" },
+			{ ":status", "500" }, { "accept-charset", "" }, { "accept-encoding", "gzip, deflate" },
+			{ "accept-language", "" }, { "accept-ranges", "" }, { "accept", "" }, { "access-control-allow-origin", "" },
+			{ "age", "" }, { "allow", "" }, { "authorization", "" }, { "cache-control", "" },
+			{ "content-disposition", "" }, { "content-encoding", "" }, { "content-language", "" },
+			{ "content-length", "" }, { "content-location", "" }, { "content-range", "" }, { "content-type", "" },
+			{ "cookie", "" }, { "date", "" }, { "etag", "" }, { "expect", "" }, { "expires", "" }, { "from", "" },
+			{ "host", "" }, { "if-match", "" }, { "if-modified-since", "" }, { "if-none-match", "" }, { "if-range", "" },
+			{ "if-unmodified-since", "" }, { "last-modified", "" }, { "link", "" }, { "location", "" },
+			{ "max-forwards", "" }, { "proxy-authenticate", "" }, { "proxy-authorization", "" }, { "range", "" },
+			{ "referer", "" }, { "refresh", "" }, { "retry-after", "" }, { "server", "" }, { "set-cookie", "" },
+			{ "strict-transport-security", "" }, { "transfer-encoding", "" }, { "user-agent", "" }, { "vary", "" },
+			{ "via", "" }, { "www-authenticate", "" } };
+
+	/**
+	 * name -> lowest static index
+	 */
+	private static final Map<String, Integer> STATIC_NAMES = new HashMap<String, Integer>();
+
+	/**
+	 * name + '\0' + value -> static index
+	 */
+	private static final Map<String, Integer> STATIC_ENTRIES = new HashMap<String, Integer>();
+
+	static {
+		for (int i = STATIC_TABLE.length - 1; i >= 0; --i) {
+			String[] entry = STATIC_TABLE[i];
+			STATIC_NAMES.put(entry[0], i + 1);
+			if (entry[1].length() != 0) {
+				STATIC_ENTRIES.put(entry[0] + '\0' + entry[1], i + 1);
+			}
+		}
+	}
+
+	/**
+	 * Huffman codes (RFC 7541 Appendix B) for symbols 0 - 255. EOS is 0x3fffffff (30 bits)
+	 */
+	private static final int[] HUFFMAN_CODES = {
+			0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+			0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+			0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+			0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+			0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+			0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+			0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+			0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+			0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+			0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+			0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+			0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+			0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+			0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+			0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+			0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+			0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+			0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+			0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+			0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+			0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+			0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+			0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+			0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+			0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+			0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+			0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+			0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+			0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+			0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+			0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+			0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee };
+
+	private static final byte[] HUFFMAN_LENGTHS = {
+			13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+			28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+			6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+			5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+			13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+			7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+			15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+			6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+			20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+			24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+			22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+			21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+			26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+			19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+			20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+			26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26 };
+
+	/**
+	 * Decoding tree. Two slots per node: positive value is child node index, negative value is -(symbol + 1)
+	 */
+	private static final int[] HUFFMAN_TREE = buildHuffmanTree();
+
+	private static int[] buildHuffmanTree() {
+		int[] tree = new int[2 * 256];
+		int nodes = 1;
+		for (int symbol = 0; symbol < 256; ++symbol) {
+			int code = HUFFMAN_CODES[symbol];
+			int node = 0;
+			for (int bit = HUFFMAN_LENGTHS[symbol] - 1; bit >= 0; --bit) {
+				int slot = 2 * node + ((code >>> bit) & 1);
+				if (bit == 0) {
+					tree[slot] = -(symbol + 1);
+				} else {
+					if (tree[slot] == 0) {
+						tree[slot] = nodes++;
+					}
+					node = tree[slot];
+				}
+			}
+		}
+		return tree;
+	}
+
+	static int huffmanLength(String string) {
+		long bits = 0;
+		for (int i = 0; i < string.length(); ++i) {
+			bits += HUFFMAN_LENGTHS[string.charAt(i) & 0xFF];
+		}
+		return (int) ((bits + 7) >> 3);
+	}
+
+	static void huffmanEncode(String string, ByteArrayOutputStream out) {
+		long buffer = 0;
+		int bits = 0;
+		for (int i = 0; i < string.length(); ++i) {
+			int symbol = string.charAt(i) & 0xFF;
+			int length = HUFFMAN_LENGTHS[symbol];
+			buffer = (buffer << length) | HUFFMAN_CODES[symbol];
+			bits += length;
+			while (bits >= 8) {
+				bits -= 8;
+				out.write((int) (buffer >> bits));
+			}
+		}
+		if (bits > 0) {
+			//pad with most significant bits of EOS
+			out.write((int) ((buffer << (8 - bits)) | (0xFF >>> bits)));
+		}
+	}
+
+	static String huffmanDecode(byte[] data, int offset, int length) throws IOException {
+		StringBuilder sb = new StringBuilder(length * 2);
+		int node = 0;
+		int depth = 0; //bits consumed since last symbol
+		boolean ones = true; //all consumed bits since last symbol are 1
+		for (int i = offset; i < offset + length; ++i) {
+			int octet = data[i] & 0xFF;
+			for (int bit = 7; bit >= 0; --bit) {
+				int b = (octet >>> bit) & 1;
+				int next = HUFFMAN_TREE[2 * node + b];
+				if (next < 0) {
+					sb.append((char) (-next - 1));
+					node = 0;
+					depth = 0;
+					ones = true;
+				} else if (next == 0) {
+					throw new IOException("Invalid Huffman code");
+				} else {
+					node = next;
+					++depth;
+					ones &= b == 1;
+				}
+			}
+		}
+		if (depth > 7 || !ones) {
+			throw new IOException("Invalid Huffman padding");
+		}
+		return sb.toString();
+	}
+
+	static int entrySize(String name, String value) {
+		return name.length() + value.length() + 32;
+	}
+
+	/**
+	 * Dynamic table. Newest entry has lowest index
+	 */
+	static class DynamicTable {
+
+		private final List<String[]> entries = new ArrayList<String[]>(); //oldest first
+
+		private int size;
+
+		private int maxSize = DEFAULT_TABLE_SIZE;
+
+		public int length() {
+			return entries.size();
+		}
+
+		/**
+		 * @param index 1 based index into dynamic table
+		 */
+		public String[] get(int index) {
+			return entries.get(entries.size() - index);
+		}
+
+		public void add(String name, String value) {
+			int entrySize = entrySize(name, value);
+			evict(maxSize - entrySize);
+			if (entrySize <= maxSize) {
+				entries.add(new String[] { name, value });
+				size += entrySize;
+			}
+		}
+
+		public void setMaxSize(int maxSize) {
+			this.maxSize = maxSize;
+			evict(maxSize);
+		}
+
+		public int getMaxSize() {
+			return maxSize;
+		}
+
+		private void evict(int targetSize) {
+			while (size > targetSize && !entries.isEmpty()) {
+				String[] oldest = entries.remove(0);
+				size -= entrySize(oldest[0], oldest[1]);
+			}
+		}
+
+		/**
+		 * @return 1 based index of full match, negative index of name only match, 0 when not found
+		 */
+		public int find(String name, String value) {
+			int nameIndex = 0;
+			for (int i = entries.size() - 1; i >= 0; --i) {
+				String[] entry = entries.get(i);
+				if (entry[0].equals(name)) {
+					int index = entries.size() - i;
+					if (entry[1].equals(value)) {
+						return index;
+					} else if (nameIndex == 0) {
+						nameIndex = -index;
+					}
+				}
+			}
+			return nameIndex;
+		}
+	}
+
+	/**
+	 * Header block encoder
+	 */
+	static class Encoder {
+
+		private final DynamicTable table = new DynamicTable();
+
+		private int pendingSizeUpdate = -1;
+
+		/**
+		 * Peer's SETTINGS_HEADER_TABLE_SIZE. Size is never grown above default
+		 */
+		public void setMaxTableSize(int size) {
+			size = Math.min(size, DEFAULT_TABLE_SIZE);
+			if (size != table.getMaxSize()) {
+				table.setMaxSize(size);
+				pendingSizeUpdate = size;
+			}
+		}
+
+		/**
+		 * Must be called for every header block even when table size did not change
+		 */
+		public void begin(ByteArrayOutputStream out) {
+			if (pendingSizeUpdate != -1) {
+				writeInteger(out, 0x20, 5, pendingSizeUpdate);
+				pendingSizeUpdate = -1;
+			}
+		}
+
+		/**
+		 * @param name lowercase header name
+		 */
+		public void encode(ByteArrayOutputStream out, String name, String value, boolean sensitive) {
+			if (!sensitive) {
+				Integer index = STATIC_ENTRIES.get(name + '\0' + value);
+				if (index != null) {
+					writeInteger(out, 0x80, 7, index);
+					return;
+				}
+			}
+			int found = table.find(name, value);
+			if (found > 0 && !sensitive) {
+				writeInteger(out, 0x80, 7, STATIC_TABLE.length + found);
+				return;
+			}
+			Integer staticName = STATIC_NAMES.get(name);
+			int nameIndex = staticName != null ? staticName : (found < 0 ? STATIC_TABLE.length - found : 0);
+			if (sensitive) {
+				writeInteger(out, 0x10, 4, nameIndex); //never indexed
+			} else if (isVolatile(name)) {
+				writeInteger(out, 0x00, 4, nameIndex); //without indexing
+			} else {
+				writeInteger(out, 0x40, 6, nameIndex); //incremental indexing
+				table.add(name, value);
+			}
+			if (nameIndex == 0) {
+				writeString(out, name);
+			}
+			writeString(out, value);
+		}
+
+		/**
+		 * Values that rarely repeat would only pollute dynamic table
+		 */
+		private boolean isVolatile(String name) {
+			return name.equals(":path") || name.equals("content-length") || name.equals("date");
+		}
+
+		private static void writeString(ByteArrayOutputStream out, String string) {
+			int huffman = huffmanLength(string);
+			if (huffman < string.length()) {
+				writeInteger(out, 0x80, 7, huffman);
+				huffmanEncode(string, out);
+			} else {
+				writeInteger(out, 0x00, 7, string.length());
+				for (int i = 0; i < string.length(); ++i) {
+					out.write(string.charAt(i));
+				}
+			}
+		}
+
+		static void writeInteger(ByteArrayOutputStream out, int mask, int prefixBits, int value) {
+			int max = (1 << prefixBits) - 1;
+			if (value < max) {
+				out.write(mask | value);
+			} else {
+				out.write(mask | max);
+				value -= max;
+				while (value >= 0x80) {
+					out.write((value & 0x7F) | 0x80);
+					value >>>= 7;
+				}
+				out.write(value);
+			}
+		}
+	}
+
+	/**
+	 * Header block decoder
+	 */
+	static class Decoder {
+
+		private final DynamicTable table = new DynamicTable();
+
+		private final int maxTableSize;
+
+		private byte[] data;
+
+		private int position;
+
+		private int limit;
+
+		/**
+		 * @param maxTableSize our SETTINGS_HEADER_TABLE_SIZE
+		 */
+		public Decoder(int maxTableSize) {
+			this.maxTableSize = maxTableSize;
+			this.table.setMaxSize(maxTableSize);
+		}
+
+		/**
+		 * @param headers receives decoded name, value pairs
+		 */
+		public void decode(byte[] block, int offset, int length, List<String[]> headers) throws IOException {
+			this.data = block;
+			this.position = offset;
+			this.limit = offset + length;
+			while (position < limit) {
+				int octet = data[position] & 0xFF;
+				if ((octet & 0x80) != 0) {
+					headers.add(getEntry(readInteger(7)));
+				} else if ((octet & 0x40) != 0) {
+					String[] header = readLiteral(6);
+					table.add(header[0], header[1]);
+					headers.add(header);
+				} else if ((octet & 0x20) != 0) {
+					int size = readInteger(5);
+					if (size > maxTableSize) {
+						throw new IOException("Dynamic table size update " + size + " exceeds " + maxTableSize);
+					}
+					table.setMaxSize(size);
+				} else {
+					headers.add(readLiteral(4)); //without indexing or never indexed
+				}
+			}
+			this.data = null;
+		}
+
+		private String[] getEntry(int index) throws IOException {
+			if (index == 0) {
+				throw new IOException("Invalid header index 0");
+			} else if (index <= STATIC_TABLE.length) {
+				return STATIC_TABLE[index - 1];
+			} else if (index - STATIC_TABLE.length <= table.length()) {
+				return table.get(index - STATIC_TABLE.length);
+			} else {
+				throw new IOException("Invalid header index " + index);
+			}
+		}
+
+		private String[] readLiteral(int prefixBits) throws IOException {
+			int nameIndex = readInteger(prefixBits);
+			String name = nameIndex != 0 ? getEntry(nameIndex)[0] : readString();
+			String value = readString();
+			return new String[] { name, value };
+		}
+
+		private String readString() throws IOException {
+			if (position >= limit) {
+				throw new IOException("Truncated header block");
+			}
+			boolean huffman = (data[position] & 0x80) != 0;
+			int length = readInteger(7);
+			if (length > limit - position) {
+				throw new IOException("Truncated header block");
+			}
+			String string;
+			if (huffman) {
+				string = huffmanDecode(data, position, length);
+			} else {
+				char[] chars = new char[length];
+				for (int i = 0; i < length; ++i) {
+					chars[i] = (char) (data[position + i] & 0xFF);
+				}
+				string = new String(chars);
+			}
+			position += length;
+			return string;
+		}
+
+		private int readInteger(int prefixBits) throws IOException {
+			int max = (1 << prefixBits) - 1;
+			int value = data[position++] & max;
+			if (value < max) {
+				return value;
+			}
+			int shift = 0;
+			int octet;
+			do {
+				if (position >= limit) {
+					throw new IOException("Truncated header block");
+				}
+				if (shift > 21) {
+					throw new IOException("Header integer overflow");
+				}
+				octet = data[position++] & 0xFF;
+				value += (octet & 0x7F) << shift;
+				shift += 7;
+			} while ((octet & 0x80) != 0);
+			return value;
+		}
+	}
+}
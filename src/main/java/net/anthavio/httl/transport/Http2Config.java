@@ -0,0 +1,136 @@
+package net.anthavio.httl.transport;
+
+import java.net.URL;
+
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+
+/**
+ * HTTP/2 transport. No additional library is required
+ *
+ * Plain http uses h2c with prior knowledge, https negotiates h2 using ALPN (requires Java 8u252+).
+ * Authentication is limited to BASIC scheme sent preemptively. Redirects are not followed.
+ *
+ * Pool maximum size is number of multiplexed connections and defaults to 1
+ *
+ * @author martin.vanek
+ *
+ */
+public class Http2Config extends BaseTransBuilder<Http2Config> {
+
+	private int maxConcurrentStreams = 100;
+
+	private int initialWindowSize = 1024 * 1024;
+
+	private int connectionWindowSize = 16 * 1024 * 1024;
+
+	private int headerTableSize = Hpack.DEFAULT_TABLE_SIZE;
+
+	private int poolReleaseTimeoutMillis = 60 * 1000;
+
+	private int poolAcquireTimeoutMillis = 3 * 1000;
+
+	public Http2Config(String url) {
+		super(url);
+		this.poolMaximumSize = 1;
+	}
+
+	public Http2Config(URL url) {
+		super(url);
+		this.poolMaximumSize = 1;
+	}
+
+	@Override
+	public Http2Transport build() {
+		return new Http2Transport(this);
+	}
+
+	@Override
+	public Http2Config getSelf() {
+		return this;
+	}
+
+	public int getMaxConcurrentStreams() {
+		return maxConcurrentStreams;
+	}
+
+	/**
+	 * Maximum number of concurrent streams per connection. Server can lower it using SETTINGS_MAX_CONCURRENT_STREAMS
+	 */
+	public Http2Config setMaxConcurrentStreams(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Max concurrent streams must be >= 1");
+		}
+		this.maxConcurrentStreams = count;
+		return getSelf();
+	}
+
+	public int getInitialWindowSize() {
+		return initialWindowSize;
+	}
+
+	/**
+	 * Flow control window of every stream announced to server (SETTINGS_INITIAL_WINDOW_SIZE)
+	 */
+	public Http2Config setInitialWindowSize(int bytes) {
+		if (bytes < 65535) {
+			throw new IllegalArgumentException("Initial window size must be >= 65535");
+		}
+		this.initialWindowSize = bytes;
+		return getSelf();
+	}
+
+	public int getConnectionWindowSize() {
+		return connectionWindowSize;
+	}
+
+	/**
+	 * Flow control window of whole connection shared by all streams
+	 */
+	public Http2Config setConnectionWindowSize(int bytes) {
+		if (bytes < 65535) {
+			throw new IllegalArgumentException("Connection window size must be >= 65535");
+		}
+		this.connectionWindowSize = bytes;
+		return getSelf();
+	}
+
+	public int getHeaderTableSize() {
+		return headerTableSize;
+	}
+
+	/**
+	 * HPACK dynamic table size for response headers (SETTINGS_HEADER_TABLE_SIZE)
+	 */
+	public Http2Config setHeaderTableSize(int bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Header table size must be >= 0");
+		}
+		this.headerTableSize = bytes;
+		return getSelf();
+	}
+
+	public int getPoolReleaseTimeoutMillis() {
+		return poolReleaseTimeoutMillis;
+	}
+
+	/**
+	 * How long can be connection without active stream kept open
+	 */
+	public Http2Config setPoolReleaseTimeoutMillis(int millis) {
+		this.poolReleaseTimeoutMillis = millis;
+		return getSelf();
+	}
+
+	public int getPoolAcquireTimeoutMillis() {
+		return poolAcquireTimeoutMillis;
+	}
+
+	/**
+	 * How long can request wait for stream when all connections reached max concurrent streams
+	 */
+	public Http2Config setPoolAcquireTimeoutMillis(int millis) {
+		this.poolAcquireTimeoutMillis = millis;
+		return getSelf();
+	}
+
+}
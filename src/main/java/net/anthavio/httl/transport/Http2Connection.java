@@ -0,0 +1,1009 @@
+package net.anthavio.httl.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.transport.NioResponseParser.BodyBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Multiplexed HTTP/2 connection (RFC 7540). Frames are read by dedicated daemon thread, which also completes exchanges.
+ * Requests are written by calling threads under write lock. Request body sending blocks while flow control window is exhausted.
+ *
+ * @author martin.vanek
+ *
+ */
+class Http2Connection implements Runnable {
+
+	static final byte[] PREFACE = { 'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0', '\r', '\n',
+			'\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n' };
+
+	static final int DATA = 0x0;
+	static final int HEADERS = 0x1;
+	static final int PRIORITY = 0x2;
+	static final int RST_STREAM = 0x3;
+	static final int SETTINGS = 0x4;
+	static final int PUSH_PROMISE = 0x5;
+	static final int PING = 0x6;
+	static final int GOAWAY = 0x7;
+	static final int WINDOW_UPDATE = 0x8;
+	static final int CONTINUATION = 0x9;
+
+	static final int FLAG_END_STREAM = 0x1;
+	static final int FLAG_ACK = 0x1;
+	static final int FLAG_END_HEADERS = 0x4;
+	static final int FLAG_PADDED = 0x8;
+	static final int FLAG_PRIORITY = 0x20;
+
+	static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	static final int SETTINGS_ENABLE_PUSH = 0x2;
+	static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+	static final int NO_ERROR = 0x0;
+	static final int PROTOCOL_ERROR = 0x1;
+	static final int FLOW_CONTROL_ERROR = 0x3;
+	static final int FRAME_SIZE_ERROR = 0x6;
+	static final int REFUSED_STREAM = 0x7;
+	static final int CANCEL = 0x8;
+	static final int COMPRESSION_ERROR = 0x9;
+
+	static final int DEFAULT_WINDOW_SIZE = 65535;
+
+	static final int DEFAULT_FRAME_SIZE = 16384; //we never announce bigger SETTINGS_MAX_FRAME_SIZE
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final Http2Transport transport;
+
+	private final Http2Config config;
+
+	private final Socket socket;
+
+	private final DataInputStream input;
+
+	private final OutputStream output;
+
+	private final Thread reader;
+
+	private final ReentrantLock writeLock = new ReentrantLock(); //not monitor - socket writes must not pin virtual thread
+
+	private final ReentrantLock lock = new ReentrantLock(); //guards streams, windows and state
+
+	private final Condition changed = lock.newCondition(); //window opened or stream closed
+
+	private final byte[] frameHeader = new byte[9]; //guarded by writeLock
+
+	private final Hpack.Encoder encoder = new Hpack.Encoder(); //guarded by writeLock
+
+	private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream(); //guarded by writeLock
+
+	private final Hpack.Decoder decoder; //reader thread only
+
+	private final ByteArrayOutputStream receivedBlock = new ByteArrayOutputStream(); //reader thread only
+
+	private final byte[] payload = new byte[DEFAULT_FRAME_SIZE]; //reader thread only
+
+	private int continuationStream; //reader thread only
+
+	private int continuationFlags; //reader thread only
+
+	private final Map<Integer, Http2Stream> streams = new LinkedHashMap<Integer, Http2Stream>();
+
+	private int nextStreamId = 1;
+
+	private int reserved; //active streams + slots reserved for streams being opened
+
+	private int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+
+	private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+
+	private volatile int peerMaxFrameSize = DEFAULT_FRAME_SIZE;
+
+	private long sendWindow = DEFAULT_WINDOW_SIZE;
+
+	private int receiveUnacked;
+
+	private boolean goingAway;
+
+	private boolean closed;
+
+	private long idleSince = System.currentTimeMillis();
+
+	/**
+	 * @param socket connected (and TLS negotiated) socket
+	 */
+	public Http2Connection(Http2Transport transport, Socket socket, String name) throws IOException {
+		this.transport = transport;
+		this.config = transport.getConfig();
+		this.socket = socket;
+		this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream(), DEFAULT_FRAME_SIZE));
+		this.output = new BufferedOutputStream(socket.getOutputStream(), DEFAULT_FRAME_SIZE + 9);
+		this.decoder = new Hpack.Decoder(config.getHeaderTableSize());
+
+		writeLock.lock();
+		try {
+			output.write(PREFACE);
+			byte[] settings = new byte[4 * 6];
+			putSetting(settings, 0, SETTINGS_HEADER_TABLE_SIZE, config.getHeaderTableSize());
+			putSetting(settings, 6, SETTINGS_ENABLE_PUSH, 0);
+			putSetting(settings, 12, SETTINGS_MAX_CONCURRENT_STREAMS, config.getMaxConcurrentStreams());
+			putSetting(settings, 18, SETTINGS_INITIAL_WINDOW_SIZE, config.getInitialWindowSize());
+			writeFrame(SETTINGS, 0, 0, settings, 0, settings.length);
+			if (config.getConnectionWindowSize() > DEFAULT_WINDOW_SIZE) {
+				writeWindowUpdate(0, config.getConnectionWindowSize() - DEFAULT_WINDOW_SIZE);
+			}
+			output.flush();
+		} finally {
+			writeLock.unlock();
+		}
+
+		this.reader = new Thread(this, name);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * @return true when stream slot was reserved for new request
+	 */
+	public boolean reserve() {
+		lock.lock();
+		try {
+			if (closed || goingAway || reserved >= Math.min(config.getMaxConcurrentStreams(), peerMaxConcurrentStreams)) {
+				return false;
+			}
+			++reserved;
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return false when connection can't open new streams anymore
+	 */
+	public boolean isUsable() {
+		lock.lock();
+		try {
+			return !closed && !goingAway;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Send request on previously reserved stream slot
+	 *
+	 * @return false when connection was closed meanwhile and exchange must be dispatched again
+	 */
+	public boolean send(NioExchange exchange) {
+		Http2Stream stream;
+		try {
+			writeLock.lock();
+			try {
+				lock.lock();
+				try {
+					if (closed || goingAway) {
+						--reserved;
+						return false;
+					}
+					if (exchange.isCompleted()) {
+						stream = null; //cancelled while waiting for stream slot
+					} else {
+						//stream identifiers must be increasing on the wire
+						stream = new Http2Stream(nextStreamId, exchange, peerInitialWindowSize);
+						streams.put(stream.id, stream);
+						nextStreamId += 2;
+						if (nextStreamId < 0) {
+							goingAway = true; //stream identifiers exhausted
+						}
+					}
+				} finally {
+					lock.unlock();
+				}
+				if (stream != null) {
+					writeHeaders(stream);
+					output.flush();
+				}
+			} finally {
+				writeLock.unlock();
+			}
+			if (stream == null) {
+				unreserve();
+			} else if (exchange.body != null || exchange.file != null) {
+				writeBody(stream);
+			}
+		} catch (IOException iox) {
+			closed(iox);
+		}
+		return true;
+	}
+
+	private void writeHeaders(Http2Stream stream) throws IOException {
+		HttlRequest request = stream.exchange.request;
+		Multival<String> headers = request.getHeaders();
+		String authority = transport.getHostHeader();
+		boolean authorizationSet = false;
+		if (headers != null && headers.size() != 0) {
+			for (String name : headers) {
+				if (name.equalsIgnoreCase("Host")) {
+					authority = headers.getFirst(name);
+				}
+				authorizationSet |= name.equalsIgnoreCase("Authorization");
+			}
+		}
+
+		headerBlock.reset();
+		encoder.begin(headerBlock);
+		encoder.encode(headerBlock, ":method", request.getMethod().name(), false);
+		encoder.encode(headerBlock, ":scheme", transport.getScheme(), false);
+		encoder.encode(headerBlock, ":authority", authority, false);
+		encoder.encode(headerBlock, ":path", request.getPathAndQuery(), false);
+		if (headers != null && headers.size() != 0) {
+			for (String name : headers) {
+				String lower = name.toLowerCase(Locale.ENGLISH);
+				if (isConnectionSpecific(lower)) {
+					continue;
+				}
+				boolean sensitive = lower.equals("authorization") || lower.equals("cookie");
+				for (String value : headers.get(name)) {
+					encoder.encode(headerBlock, lower, value, sensitive);
+				}
+			}
+		}
+		if (!authorizationSet && transport.getAuthorizationHeader() != null) {
+			encoder.encode(headerBlock, "authorization", transport.getAuthorizationHeader(), true);
+		}
+		NioExchange exchange = stream.exchange;
+		boolean body = exchange.body != null || exchange.file != null;
+		if (exchange.body != null) {
+			encoder.encode(headerBlock, "content-length", String.valueOf(exchange.body.remaining()), false);
+		} else if (exchange.file != null) {
+			encoder.encode(headerBlock, "content-length", String.valueOf(exchange.fileLength), false);
+		} else if (request.getMethod().isBodyAllowed()) {
+			encoder.encode(headerBlock, "content-length", "0", false);
+		}
+
+		byte[] block = headerBlock.toByteArray();
+		int maxFrameSize = peerMaxFrameSize;
+		int offset = 0;
+		do {
+			int length = Math.min(block.length - offset, maxFrameSize);
+			int flags = offset + length == block.length ? FLAG_END_HEADERS : 0;
+			if (offset == 0) {
+				writeFrame(HEADERS, body ? flags : flags | FLAG_END_STREAM, stream.id, block, offset, length);
+			} else {
+				writeFrame(CONTINUATION, flags, stream.id, block, offset, length);
+			}
+			offset += length;
+		} while (offset < block.length);
+	}
+
+	/**
+	 * HTTP/1.1 connection management headers must not be sent. We set content-length and authority ourself
+	 */
+	private static boolean isConnectionSpecific(String name) {
+		return name.equals("host") || name.equals("connection") || name.equals("keep-alive")
+				|| name.equals("proxy-connection") || name.equals("transfer-encoding") || name.equals("upgrade")
+				|| name.equals("content-length");
+	}
+
+	/**
+	 * Send DATA frames as flow control windows permit. File is read frame by frame, never buffered whole
+	 */
+	private void writeBody(Http2Stream stream) throws IOException {
+		NioExchange exchange = stream.exchange;
+		byte[] bytes;
+		int base; //array offset of buffered body
+		long end;
+		if (exchange.body != null) {
+			bytes = exchange.body.array();
+			base = exchange.body.arrayOffset() + exchange.body.position();
+			end = exchange.body.remaining();
+		} else {
+			bytes = new byte[DEFAULT_FRAME_SIZE];
+			base = 0;
+			end = exchange.fileLength;
+		}
+		long offset = 0;
+		do {
+			int length;
+			InterruptedIOException interrupted = null;
+			lock.lock();
+			try {
+				while (!closed && !stream.closed && (sendWindow <= 0 || stream.sendWindow <= 0)) {
+					try {
+						changed.await(NioReactor.CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS); //stream read timeout is enforced by timer
+					} catch (InterruptedException ix) {
+						Thread.currentThread().interrupt();
+						interrupted = new InterruptedIOException("Interrupted while sending body");
+						interrupted.initCause(ix);
+						break;
+					}
+				}
+				if (closed || stream.closed || interrupted != null) {
+					length = -1;
+				} else {
+					length = (int) Math.min(end - offset, Math.min(sendWindow, stream.sendWindow));
+					length = Math.min(length, exchange.file != null ? bytes.length : peerMaxFrameSize);
+					sendWindow -= length;
+					stream.sendWindow -= length;
+					stream.deadline = System.currentTimeMillis() + stream.exchange.readTimeoutMillis;
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (interrupted != null) {
+				resetStream(stream, CANCEL, interrupted); //only this stream, other streams continue
+				return;
+			} else if (length == -1) {
+				return;
+			}
+			int from = base + (int) offset;
+			if (exchange.file != null) {
+				try {
+					readFile(exchange, offset, bytes, length);
+				} catch (IOException iox) {
+					resetStream(stream, CANCEL, iox); //connection is fine
+					return;
+				}
+				from = 0;
+			}
+			writeLock.lock();
+			try {
+				boolean last = offset + length == end;
+				writeFrame(DATA, last ? FLAG_END_STREAM : 0, stream.id, bytes, from, length);
+				output.flush(); //peer can't send WINDOW_UPDATE for data it did not receive
+			} finally {
+				writeLock.unlock();
+			}
+			offset += length;
+		} while (offset < end);
+	}
+
+	/**
+	 * Positional read, so resent exchange starts again from beginning of file
+	 */
+	private static void readFile(NioExchange exchange, long position, byte[] bytes, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+		while (buffer.hasRemaining()) {
+			if (exchange.file.read(buffer, position + buffer.position()) == -1) {
+				throw new IOException("File truncated while sending " + exchange);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		IOException failure;
+		try {
+			while (true) {
+				readFrame();
+			}
+		} catch (IOException iox) {
+			failure = iox;
+		} catch (Exception x) {
+			logger.warn("Connection failure " + this, x);
+			failure = new IOException(x.getMessage(), x);
+		}
+		closed(failure);
+	}
+
+	private void readFrame() throws IOException {
+		int length = (input.readUnsignedByte() << 16) | (input.readUnsignedByte() << 8) | input.readUnsignedByte();
+		int type = input.readUnsignedByte();
+		int flags = input.readUnsignedByte();
+		int streamId = input.readInt() & 0x7FFFFFFF;
+		if (length > DEFAULT_FRAME_SIZE) {
+			throw connectionError(FRAME_SIZE_ERROR, "Frame too big " + length);
+		}
+		input.readFully(payload, 0, length);
+
+		if (continuationStream != 0 && (type != CONTINUATION || streamId != continuationStream)) {
+			throw connectionError(PROTOCOL_ERROR, "Expected CONTINUATION of stream " + continuationStream);
+		}
+		switch (type) {
+		case DATA:
+			onData(flags, streamId, length);
+			break;
+		case HEADERS:
+			onHeaders(flags, streamId, length);
+			break;
+		case PRIORITY:
+			break;
+		case RST_STREAM:
+			onReset(streamId, length);
+			break;
+		case SETTINGS:
+			onSettings(flags, length);
+			break;
+		case PUSH_PROMISE:
+			throw connectionError(PROTOCOL_ERROR, "PUSH_PROMISE while push is disabled");
+		case PING:
+			if ((flags & FLAG_ACK) == 0) {
+				writeLock.lock();
+				try {
+					writeFrame(PING, FLAG_ACK, 0, payload, 0, length);
+					output.flush();
+				} finally {
+					writeLock.unlock();
+				}
+			}
+			break;
+		case GOAWAY:
+			onGoAway(length);
+			break;
+		case WINDOW_UPDATE:
+			onWindowUpdate(streamId, length);
+			break;
+		case CONTINUATION:
+			if (continuationStream == 0) {
+				throw connectionError(PROTOCOL_ERROR, "Unexpected CONTINUATION");
+			}
+			receivedBlock.write(payload, 0, length);
+			if ((flags & FLAG_END_HEADERS) != 0) {
+				continuationStream = 0;
+				onHeaderBlock(continuationFlags, streamId);
+			}
+			break;
+		default:
+			//unknown frame types must be ignored
+		}
+	}
+
+	private void onData(int flags, int streamId, int length) throws IOException {
+		if (streamId == 0) {
+			throw connectionError(PROTOCOL_ERROR, "DATA on stream 0");
+		}
+		int offset = 0;
+		int dataLength = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			offset = 1;
+			dataLength = length - 1 - (payload[0] & 0xFF);
+			if (dataLength < 0) {
+				throw connectionError(PROTOCOL_ERROR, "Invalid DATA padding");
+			}
+		}
+		boolean endStream = (flags & FLAG_END_STREAM) != 0;
+		int connectionIncrement = 0;
+		int streamIncrement = 0;
+		Http2Stream stream;
+		lock.lock();
+		try {
+			//padding counts into flow control too
+			receiveUnacked += length;
+			if (receiveUnacked >= config.getConnectionWindowSize() / 2) {
+				connectionIncrement = receiveUnacked;
+				receiveUnacked = 0;
+			}
+			stream = streams.get(streamId);
+			if (stream != null) {
+				stream.responded = true;
+				stream.deadline = System.currentTimeMillis() + stream.exchange.readTimeoutMillis;
+				stream.receiveUnacked += length;
+				if (!endStream && stream.receiveUnacked >= config.getInitialWindowSize() / 2) {
+					streamIncrement = stream.receiveUnacked;
+					stream.receiveUnacked = 0;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (stream != null) {
+			if (stream.body == null) {
+				stream.body = new BodyBuffer(Math.max(dataLength, 1024));
+			}
+			stream.body.write(payload, offset, dataLength);
+		}
+		if (connectionIncrement != 0 || streamIncrement != 0) {
+			writeLock.lock();
+			try {
+				if (connectionIncrement != 0) {
+					writeWindowUpdate(0, connectionIncrement);
+				}
+				if (streamIncrement != 0) {
+					writeWindowUpdate(streamId, streamIncrement);
+				}
+				output.flush();
+			} finally {
+				writeLock.unlock();
+			}
+		}
+		if (stream != null && endStream) {
+			complete(stream);
+		}
+	}
+
+	private void onHeaders(int flags, int streamId, int length) throws IOException {
+		if (streamId == 0) {
+			throw connectionError(PROTOCOL_ERROR, "HEADERS on stream 0");
+		}
+		int offset = 0;
+		int end = length;
+		if ((flags & FLAG_PADDED) != 0) {
+			offset = 1;
+			end -= payload[0] & 0xFF;
+		}
+		if ((flags & FLAG_PRIORITY) != 0) {
+			offset += 5;
+		}
+		if (offset > end) {
+			throw connectionError(PROTOCOL_ERROR, "Invalid HEADERS padding");
+		}
+		receivedBlock.reset();
+		receivedBlock.write(payload, offset, end - offset);
+		if ((flags & FLAG_END_HEADERS) != 0) {
+			onHeaderBlock(flags, streamId);
+		} else {
+			continuationStream = streamId;
+			continuationFlags = flags;
+		}
+	}
+
+	private void onHeaderBlock(int flags, int streamId) throws IOException {
+		//block must be decoded even for unknown stream to keep HPACK dynamic table in sync
+		byte[] block = receivedBlock.toByteArray();
+		List<String[]> fields = new ArrayList<String[]>();
+		try {
+			decoder.decode(block, 0, block.length, fields);
+		} catch (IOException iox) {
+			throw connectionError(COMPRESSION_ERROR, iox.getMessage());
+		}
+		Http2Stream stream;
+		lock.lock();
+		try {
+			stream = streams.get(streamId);
+			if (stream == null) {
+				return; //reset or timed out
+			}
+			stream.responded = true;
+			stream.deadline = System.currentTimeMillis() + stream.exchange.readTimeoutMillis;
+		} finally {
+			lock.unlock();
+		}
+		boolean endStream = (flags & FLAG_END_STREAM) != 0;
+		if (stream.status == 0) {
+			String status = null;
+			Multival<String> headers = new Multival<String>();
+			for (String[] field : fields) {
+				if (field[0].equals(":status")) {
+					status = field[1];
+				} else if (!field[0].startsWith(":")) {
+					headers.add(canonicalName(field[0]), field[1]);
+				}
+			}
+			int code;
+			try {
+				code = Integer.parseInt(status);
+			} catch (NumberFormatException nfx) {
+				resetStream(stream, PROTOCOL_ERROR, new IOException("Invalid :status " + status));
+				return;
+			}
+			if (code >= 100 && code < 200 && !endStream) {
+				return; //interim response
+			}
+			stream.status = code;
+			stream.headers = headers;
+		} else {
+			//trailers
+			for (String[] field : fields) {
+				stream.headers.add(canonicalName(field[0]), field[1]);
+			}
+		}
+		if (endStream) {
+			complete(stream);
+		}
+	}
+
+	/**
+	 * HTTP/2 header names are lowercase while HttlResponse (and users) look for Content-Type style ones
+	 */
+	static String canonicalName(String name) {
+		char[] chars = name.toCharArray();
+		boolean upper = true;
+		for (int i = 0; i < chars.length; ++i) {
+			if (upper && chars[i] >= 'a' && chars[i] <= 'z') {
+				chars[i] = (char) (chars[i] - 32);
+			}
+			upper = chars[i] == '-';
+		}
+		return new String(chars);
+	}
+
+	private void onReset(int streamId, int length) throws IOException {
+		if (length != 4) {
+			throw connectionError(FRAME_SIZE_ERROR, "RST_STREAM length " + length);
+		}
+		int code = getInt(payload, 0);
+		Http2Stream stream;
+		lock.lock();
+		try {
+			stream = streams.get(streamId);
+		} finally {
+			lock.unlock();
+		}
+		if (stream != null && remove(stream)) {
+			if (code == REFUSED_STREAM && !stream.responded && stream.exchange.isResendable()) {
+				//not processed by server at all
+				stream.exchange.retried();
+				transport.redispatch(stream.exchange);
+			} else {
+				stream.exchange.fail(new IOException("Stream reset by server with error " + code));
+			}
+		}
+	}
+
+	private void onSettings(int flags, int length) throws IOException {
+		if ((flags & FLAG_ACK) != 0) {
+			return;
+		}
+		if (length % 6 != 0) {
+			throw connectionError(FRAME_SIZE_ERROR, "SETTINGS length " + length);
+		}
+		for (int offset = 0; offset < length; offset += 6) {
+			int id = ((payload[offset] & 0xFF) << 8) | (payload[offset + 1] & 0xFF);
+			int value = getInt(payload, offset + 2);
+			switch (id) {
+			case SETTINGS_HEADER_TABLE_SIZE:
+				writeLock.lock();
+				try {
+					encoder.setMaxTableSize(value);
+				} finally {
+					writeLock.unlock();
+				}
+				break;
+			case SETTINGS_MAX_CONCURRENT_STREAMS:
+				lock.lock();
+				try {
+					peerMaxConcurrentStreams = value;
+				} finally {
+					lock.unlock();
+				}
+				break;
+			case SETTINGS_INITIAL_WINDOW_SIZE:
+				if (value < 0) {
+					throw connectionError(FLOW_CONTROL_ERROR, "SETTINGS_INITIAL_WINDOW_SIZE " + (value & 0xFFFFFFFFL));
+				}
+				lock.lock();
+				try {
+					int delta = value - peerInitialWindowSize;
+					peerInitialWindowSize = value;
+					for (Http2Stream stream : streams.values()) {
+						stream.sendWindow += delta;
+					}
+					changed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				break;
+			case SETTINGS_MAX_FRAME_SIZE:
+				if (value < DEFAULT_FRAME_SIZE || value > 0xFFFFFF) {
+					throw connectionError(PROTOCOL_ERROR, "SETTINGS_MAX_FRAME_SIZE " + value);
+				}
+				peerMaxFrameSize = value;
+				break;
+			default:
+				//unknown settings must be ignored
+			}
+		}
+		writeLock.lock();
+		try {
+			writeFrame(SETTINGS, FLAG_ACK, 0, EMPTY, 0, 0);
+			output.flush();
+		} finally {
+			writeLock.unlock();
+		}
+		transport.released(); //concurrency limit might be raised
+	}
+
+	private void onGoAway(int length) throws IOException {
+		if (length < 8) {
+			throw connectionError(FRAME_SIZE_ERROR, "GOAWAY length " + length);
+		}
+		int lastStreamId = getInt(payload, 0) & 0x7FFFFFFF;
+		int code = getInt(payload, 4);
+		logger.debug("GOAWAY received with error " + code + " and last stream " + lastStreamId);
+		List<Http2Stream> unprocessed = new ArrayList<Http2Stream>();
+		boolean drained;
+		lock.lock();
+		try {
+			goingAway = true;
+			for (Http2Stream stream : streams.values()) {
+				if (stream.id > lastStreamId) {
+					unprocessed.add(stream);
+				}
+			}
+			drained = streams.size() == unprocessed.size();
+		} finally {
+			lock.unlock();
+		}
+		for (Http2Stream stream : unprocessed) {
+			if (remove(stream)) {
+				if (stream.exchange.isResendable()) {
+					stream.exchange.retried();
+					transport.redispatch(stream.exchange);
+				} else {
+					stream.exchange.fail(new IOException("Connection closed by server with error " + code));
+				}
+			}
+		}
+		if (drained) {
+			close();
+		}
+	}
+
+	private void onWindowUpdate(int streamId, int length) throws IOException {
+		if (length != 4) {
+			throw connectionError(FRAME_SIZE_ERROR, "WINDOW_UPDATE length " + length);
+		}
+		int increment = getInt(payload, 0) & 0x7FFFFFFF;
+		if (increment == 0) {
+			throw connectionError(PROTOCOL_ERROR, "WINDOW_UPDATE increment 0");
+		}
+		lock.lock();
+		try {
+			if (streamId == 0) {
+				sendWindow += increment;
+			} else {
+				Http2Stream stream = streams.get(streamId);
+				if (stream != null) {
+					stream.sendWindow += increment;
+				}
+			}
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void complete(Http2Stream stream) {
+		if (remove(stream)) {
+			HttlRequest request = stream.exchange.request;
+			InputStream body = stream.body != null ? stream.body.toInputStream() : new ByteArrayInputStream(EMPTY);
+			stream.exchange.complete(new NioResponse(request, stream.status, "", stream.headers, body));
+		}
+	}
+
+	/**
+	 * Cancel stream on our side and let server know
+	 */
+	private void resetStream(Http2Stream stream, int code, Exception exception) {
+		if (remove(stream)) {
+			try {
+				writeLock.lock();
+				try {
+					byte[] bytes = new byte[4];
+					putInt(bytes, 0, code);
+					writeFrame(RST_STREAM, 0, stream.id, bytes, 0, 4);
+					output.flush();
+				} finally {
+					writeLock.unlock();
+				}
+			} catch (IOException iox) {
+				logger.debug("Failed to reset " + stream, iox);
+			}
+			stream.exchange.fail(exception);
+		}
+	}
+
+	/**
+	 * @return true when stream was active and now is removed
+	 */
+	private boolean remove(Http2Stream stream) {
+		lock.lock();
+		try {
+			if (stream.closed) {
+				return false;
+			}
+			stream.closed = true;
+			streams.remove(stream.id);
+			changed.signalAll(); //sender might be waiting for window of this stream
+		} finally {
+			lock.unlock();
+		}
+		unreserve();
+		return true;
+	}
+
+	/**
+	 * Stream slot is free again
+	 */
+	private void unreserve() {
+		lock.lock();
+		try {
+			if (--reserved == 0) {
+				idleSince = System.currentTimeMillis();
+			}
+		} finally {
+			lock.unlock();
+		}
+		transport.released();
+	}
+
+	/**
+	 * Called by transport timer. Expires streams, cancels streams of cancelled exchanges and closes idle connection
+	 */
+	public void checkTimeouts(long now) {
+		List<Http2Stream> expired = null;
+		boolean idle;
+		lock.lock();
+		try {
+			for (Http2Stream stream : streams.values()) {
+				//cancelled exchange is not notified again, it's stream is just reset
+				if (stream.deadline <= now || stream.exchange.isCompleted()) {
+					if (expired == null) {
+						expired = new ArrayList<Http2Stream>();
+					}
+					expired.add(stream);
+				}
+			}
+			idle = !closed && reserved == 0 && (goingAway || idleSince + config.getPoolReleaseTimeoutMillis() <= now);
+		} finally {
+			lock.unlock();
+		}
+		if (expired != null) {
+			for (Http2Stream stream : expired) {
+				resetStream(stream, CANCEL, new SocketTimeoutException("Read timeout " + stream.exchange.readTimeoutMillis
+						+ " ms"));
+			}
+		}
+		if (idle) {
+			close();
+		}
+	}
+
+	/**
+	 * Graceful close. Active streams are failed
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			goingAway = true;
+		} finally {
+			lock.unlock();
+		}
+		try {
+			writeLock.lock();
+			try {
+				writeGoAway(NO_ERROR);
+				output.flush();
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (IOException iox) {
+			logger.debug("Failed to send GOAWAY " + this, iox);
+		}
+		closed(new IOException("Transport closed"));
+	}
+
+	/**
+	 * Connection is broken. Idempotent requests without any response received are dispatched again
+	 */
+	private void closed(IOException exception) {
+		List<Http2Stream> active;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			active = new ArrayList<Http2Stream>(streams.values());
+		} finally {
+			lock.unlock();
+		}
+		try {
+			socket.close();
+		} catch (IOException iox) {
+			logger.debug("Exception while closing socket", iox);
+		}
+		for (Http2Stream stream : active) {
+			if (remove(stream)) {
+				if (!stream.responded && stream.exchange.isRetryable()) {
+					stream.exchange.retried();
+					transport.redispatch(stream.exchange);
+				} else {
+					stream.exchange.fail(exception);
+				}
+			}
+		}
+		transport.released();
+	}
+
+	private IOException connectionError(int code, String message) {
+		try {
+			writeLock.lock();
+			try {
+				writeGoAway(code);
+				output.flush();
+			} finally {
+				writeLock.unlock();
+			}
+		} catch (IOException iox) {
+			logger.debug("Failed to send GOAWAY " + this, iox);
+		}
+		return new IOException("HTTP/2 protocol error " + code + ": " + message);
+	}
+
+	private void writeGoAway(int code) throws IOException {
+		byte[] bytes = new byte[8];
+		lock.lock();
+		try {
+			putInt(bytes, 0, nextStreamId > 1 ? nextStreamId - 2 : 0);
+		} finally {
+			lock.unlock();
+		}
+		putInt(bytes, 4, code);
+		writeFrame(GOAWAY, 0, 0, bytes, 0, 8);
+	}
+
+	private void writeWindowUpdate(int streamId, int increment) throws IOException {
+		byte[] bytes = new byte[4];
+		putInt(bytes, 0, increment);
+		writeFrame(WINDOW_UPDATE, 0, streamId, bytes, 0, 4);
+	}
+
+	/**
+	 * Must be called under write lock
+	 */
+	private void writeFrame(int type, int flags, int streamId, byte[] bytes, int offset, int length) throws IOException {
+		frameHeader[0] = (byte) (length >>> 16);
+		frameHeader[1] = (byte) (length >>> 8);
+		frameHeader[2] = (byte) length;
+		frameHeader[3] = (byte) type;
+		frameHeader[4] = (byte) flags;
+		putInt(frameHeader, 5, streamId);
+		output.write(frameHeader);
+		output.write(bytes, offset, length);
+	}
+
+	private static void putSetting(byte[] bytes, int offset, int id, int value) {
+		bytes[offset] = (byte) (id >>> 8);
+		bytes[offset + 1] = (byte) id;
+		putInt(bytes, offset + 2, value);
+	}
+
+	static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	static int getInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8)
+				| (bytes[offset + 3] & 0xFF);
+	}
+
+	@Override
+	public String toString() {
+		return "Http2Connection [" + socket + "]";
+	}
+}
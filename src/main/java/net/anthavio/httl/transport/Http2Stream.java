@@ -0,0 +1,45 @@
+package net.anthavio.httl.transport;
+
+import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.transport.NioResponseParser.BodyBuffer;
+
+/**
+ * Single HTTP/2 stream carrying one NioExchange. Mutable state is guarded by lock of owning Http2Connection
+ *
+ * @author martin.vanek
+ *
+ */
+class Http2Stream {
+
+	final int id;
+
+	final NioExchange exchange;
+
+	int sendWindow; //how much we can send
+
+	int receiveUnacked; //received but not yet announced in WINDOW_UPDATE
+
+	long deadline; //read timeout
+
+	boolean responded; //some frame was received
+
+	boolean closed;
+
+	int status;
+
+	Multival<String> headers;
+
+	BodyBuffer body;
+
+	public Http2Stream(int id, NioExchange exchange, int sendWindow) {
+		this.id = id;
+		this.exchange = exchange;
+		this.sendWindow = sendWindow;
+		this.deadline = System.currentTimeMillis() + exchange.readTimeoutMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "Http2Stream [" + id + ", " + exchange + "]";
+	}
+}
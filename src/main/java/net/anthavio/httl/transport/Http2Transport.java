@@ -0,0 +1,383 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import net.anthavio.httl.Authentication;
+import net.anthavio.httl.Authentication.Scheme;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlTransport;
+import net.anthavio.httl.util.Base64;
+import net.anthavio.httl.util.Cutils;
+
+/**
+ * HTTP/2 implementation of the HttlTransport. No additional library is required
+ *
+ * Concurrent requests are multiplexed as streams over pooled connection(s). New connection is opened only when
+ * all existing reached max concurrent streams. Request is written by calling thread, HttlTransportCallback of asynchronous
+ * call is invoked from connection reader thread so it must not perform any blocking operation.
+ *
+ * Request body is buffered in memory before it is sent, except of file, which is streamed as flow control windows
+ * permit. Response body is buffered in memory before it is handed over.
+ *
+ * @author martin.vanek
+ *
+ */
+public class Http2Transport implements HttlTransport {
+
+	private static final Method SET_APPLICATION_PROTOCOLS = getMethod(SSLParameters.class, "setApplicationProtocols",
+			String[].class);
+
+	private static final Method GET_APPLICATION_PROTOCOL = getMethod(SSLSocket.class, "getApplicationProtocol");
+
+	private static final Method SET_ENDPOINT_IDENTIFICATION = getMethod(SSLParameters.class,
+			"setEndpointIdentificationAlgorithm", String.class);
+
+	private final Http2Config config;
+
+	private final InetSocketAddress address;
+
+	private final String scheme;
+
+	private final String hostHeader;
+
+	private final String authorizationHeader;
+
+	private final Http2Connection[] connections; //guarded by lock
+
+	private final boolean[] connecting; //guarded by lock
+
+	private int connectionIndex; //guarded by lock
+
+	private final Timer timer;
+
+	private volatile boolean closed;
+
+	private final ReentrantLock lock = new ReentrantLock(); //not monitor - waiting for stream slot must not pin virtual thread
+
+	private final Condition changed = lock.newCondition(); //stream slot released or connection added
+
+	public Http2Transport(Http2Config config) {
+		this.config = config;
+		URL url = config.getUrl();
+		this.scheme = url.getProtocol();
+		if (scheme.equals("https")) {
+			if (SET_APPLICATION_PROTOCOLS == null || GET_APPLICATION_PROTOCOL == null) {
+				throw new IllegalArgumentException("ALPN is not supported by this Java runtime. Use http (h2c) url");
+			}
+		} else if (!scheme.equals("http")) {
+			throw new IllegalArgumentException("Unsupported protocol: " + scheme + " Only http and https are supported");
+		}
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		this.address = new InetSocketAddress(url.getHost(), port);
+		this.hostHeader = port == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + port;
+
+		Authentication authentication = config.getAuthentication();
+		if (authentication != null) {
+			if (authentication.getScheme() != Scheme.BASIC) {
+				throw new IllegalArgumentException("Unsupported authentication: " + authentication.getScheme()
+						+ " Only BASIC is supported");
+			}
+			String encoded = Base64.encodeString(authentication.getUsername() + ":" + authentication.getPassword());
+			this.authorizationHeader = "Basic " + encoded;
+		} else {
+			this.authorizationHeader = null;
+		}
+
+		this.connections = new Http2Connection[config.getPoolMaximumSize()];
+		this.connecting = new boolean[connections.length];
+
+		this.timer = new Timer("httl-h2-" + url.getHost() + ":" + port, true);
+		this.timer.schedule(new TimerTask() {
+
+			@Override
+			public void run() {
+				checkTimeouts();
+			}
+		}, NioReactor.CHECK_INTERVAL_MILLIS, NioReactor.CHECK_INTERVAL_MILLIS);
+	}
+
+	@Override
+	public Http2Config getConfig() {
+		return config;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		timer.cancel();
+		Http2Connection[] snapshot;
+		lock.lock();
+		try {
+			snapshot = connections.clone();
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		for (Http2Connection connection : snapshot) {
+			if (connection != null) {
+				connection.close();
+			}
+		}
+	}
+
+	@Override
+	public HttlResponse call(HttlRequest request) throws IOException {
+		BlockingCallback callback = new BlockingCallback();
+		NioExchange exchange = NioTransport.createExchange(request, getReadTimeout(request), callback, false, false);
+		dispatch(exchange);
+		return callback.await(exchange);
+	}
+
+	@Override
+	public void call(HttlRequest request, HttlTransportCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("Null callback");
+		}
+		NioExchange exchange;
+		try {
+			exchange = NioTransport.createExchange(request, getReadTimeout(request), callback, true, false);
+		} catch (Exception x) {
+			callback.onRequestFailure(request, x);
+			return;
+		}
+		dispatch(exchange);
+	}
+
+	private int getReadTimeout(HttlRequest request) {
+		return request.getReadTimeoutMillis() != null ? request.getReadTimeoutMillis() : config.getReadTimeoutMillis();
+	}
+
+	/**
+	 * Send exchange as new stream. Blocks while connection is being opened or all streams are in use
+	 */
+	void dispatch(NioExchange exchange) {
+		while (true) {
+			Http2Connection connection;
+			try {
+				connection = acquire();
+			} catch (Exception x) {
+				exchange.fail(x);
+				return;
+			}
+			if (connection.send(exchange)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Dispatch exchange from connection reader thread, which must not block
+	 */
+	void redispatch(final NioExchange exchange) {
+		try {
+			timer.schedule(new TimerTask() {
+
+				@Override
+				public void run() {
+					dispatch(exchange);
+				}
+			}, 0);
+		} catch (IllegalStateException isx) {
+			exchange.fail(new IOException("Transport closed"));
+		}
+	}
+
+	/**
+	 * @return connection with reserved stream slot
+	 */
+	private Http2Connection acquire() throws IOException {
+		long deadline = System.currentTimeMillis() + config.getPoolAcquireTimeoutMillis();
+		int slot = -1;
+		lock.lock();
+		try {
+			search: while (true) {
+				if (closed) {
+					throw new IOException("Transport closed");
+				}
+				for (int i = 0; i < connections.length; ++i) {
+					int index = (connectionIndex + i) % connections.length;
+					Http2Connection connection = connections[index];
+					if (connection != null && connection.reserve()) {
+						connectionIndex = index + 1;
+						return connection;
+					}
+				}
+				for (int index = 0; index < connections.length; ++index) {
+					Http2Connection connection = connections[index];
+					if (!connecting[index] && (connection == null || !connection.isUsable())) {
+						connecting[index] = true;
+						slot = index;
+						break search;
+					}
+				}
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					throw new ConnectException("Pool timeout " + config.getPoolAcquireTimeoutMillis() + " ms");
+				}
+				try {
+					changed.await(wait, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException ix) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for connection", ix);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		//connect outside of the lock so other threads can use existing connections meanwhile
+		Http2Connection connection = null;
+		try {
+			connection = connect(slot);
+		} finally {
+			lock.lock();
+			try {
+				connecting[slot] = false;
+				if (connection != null) {
+					connections[slot] = connection;
+					connection.reserve();
+				}
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (closed) {
+			connection.close();
+			throw new IOException("Transport closed");
+		}
+		return connection;
+	}
+
+	private Http2Connection connect(int slot) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			try {
+				socket.connect(address, config.getConnectTimeoutMillis());
+			} catch (SocketTimeoutException stx) {
+				ConnectException cx = new ConnectException("Connect timeout " + config.getConnectTimeoutMillis() + " ms");
+				cx.setStackTrace(stx.getStackTrace());
+				throw cx;
+			} catch (ConnectException cx) {
+				ConnectException rx = new ConnectException("Connection refused " + config.getUrl());
+				rx.setStackTrace(cx.getStackTrace());
+				throw rx;
+			}
+			if (scheme.equals("https")) {
+				socket = handshake(socket);
+			}
+			String name = "httl-h2-" + address.getHostName() + ":" + address.getPort() + "-" + slot;
+			return new Http2Connection(this, socket, name);
+		} catch (IOException iox) {
+			Cutils.close(socket);
+			throw iox;
+		}
+	}
+
+	/**
+	 * TLS handshake negotiating h2 protocol using ALPN
+	 */
+	private Socket handshake(Socket socket) throws IOException {
+		SSLContext sslContext = config.getSslContext();
+		SSLSocketFactory factory = sslContext != null ? sslContext.getSocketFactory() : (SSLSocketFactory) SSLSocketFactory
+				.getDefault();
+		SSLSocket ssl = (SSLSocket) factory.createSocket(socket, address.getHostName(), address.getPort(), true);
+		SSLParameters parameters = ssl.getSSLParameters();
+		invoke(SET_ENDPOINT_IDENTIFICATION, parameters, "HTTPS");
+		invoke(SET_APPLICATION_PROTOCOLS, parameters, (Object) new String[] { "h2" });
+		ssl.setSSLParameters(parameters);
+		ssl.startHandshake();
+		Object protocol = invoke(GET_APPLICATION_PROTOCOL, ssl);
+		if (!"h2".equals(protocol)) {
+			throw new SSLException("Server did not negotiate h2 using ALPN: " + protocol);
+		}
+		return ssl;
+	}
+
+	private static Method getMethod(Class<?> clazz, String name, Class<?>... parameters) {
+		try {
+			return clazz.getMethod(name, parameters);
+		} catch (NoSuchMethodException nsmx) {
+			return null; //older Java runtime
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... arguments) throws IOException {
+		if (method == null) {
+			return null;
+		}
+		try {
+			return method.invoke(target, arguments);
+		} catch (InvocationTargetException itx) {
+			throw new SSLException(itx.getCause());
+		} catch (IllegalAccessException iax) {
+			throw new SSLException(iax);
+		}
+	}
+
+	/**
+	 * Stream was finished or connection closed - waiting requests might proceed
+	 */
+	void released() {
+		lock.lock();
+		try {
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void checkTimeouts() {
+		Http2Connection[] snapshot;
+		lock.lock();
+		try {
+			snapshot = connections.clone();
+		} finally {
+			lock.unlock();
+		}
+		long now = System.currentTimeMillis();
+		for (Http2Connection connection : snapshot) {
+			if (connection != null) {
+				connection.checkTimeouts(now);
+			}
+		}
+	}
+
+	String getScheme() {
+		return scheme;
+	}
+
+	String getHostHeader() {
+		return hostHeader;
+	}
+
+	String getAuthorizationHeader() {
+		return authorizationHeader;
+	}
+
+	@Override
+	public String toString() {
+		return "Http2Transport [" + config.getUrl() + "]";
+	}
+
+}
@@ -0,0 +1,197 @@
+package net.anthavio.httl.transport;
+
+import java.net.URL;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.DefaultClientAsyncConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.ClientAsyncConnection;
+import org.apache.http.nio.conn.ClientAsyncConnectionFactory;
+import org.apache.http.nio.conn.ManagedClientAsyncConnection;
+import org.apache.http.nio.conn.scheme.AsyncScheme;
+import org.apache.http.nio.conn.scheme.AsyncSchemeRegistry;
+import org.apache.http.nio.conn.ssl.SSLLayeringStrategy;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.params.HttpParams;
+
+/**
+ * http://hc.apache.org/httpcomponents-asyncclient-4.0.x/
+ *
+ * Shares pool, timeout, SSL and authentication settings with HttpClient4Config,
+ * but requests are executed by few nio reactor threads instead of one blocked thread per request.
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttpAsyncClient4Config extends HttpClient4Config {
+
+	private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+	public HttpAsyncClient4Config(String url) {
+		super(url);
+	}
+
+	public HttpAsyncClient4Config(URL url) {
+		super(url);
+	}
+
+	/**
+	 * Copy settings of existing HttpClient4Config
+	 */
+	public HttpAsyncClient4Config(HttpClient4Config config) {
+		super(config.getUrl());
+		setSslContext(config.getSslContext());
+		setAuthentication(config.getAuthentication());
+		setPoolMaximumSize(config.getPoolMaximumSize());
+		setConnectTimeoutMillis(config.getConnectTimeoutMillis());
+		setReadTimeoutMillis(config.getReadTimeoutMillis());
+		setFollowRedirects(config.getFollowRedirects());
+		setCharset(config.getCharset());
+		setPoolReleaseTimeoutMillis(config.getPoolReleaseTimeoutMillis());
+		setPoolAcquireTimeoutMillis(config.getPoolAcquireTimeoutMillis());
+	}
+
+	@Override
+	public HttpAsyncClient4Transport build() {
+		return new HttpAsyncClient4Transport(this);
+	}
+
+	@Override
+	public HttpAsyncClient4Config getSelf() {
+		return this;
+	}
+
+	public int getIoThreadCount() {
+		return ioThreadCount;
+	}
+
+	/**
+	 * Number of nio reactor threads. Default is number of available processors
+	 */
+	public HttpAsyncClient4Config setIoThreadCount(int ioThreadCount) {
+		this.ioThreadCount = ioThreadCount;
+		return getSelf();
+	}
+
+	/**
+	 * Returned client is not started yet
+	 */
+	public DefaultHttpAsyncClient newHttpAsyncClient() {
+		IOReactorConfig reactorConfig = new IOReactorConfig();
+		reactorConfig.setIoThreadCount(ioThreadCount);
+		reactorConfig.setConnectTimeout(getConnectTimeoutMillis());
+		reactorConfig.setSoTimeout(getReadTimeoutMillis());
+		reactorConfig.setTcpNoDelay(true);
+
+		PoolingClientAsyncConnectionManager connectionManager;
+		try {
+			DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(reactorConfig);
+			connectionManager = buildAsyncConnectionManager(ioReactor);
+		} catch (IOReactorException iox) {
+			throw new IllegalStateException("Failed to create IOReactor", iox);
+		}
+
+		DefaultHttpAsyncClient httpClient = new DefaultHttpAsyncClient(connectionManager);
+		HttpParams httpParams = httpClient.getParams();
+		buildClientParams(httpParams, getUrl());
+		buildConnectionParams(httpParams);
+		buildProtocolParams(httpParams);
+
+		buildAuthentication(httpClient.getCredentialsProvider());
+
+		return httpClient;
+	}
+
+	protected PoolingClientAsyncConnectionManager buildAsyncConnectionManager(DefaultConnectingIOReactor ioReactor) {
+		AsyncSchemeRegistry schemeRegistry = new AsyncSchemeRegistry();
+		schemeRegistry.register(new AsyncScheme("http", 80, null));
+
+		SSLContext sslContext = getSslContext();
+		if (sslContext != null) {
+			schemeRegistry.register(new AsyncScheme("https", 443, new SSLLayeringStrategy(sslContext)));
+		} else {
+			schemeRegistry.register(new AsyncScheme("https", 443, SSLLayeringStrategy.getDefaultStrategy()));
+		}
+
+		//we access only one host
+		PoolingClientAsyncConnectionManager connectionManager = new MeteredAsyncConnectionManager(ioReactor,
+				schemeRegistry, getPoolReleaseTimeoutMillis(), TimeUnit.MILLISECONDS);
+		connectionManager.setMaxTotal(getPoolMaximumSize());
+		connectionManager.setDefaultMaxPerRoute(getPoolMaximumSize());
+		return connectionManager;
+	}
+
+	/**
+	 * PoolingClientAsyncConnectionManager counting opened connections and measuring lease wait time
+	 */
+	static class MeteredAsyncConnectionManager extends PoolingClientAsyncConnectionManager {
+
+		private final PoolMeter meter = new PoolMeter();
+
+		public MeteredAsyncConnectionManager(ConnectingIOReactor ioreactor, AsyncSchemeRegistry schemeRegistry,
+				long timeToLive, TimeUnit unit) {
+			super(ioreactor, schemeRegistry, timeToLive, unit);
+		}
+
+		public PoolMeter getMeter() {
+			return meter;
+		}
+
+		/**
+		 * Called from super constructor - meter field is not yet initialized here
+		 */
+		@Override
+		protected ClientAsyncConnectionFactory createClientAsyncConnectionFactory() {
+			return new DefaultClientAsyncConnectionFactory() {
+
+				@Override
+				public ClientAsyncConnection create(String id, IOSession iosession, HttpParams params) {
+					ClientAsyncConnection connection = super.create(id, iosession, params);
+					meter.created.incrementAndGet();
+					return connection;
+				}
+			};
+		}
+
+		@Override
+		public Future<ManagedClientAsyncConnection> leaseConnection(HttpRoute route, Object state, long connectTimeout,
+				TimeUnit tunit, final FutureCallback<ManagedClientAsyncConnection> callback) {
+			final long start = System.nanoTime();
+			return super.leaseConnection(route, state, connectTimeout, tunit,
+					new FutureCallback<ManagedClientAsyncConnection>() {
+
+						@Override
+						public void completed(ManagedClientAsyncConnection connection) {
+							meter.acquired(System.nanoTime() - start);
+							if (callback != null) {
+								callback.completed(connection);
+							}
+						}
+
+						@Override
+						public void failed(Exception exception) {
+							if (callback != null) {
+								callback.failed(exception);
+							}
+						}
+
+						@Override
+						public void cancelled() {
+							if (callback != null) {
+								callback.cancelled();
+							}
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import javax.net.ssl.SSLException;
+
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.transport.HttpAsyncClient4Config.MeteredAsyncConnectionManager;
+import net.anthavio.httl.util.Cutils;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.nio.conn.ClientAsyncConnectionManager;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous call does not block calling thread. HttlTransportCallback is invoked from nio reactor thread
+ * so it must not perform any blocking operation.
+ *
+ * Response body is buffered in memory before it is handed over.
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttpAsyncClient4Transport implements HttlPoolingTransport {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final HttpAsyncClient4Config config;
+
+	private final DefaultHttpAsyncClient httpClient;
+
+	private final HttpHost target; //async client ignores ClientPNames.DEFAULT_HOST
+
+	public HttpAsyncClient4Transport(HttpAsyncClient4Config config) {
+		this.config = config;
+		URL url = config.getUrl();
+		this.target = new HttpHost(url.getHost(), url.getPort(), url.getProtocol());
+		this.httpClient = config.newHttpAsyncClient();
+		this.httpClient.start();
+	}
+
+	@Override
+	public HttpAsyncClient4Config getConfig() {
+		return config;
+	}
+
+	@Override
+	public void close() {
+		try {
+			httpClient.shutdown();
+		} catch (Exception x) {
+			logger.warn("Exception while closing sender", x);
+		}
+	}
+
+	/**
+	 * Created/closed connections and acquire wait time are only counted when connection manager was built by 
+	 * HttpAsyncClient4Config
+	 */
+	@Override
+	public HttlPoolStats getPoolStats() {
+		ClientAsyncConnectionManager manager = httpClient.getConnectionManager();
+		if (!(manager instanceof PoolingClientAsyncConnectionManager)) {
+			return null;
+		}
+		PoolStats stats = ((PoolingClientAsyncConnectionManager) manager).getTotalStats();
+		PoolMeter meter = manager instanceof MeteredAsyncConnectionManager ? ((MeteredAsyncConnectionManager) manager)
+				.getMeter() : new PoolMeter();
+		return meter.stats(stats.getMax(), stats.getLeased(), stats.getAvailable(), stats.getPending());
+	}
+
+	/**
+	 * Leak implementation to allow hacking
+	 */
+	public DefaultHttpAsyncClient getHttpClient() {
+		return httpClient;
+	}
+
+	@Override
+	public HttpClient4Response call(HttlRequest request) throws IOException {
+		HttpRequestBase httpRequest = HttpClient4Transport.convertRequest(request);
+		HttpContext context = new BasicHttpContext(config.getAuthContext());
+		Future<HttpResponse> future = httpClient.execute(target, httpRequest, context, null);
+		HttpResponse httpResponse;
+		try {
+			httpResponse = future.get();
+		} catch (InterruptedException ix) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for response");
+			iiox.initCause(ix);
+			throw iiox;
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+			throw translateException(httpRequest, context, cause);
+		}
+		return convertResponse(request, httpResponse);
+	}
+
+	@Override
+	public void call(final HttlRequest request, final HttlTransportCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("Null callback");
+		}
+		final HttpRequestBase httpRequest;
+		try {
+			httpRequest = HttpClient4Transport.convertRequest(request);
+		} catch (Exception x) {
+			callback.onRequestFailure(request, x);
+			return;
+		}
+		final HttpContext context = new BasicHttpContext(config.getAuthContext());
+		httpClient.execute(target, httpRequest, context, new FutureCallback<HttpResponse>() {
+
+			@Override
+			public void completed(HttpResponse httpResponse) {
+				HttlResponse response;
+				try {
+					response = convertResponse(request, httpResponse);
+				} catch (Exception x) {
+					callback.onResponseFailure(request, x);
+					return;
+				}
+				try {
+					callback.onResponse(response);
+				} catch (Exception x) {
+					logger.warn("Callback failed to process " + response, x);
+				} finally {
+					Cutils.close(response);
+				}
+			}
+
+			@Override
+			public void failed(Exception exception) {
+				IOException iox = translateException(httpRequest, context, exception);
+				if (iox instanceof ConnectException || iox instanceof SSLException) {
+					callback.onRequestFailure(request, iox);
+				} else {
+					callback.onResponseFailure(request, iox);
+				}
+			}
+
+			@Override
+			public void cancelled() {
+				callback.onRequestFailure(request, new InterruptedIOException("Request cancelled"));
+			}
+		});
+	}
+
+	protected HttpClient4Response convertResponse(HttlRequest request, HttpResponse httpResponse) throws IOException {
+		Multival<String> outHeaders = HttpClient4Transport.convertHeaders(httpResponse.getAllHeaders());
+		StatusLine statusLine = httpResponse.getStatusLine();
+		HttpEntity entity = httpResponse.getEntity();
+		InputStream responseStream = entity != null ? entity.getContent() : null;
+		return new HttpClient4Response(request, statusLine.getStatusCode(), statusLine.getReasonPhrase(), outHeaders,
+				responseStream, httpResponse);
+	}
+
+	protected IOException translateException(HttpRequestBase httpRequest, HttpContext context, Throwable exception) {
+		if (exception instanceof TimeoutException) {
+			//lease from pool timeouted
+			ConnectException ctx = new ConnectException("Pool timeout " + config.getPoolAcquireTimeoutMillis() + " ms");
+			ctx.setStackTrace(exception.getStackTrace());
+			return ctx;
+		} else if (exception instanceof ConnectException) {
+			ConnectException ctx = new ConnectException("Connection refused " + config.getUrl());
+			ctx.setStackTrace(exception.getStackTrace());
+			return ctx;
+		} else if (exception instanceof SocketTimeoutException) {
+			if (context.getAttribute(ExecutionContext.HTTP_CONNECTION) == null) {
+				//connection was not established yet
+				ConnectException ctx = new ConnectException("Connect timeout " + config.getConnectTimeoutMillis() + " ms");
+				ctx.setStackTrace(exception.getStackTrace());
+				return ctx;
+			} else {
+				int timeout = httpRequest.getParams().getIntParameter(CoreConnectionPNames.SO_TIMEOUT,
+						config.getReadTimeoutMillis());
+				SocketTimeoutException stx = new SocketTimeoutException("Read timeout " + timeout + " ms");
+				stx.setStackTrace(exception.getStackTrace());
+				return stx;
+			}
+		} else if (exception instanceof IOException) {
+			return (IOException) exception;
+		} else {
+			IOException iox = new IOException(exception.getMessage());
+			iox.initCause(exception);
+			return iox;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "HttpAsyncClient4Transport [" + config.getUrl() + "]";
+	}
+}
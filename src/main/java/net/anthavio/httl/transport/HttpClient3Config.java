@@ -5,6 +5,7 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLSocketFactory;
 
@@ -13,8 +14,10 @@ import net.anthavio.httl.Authentication.Scheme;
 import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
 
 import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
 import org.apache.commons.httpclient.HttpVersion;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
@@ -38,6 +41,12 @@ public class HttpClient3Config extends BaseTransBuilder<HttpClient3Config> {
 
 	private int poolAcquireTimeoutMillis = 3 * 1000;
 
+	private int poolMaxIdleMillis = 0; //disabled
+
+	private int poolMaxLifetimeMillis = 0; //unlimited
+
+	private int poolValidateAfterInactivityMillis = -1; //stale check before every request
+
 	public HttpClient3Config(String url) {
 		super(url);
 	}
@@ -74,6 +83,43 @@ public class HttpClient3Config extends BaseTransBuilder<HttpClient3Config> {
 		return getSelf();
 	}
 
+	public int getPoolMaxIdleMillis() {
+		return poolMaxIdleMillis;
+	}
+
+	/**
+	 * Connections idle in pool longer are closed by background reaper. 0 disables reaping
+	 */
+	public HttpClient3Config setPoolMaxIdleMillis(int millis) {
+		this.poolMaxIdleMillis = millis;
+		return getSelf();
+	}
+
+	public int getPoolMaxLifetimeMillis() {
+		return poolMaxLifetimeMillis;
+	}
+
+	/**
+	 * Connection older than millis is closed when returned into pool. 0 means unlimited
+	 */
+	public HttpClient3Config setPoolMaxLifetimeMillis(int millis) {
+		this.poolMaxLifetimeMillis = millis;
+		return getSelf();
+	}
+
+	public int getPoolValidateAfterInactivityMillis() {
+		return poolValidateAfterInactivityMillis;
+	}
+
+	/**
+	 * Replaces stale connection check before every request with check of connections idle longer than millis. 
+	 * Negative value (default) keeps stale check for every request.
+	 */
+	public HttpClient3Config setPoolValidateAfterInactivityMillis(int millis) {
+		this.poolValidateAfterInactivityMillis = millis;
+		return getSelf();
+	}
+
 	/**
 	 * http://hc.apache.org/httpclient-3.x/preference-api.html
 	 */
@@ -85,7 +131,8 @@ public class HttpClient3Config extends BaseTransBuilder<HttpClient3Config> {
 		clientParams.setHttpElementCharset(getCharset());
 		clientParams.setConnectionManagerTimeout(poolAcquireTimeoutMillis); //http.connection-manager.timeout
 
-		MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+		MultiThreadedHttpConnectionManager connectionManager = new MeteredHttpConnectionManager(poolMaxLifetimeMillis,
+				poolValidateAfterInactivityMillis);
 		HttpConnectionManagerParams managerParams = new HttpConnectionManagerParams();
 		HostConfiguration hostConfig = new HostConfiguration();
 
@@ -122,6 +169,117 @@ public class HttpClient3Config extends BaseTransBuilder<HttpClient3Config> {
 		return httpClient;
 	}
 
+	/**
+	 * MultiThreadedHttpConnectionManager counting leased, opened and closed connections and measuring lease wait time.
+	 * 
+	 * Connection is counted as opened when it is leased closed (HttpMethodDirector opens it) and as closed when it 
+	 * is released closed or when it is closed as idle.
+	 * 
+	 * Per connection HttpConnectionParams are used to keep open and release time and to enable stale check only 
+	 * for connection that was inactive for too long.
+	 * 
+	 * @author martin.vanek
+	 *
+	 */
+	static class MeteredHttpConnectionManager extends MultiThreadedHttpConnectionManager {
+
+		private static final String OPENED = "httl.connection.opened";
+
+		private static final String RELEASED = "httl.connection.released";
+
+		private final PoolMeter meter = new PoolMeter();
+
+		private final AtomicInteger leased = new AtomicInteger();
+
+		private final int maxLifetimeMillis;
+
+		private final int validateAfterInactivityMillis;
+
+		public MeteredHttpConnectionManager() {
+			this(0, -1);
+		}
+
+		/**
+		 * @param maxLifetimeMillis - 0 means unlimited
+		 * @param validateAfterInactivityMillis - negative disables validation
+		 */
+		public MeteredHttpConnectionManager(int maxLifetimeMillis, int validateAfterInactivityMillis) {
+			this.maxLifetimeMillis = maxLifetimeMillis;
+			this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+		}
+
+		public PoolMeter getMeter() {
+			return meter;
+		}
+
+		public int getLeased() {
+			return leased.get();
+		}
+
+		@Override
+		public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+				throws ConnectionPoolTimeoutException {
+			meter.pending.incrementAndGet();
+			long start = System.nanoTime();
+			HttpConnection connection;
+			try {
+				connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+			} finally {
+				meter.pending.decrementAndGet();
+			}
+			meter.acquired(System.nanoTime() - start);
+			leased.incrementAndGet();
+			HttpConnectionParams params = connection.getParams();
+			long now = System.currentTimeMillis();
+			boolean open = connection.isOpen();
+			if (!open) {
+				meter.created.incrementAndGet();
+				params.setLongParameter(OPENED, now);
+			}
+			if (validateAfterInactivityMillis >= 0) {
+				long released = params.getLongParameter(RELEASED, now);
+				params.setStaleCheckingEnabled(open && now - released > validateAfterInactivityMillis);
+			}
+			return connection;
+		}
+
+		@Override
+		public void releaseConnection(HttpConnection connection) {
+			HttpConnectionParams params = connection.getParams();
+			long now = System.currentTimeMillis();
+			if (maxLifetimeMillis > 0 && connection.isOpen()
+					&& now - params.getLongParameter(OPENED, now) > maxLifetimeMillis) {
+				connection.close();
+			}
+			boolean open = connection.isOpen();
+			if (open) {
+				params.setLongParameter(RELEASED, now);
+			} else {
+				meter.closed.incrementAndGet();
+			}
+			leased.decrementAndGet();
+			super.releaseConnection(connection);
+			if (!open) {
+				deleteClosedConnections(); //do not keep it as available
+			}
+		}
+
+		@Override
+		public void closeIdleConnections(long idleTimeout) {
+			int before = getConnectionsInPool();
+			super.closeIdleConnections(idleTimeout);
+			deleteClosedConnections();
+			meter.closed.addAndGet(Math.max(0, before - getConnectionsInPool()));
+		}
+
+		@Override
+		public synchronized void shutdown() {
+			deleteClosedConnections();
+			meter.closed.addAndGet(getConnectionsInPool());
+			super.shutdown();
+		}
+	}
+
 	/**
 	 * http://hc.apache.org/httpclient-3.x/sslguide.html
 	 * 
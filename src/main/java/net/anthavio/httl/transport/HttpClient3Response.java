@@ -37,6 +37,14 @@ public class HttpClient3Response extends HttlResponse {
 		}
 	*/
 
+	/**
+	 * Closing response stream reads it to the end, so connection is aborted instead
+	 */
+	@Override
+	protected void abortConnection() {
+		httpMethod.abort();
+	}
+
 	/**
 	 * Hackish access to HttpMethod
 	 */
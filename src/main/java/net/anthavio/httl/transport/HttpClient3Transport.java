@@ -1,5 +1,6 @@
 package net.anthavio.httl.transport;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -7,23 +8,29 @@ import java.io.Reader;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.util.List;
+import java.util.Timer;
 
 import net.anthavio.httl.HttlBody;
 import net.anthavio.httl.HttlBodyMarshaller;
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
 import net.anthavio.httl.HttlRequest;
 import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.transport.HttpClient3Config.MeteredHttpConnectionManager;
 import net.anthavio.httl.util.ReaderInputStream;
 
 import org.apache.commons.httpclient.ConnectTimeoutException;
 import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.StatusLine;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.FileRequestEntity;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
@@ -41,7 +48,7 @@ import org.slf4j.LoggerFactory;
  * @author martin.vanek
  *
  */
-public class HttpClient3Transport extends FakeAsyncTransport {
+public class HttpClient3Transport extends FakeAsyncTransport implements HttlPoolingTransport {
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -49,9 +56,21 @@ public class HttpClient3Transport extends FakeAsyncTransport {
 
 	private final HttpClient3Config config;
 
+	private final Timer reaper; //can be null
+
 	public HttpClient3Transport(HttpClient3Config config) {
 		this.config = config;
 		this.httpClient = config.newHttpClient();
+		final HttpConnectionManager manager = httpClient.getHttpConnectionManager();
+		final long maxIdle = config.getPoolMaxIdleMillis();
+		//maximum lifetime is enforced when connection is released
+		this.reaper = PoolReaper.start(config.getUrl(), config.getPoolMaxIdleMillis(), 0, new Runnable() {
+
+			@Override
+			public void run() {
+				manager.closeIdleConnections(maxIdle);
+			}
+		});
 	}
 
 	@Override
@@ -61,6 +80,9 @@ public class HttpClient3Transport extends FakeAsyncTransport {
 
 	@Override
 	public void close() {
+		if (reaper != null) {
+			reaper.cancel();
+		}
 		try {
 			if (httpClient.getHttpConnectionManager() instanceof MultiThreadedHttpConnectionManager) {
 				MultiThreadedHttpConnectionManager connectionManager = (MultiThreadedHttpConnectionManager) httpClient
@@ -73,6 +95,22 @@ public class HttpClient3Transport extends FakeAsyncTransport {
 		}
 	}
 
+	/**
+	 * Only available when connection manager was built by HttpClient3Config
+	 */
+	@Override
+	public HttlPoolStats getPoolStats() {
+		if (!(httpClient.getHttpConnectionManager() instanceof MeteredHttpConnectionManager)) {
+			return null;
+		}
+		MeteredHttpConnectionManager manager = (MeteredHttpConnectionManager) httpClient.getHttpConnectionManager();
+		PoolMeter meter = manager.getMeter();
+		int leased = manager.getLeased();
+		int available = Math.max(0, manager.getConnectionsInPool() - leased);
+		return meter.stats(manager.getParams().getMaxTotalConnections(), leased, available, meter.pending.get(),
+				meter.closed.get());
+	}
+
 	/**
 	 * Backdoor
 	 */
@@ -162,7 +200,12 @@ public class HttpClient3Transport extends FakeAsyncTransport {
 				entity = new StringRequestEntity((String) body.getPayload(), null, request.getCharset());
 				break;
 			case BYTES:
-				entity = new ByteArrayRequestEntity((byte[]) body.getPayload());
+				byte[] bytes = (byte[]) body.getPayload();
+				if (body.getLength() == bytes.length) {
+					entity = new ByteArrayRequestEntity(bytes);
+				} else {
+					entity = new ByteRangeEntity(bytes, body.getLength());
+				}
 				break;
 			case STREAM:
 				entity = new InputStreamRequestEntity((InputStream) body.getPayload());
@@ -170,6 +213,9 @@ public class HttpClient3Transport extends FakeAsyncTransport {
 			case READER:
 				entity = new InputStreamRequestEntity(new ReaderInputStream((Reader) body.getPayload()));
 				break;
+			case FILE:
+				entity = new FileRequestEntity((File) body.getPayload(), null);
+				break;
 			default:
 				throw new IllegalStateException("Unsupported HttlBody type: " + body.getType());
 			}
@@ -211,6 +257,41 @@ public class HttpClient3Transport extends FakeAsyncTransport {
 		}
 	}
 
+	/**
+	 * ByteArrayRequestEntity always sends whole array
+	 */
+	private static class ByteRangeEntity implements RequestEntity {
+
+		private final byte[] bytes;
+
+		private final int length;
+
+		private ByteRangeEntity(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public void writeRequest(OutputStream stream) throws IOException {
+			stream.write(bytes, 0, length);
+		}
+
+		@Override
+		public long getContentLength() {
+			return length;
+		}
+
+		@Override
+		public String getContentType() {
+			return null; //we set ContentType before
+		}
+	}
+
 	private static class MarshallableEntity implements RequestEntity {
 
 		private final HttlRequest request;
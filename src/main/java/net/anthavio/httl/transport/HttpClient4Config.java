@@ -1,7 +1,11 @@
 package net.anthavio.httl.transport;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
@@ -10,6 +14,7 @@ import net.anthavio.httl.Authentication;
 import net.anthavio.httl.HttlTransport;
 import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
 
+import org.apache.http.HttpConnectionMetrics;
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
@@ -26,6 +31,12 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.params.ClientParamBean;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -34,6 +45,7 @@ import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.auth.DigestScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParamBean;
@@ -54,6 +66,12 @@ public class HttpClient4Config extends BaseTransBuilder<HttpClient4Config> {
 
 	private int poolAcquireTimeoutMillis = 3 * 1000;
 
+	private int poolMaxIdleMillis = 0; //disabled
+
+	private int poolMaxLifetimeMillis = 0; //poolReleaseTimeoutMillis is used
+
+	private int poolValidateAfterInactivityMillis = -1; //stale check before every request
+
 	private HttpContext authContext;
 
 	public HttpClient4Config(String url) {
@@ -87,11 +105,19 @@ public class HttpClient4Config extends BaseTransBuilder<HttpClient4Config> {
 
 		DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, httpParams);
 
+		buildAuthentication(httpClient.getCredentialsProvider());
+
+		return httpClient;
+	}
+
+	/**
+	 * Register Authentication credentials and prepare preemptive authentication context
+	 */
+	protected void buildAuthentication(CredentialsProvider provider) {
 		if (getAuthentication() != null) {
 			Authentication authentication = getAuthentication();
 			UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(authentication.getUsername(),
 					authentication.getPassword());
-			CredentialsProvider provider = httpClient.getCredentialsProvider();
 			AuthScope scope = new AuthScope(getUrl().getHost(), getUrl().getPort(), authentication.getRealm()/*, authentication
 																																																								.getScheme().toString()*/);
 			provider.setCredentials(scope, credentials);
@@ -118,8 +144,6 @@ public class HttpClient4Config extends BaseTransBuilder<HttpClient4Config> {
 			}
 
 		}
-
-		return httpClient;
 	}
 
 	protected ClientParamBean buildClientParams(HttpParams httpParams, URL url) {
@@ -135,6 +159,9 @@ public class HttpClient4Config extends BaseTransBuilder<HttpClient4Config> {
 		HttpConnectionParamBean connectionBean = new HttpConnectionParamBean(httpParams);
 		connectionBean.setConnectionTimeout(getConnectTimeoutMillis());//httpParams.setParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, 1000L);
 		connectionBean.setSoTimeout(getReadTimeoutMillis());//httpParams.setParameter(CoreConnectionPNames.SO_TIMEOUT, 5000L);
+		if (poolValidateAfterInactivityMillis >= 0) {
+			connectionBean.setStaleCheckingEnabled(false); //MeteredConnectionManager checks only inactive connections
+		}
 		return connectionBean;
 	}
 
@@ -161,8 +188,9 @@ public class HttpClient4Config extends BaseTransBuilder<HttpClient4Config> {
 		}
 
 		//we access only one host
-		PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry,
-				this.poolReleaseTimeoutMillis, TimeUnit.MILLISECONDS);
+		int timeToLive = poolMaxLifetimeMillis > 0 ? poolMaxLifetimeMillis : poolReleaseTimeoutMillis;
+		PoolingClientConnectionManager connectionManager = new MeteredConnectionManager(schemeRegistry, timeToLive,
+				TimeUnit.MILLISECONDS, poolValidateAfterInactivityMillis);
 		connectionManager.setMaxTotal(getPoolMaximumSize());
 		connectionManager.setDefaultMaxPerRoute(getPoolMaximumSize());
 		return connectionManager;
@@ -184,6 +212,137 @@ public class HttpClient4Config extends BaseTransBuilder<HttpClient4Config> {
 		this.poolAcquireTimeoutMillis = millis;
 	}
 
+	public int getPoolMaxIdleMillis() {
+		return poolMaxIdleMillis;
+	}
+
+	/**
+	 * Connections idle in pool longer are closed by background reaper. 0 disables reaping
+	 */
+	public HttpClient4Config setPoolMaxIdleMillis(int millis) {
+		this.poolMaxIdleMillis = millis;
+		return getSelf();
+	}
+
+	public int getPoolMaxLifetimeMillis() {
+		return poolMaxLifetimeMillis;
+	}
+
+	/**
+	 * Connection time to live. Expired connections are not reused and they are closed by background reaper.
+	 * When not set, poolReleaseTimeoutMillis is used as time to live and no reaper is started
+	 */
+	public HttpClient4Config setPoolMaxLifetimeMillis(int millis) {
+		this.poolMaxLifetimeMillis = millis;
+		return getSelf();
+	}
+
+	public int getPoolValidateAfterInactivityMillis() {
+		return poolValidateAfterInactivityMillis;
+	}
+
+	/**
+	 * Replaces stale connection check before every request with check of connections idle longer than millis. 
+	 * Negative value (default) keeps stale check for every request.
+	 */
+	public HttpClient4Config setPoolValidateAfterInactivityMillis(int millis) {
+		this.poolValidateAfterInactivityMillis = millis;
+		return getSelf();
+	}
+
+	/**
+	 * PoolingClientConnectionManager counting opened connections and measuring lease wait time
+	 */
+	static class MeteredConnectionManager extends PoolingClientConnectionManager {
+
+		private final PoolMeter meter = new PoolMeter();
+
+		private final int validateAfterInactivityMillis;
+
+		//HttpConnectionMetrics instance is bound to physical connection, unlike ManagedClientConnection
+		private final Map<HttpConnectionMetrics, Long> released = Collections
+				.synchronizedMap(new WeakHashMap<HttpConnectionMetrics, Long>());
+
+		public MeteredConnectionManager(SchemeRegistry schemeRegistry, long timeToLive, TimeUnit unit) {
+			this(schemeRegistry, timeToLive, unit, -1);
+		}
+
+		/**
+		 * @param validateAfterInactivityMillis - negative disables validation
+		 */
+		public MeteredConnectionManager(SchemeRegistry schemeRegistry, long timeToLive, TimeUnit unit,
+				int validateAfterInactivityMillis) {
+			super(schemeRegistry, timeToLive, unit);
+			this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+		}
+
+		public PoolMeter getMeter() {
+			return meter;
+		}
+
+		/**
+		 * Called from super constructor - meter field is not yet initialized here
+		 */
+		@Override
+		protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schemeRegistry) {
+			return new DefaultClientConnectionOperator(schemeRegistry) {
+
+				@Override
+				public void openConnection(OperatedClientConnection connection, HttpHost target, InetAddress local,
+						HttpContext context, HttpParams params) throws IOException {
+					super.openConnection(connection, target, local, context, params);
+					meter.created.incrementAndGet();
+				}
+			};
+		}
+
+		@Override
+		public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+			final ClientConnectionRequest request = super.requestConnection(route, state);
+			return new ClientConnectionRequest() {
+
+				@Override
+				public ManagedClientConnection getConnection(long timeout, TimeUnit tunit) throws InterruptedException,
+						ConnectionPoolTimeoutException {
+					long start = System.nanoTime();
+					ManagedClientConnection connection = request.getConnection(timeout, tunit);
+					meter.acquired(System.nanoTime() - start);
+					if (validateAfterInactivityMillis >= 0 && connection.isOpen()) {
+						validate(connection);
+					}
+					return connection;
+				}
+
+				@Override
+				public void abortRequest() {
+					request.abortRequest();
+				}
+			};
+		}
+
+		/**
+		 * Closed connection is opened again by request director
+		 */
+		private void validate(ManagedClientConnection connection) {
+			Long releasedAt = released.remove(connection.getMetrics());
+			if (releasedAt != null && System.currentTimeMillis() - releasedAt > validateAfterInactivityMillis
+					&& connection.isStale()) {
+				try {
+					connection.close();
+				} catch (IOException iox) {
+					//ignore
+				}
+			}
+		}
+
+		@Override
+		public void releaseConnection(ManagedClientConnection connection, long keepalive, TimeUnit tunit) {
+			if (validateAfterInactivityMillis >= 0 && connection.isOpen() && connection.isMarkedReusable()) {
+				released.put(connection.getMetrics(), System.currentTimeMillis());
+			}
+			super.releaseConnection(connection, keepalive, tunit);
+		}
+	}
 }
 
 class PreemptiveAuthInterceptor implements HttpRequestInterceptor {
@@ -8,6 +8,7 @@ import net.anthavio.httl.HttlResponse;
 import net.anthavio.httl.HttlSender.Multival;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionReleaseTrigger;
 
 /**
  * 
@@ -36,6 +37,18 @@ public class HttpClient4Response extends HttlResponse {
 		}
 	*/
 
+	/**
+	 * Closing managed entity stream reads it to the end, so connection is aborted instead
+	 */
+	@Override
+	protected void abortConnection() throws IOException {
+		if (rawStream instanceof ConnectionReleaseTrigger) {
+			((ConnectionReleaseTrigger) rawStream).abortConnection();
+		} else {
+			super.abortConnection();
+		}
+	}
+
 	/**
 	 * Hackish access to HttpResponse
 	 */
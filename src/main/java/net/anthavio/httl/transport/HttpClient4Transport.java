@@ -1,5 +1,8 @@
 package net.anthavio.httl.transport;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -8,11 +11,16 @@ import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.util.List;
+import java.util.Timer;
+import java.util.concurrent.TimeUnit;
 
 import net.anthavio.httl.HttlBody;
 import net.anthavio.httl.HttlBodyMarshaller;
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
 import net.anthavio.httl.HttlRequest;
 import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.transport.HttpClient4Config.MeteredConnectionManager;
 import net.anthavio.httl.util.ReaderInputStream;
 
 import org.apache.http.Header;
@@ -29,14 +37,18 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.conn.HttpHostConnectException;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,7 +57,7 @@ import org.slf4j.LoggerFactory;
  * @author martin.vanek
  *
  */
-public class HttpClient4Transport extends FakeAsyncTransport {
+public class HttpClient4Transport extends FakeAsyncTransport implements HttlPoolingTransport {
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -53,9 +65,24 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 
 	private final HttpClient4Config config;
 
+	private final Timer reaper; //can be null
+
 	public HttpClient4Transport(HttpClient4Config config) {
 		this.config = config;
 		this.httpClient = config.newHttpClient();
+		final ClientConnectionManager manager = httpClient.getConnectionManager();
+		final long maxIdle = config.getPoolMaxIdleMillis();
+		this.reaper = PoolReaper.start(config.getUrl(), config.getPoolMaxIdleMillis(), config.getPoolMaxLifetimeMillis(),
+				new Runnable() {
+
+					@Override
+					public void run() {
+						manager.closeExpiredConnections();
+						if (maxIdle > 0) {
+							manager.closeIdleConnections(maxIdle, TimeUnit.MILLISECONDS);
+						}
+					}
+				});
 	}
 
 	@Override
@@ -65,6 +92,9 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 
 	@Override
 	public void close() {
+		if (reaper != null) {
+			reaper.cancel();
+		}
 		try {
 			httpClient.getConnectionManager().shutdown();
 		} catch (Exception x) {
@@ -72,6 +102,22 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 		}
 	}
 
+	/**
+	 * Only available with PoolingClientConnectionManager. Created/closed connections and acquire wait time are 
+	 * only counted when connection manager was built by HttpClient4Config
+	 */
+	@Override
+	public HttlPoolStats getPoolStats() {
+		ClientConnectionManager manager = httpClient.getConnectionManager();
+		if (!(manager instanceof PoolingClientConnectionManager)) {
+			return null;
+		}
+		PoolStats stats = ((PoolingClientConnectionManager) manager).getTotalStats();
+		PoolMeter meter = manager instanceof MeteredConnectionManager ? ((MeteredConnectionManager) manager).getMeter()
+				: new PoolMeter();
+		return meter.stats(stats.getMax(), stats.getLeased(), stats.getAvailable(), stats.getPending());
+	}
+
 	/*
 	public void reset() {
 		try {
@@ -91,7 +137,26 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 
 	@Override
 	public HttpClient4Response call(HttlRequest request) throws IOException {
+		HttpRequestBase httpRequest = convertRequest(request);
+
+		HttpResponse httpResponse = call(httpRequest);
+
+		Multival<String> outHeaders = convertHeaders(httpResponse.getAllHeaders());
+
+		StatusLine statusLine = httpResponse.getStatusLine();
+
+		HttpEntity entity = httpResponse.getEntity();
+		//Entity is null for http 300 redirects
+		InputStream responseStream = entity != null ? entity.getContent() : null;
+		HttpClient4Response response = new HttpClient4Response(request, statusLine.getStatusCode(),
+				statusLine.getReasonPhrase(), outHeaders, responseStream, httpResponse);
+		return response;
+	}
 
+	/**
+	 * Shared with HttpAsyncClient4Transport
+	 */
+	static HttpRequestBase convertRequest(HttlRequest request) throws IOException {
 		String urlFile = request.getPathAndQuery();
 		HttpRequestBase httpRequest;
 		switch (request.getMethod()) {
@@ -142,26 +207,18 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 		if (request.getReadTimeoutMillis() != null) {
 			httpRequest.getParams().setParameter(CoreConnectionPNames.SO_TIMEOUT, request.getReadTimeoutMillis());
 		}
+		return httpRequest;
+	}
 
-		HttpResponse httpResponse = call(httpRequest);
-
-		Header[] responseHeaders = httpResponse.getAllHeaders();
+	static Multival<String> convertHeaders(Header[] responseHeaders) {
 		Multival<String> outHeaders = new Multival<String>();
 		for (Header header : responseHeaders) {
 			outHeaders.add(header.getName(), header.getValue());
 		}
-
-		StatusLine statusLine = httpResponse.getStatusLine();
-
-		HttpEntity entity = httpResponse.getEntity();
-		//Entity is null for http 300 redirects
-		InputStream responseStream = entity != null ? entity.getContent() : null;
-		HttpClient4Response response = new HttpClient4Response(request, statusLine.getStatusCode(),
-				statusLine.getReasonPhrase(), outHeaders, responseStream, httpResponse);
-		return response;
+		return outHeaders;
 	}
 
-	protected void setEntity(HttlRequest request, HttpEntityEnclosingRequestBase into) throws IOException {
+	protected static void setEntity(HttlRequest request, HttpEntityEnclosingRequestBase into) throws IOException {
 		HttlBody body = request.getBody();
 		if (body != null) {
 			HttpEntity entity;
@@ -173,7 +230,7 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 				entity = new StringEntity((String) body.getPayload(), request.getCharset());
 				break;
 			case BYTES:
-				entity = new ByteArrayEntity((byte[]) body.getPayload());
+				entity = new ByteArrayEntity((byte[]) body.getPayload(), 0, body.getLength());
 				break;
 			case STREAM:
 				entity = new InputStreamEntity((InputStream) body.getPayload(), -1);
@@ -181,6 +238,9 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 			case READER:
 				entity = new InputStreamEntity(new ReaderInputStream((Reader) body.getPayload()), -1);
 				break;
+			case FILE:
+				entity = new FileEntity((File) body.getPayload());
+				break;
 			default:
 				throw new IllegalStateException("Unsupported HttlBody type: " + body.getType());
 			}
@@ -248,7 +308,10 @@ public class HttpClient4Transport extends FakeAsyncTransport {
 
 		@Override
 		public InputStream getContent() throws IOException, IllegalStateException {
-			throw new IllegalStateException("Only writeTo supported");
+			//HttpAsyncClient pulls content from entity - marshall into memory
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			writeTo(baos);
+			return new ByteArrayInputStream(baos.toByteArray());
 		}
 
 		@Override
@@ -5,15 +5,17 @@ import java.net.URL;
 import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
 
 /**
- * -Dhttp.keepAlive=true
- * -Dhttp.maxConnections=200
- * -Dsun.net.http.errorstream.enableBuffering=true
+ * Pool maximum size is NOT applied. JDK keep-alive cache is JVM wide, shared by all transports and sized by
+ * -Dhttp.maxConnections (default 5 idle connections per destination), which JDK reads only once before first
+ * HttpURLConnection is used. Use pooling transport (HttpClient4Config, NioConfig) when pool size matters.
  * 
  * @author martin.vanek
  *
  */
 public class HttpUrlConfig extends BaseTransBuilder<HttpUrlConfig> {
 
+	private boolean keepAlive = true;
+
 	public HttpUrlConfig(String url) {
 		super(url);
 	}
@@ -32,4 +34,16 @@ public class HttpUrlConfig extends BaseTransBuilder<HttpUrlConfig> {
 		return this;
 	}
 
+	public boolean getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * When false, Connection: close header is sent and sockets are not returned into JDK keep-alive cache
+	 */
+	public HttpUrlConfig setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+		return getSelf();
+	}
+
 }
@@ -19,21 +19,49 @@ public class HttpUrlResponse extends HttlResponse {
 
 	private transient HttpURLConnection connection;
 
+	private transient HttpUrlTransport transport;
+
 	public HttpUrlResponse(HttlRequest request, int code, String message, Multival<String> headers, InputStream stream,
 			HttpURLConnection connection) throws IOException {
+		this(request, code, message, headers, stream, connection, null);
+	}
+
+	/**
+	 * @param transport - to be notified when response is closed
+	 */
+	HttpUrlResponse(HttlRequest request, int code, String message, Multival<String> headers, InputStream stream,
+			HttpURLConnection connection, HttpUrlTransport transport) throws IOException {
 		super(request, code, message, headers, stream);
 		if (connection == null) {
 			throw new IllegalArgumentException("Null connection");
 		}
 		this.connection = connection;
+		this.transport = transport;
 	}
 
-	/*
-		@Override
-		public void close() {
-			Cutils.close(stream);
+	/**
+	 * Stream is read to the end (by super) so connection can be kept alive
+	 */
+	@Override
+	public void close() {
+		try {
+			super.close();
+		} finally {
+			if (transport != null) {
+				transport.release(connection);
+				transport = null;
+			}
 		}
-	*/
+	}
+
+	/**
+	 * Nothing to do here. HttpURLConnection.disconnect() does not close socket while body is being read, 
+	 * it would skip rest of the body or wait for reading thread instead. Reading thread fails on aborted stream
+	 * and close then leaves connection to JDK keep-alive cleaner.
+	 */
+	@Override
+	protected void abortConnection() {
+	}
 
 	/**
 	 * @return underlying HttpURLConnection
@@ -1,10 +1,14 @@
 package net.anthavio.httl.transport;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.lang.reflect.Method;
 import java.net.Authenticator;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
@@ -12,9 +16,12 @@ import java.net.PasswordAuthentication;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -27,6 +34,7 @@ import net.anthavio.httl.HttlRequest;
 import net.anthavio.httl.HttlResponse;
 import net.anthavio.httl.HttlSender.Multival;
 import net.anthavio.httl.util.Base64;
+import net.anthavio.httl.util.HttlUtil;
 import net.anthavio.httl.util.ReaderInputStream;
 
 import org.slf4j.Logger;
@@ -35,6 +43,10 @@ import org.slf4j.LoggerFactory;
 /**
  * Simple java HttpURLConnection implementation of the HttlTransport. No additional library is required
  * 
+ * Connection pooling is done by JDK keep-alive cache. Socket is returned into it only when response stream is read
+ * to the end and closed, so error response bodies are buffered and their connection is released immediately.
+ * Keep-alive cache is JVM wide and it is not sized by HttpUrlConfig (see there).
+ * 
  * @author martin.vanek
  *
  */
@@ -46,7 +58,16 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 
 	private final String basicAuthHeader;
 
-	private HttpURLConnection connection;
+	/**
+	 * Java 7+ variant accepting files bigger than 2GB
+	 */
+	private static final Method SET_FIXED_LENGTH_LONG = getFixedLengthMethod();
+
+	/**
+	 * Connections with response not closed yet
+	 */
+	private final Set<HttpURLConnection> connections = Collections
+			.newSetFromMap(new ConcurrentHashMap<HttpURLConnection, Boolean>());
 
 	private final SSLSocketFactory sslSocketFactory;
 
@@ -73,9 +94,6 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 		} else {
 			this.basicAuthHeader = null;
 		}
-		//Great way to configure stuff...
-		//System.setProperty("http.keepAlive", "true");
-		//System.setProperty("http.maxConnections", String.valueOf(config.getPoolMaximumSize()));
 
 		if (config.getSslContext() != null && config.getUrl().getProtocol().equals("https")) {
 			this.sslSocketFactory = config.getSslContext().getSocketFactory();
@@ -89,16 +107,33 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 		return config;
 	}
 
+	/**
+	 * Disconnects only connections of responses that are not closed yet. Idle connections are owned by JDK keep-alive cache
+	 */
 	@Override
 	public void close() {
-		if (connection != null) {
+		for (HttpURLConnection connection : connections) {
 			try {
 				connection.disconnect();
 			} catch (Exception x) {
 				//ignore
 			}
 		}
+		connections.clear();
+	}
+
+	/**
+	 * @return number of responses not closed yet
+	 */
+	public int getActiveConnections() {
+		return connections.size();
+	}
 
+	/**
+	 * Response was closed
+	 */
+	void release(HttpURLConnection connection) {
+		connections.remove(connection);
 	}
 
 	@Override
@@ -110,7 +145,19 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 		if (sslSocketFactory != null) {
 			((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
 		}
-		this.connection = connection;
+		connections.add(connection);
+		try {
+			return call(request, connection);
+		} catch (IOException iox) {
+			connections.remove(connection);
+			throw iox;
+		} catch (RuntimeException rx) {
+			connections.remove(connection);
+			throw rx;
+		}
+	}
+
+	private HttlResponse call(HttlRequest request, HttpURLConnection connection) throws IOException {
 
 		connection.setUseCaches(false);
 		connection.setDoOutput(request.getBody() != null); //connection.getOutputStream() will be called
@@ -127,7 +174,13 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 			}
 		}
 
-		connection.setConnectTimeout(config.getConnectTimeoutMillis());
+		long remaining = request.getRemainingMillis(); //connect is not interruptible - cap it by deadline
+		if (request.getDeadline() != 0
+				&& (remaining < config.getConnectTimeoutMillis() || config.getConnectTimeoutMillis() == 0)) {
+			connection.setConnectTimeout((int) Math.max(1, remaining));
+		} else {
+			connection.setConnectTimeout(config.getConnectTimeoutMillis());
+		}
 		if (request.getReadTimeoutMillis() != null) {
 			connection.setReadTimeout(request.getReadTimeoutMillis());
 		} else {
@@ -141,6 +194,10 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 			connection.setRequestProperty("Authorization", this.basicAuthHeader);
 		}
 
+		if (!config.getKeepAlive()) {
+			connection.setRequestProperty("Connection", "close");
+		}
+
 		connection.setRequestMethod(request.getMethod().toString());
 		switch (request.getMethod()) {
 		case GET:
@@ -163,13 +220,12 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 				HttlBody body = request.getBody();
 				switch (body.getType()) {
 				case BYTES:
-					byte[] abytes = (byte[]) body.getPayload();
-					writeBytes(connection, abytes);
+					writeBytes(connection, (byte[]) body.getPayload(), body.getLength());
 					break;
 				case STRING:
 					String string = (String) body.getPayload();
 					byte[] sbytes = string.getBytes(Charset.forName(request.getCharset()));
-					writeBytes(connection, sbytes);
+					writeBytes(connection, sbytes, sbytes.length);
 					break;
 				case MARSHALL:
 					request
@@ -184,6 +240,9 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 				case READER:
 					writeStream(connection, new ReaderInputStream((Reader) body.getPayload()));
 					break;
+				case FILE:
+					writeFile(connection, (File) body.getPayload());
+					break;
 				default:
 					throw new IllegalStateException("Unsupported HttlBody type: " + body.getType());
 				}
@@ -218,17 +277,32 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 		try {
 			responseStream = connection.getInputStream();
 		} catch (IOException iox) {
-			return new HttpUrlResponse(request, responseCode, responseMessage, outHeaders, connection.getErrorStream(),
-					connection);
+			//error response - drain it now so socket goes back into keep-alive cache even if response is never closed
+			InputStream errorStream = connection.getErrorStream();
+			if (errorStream != null) {
+				byte[] bytes;
+				try {
+					bytes = HttlUtil.readAsBytes(errorStream, HttlUtil.KILO16);
+				} finally {
+					errorStream.close();
+				}
+				responseStream = new ByteArrayInputStream(bytes);
+			}
+			connections.remove(connection);
+			return new HttpUrlResponse(request, responseCode, responseMessage, outHeaders, responseStream, connection);
 		}
-		return new HttpUrlResponse(request, responseCode, responseMessage, outHeaders, responseStream, connection);
+		if (request.getMethod() == HttlRequest.Method.HEAD || responseCode == HttpURLConnection.HTTP_NO_CONTENT
+				|| responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			connections.remove(connection); //nothing to read
+		}
+		return new HttpUrlResponse(request, responseCode, responseMessage, outHeaders, responseStream, connection, this);
 	}
 
 	private void writeStream(HttpURLConnection connection, InputStream input) throws IOException {
 		DataOutputStream output = null;
 		try {
 			output = new DataOutputStream(connection.getOutputStream());
-			byte[] buffer = new byte[512];
+			byte[] buffer = new byte[HttlUtil.KILO16];
 			int read = -1;
 			while ((read = input.read(buffer)) != -1) {
 				output.write(buffer, 0, read);
@@ -240,15 +314,67 @@ public class HttpUrlTransport extends FakeAsyncTransport {
 		}
 	}
 
-	private void writeBytes(HttpURLConnection connection, byte[] dataBytes) throws IOException {
-		connection.setRequestProperty(HttlConstants.Content_Length, Integer.toString(dataBytes.length));
+	/**
+	 * Streaming mode with exact length prevents HttpURLConnection from buffering whole file in memory.
+	 * OutputStream accepts only byte[] so file is copied through large buffer
+	 */
+	private void writeFile(HttpURLConnection connection, File file) throws IOException {
+		long length = file.length();
+		setFixedLengthStreamingMode(connection, length);
+		FileInputStream input = new FileInputStream(file);
+		OutputStream output = null;
+		try {
+			output = connection.getOutputStream();
+			byte[] buffer = new byte[HttlUtil.KILO64];
+			long remaining = length;
+			while (remaining > 0) {
+				int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+				if (read == -1) {
+					throw new IOException("File truncated while sending " + file);
+				}
+				output.write(buffer, 0, read);
+				remaining -= read;
+			}
+			output.flush();
+			output.close();
+		} catch (IOException iox) {
+			throw translateException(connection, iox, output);
+		} finally {
+			input.close();
+		}
+	}
+
+	private static void setFixedLengthStreamingMode(HttpURLConnection connection, long length) throws IOException {
+		if (length <= Integer.MAX_VALUE) {
+			connection.setFixedLengthStreamingMode((int) length);
+		} else if (SET_FIXED_LENGTH_LONG != null) {
+			try {
+				SET_FIXED_LENGTH_LONG.invoke(connection, length);
+			} catch (Exception x) {
+				throw new IOException("Failed to set streaming mode " + x);
+			}
+		} else {
+			connection.setChunkedStreamingMode(HttlUtil.KILO64); //Java 6 cannot send exact length
+		}
+	}
+
+	private static Method getFixedLengthMethod() {
+		try {
+			return HttpURLConnection.class.getMethod("setFixedLengthStreamingMode", long.class);
+		} catch (NoSuchMethodException nsmx) {
+			return null; //older Java runtime
+		}
+	}
+
+	private void writeBytes(HttpURLConnection connection, byte[] dataBytes, int length) throws IOException {
+		connection.setRequestProperty(HttlConstants.Content_Length, Integer.toString(length));
 		//if (this.logger.isDebugEnabled()) {
 		//	logHeaders("Request", connection.getRequestProperties());
 		//}
 		DataOutputStream output = null;
 		try {
 			output = new DataOutputStream(connection.getOutputStream());
-			output.write(dataBytes);
+			output.write(dataBytes, 0, length);
 			output.flush();
 			output.close(); //XXX really close?
 		} catch (IOException iox) {
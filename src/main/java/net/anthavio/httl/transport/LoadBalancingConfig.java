@@ -0,0 +1,119 @@
+package net.anthavio.httl.transport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+import net.anthavio.httl.transport.LoadBalancingTransport.RoundRobin;
+import net.anthavio.httl.transport.LoadBalancingTransport.Strategy;
+
+/**
+ * Client side load balancing over multiple backends. Every backend is configured separately and gets own 
+ * (pooled) delegate transport. All backends must serve same url path.
+ * 
+ * Url, charset and timeouts of this configuration are taken from the first backend, pool maximum size is sum 
+ * of all backends.
+ * 
+ * @author martin.vanek
+ *
+ */
+public class LoadBalancingConfig extends BaseTransBuilder<LoadBalancingConfig> {
+
+	private final List<BaseTransBuilder<?>> backends;
+
+	private Strategy strategy = new RoundRobin();
+
+	private int ejectionFailures = 5;
+
+	private int ejectionMillis = 30 * 1000;
+
+	public LoadBalancingConfig(BaseTransBuilder<?>... backends) {
+		this(Arrays.asList(backends));
+	}
+
+	public LoadBalancingConfig(List<BaseTransBuilder<?>> backends) {
+		super(first(backends).getUrl());
+		String path = backends.get(0).getUrl().getPath();
+		int poolMaximum = 0;
+		for (BaseTransBuilder<?> backend : backends) {
+			if (backend == null) {
+				throw new IllegalArgumentException("Null backend");
+			}
+			if (!path.equals(backend.getUrl().getPath())) {
+				throw new IllegalArgumentException("Backend " + backend.getUrl() + " path differs from " + path);
+			}
+			poolMaximum += backend.getPoolMaximumSize();
+		}
+		this.backends = Collections.unmodifiableList(new ArrayList<BaseTransBuilder<?>>(backends));
+		BaseTransBuilder<?> first = backends.get(0);
+		setCharset(first.getCharset());
+		setConnectTimeoutMillis(first.getConnectTimeoutMillis());
+		setReadTimeoutMillis(first.getReadTimeoutMillis());
+		setFollowRedirects(first.getFollowRedirects());
+		setPoolMaximumSize(poolMaximum);
+	}
+
+	private static BaseTransBuilder<?> first(List<BaseTransBuilder<?>> backends) {
+		if (backends == null || backends.size() == 0) {
+			throw new IllegalArgumentException("No backends");
+		}
+		return backends.get(0);
+	}
+
+	@Override
+	public LoadBalancingTransport build() {
+		return new LoadBalancingTransport(this);
+	}
+
+	@Override
+	public LoadBalancingConfig getSelf() {
+		return this;
+	}
+
+	public List<BaseTransBuilder<?>> getBackends() {
+		return backends;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Backend selection. Default is RoundRobin
+	 */
+	public LoadBalancingConfig setStrategy(Strategy strategy) {
+		if (strategy == null) {
+			throw new IllegalArgumentException("Null strategy");
+		}
+		this.strategy = strategy;
+		return getSelf();
+	}
+
+	public int getEjectionFailures() {
+		return ejectionFailures;
+	}
+
+	/**
+	 * Number of consecutive failures (connect/read errors or 5xx responses) after which backend is ejected.
+	 * 0 disables ejection
+	 */
+	public LoadBalancingConfig setEjectionFailures(int failures) {
+		this.ejectionFailures = failures;
+		return getSelf();
+	}
+
+	public int getEjectionMillis() {
+		return ejectionMillis;
+	}
+
+	/**
+	 * How long is ejected backend excluded from selection
+	 */
+	public LoadBalancingConfig setEjectionMillis(int millis) {
+		this.ejectionMillis = millis;
+		return getSelf();
+	}
+
+}
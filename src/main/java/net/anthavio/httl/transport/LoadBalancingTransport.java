@@ -0,0 +1,362 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlTransport;
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+
+/**
+ * Composite HttlTransport spreading requests over multiple backends using pluggable Strategy.
+ * 
+ * Passive health checking - backend failing (connect/read error or 5xx response) ejectionFailures times in a row 
+ * is excluded from selection for ejectionMillis. When all backends are ejected, all of them are used again.
+ * 
+ * Request refused by backend (ConnectException) was not sent at all, so it is resent to another backend, 
+ * unless it's body is one-shot stream or reader.
+ * 
+ * @author martin.vanek
+ *
+ */
+public class LoadBalancingTransport implements HttlPoolingTransport {
+
+	private final LoadBalancingConfig config;
+
+	private final List<Backend> backends;
+
+	private final Strategy strategy;
+
+	public LoadBalancingTransport(LoadBalancingConfig config) {
+		this.config = config;
+		this.strategy = config.getStrategy();
+		List<Backend> backends = new ArrayList<Backend>();
+		try {
+			for (BaseTransBuilder<?> builder : config.getBackends()) {
+				backends.add(new Backend(builder.build()));
+			}
+		} catch (RuntimeException rx) {
+			for (Backend backend : backends) {
+				backend.getTransport().close();
+			}
+			throw rx;
+		}
+		this.backends = Collections.unmodifiableList(backends);
+	}
+
+	@Override
+	public LoadBalancingConfig getConfig() {
+		return config;
+	}
+
+	public List<Backend> getBackends() {
+		return backends;
+	}
+
+	@Override
+	public void close() {
+		for (Backend backend : backends) {
+			backend.getTransport().close();
+		}
+	}
+
+	@Override
+	public HttlResponse call(HttlRequest request) throws IOException {
+		List<Backend> refused = null;
+		while (true) {
+			Backend backend = select(refused);
+			long started = backend.started();
+			HttlResponse response;
+			try {
+				response = backend.getTransport().call(request);
+			} catch (ConnectException cx) {
+				backend.completed(started, false);
+				if (!isResendable(request, refused)) {
+					throw cx;
+				}
+				if (refused == null) {
+					refused = new ArrayList<Backend>(backends.size());
+				}
+				refused.add(backend);
+				continue;
+			} catch (IOException iox) {
+				backend.completed(started, false);
+				throw iox;
+			} catch (RuntimeException rx) {
+				backend.completed(started, false);
+				throw rx;
+			}
+			backend.completed(started, response.getHttpStatusCode() < 500);
+			return response;
+		}
+	}
+
+	@Override
+	public void call(HttlRequest request, HttlTransportCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("Null callback");
+		}
+		call(request, callback, null);
+	}
+
+	private void call(final HttlRequest request, final HttlTransportCallback callback, final List<Backend> refused) {
+		final Backend backend = select(refused);
+		final long started = backend.started();
+		backend.getTransport().call(request, new HttlTransportCallback() {
+
+			@Override
+			public void onRequestFailure(HttlRequest request, Exception exception) {
+				backend.completed(started, false);
+				if (exception instanceof ConnectException && isResendable(request, refused)) {
+					List<Backend> excluded = refused != null ? refused : new ArrayList<Backend>(backends.size());
+					excluded.add(backend);
+					call(request, callback, excluded);
+				} else {
+					callback.onRequestFailure(request, exception);
+				}
+			}
+
+			@Override
+			public void onResponseFailure(HttlRequest request, Exception exception) {
+				backend.completed(started, false);
+				callback.onResponseFailure(request, exception);
+			}
+
+			@Override
+			public void onResponse(HttlResponse response) {
+				if (response != null) {
+					backend.completed(started, response.getHttpStatusCode() < 500);
+				}
+				callback.onResponse(response);
+			}
+		});
+	}
+
+	private boolean isResendable(HttlRequest request, List<Backend> refused) {
+		HttlBody body = request.getBody();
+		if (body != null && (body.getType() == HttlBody.Type.STREAM || body.getType() == HttlBody.Type.READER)) {
+			return false;
+		}
+		return (refused != null ? refused.size() : 0) + 1 < backends.size();
+	}
+
+	/**
+	 * @param excluded - backends already tried (can be null)
+	 */
+	protected Backend select(List<Backend> excluded) {
+		long now = System.currentTimeMillis();
+		List<Backend> candidates = new ArrayList<Backend>(backends.size());
+		for (Backend backend : backends) {
+			if (!backend.isEjected(now) && (excluded == null || !excluded.contains(backend))) {
+				candidates.add(backend);
+			}
+		}
+		if (candidates.size() == 0) {
+			//all ejected - better try them anyway than fail
+			for (Backend backend : backends) {
+				if (excluded == null || !excluded.contains(backend)) {
+					candidates.add(backend);
+				}
+			}
+		}
+		return candidates.size() == 1 ? candidates.get(0) : strategy.select(candidates);
+	}
+
+	/**
+	 * Sum of all pooling backends
+	 */
+	@Override
+	public HttlPoolStats getPoolStats() {
+		int maximum = 0, leased = 0, available = 0, pending = 0;
+		long created = 0, closed = 0, acquired = 0, acquireNanos = 0, acquireMaxNanos = 0;
+		for (Backend backend : backends) {
+			if (backend.getTransport() instanceof HttlPoolingTransport) {
+				HttlPoolStats stats = ((HttlPoolingTransport) backend.getTransport()).getPoolStats();
+				if (stats != null) {
+					maximum += stats.getMaximum();
+					leased += stats.getLeased();
+					available += stats.getAvailable();
+					pending += stats.getPending();
+					created += stats.getCreated();
+					closed += stats.getClosed();
+					acquired += stats.getAcquired();
+					acquireNanos += stats.getAcquireWaitMillis() * 1000000;
+					acquireMaxNanos = Math.max(acquireMaxNanos, stats.getAcquireWaitMillisMax() * 1000000);
+				}
+			}
+		}
+		return new HttlPoolStats(maximum, leased, available, pending, created, closed, acquired, acquireNanos,
+				acquireMaxNanos);
+	}
+
+	@Override
+	public String toString() {
+		return "LoadBalancingTransport [backends=" + backends + ", strategy=" + strategy + "]";
+	}
+
+	/**
+	 * Delegate transport with it's load and health state
+	 */
+	public class Backend {
+
+		private static final double EWMA_WEIGHT = 0.3;
+
+		private final HttlTransport transport;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private final AtomicLong ewmaNanos = new AtomicLong();
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		private volatile long ejectedUntil;
+
+		Backend(HttlTransport transport) {
+			this.transport = transport;
+		}
+
+		long started() {
+			outstanding.incrementAndGet();
+			return System.nanoTime();
+		}
+
+		void completed(long started, boolean success) {
+			outstanding.decrementAndGet();
+			if (success) {
+				failures.set(0);
+				long sample = System.nanoTime() - started;
+				long ewma;
+				do {
+					ewma = ewmaNanos.get();
+				} while (!ewmaNanos.compareAndSet(ewma, ewma == 0 ? sample : (long) (ewma + (sample - ewma)
+						* EWMA_WEIGHT)));
+			} else if (config.getEjectionFailures() > 0 && failures.incrementAndGet() >= config.getEjectionFailures()) {
+				failures.set(0);
+				ejectedUntil = System.currentTimeMillis() + config.getEjectionMillis();
+			}
+		}
+
+		public HttlTransport getTransport() {
+			return transport;
+		}
+
+		/**
+		 * @return requests in flight
+		 */
+		public int getOutstanding() {
+			return outstanding.get();
+		}
+
+		/**
+		 * @return exponentially weighted moving average of response time
+		 */
+		public long getEwmaNanos() {
+			return ewmaNanos.get();
+		}
+
+		public boolean isEjected(long now) {
+			return ejectedUntil > now;
+		}
+
+		@Override
+		public String toString() {
+			return "Backend [" + transport.getConfig().getUrl() + ", outstanding=" + outstanding + ", ewmaMillis="
+					+ ewmaNanos.get() / 1000000 + ", ejected=" + isEjected(System.currentTimeMillis()) + "]";
+		}
+	}
+
+	/**
+	 * Pluggable Backend selection
+	 */
+	public static interface Strategy {
+
+		/**
+		 * @param candidates - at least two healthy backends
+		 */
+		public Backend select(List<Backend> candidates);
+	}
+
+	public static class RoundRobin implements Strategy {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Backend select(List<Backend> candidates) {
+			int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % candidates.size();
+			return candidates.get(index);
+		}
+
+		@Override
+		public String toString() {
+			return "RoundRobin";
+		}
+	}
+
+	/**
+	 * Backend with fewest requests in flight. Ties are broken in round robin fashion
+	 */
+	public static class LeastOutstanding implements Strategy {
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		@Override
+		public Backend select(List<Backend> candidates) {
+			int size = candidates.size();
+			int offset = (counter.getAndIncrement() & Integer.MAX_VALUE) % size;
+			Backend least = null;
+			for (int i = 0; i < size; ++i) {
+				Backend backend = candidates.get((offset + i) % size);
+				if (least == null || backend.getOutstanding() < least.getOutstanding()) {
+					least = backend;
+				}
+			}
+			return least;
+		}
+
+		@Override
+		public String toString() {
+			return "LeastOutstanding";
+		}
+	}
+
+	/**
+	 * Pick two random backends and use one with lower EWMA latency weighted by outstanding requests.
+	 * Avoids herding onto single best backend while still preferring faster ones.
+	 */
+	public static class PowerOfTwoChoices implements Strategy {
+
+		private final Random random = new Random();
+
+		@Override
+		public Backend select(List<Backend> candidates) {
+			int size = candidates.size();
+			int first = random.nextInt(size);
+			int second = random.nextInt(size - 1);
+			if (second >= first) {
+				++second;
+			}
+			Backend one = candidates.get(first);
+			Backend two = candidates.get(second);
+			return cost(one) <= cost(two) ? one : two;
+		}
+
+		private static double cost(Backend backend) {
+			return (double) backend.getEwmaNanos() * (backend.getOutstanding() + 1);
+		}
+
+		@Override
+		public String toString() {
+			return "PowerOfTwoChoices";
+		}
+	}
+}
@@ -2,18 +2,28 @@ package net.anthavio.httl.transport;
 
 import java.net.URL;
 
+import net.anthavio.httl.Authentication;
 import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
 
+import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.AsyncHttpClientConfig;
+import com.ning.http.client.Realm;
+import com.ning.http.client.Realm.AuthScheme;
+
 /**
- * -Dhttp.keepAlive=true
- * -Dhttp.maxConnections=200
- * -Dsun.net.http.errorstream.enableBuffering=true
- * 
+ * https://github.com/AsyncHttpClient/async-http-client
+ *
+ * Netty backed nio transport. Asynchronous callbacks are executed by Netty I/O threads
+ *
  * @author martin.vanek
  *
  */
 public class NingConfig extends BaseTransBuilder<NingConfig> {
 
+	private int poolIdleTimeoutMillis = 15 * 1000; //same as poolReleaseTimeoutMillis of HttpClients
+
+	private int ioThreadMultiplier = 2; //netty workers per cpu core
+
 	public NingConfig(String url) {
 		super(url);
 	}
@@ -32,4 +42,68 @@ public class NingConfig extends BaseTransBuilder<NingConfig> {
 		return this;
 	}
 
+	public int getPoolIdleTimeoutMillis() {
+		return poolIdleTimeoutMillis;
+	}
+
+	/**
+	 * How long can be idle connection kept in pool
+	 */
+	public NingConfig setPoolIdleTimeoutMillis(int millis) {
+		this.poolIdleTimeoutMillis = millis;
+		return getSelf();
+	}
+
+	public int getIoThreadMultiplier() {
+		return ioThreadMultiplier;
+	}
+
+	/**
+	 * Number of Netty I/O threads per available processor
+	 */
+	public NingConfig setIoThreadMultiplier(int multiplier) {
+		this.ioThreadMultiplier = multiplier;
+		return getSelf();
+	}
+
+	public AsyncHttpClient newAsyncHttpClient() {
+		AsyncHttpClientConfig.Builder builder = new AsyncHttpClientConfig.Builder();
+		builder.setMaximumConnectionsTotal(getPoolMaximumSize());
+		builder.setMaximumConnectionsPerHost(getPoolMaximumSize()); //we access only one host
+		builder.setAllowPoolingConnection(true);
+		builder.setAllowSslConnectionPool(true);
+		builder.setIdleConnectionInPoolTimeoutInMs(poolIdleTimeoutMillis);
+		builder.setConnectionTimeoutInMs(getConnectTimeoutMillis());
+		//there is no SO_TIMEOUT equivalent - read timeout is applied as idle and complete request timeout
+		builder.setIdleConnectionTimeoutInMs(getReadTimeoutMillis());
+		builder.setRequestTimeoutInMs(getReadTimeoutMillis());
+		builder.setFollowRedirects(getFollowRedirects());
+		builder.setCompressionEnabled(false); //HttlResponse takes care of Content-Encoding
+		builder.setUseRawUrl(true); //HttlRequest path and query are encoded already
+		builder.setMaxRequestRetry(0); //do not resend requests behind our back
+		builder.setIOThreadMultiplier(ioThreadMultiplier);
+
+		if (getSslContext() != null) {
+			builder.setSSLContext(getSslContext());
+		}
+
+		if (getAuthentication() != null) {
+			Authentication authentication = getAuthentication();
+			Realm.RealmBuilder realm = new Realm.RealmBuilder();
+			realm.setPrincipal(authentication.getUsername());
+			realm.setPassword(authentication.getPassword());
+			realm.setUsePreemptiveAuth(authentication.getPreemptive());
+			if (authentication.getScheme() == Authentication.Scheme.BASIC) {
+				realm.setScheme(AuthScheme.BASIC);
+			} else {
+				realm.setScheme(AuthScheme.DIGEST);
+				realm.setRealmName(authentication.getRealm());
+				realm.setNonce(authentication.getNonce());
+			}
+			builder.setRealm(realm.build());
+		}
+
+		return new AsyncHttpClient(builder.build());
+	}
+
 }
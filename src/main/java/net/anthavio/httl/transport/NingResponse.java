@@ -0,0 +1,38 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender.Multival;
+
+import com.ning.http.client.Response;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class NingResponse extends HttlResponse {
+
+	private static final long serialVersionUID = 1L;
+
+	private transient Response ningResponse; //non serializable
+
+	public NingResponse(HttlRequest request, int code, String message, Multival<String> headers, InputStream stream,
+			Response ningResponse) throws IOException {
+		super(request, code, message, headers, stream);
+		if (ningResponse == null) {
+			throw new IllegalArgumentException("Null Response");
+		}
+		this.ningResponse = ningResponse;
+	}
+
+	/**
+	 * Hackish access to Ning Response
+	 */
+	public Response getNingResponse() {
+		return ningResponse;
+	}
+}
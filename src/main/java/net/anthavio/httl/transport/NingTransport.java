@@ -1,50 +1,320 @@
 package net.anthavio.httl.transport;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
+import javax.net.ssl.SSLException;
+
+import net.anthavio.httl.HttlBody;
 import net.anthavio.httl.HttlRequest;
 import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender.Multival;
 import net.anthavio.httl.HttlTransport;
-import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+import net.anthavio.httl.util.Cutils;
+import net.anthavio.httl.util.ReaderInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
+import com.ning.http.client.Body;
+import com.ning.http.client.BodyGenerator;
+import com.ning.http.client.ListenableFuture;
+import com.ning.http.client.Request;
+import com.ning.http.client.Request.EntityWriter;
+import com.ning.http.client.RequestBuilder;
+import com.ning.http.client.Response;
+import com.ning.http.client.generators.InputStreamBodyGenerator;
 
 /**
  * https://github.com/AsyncHttpClient/async-http-client
- * 
+ *
+ * Asynchronous call does not block calling thread. HttlTransportCallback is invoked from Netty I/O thread
+ * so it must not perform any blocking operation.
+ *
+ * Not a HttlPoolingTransport. async-http-client 1.8 keeps open channel count and connection permits private 
+ * inside NettyAsyncHttpProvider and its ConnectionsPool sees only idle channels, so leased, created and closed 
+ * connections cannot be reported.
+ *
  * @author martin.vanek
  *
  */
 public class NingTransport implements HttlTransport {
 
-	AsyncHttpClient asyncHttpClient = new AsyncHttpClient();
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final NingConfig config;
+
+	private final AsyncHttpClient asyncHttpClient;
 
 	public NingTransport(NingConfig config) {
+		this.config = config;
+		this.asyncHttpClient = config.newAsyncHttpClient();
+	}
 
+	@Override
+	public NingConfig getConfig() {
+		return config;
 	}
 
 	@Override
-	public HttlResponse call(HttlRequest request) throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public void close() {
+		try {
+			asyncHttpClient.close();
+		} catch (Exception x) {
+			logger.warn("Exception while closing sender", x);
+		}
+	}
+
+	/**
+	 * Leak implementation to allow hacking
+	 */
+	public AsyncHttpClient getAsyncHttpClient() {
+		return asyncHttpClient;
 	}
 
 	@Override
-	public void call(HttlRequest request, HttlTransportCallback callback) {
-		// TODO Auto-generated method stub
+	public NingResponse call(HttlRequest request) throws IOException {
+		Request ningRequest = buildRequest(request);
+		ListenableFuture<Response> future;
+		try {
+			future = asyncHttpClient.executeRequest(ningRequest);
+		} catch (Exception x) {
+			throw translateException(request, x);
+		}
 
+		Response ningResponse;
+		try {
+			ningResponse = future.get();
+		} catch (InterruptedException ix) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			InterruptedIOException iiox = new InterruptedIOException("Interrupted while waiting for response");
+			iiox.initCause(ix);
+			throw iiox;
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+			throw translateException(request, cause);
+		}
+		return convertResponse(request, ningResponse);
 	}
 
 	@Override
-	public void close() {
-		// TODO Auto-generated method stub
+	public void call(final HttlRequest request, final HttlTransportCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("Null callback");
+		}
+		Request ningRequest;
+		try {
+			ningRequest = buildRequest(request);
+		} catch (Exception x) {
+			callback.onRequestFailure(request, x);
+			return;
+		}
+
+		try {
+			asyncHttpClient.executeRequest(ningRequest, new AsyncCompletionHandler<Response>() {
+
+				@Override
+				public Response onCompleted(Response ningResponse) throws Exception {
+					HttlResponse response = null;
+					try {
+						response = convertResponse(request, ningResponse);
+					} catch (Exception x) {
+						callback.onResponseFailure(request, x);
+						return ningResponse;
+					}
+					try {
+						callback.onResponse(response);
+					} catch (Exception x) {
+						logger.warn("Callback failed to process " + response, x);
+					} finally {
+						Cutils.close(response);
+					}
+					return ningResponse;
+				}
+
+				@Override
+				public void onThrowable(Throwable throwable) {
+					IOException exception = translateException(request, throwable);
+					if (exception instanceof ConnectException || exception instanceof SSLException) {
+						callback.onRequestFailure(request, exception);
+					} else {
+						callback.onResponseFailure(request, exception);
+					}
+				}
+			});
+		} catch (Exception x) {
+			callback.onRequestFailure(request, translateException(request, x));
+		}
+	}
+
+	protected Request buildRequest(final HttlRequest request) throws IOException {
+		URL url = config.getUrl();
+		RequestBuilder builder = new RequestBuilder(request.getMethod().toString());
+		builder.setUrl(new URL(url.getProtocol(), url.getHost(), url.getPort(), request.getPathAndQuery()).toString());
 
+		Multival<String> headers = request.getHeaders();
+		if (headers != null && headers.size() != 0) {
+			for (String name : headers) {
+				List<String> values = headers.get(name);
+				for (String value : values) {
+					builder.addHeader(name, value);
+				}
+			}
+		}
+
+		if (request.getReadTimeoutMillis() != null) {
+			setRequestTimeout(builder, request.getReadTimeoutMillis());
+		}
+
+		HttlBody body = request.getBody();
+		if (body != null) {
+			switch (body.getType()) {
+			case MARSHALL:
+				builder.setBody(new EntityWriter() {
+
+					@Override
+					public void writeEntity(OutputStream stream) throws IOException {
+						request.getSender().getMarshaller()
+								.marshall(request.getBody().getPayload(), request.getMediaType(), request.getCharset(), stream);
+					}
+				});
+				break;
+			case STRING:
+				builder.setBodyEncoding(request.getCharset());
+				builder.setBody((String) body.getPayload());
+				break;
+			case BYTES:
+				byte[] bytes = (byte[]) body.getPayload();
+				if (body.getLength() == bytes.length) {
+					builder.setBody(bytes);
+				} else {
+					builder.setBody(new ByteRangeGenerator(bytes, body.getLength()));
+				}
+				break;
+			case STREAM:
+				builder.setBody(new InputStreamBodyGenerator((InputStream) body.getPayload()));
+				break;
+			case READER:
+				builder.setBody(new InputStreamBodyGenerator(new ReaderInputStream((Reader) body.getPayload(), request
+						.getCharset())));
+				break;
+			case FILE:
+				builder.setBody((File) body.getPayload()); //zero-copy FileRegion when possible
+				break;
+			default:
+				throw new IllegalStateException("Unsupported HttlBody type: " + body.getType());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * PerRequestConfig is deprecated, but async-http-client 1.8 has no other way to set timeout of single request
+	 */
+	@SuppressWarnings("deprecation")
+	private static void setRequestTimeout(RequestBuilder builder, int timeoutMillis) {
+		com.ning.http.client.PerRequestConfig perRequest = new com.ning.http.client.PerRequestConfig();
+		perRequest.setRequestTimeoutInMs(timeoutMillis);
+		builder.setPerRequestConfig(perRequest);
+	}
+
+	protected NingResponse convertResponse(HttlRequest request, Response ningResponse) throws IOException {
+		Multival<String> outHeaders = new Multival<String>();
+		for (Entry<String, List<String>> header : ningResponse.getHeaders()) {
+			outHeaders.add(header.getKey(), header.getValue());
+		}
+		InputStream responseStream = ningResponse.hasResponseBody() ? ningResponse.getResponseBodyAsStream() : null;
+		return new NingResponse(request, ningResponse.getStatusCode(), ningResponse.getStatusText(), outHeaders,
+				responseStream, ningResponse);
+	}
+
+	protected IOException translateException(HttlRequest request, Throwable exception) {
+		if (exception instanceof ConnectException) {
+			ConnectException cx;
+			String message = exception.getMessage();
+			if (message != null && message.indexOf("timed out") != -1) {
+				cx = new ConnectException("Connect timeout " + config.getConnectTimeoutMillis() + " ms");
+			} else {
+				//enhance message with url
+				cx = new ConnectException("Connection refused " + config.getUrl());
+			}
+			cx.setStackTrace(exception.getStackTrace());
+			return cx;
+		} else if (exception instanceof TimeoutException) {
+			int timeout = request.getReadTimeoutMillis() != null ? request.getReadTimeoutMillis() : config
+					.getReadTimeoutMillis();
+			SocketTimeoutException stx = new SocketTimeoutException("Read timeout " + timeout + " ms");
+			stx.setStackTrace(exception.getStackTrace());
+			return stx;
+		} else if (exception instanceof IOException) {
+			return (IOException) exception;
+		} else {
+			IOException iox = new IOException(exception.getMessage());
+			iox.initCause(exception);
+			return iox;
+		}
 	}
 
 	@Override
-	public BaseTransBuilder<?> getConfig() {
-		// TODO Auto-generated method stub
-		return null;
+	public String toString() {
+		return "NingTransport [" + config.getUrl() + "]";
 	}
 
+	/**
+	 * ByteArrayBodyGenerator always sends whole array
+	 */
+	private static class ByteRangeGenerator implements BodyGenerator {
+
+		private final byte[] bytes;
+
+		private final int length;
+
+		private ByteRangeGenerator(byte[] bytes, int length) {
+			this.bytes = bytes;
+			this.length = length;
+		}
+
+		@Override
+		public Body createBody() {
+			return new Body() {
+
+				private int offset;
+
+				@Override
+				public long getContentLength() {
+					return length;
+				}
+
+				@Override
+				public long read(ByteBuffer buffer) {
+					if (offset == length) {
+						return -1;
+					}
+					int count = Math.min(buffer.remaining(), length - offset);
+					buffer.put(bytes, offset, count);
+					offset += count;
+					return count;
+				}
+
+				@Override
+				public void close() {
+				}
+			};
+		}
+	}
 }
@@ -0,0 +1,118 @@
+package net.anthavio.httl.transport;
+
+import java.net.URL;
+
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+
+/**
+ * Java NIO SocketChannel transport. No additional library is required
+ *
+ * Plain http only. Authentication is limited to BASIC scheme sent preemptively. Redirects are not followed.
+ *
+ * @author martin.vanek
+ *
+ */
+public class NioConfig extends BaseTransBuilder<NioConfig> {
+
+	private int selectorThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+	private int poolReleaseTimeoutMillis = 15 * 1000; //apache 2.0 and NGINX
+
+	private int poolAcquireTimeoutMillis = 3 * 1000;
+
+	private int bufferSize = 16 * 1024;
+
+	private int pipeliningDepth = 1; //disabled
+
+	public NioConfig(String url) {
+		super(url);
+	}
+
+	public NioConfig(URL url) {
+		super(url);
+	}
+
+	@Override
+	public NioTransport build() {
+		return new NioTransport(this);
+	}
+
+	@Override
+	public NioConfig getSelf() {
+		return this;
+	}
+
+	public int getSelectorThreads() {
+		return selectorThreads;
+	}
+
+	/**
+	 * Number of Selector event loop threads. Default is half of available processors
+	 */
+	public NioConfig setSelectorThreads(int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("Selector threads must be >= 1");
+		}
+		this.selectorThreads = count;
+		return getSelf();
+	}
+
+	public int getPoolReleaseTimeoutMillis() {
+		return poolReleaseTimeoutMillis;
+	}
+
+	/**
+	 * How long can be idle keep-alive connection kept in pool
+	 */
+	public NioConfig setPoolReleaseTimeoutMillis(int millis) {
+		this.poolReleaseTimeoutMillis = millis;
+		return getSelf();
+	}
+
+	public int getPoolAcquireTimeoutMillis() {
+		return poolAcquireTimeoutMillis;
+	}
+
+	/**
+	 * How long can request wait for connection when pool is exhausted
+	 */
+	public NioConfig setPoolAcquireTimeoutMillis(int millis) {
+		this.poolAcquireTimeoutMillis = millis;
+		return getSelf();
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Size of per connection read and write ByteBuffers
+	 */
+	public NioConfig setBufferSize(int bytes) {
+		if (bytes < 1024) {
+			throw new IllegalArgumentException("Buffer size must be >= 1024");
+		}
+		this.bufferSize = bytes;
+		return getSelf();
+	}
+
+	public int getPipeliningDepth() {
+		return pipeliningDepth;
+	}
+
+	/**
+	 * Maximum number of safe (GET, HEAD, OPTIONS, TRACE) requests without body sent over single connection
+	 * before their responses arrive. Responses are matched in FIFO order. Default is 1 - pipelining disabled
+	 * 
+	 * Pipelining is used only when pool is exhausted. Requests not answered when server closes connection
+	 * are resent on another connection without pipelining.
+	 */
+	public NioConfig setPipeliningDepth(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Pipelining depth must be >= 1");
+		}
+		this.pipeliningDepth = depth;
+		return getSelf();
+	}
+
+}
@@ -0,0 +1,495 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.LinkedList;
+import java.util.List;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequest.Method;
+import net.anthavio.httl.HttlSender.Multival;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keep-alive connection. All methods except constructor must be called from owning NioReactor thread
+ *
+ * With pipelining enabled, multiple requests are written back-to-back and responses are matched in FIFO order
+ *
+ * @author martin.vanek
+ *
+ */
+class NioConnection {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final NioTransport transport;
+
+	private final NioReactor reactor;
+
+	private final NioResponseParser parser = new NioResponseParser();
+
+	private final ByteBuffer readBuffer;
+
+	private ByteBuffer writeBuffer;
+
+	private ByteBuffer bodyBuffer;
+
+	private NioExchange fileExchange; //exchange with file body being written
+
+	private long filePosition;
+
+	private SocketChannel channel;
+
+	private SelectionKey key;
+
+	private final LinkedList<NioExchange> inflight = new LinkedList<NioExchange>(); //head is being answered
+
+	private boolean connected;
+
+	private boolean closed;
+
+	private int served; //number of completed exchanges
+
+	private long deadline; //connect or read deadline
+
+	private long idleSince;
+
+	int assigned; //guarded by NioConnectionPool - number of exchanges leased to this connection
+
+	boolean pipelinable; //guarded by NioConnectionPool - all assigned exchanges can be pipelined
+
+	public NioConnection(NioTransport transport, NioReactor reactor, int bufferSize) {
+		this.transport = transport;
+		this.reactor = reactor;
+		this.readBuffer = ByteBuffer.allocate(bufferSize);
+		this.writeBuffer = ByteBuffer.allocate(bufferSize);
+		this.writeBuffer.limit(0); //nothing to write
+	}
+
+	public NioReactor getReactor() {
+		return reactor;
+	}
+
+	/**
+	 * Entry point for leased connection. New connection is connected first.
+	 */
+	public void start(NioExchange exchange) {
+		if (closed) {
+			//closed meanwhile (idle expiration or server closed it)
+			transport.dispatch(exchange);
+		} else if (exchange.isCompleted()) {
+			skip();
+		} else if (channel == null) {
+			connect(exchange);
+		} else if (!connected) {
+			inflight.addLast(exchange); //pipelined while connecting
+		} else {
+			send(exchange);
+		}
+	}
+
+	private void connect(NioExchange exchange) {
+		inflight.add(exchange);
+		reactor.register(this);
+		InetSocketAddress address = transport.getAddress();
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().setKeepAlive(true);
+			key = channel.register(reactor.getSelector(), 0, this);
+			if (channel.connect(address)) {
+				connected();
+			} else {
+				deadline = System.currentTimeMillis() + transport.getConfig().getConnectTimeoutMillis();
+				key.interestOps(SelectionKey.OP_CONNECT);
+			}
+		} catch (UnresolvedAddressException uax) {
+			fail(new UnknownHostException(address.getHostName()));
+		} catch (IOException iox) {
+			ConnectException cx = new ConnectException("Connection refused " + transport.getConfig().getUrl());
+			cx.setStackTrace(iox.getStackTrace());
+			fail(cx);
+		}
+	}
+
+	public void onConnectable() {
+		try {
+			if (channel.finishConnect()) {
+				connected();
+			}
+		} catch (IOException iox) {
+			ConnectException cx = new ConnectException("Connection refused " + transport.getConfig().getUrl());
+			cx.setStackTrace(iox.getStackTrace());
+			fail(cx);
+		}
+	}
+
+	private void connected() {
+		connected = true;
+		NioExchange[] waiting = inflight.toArray(new NioExchange[inflight.size()]);
+		inflight.clear();
+		for (NioExchange exchange : waiting) {
+			if (exchange.isCompleted()) {
+				skip();
+			} else {
+				send(exchange);
+			}
+		}
+	}
+
+	/**
+	 * Exchange was cancelled before it was sent. Connection serves next queued exchange or goes back to pool
+	 */
+	private void skip() {
+		if (inflight.isEmpty()) {
+			deadline = 0;
+			idleSince = System.currentTimeMillis();
+			if (connected) {
+				key.interestOps(SelectionKey.OP_READ); //notice when server closes idle connection
+			}
+		}
+		NioExchange next = transport.release(this);
+		if (next != null) {
+			start(next);
+		}
+	}
+
+	private void send(NioExchange exchange) {
+		inflight.addLast(exchange);
+		if (inflight.size() == 1) {
+			parser.reset(exchange.request.getMethod() == Method.HEAD);
+		}
+		//append behind previous (pipelined) request(s) still being written
+		writeBuffer.compact();
+		writeHead(exchange);
+		writeBuffer.flip();
+		if (exchange.body != null) {
+			bodyBuffer = exchange.body.duplicate(); //pipelined requests never have body
+		} else if (exchange.file != null) {
+			fileExchange = exchange;
+			filePosition = 0; //might be retry
+		}
+		write();
+	}
+
+	public void onWritable() {
+		write();
+	}
+
+	private void write() {
+		try {
+			channel.write(writeBuffer);
+			if (!writeBuffer.hasRemaining()) {
+				if (bodyBuffer != null) {
+					channel.write(bodyBuffer);
+				} else if (fileExchange != null) {
+					transferFile();
+				}
+			}
+		} catch (IOException iox) {
+			fileExchange = null;
+			retryOrFail(iox);
+			return;
+		}
+		deadline = System.currentTimeMillis() + inflight.getFirst().readTimeoutMillis;
+		if (writeBuffer.hasRemaining() || (bodyBuffer != null && bodyBuffer.hasRemaining())
+				|| (fileExchange != null && filePosition < fileExchange.fileLength)) {
+			key.interestOps(SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+		} else {
+			bodyBuffer = null;
+			fileExchange = null;
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Kernel copies file into socket (sendfile) until socket send buffer is full
+	 */
+	private void transferFile() throws IOException {
+		while (filePosition < fileExchange.fileLength) {
+			long written = fileExchange.file.transferTo(filePosition, fileExchange.fileLength - filePosition, channel);
+			if (written == 0) {
+				if (filePosition >= fileExchange.file.size()) {
+					throw new IOException("File truncated while sending " + fileExchange);
+				}
+				return; //socket buffer is full
+			}
+			filePosition += written;
+		}
+	}
+
+	public void onReadable() throws IOException {
+		readBuffer.clear();
+		int read;
+		try {
+			read = channel.read(readBuffer);
+		} catch (IOException iox) {
+			if (!inflight.isEmpty()) {
+				retryOrFail(iox);
+			} else {
+				close();
+			}
+			return;
+		}
+
+		if (inflight.isEmpty()) {
+			//idle connection closed by server or unexpected garbage
+			close();
+			return;
+		}
+
+		if (read == -1) {
+			if (parser.eof()) {
+				complete();
+				if (!inflight.isEmpty()) {
+					retryOrFail(new IOException("Connection closed by server"));
+				}
+			} else {
+				retryOrFail(new IOException("Connection closed by server"));
+			}
+			return;
+		}
+
+		readBuffer.flip();
+		deadline = System.currentTimeMillis() + inflight.getFirst().readTimeoutMillis;
+		//single read may contain multiple pipelined responses
+		while (!closed && !inflight.isEmpty() && parser.parse(readBuffer)) {
+			complete();
+		}
+	}
+
+	private void complete() {
+		NioExchange done = inflight.removeFirst();
+		NioResponse response = parser.toResponse(done.request);
+		++served;
+		//early response (413 for example) while request body is still being written - connection cannot be reused
+		boolean bodyPending = bodyBuffer != null || fileExchange != null;
+		bodyBuffer = null;
+		fileExchange = null;
+		if (parser.isKeepAlive() && !bodyPending) {
+			if (!inflight.isEmpty()) {
+				NioExchange head = inflight.getFirst();
+				parser.reset(head.request.getMethod() == Method.HEAD);
+				deadline = System.currentTimeMillis() + head.readTimeoutMillis;
+			} else {
+				deadline = 0;
+				idleSince = System.currentTimeMillis();
+			}
+			NioExchange next = transport.release(this);
+			if (next != null) {
+				start(next); //send before invoking (possibly slow) callback
+			}
+			done.complete(response);
+		} else {
+			//server refuses to continue - pipelined requests go elsewhere
+			close();
+			requeue(new IOException("Connection closed by server"));
+			done.complete(response);
+		}
+	}
+
+	/**
+	 * Reused keep-alive connection might be closed by server just before we sent request or in the middle of pipeline.
+	 * Idempotent requests without any response byte received are sent again on another connection
+	 */
+	private void retryOrFail(IOException exception) {
+		NioExchange head = inflight.removeFirst();
+		boolean retry = (served > 0 || !inflight.isEmpty()) && parser.isEmpty() && head.isRetryable();
+		close();
+		requeue(exception);
+		if (retry) {
+			logger.debug("Retrying " + head + " after " + exception);
+			head.retried();
+			transport.dispatch(head);
+		} else {
+			head.fail(exception);
+		}
+	}
+
+	/**
+	 * Send unanswered pipelined exchanges again without pipelining
+	 */
+	private void requeue(Exception exception) {
+		while (!inflight.isEmpty()) {
+			NioExchange exchange = inflight.removeFirst();
+			if (exchange.isRetryable()) {
+				exchange.retried();
+				transport.dispatch(exchange);
+			} else {
+				exchange.fail(exception);
+			}
+		}
+	}
+
+	public void checkTimeouts(long now) {
+		if (!inflight.isEmpty()) {
+			if (connected && inflight.getFirst().isCompleted()) {
+				//cancelled while in flight - connection can't be reused with response pending
+				fail(new InterruptedIOException("Cancelled " + inflight.getFirst()));
+			} else if (deadline != 0 && deadline <= now) {
+				if (connected) {
+					fail(new SocketTimeoutException("Read timeout " + inflight.getFirst().readTimeoutMillis + " ms"));
+				} else {
+					fail(new ConnectException("Connect timeout " + transport.getConfig().getConnectTimeoutMillis() + " ms"));
+				}
+			}
+		} else if (idleSince + transport.getConfig().getPoolReleaseTimeoutMillis() <= now) {
+			if (transport.removeIdle(this)) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Fail head exchange, requeue pipelined ones and close connection. When connect failed, all are failed
+	 */
+	private void fail(Exception exception) {
+		NioExchange failed = inflight.isEmpty() ? null : inflight.removeFirst();
+		close();
+		if (connected) {
+			requeue(exception);
+		} else {
+			while (!inflight.isEmpty()) {
+				inflight.removeFirst().fail(exception);
+			}
+		}
+		if (failed != null) {
+			failed.fail(exception);
+		}
+	}
+
+	/**
+	 * Unexpected failure
+	 */
+	public void abort(Exception exception) {
+		fail(exception);
+	}
+
+	/**
+	 * Transport shutdown
+	 */
+	public void shutdown() {
+		IOException exception = new IOException("Transport closed");
+		while (!inflight.isEmpty()) {
+			inflight.removeFirst().fail(exception);
+		}
+		close();
+	}
+
+	private void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		reactor.unregister(this);
+		if (key != null) {
+			key.cancel();
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException iox) {
+				logger.debug("Exception while closing channel", iox);
+			}
+		}
+		transport.closed(this);
+	}
+
+	/**
+	 * Serialize request line and headers directly into reusable write buffer
+	 */
+	private void writeHead(NioExchange exchange) {
+		HttlRequest request = exchange.request;
+		putAscii(request.getMethod().name());
+		putAscii(" ");
+		putAscii(request.getPathAndQuery());
+		putAscii(" HTTP/1.1");
+		putBytes(CRLF);
+
+		Multival<String> headers = request.getHeaders();
+		boolean hostSet = false;
+		boolean authorizationSet = false;
+		if (headers != null && headers.size() != 0) {
+			for (String name : headers) {
+				if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding")) {
+					continue; //we set them
+				}
+				hostSet |= name.equalsIgnoreCase("Host");
+				authorizationSet |= name.equalsIgnoreCase("Authorization");
+				List<String> values = headers.get(name);
+				for (String value : values) {
+					putHeader(name, value);
+				}
+			}
+		}
+		if (!hostSet) {
+			putHeader("Host", transport.getHostHeader());
+		}
+		if (!authorizationSet && transport.getAuthorizationHeader() != null) {
+			putHeader("Authorization", transport.getAuthorizationHeader());
+		}
+		if (exchange.body != null) {
+			putHeader("Content-Length", String.valueOf(exchange.body.remaining()));
+		} else if (exchange.file != null) {
+			putHeader("Content-Length", String.valueOf(exchange.fileLength));
+		} else if (request.getMethod().isBodyAllowed()) {
+			putHeader("Content-Length", "0");
+		}
+		putBytes(CRLF);
+	}
+
+	private void putHeader(String name, String value) {
+		putAscii(name);
+		putAscii(": ");
+		putAscii(value);
+		putBytes(CRLF);
+	}
+
+	private void putBytes(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		writeBuffer.put(bytes);
+	}
+
+	/**
+	 * Headers are ISO-8859-1 - avoid String.getBytes() allocation
+	 */
+	private void putAscii(String string) {
+		int length = string.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; ++i) {
+			char c = string.charAt(i);
+			writeBuffer.put(c < 256 ? (byte) c : (byte) '?');
+		}
+	}
+
+	private void ensureCapacity(int length) {
+		if (writeBuffer.remaining() < length) {
+			int capacity = writeBuffer.capacity() * 2;
+			while (capacity - writeBuffer.position() < length) {
+				capacity *= 2;
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(capacity);
+			writeBuffer.flip();
+			bigger.put(writeBuffer);
+			writeBuffer = bigger;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NioConnection [" + channel + ", served=" + served + ", inflight=" + inflight.size() + "]";
+	}
+}
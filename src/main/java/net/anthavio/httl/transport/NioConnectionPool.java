@@ -0,0 +1,215 @@
+package net.anthavio.httl.transport;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import net.anthavio.httl.HttlPoolStats;
+
+/**
+ * Keep-alive connections of single host. Idle connections are reused in LIFO order (warmest first).
+ * Exchanges are queued in FIFO order when pool is exhausted.
+ * 
+ * With pipelining depth > 1, pipelinable exchange is assigned to least loaded busy pipelining connection
+ * before it gets queued.
+ *
+ * @author martin.vanek
+ *
+ */
+class NioConnectionPool {
+
+	private final NioTransport transport;
+
+	private final int maximumSize;
+
+	private final int pipeliningDepth;
+
+	private final LinkedList<NioConnection> idle = new LinkedList<NioConnection>();
+
+	private final List<NioConnection> busy = new ArrayList<NioConnection>();
+
+	private final LinkedList<NioExchange> pending = new LinkedList<NioExchange>();
+
+	private int total;
+
+	private final PoolMeter meter = new PoolMeter();
+
+	private boolean closed;
+
+	public NioConnectionPool(NioTransport transport, int maximumSize, int pipeliningDepth) {
+		this.transport = transport;
+		this.maximumSize = maximumSize;
+		this.pipeliningDepth = pipeliningDepth;
+	}
+
+	/**
+	 * @return idle, new (not yet connected) or busy pipelining connection. null when exchange was queued
+	 */
+	public synchronized NioConnection lease(NioExchange exchange, long poolDeadline) {
+		if (closed) {
+			throw new IllegalStateException("Pool is closed");
+		}
+		NioConnection connection = idle.pollFirst();
+		if (connection == null && total < maximumSize) {
+			++total;
+			meter.created.incrementAndGet();
+			connection = transport.newConnection();
+		}
+		if (connection != null) {
+			connection.assigned = 1;
+			connection.pipelinable = exchange.pipelinable;
+			busy.add(connection);
+			acquired(exchange);
+			return connection;
+		}
+		if (exchange.pipelinable) {
+			connection = leastPipelined();
+			if (connection != null) {
+				++connection.assigned;
+				acquired(exchange);
+				return connection;
+			}
+		}
+		if (exchange.poolDeadline == 0) {
+			exchange.poolDeadline = poolDeadline;
+		}
+		if (exchange.poolQueued == 0) {
+			exchange.poolQueued = System.nanoTime();
+		}
+		pending.addLast(exchange);
+		return null;
+	}
+
+	private void acquired(NioExchange exchange) {
+		meter.acquired(exchange.poolQueued == 0 ? 0 : System.nanoTime() - exchange.poolQueued);
+		exchange.poolQueued = 0;
+	}
+
+	private NioConnection leastPipelined() {
+		NioConnection least = null;
+		for (NioConnection connection : busy) {
+			if (connection.pipelinable && connection.assigned < pipeliningDepth
+					&& (least == null || connection.assigned < least.assigned)) {
+				least = connection;
+			}
+		}
+		return least;
+	}
+
+	/**
+	 * Connection finished exchange and can be reused
+	 *
+	 * @return queued exchange that should be sent by connection or null when connection was returned into pool
+	 * or it is still busy with pipelined exchanges
+	 */
+	public synchronized NioExchange release(NioConnection connection) {
+		--connection.assigned;
+		if (connection.assigned > 0) {
+			//still answering pipelined exchanges - only another pipelinable can join them
+			if (connection.pipelinable) {
+				NioExchange exchange = pollPipelinable();
+				if (exchange != null) {
+					++connection.assigned;
+					acquired(exchange);
+				}
+				return exchange;
+			}
+			return null;
+		}
+		NioExchange exchange = pollPending();
+		if (exchange != null) {
+			connection.assigned = 1;
+			connection.pipelinable = exchange.pipelinable;
+			acquired(exchange);
+		} else {
+			busy.remove(connection);
+			idle.addFirst(connection);
+		}
+		return exchange;
+	}
+
+	private NioExchange pollPipelinable() {
+		Iterator<NioExchange> iterator = pending.iterator();
+		while (iterator.hasNext()) {
+			NioExchange exchange = iterator.next();
+			if (exchange.isCompleted()) {
+				iterator.remove(); //cancelled while queued
+			} else if (exchange.pipelinable) {
+				iterator.remove();
+				return exchange;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return first queued exchange not cancelled meanwhile
+	 */
+	private NioExchange pollPending() {
+		NioExchange exchange = pending.pollFirst();
+		while (exchange != null && exchange.isCompleted()) {
+			exchange = pending.pollFirst();
+		}
+		return exchange;
+	}
+
+	/**
+	 * Connection was closed and it's slot is free
+	 *
+	 * @return queued exchange that should be dispatched again or null
+	 */
+	public synchronized NioExchange closed(NioConnection connection) {
+		if (!idle.remove(connection)) {
+			busy.remove(connection);
+		}
+		--total;
+		meter.closed.incrementAndGet();
+		return pollPending();
+	}
+
+	/**
+	 * @return true if connection was idle and now is removed from pool
+	 */
+	public synchronized boolean removeIdle(NioConnection connection) {
+		return idle.remove(connection);
+	}
+
+	/**
+	 * @return exchanges waiting for connection longer than pool acquire timeout. Cancelled ones are just removed
+	 */
+	public synchronized List<NioExchange> expired(long now) {
+		List<NioExchange> expired = null;
+		Iterator<NioExchange> iterator = pending.iterator();
+		while (iterator.hasNext()) {
+			NioExchange exchange = iterator.next();
+			if (exchange.isCompleted()) {
+				iterator.remove();
+			} else if (exchange.poolDeadline <= now) {
+				iterator.remove();
+				if (expired == null) {
+					expired = new ArrayList<NioExchange>();
+				}
+				expired.add(exchange);
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * @return exchanges waiting for connection
+	 */
+	public synchronized List<NioExchange> close() {
+		closed = true;
+		List<NioExchange> waiting = new ArrayList<NioExchange>(pending);
+		pending.clear();
+		idle.clear(); //connections are closed by their reactors
+		busy.clear();
+		return waiting;
+	}
+
+	public synchronized HttlPoolStats getStats() {
+		return meter.stats(maximumSize, busy.size(), idle.size(), pending.size(), meter.closed.get());
+	}
+
+}
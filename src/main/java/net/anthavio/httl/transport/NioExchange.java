@@ -0,0 +1,156 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLException;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlTransport.HttlTransportCallback;
+import net.anthavio.httl.util.Cutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single request - response exchange travelling through NioTransport. Callback is guaranteed to be invoked exactly once
+ *
+ * @author martin.vanek
+ *
+ */
+class NioExchange {
+
+	private static final Logger logger = LoggerFactory.getLogger(NioExchange.class);
+
+	/**
+	 * Unanswered idempotent request is resent at most this many times
+	 */
+	static final int MAX_RETRIES = 3;
+
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+
+	final HttlRequest request;
+
+	final ByteBuffer body; //position is never moved, senders use duplicate
+
+	final FileChannel file; //body sent using transferTo
+
+	final long fileLength;
+
+	final int readTimeoutMillis;
+
+	private final HttlTransportCallback callback;
+
+	private final boolean closeResponse;
+
+	long poolDeadline; //when waiting for pooled connection
+
+	long poolQueued; //nanoTime when queued waiting for pooled connection
+
+	boolean pipelinable; //can share connection with other pipelined exchanges
+
+	private int retries;
+
+	/**
+	 * @param closeResponse - close response after callback returns
+	 * @param pipelining - pipelining is enabled in transport
+	 */
+	public NioExchange(HttlRequest request, ByteBuffer body, int readTimeoutMillis, HttlTransportCallback callback,
+			boolean closeResponse, boolean pipelining) {
+		this.request = request;
+		this.body = body;
+		this.file = null;
+		this.fileLength = 0;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.callback = callback;
+		this.closeResponse = closeResponse;
+		this.pipelinable = pipelining && body == null && request.getMethod().isSafe();
+	}
+
+	/**
+	 * @param file - request body. Exchange closes it when completed
+	 */
+	public NioExchange(HttlRequest request, FileChannel file, int readTimeoutMillis, HttlTransportCallback callback,
+			boolean closeResponse) throws IOException {
+		this.request = request;
+		this.body = null;
+		this.file = file;
+		this.fileLength = file.size();
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.callback = callback;
+		this.closeResponse = closeResponse;
+		this.pipelinable = false;
+	}
+
+	/**
+	 * @return true when request can be resent after connection failure
+	 */
+	public boolean isRetryable() {
+		return request.getMethod().isIdempotent() && retries < MAX_RETRIES;
+	}
+
+	/**
+	 * @return true when request can be resent because server did not process it at all
+	 */
+	public boolean isResendable() {
+		return retries < MAX_RETRIES;
+	}
+
+	/**
+	 * Resent exchange is never pipelined again
+	 */
+	public void retried() {
+		++retries;
+		pipelinable = false;
+		poolDeadline = 0;
+		poolQueued = 0;
+	}
+
+	public boolean isCompleted() {
+		return completed.get();
+	}
+
+	public void complete(HttlResponse response) {
+		if (!completed.compareAndSet(false, true)) {
+			Cutils.close(response); //late response of cancelled exchange
+			return;
+		}
+		Cutils.close(file);
+		try {
+			callback.onResponse(response);
+		} catch (Exception x) {
+			logger.warn("Callback failed to process " + response, x);
+		} finally {
+			if (closeResponse) {
+				Cutils.close(response);
+			}
+		}
+	}
+
+	public void fail(Exception exception) {
+		if (!completed.compareAndSet(false, true)) {
+			return;
+		}
+		Cutils.close(file);
+		try {
+			if (exception instanceof HttlRequestException || exception instanceof ConnectException
+					|| exception instanceof SSLException) {
+				callback.onRequestFailure(request, exception);
+			} else {
+				callback.onResponseFailure(request, exception);
+			}
+		} catch (Exception x) {
+			logger.warn("Callback failed to process " + exception, x);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NioExchange [" + request.getMethod() + " " + request.getPathAndQuery() + "]";
+	}
+}
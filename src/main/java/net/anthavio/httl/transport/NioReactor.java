@@ -0,0 +1,161 @@
+package net.anthavio.httl.transport;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selector event loop thread. Owned NioConnections are touched only by this thread.
+ * Other threads hand over work using execute(Runnable)
+ *
+ * @author martin.vanek
+ *
+ */
+class NioReactor implements Runnable {
+
+	/**
+	 * Granularity of connect/read/idle timeouts checking
+	 */
+	static final long CHECK_INTERVAL_MILLIS = 50;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final NioTransport transport;
+
+	private final Selector selector;
+
+	private final Thread thread;
+
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private final List<NioConnection> connections = new ArrayList<NioConnection>();
+
+	private volatile boolean running = true;
+
+	public NioReactor(NioTransport transport, String name) throws IOException {
+		this.transport = transport;
+		this.selector = Selector.open();
+		this.thread = new Thread(this, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	public Selector getSelector() {
+		return selector;
+	}
+
+	public boolean isReactorThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Execute task in reactor thread
+	 */
+	public void execute(Runnable task) {
+		if (!running) {
+			throw new IllegalStateException("Reactor is closed");
+		}
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	void register(NioConnection connection) {
+		connections.add(connection);
+	}
+
+	void unregister(NioConnection connection) {
+		connections.remove(connection);
+	}
+
+	@Override
+	public void run() {
+		long nextCheck = System.currentTimeMillis() + CHECK_INTERVAL_MILLIS;
+		while (running) {
+			try {
+				selector.select(CHECK_INTERVAL_MILLIS);
+			} catch (IOException iox) {
+				logger.error("Selector failed", iox);
+				break;
+			}
+
+			runTasks();
+
+			Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				NioConnection connection = (NioConnection) key.attachment();
+				try {
+					if (key.isValid() && key.isConnectable()) {
+						connection.onConnectable();
+					}
+					if (key.isValid() && key.isWritable()) {
+						connection.onWritable();
+					}
+					if (key.isValid() && key.isReadable()) {
+						connection.onReadable();
+					}
+				} catch (Exception x) {
+					logger.warn("Connection failure " + connection, x);
+					connection.abort(x);
+				}
+			}
+
+			long now = System.currentTimeMillis();
+			if (now >= nextCheck) {
+				NioConnection[] array = connections.toArray(new NioConnection[connections.size()]);
+				for (NioConnection connection : array) {
+					connection.checkTimeouts(now);
+				}
+				transport.expirePending(now);
+				nextCheck = now + CHECK_INTERVAL_MILLIS;
+			}
+		}
+
+		runTasks();
+		NioConnection[] array = connections.toArray(new NioConnection[connections.size()]);
+		for (NioConnection connection : array) {
+			connection.abort(new IOException("Transport closed"));
+		}
+		try {
+			selector.close();
+		} catch (IOException iox) {
+			logger.warn("Exception while closing selector", iox);
+		}
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (Exception x) {
+				logger.warn("Task failed " + task, x);
+			}
+		}
+	}
+
+	public void close() {
+		running = false;
+		selector.wakeup();
+		if (!isReactorThread()) {
+			try {
+				thread.join(1000);
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "NioReactor [" + thread.getName() + "]";
+	}
+}
@@ -0,0 +1,22 @@
+package net.anthavio.httl.transport;
+
+import java.io.InputStream;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender.Multival;
+
+/**
+ * 
+ * @author martin.vanek
+ *
+ */
+public class NioResponse extends HttlResponse {
+
+	private static final long serialVersionUID = 1L;
+
+	public NioResponse(HttlRequest request, int code, String message, Multival<String> headers, InputStream stream) {
+		super(request, code, message, headers, stream);
+	}
+
+}
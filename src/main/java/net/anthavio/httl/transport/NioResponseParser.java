@@ -0,0 +1,337 @@
+package net.anthavio.httl.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlSender.Multival;
+
+/**
+ * Incremental HTTP/1.1 response parser. Bytes are fed as they arrive from SocketChannel
+ * and parser consumes exactly one response message, leaving following bytes in the buffer.
+ *
+ * Supports Content-Length, chunked and connection close delimited response body.
+ *
+ * @author martin.vanek
+ *
+ */
+class NioResponseParser {
+
+	private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+	private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+	private static enum State {
+		STATUS_LINE, HEADERS, BODY_LENGTH, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, BODY_CLOSE, DONE;
+	}
+
+	private State state = State.DONE;
+
+	private boolean bodyless;
+
+	private long received;
+
+	private byte[] line = new byte[256];
+
+	private int lineLength;
+
+	private String version;
+
+	private int status;
+
+	private String message;
+
+	private Multival<String> headers;
+
+	private String contentLength;
+
+	private String transferEncoding;
+
+	private String connection;
+
+	private boolean keepAlive;
+
+	private long remaining;
+
+	private BodyBuffer body;
+
+	/**
+	 * Prepare for new response
+	 *
+	 * @param bodyless - response to HEAD request never has body
+	 */
+	public void reset(boolean bodyless) {
+		this.state = State.STATUS_LINE;
+		this.bodyless = bodyless;
+		this.received = 0;
+		this.lineLength = 0;
+		this.version = null;
+		this.status = 0;
+		this.message = null;
+		this.headers = new Multival<String>();
+		this.contentLength = null;
+		this.transferEncoding = null;
+		this.connection = null;
+		this.keepAlive = true;
+		this.remaining = 0;
+		this.body = null;
+	}
+
+	/**
+	 * @return true when no byte of response has been received yet
+	 */
+	public boolean isEmpty() {
+		return received == 0;
+	}
+
+	public boolean isDone() {
+		return state == State.DONE;
+	}
+
+	/**
+	 * @return true when connection can be reused for next request
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Consume bytes from buffer
+	 *
+	 * @return true when complete response was parsed
+	 */
+	public boolean parse(ByteBuffer buffer) throws IOException {
+		while (state != State.DONE && buffer.hasRemaining()) {
+			switch (state) {
+			case STATUS_LINE:
+				if (readLine(buffer)) {
+					parseStatusLine();
+				}
+				break;
+			case HEADERS:
+				if (readLine(buffer)) {
+					parseHeaderLine();
+				}
+				break;
+			case BODY_LENGTH:
+			case CHUNK_DATA:
+				int count = (int) Math.min(remaining, buffer.remaining());
+				body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+				buffer.position(buffer.position() + count);
+				received += count;
+				remaining -= count;
+				if (remaining == 0) {
+					state = state == State.BODY_LENGTH ? State.DONE : State.CHUNK_END;
+				}
+				break;
+			case CHUNK_SIZE:
+				if (readLine(buffer)) {
+					parseChunkSize();
+				}
+				break;
+			case CHUNK_END:
+				if (readLine(buffer)) {
+					if (lineLength != 0) {
+						throw new IOException("Malformed chunk end");
+					}
+					state = State.CHUNK_SIZE;
+				}
+				break;
+			case TRAILERS:
+				if (readLine(buffer)) {
+					if (lineLength == 0) {
+						state = State.DONE;
+					}
+					lineLength = 0; //trailer headers are ignored
+				}
+				break;
+			case BODY_CLOSE:
+				int rest = buffer.remaining();
+				body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), rest);
+				buffer.position(buffer.limit());
+				received += rest;
+				break;
+			default:
+				throw new IllegalStateException("Unexpected state " + state);
+			}
+		}
+		return state == State.DONE;
+	}
+
+	/**
+	 * Server closed connection.
+	 *
+	 * @return true if response is complete (connection close delimited body)
+	 */
+	public boolean eof() {
+		if (state == State.BODY_CLOSE) {
+			state = State.DONE;
+		}
+		return state == State.DONE;
+	}
+
+	public NioResponse toResponse(HttlRequest request) {
+		if (state != State.DONE) {
+			throw new IllegalStateException("Response is not complete");
+		}
+		InputStream stream = body != null ? body.toInputStream() : null;
+		return new NioResponse(request, status, message, headers, stream);
+	}
+
+	/**
+	 * @return true when complete line was read into line buffer
+	 */
+	private boolean readLine(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+			received++;
+			if (b == '\n') {
+				if (lineLength > 0 && line[lineLength - 1] == '\r') {
+					lineLength--;
+				}
+				return true;
+			}
+			if (lineLength == line.length) {
+				if (lineLength >= MAX_LINE_LENGTH) {
+					throw new IOException("Response line exceeds " + MAX_LINE_LENGTH + " bytes");
+				}
+				byte[] bigger = new byte[line.length * 2];
+				System.arraycopy(line, 0, bigger, 0, lineLength);
+				line = bigger;
+			}
+			line[lineLength++] = b;
+		}
+		return false;
+	}
+
+	private String takeLine() {
+		String string = new String(line, 0, lineLength, ISO_8859_1);
+		lineLength = 0;
+		return string;
+	}
+
+	private void parseStatusLine() throws IOException {
+		if (lineLength == 0) {
+			return; //tolerate empty lines before status line
+		}
+		String statusLine = takeLine();
+		int idx1 = statusLine.indexOf(' ');
+		if (idx1 == -1 || !statusLine.startsWith("HTTP/")) {
+			throw new IOException("Malformed status line: " + statusLine);
+		}
+		int idx2 = statusLine.indexOf(' ', idx1 + 1);
+		try {
+			if (idx2 == -1) {
+				this.status = Integer.parseInt(statusLine.substring(idx1 + 1).trim());
+				this.message = "";
+			} else {
+				this.status = Integer.parseInt(statusLine.substring(idx1 + 1, idx2));
+				this.message = statusLine.substring(idx2 + 1);
+			}
+		} catch (NumberFormatException nfx) {
+			throw new IOException("Malformed status line: " + statusLine);
+		}
+		this.version = statusLine.substring(0, idx1);
+		this.keepAlive = !version.equals("HTTP/1.0");
+		this.state = State.HEADERS;
+	}
+
+	private void parseHeaderLine() throws IOException {
+		if (lineLength == 0) {
+			headersComplete();
+			return;
+		}
+		String header = takeLine();
+		int colon = header.indexOf(':');
+		if (colon == -1) {
+			throw new IOException("Malformed header line: " + header);
+		}
+		String name = header.substring(0, colon).trim();
+		String value = header.substring(colon + 1).trim();
+		headers.add(name, value);
+		//header names are case insensitive
+		if (name.equalsIgnoreCase("Content-Length")) {
+			contentLength = value;
+		} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+			transferEncoding = value;
+		} else if (name.equalsIgnoreCase("Connection")) {
+			connection = value;
+		}
+	}
+
+	private void headersComplete() throws IOException {
+		if (status >= 100 && status < 200 && status != 101) {
+			//interim response (100 Continue) - wait for the final one
+			long interim = received;
+			reset(bodyless);
+			received = interim;
+			return;
+		}
+
+		if (connection != null) {
+			if (connection.equalsIgnoreCase("close")) {
+				keepAlive = false;
+			} else if (connection.equalsIgnoreCase("keep-alive")) {
+				keepAlive = true;
+			}
+		}
+
+		if (bodyless || status == 204 || status == 304) {
+			state = State.DONE;
+			return;
+		}
+
+		if (transferEncoding != null && transferEncoding.toLowerCase().indexOf("chunked") != -1) {
+			body = new BodyBuffer(1024);
+			state = State.CHUNK_SIZE;
+		} else if (contentLength != null) {
+			try {
+				remaining = Long.parseLong(contentLength.trim());
+			} catch (NumberFormatException nfx) {
+				throw new IOException("Malformed Content-Length: " + contentLength);
+			}
+			body = new BodyBuffer((int) Math.min(remaining, 1024 * 1024));
+			state = remaining == 0 ? State.DONE : State.BODY_LENGTH;
+		} else {
+			body = new BodyBuffer(1024);
+			keepAlive = false;
+			state = State.BODY_CLOSE;
+		}
+	}
+
+	private void parseChunkSize() throws IOException {
+		String chunkLine = takeLine();
+		int semicolon = chunkLine.indexOf(';'); //chunk extensions are ignored
+		if (semicolon != -1) {
+			chunkLine = chunkLine.substring(0, semicolon);
+		}
+		try {
+			remaining = Long.parseLong(chunkLine.trim(), 16);
+		} catch (NumberFormatException nfx) {
+			throw new IOException("Malformed chunk size: " + chunkLine);
+		}
+		state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+	}
+
+	/**
+	 * Avoid copying of the body bytes when response InputStream is created
+	 */
+	static class BodyBuffer extends ByteArrayOutputStream {
+
+		public BodyBuffer(int size) {
+			super(size);
+		}
+
+		public InputStream toInputStream() {
+			return new ByteArrayInputStream(buf, 0, count);
+		}
+
+		public ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package net.anthavio.httl.transport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.anthavio.httl.Authentication;
+import net.anthavio.httl.Authentication.Scheme;
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.transport.NioResponseParser.BodyBuffer;
+import net.anthavio.httl.util.Base64;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.ReaderInputStream;
+
+/**
+ * Java NIO SocketChannel implementation of the HttlTransport. No additional library is required
+ *
+ * Connections are multiplexed by few Selector threads. Asynchronous call does not block calling thread
+ * and HttlTransportCallback is invoked from Selector thread so it must not perform any blocking operation.
+ *
+ * Request body is buffered in memory before it is sent, except File body, which is sent using FileChannel.transferTo. 
+ * Response body is buffered in memory before it is handed over.
+ *
+ * @author martin.vanek
+ *
+ */
+public class NioTransport implements HttlPoolingTransport {
+
+	private final NioConfig config;
+
+	private final NioReactor[] reactors;
+
+	private final AtomicInteger reactorIndex = new AtomicInteger();
+
+	private final NioConnectionPool pool;
+
+	private final InetSocketAddress address;
+
+	private final String hostHeader;
+
+	private final String authorizationHeader;
+
+	private final boolean pipelining;
+
+	private volatile boolean closed;
+
+	public NioTransport(NioConfig config) {
+		this.config = config;
+		URL url = config.getUrl();
+		if (!url.getProtocol().equals("http")) {
+			throw new IllegalArgumentException("Unsupported protocol: " + url.getProtocol() + " Only http is supported");
+		}
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		this.address = new InetSocketAddress(url.getHost(), port);
+		this.hostHeader = port == 80 ? url.getHost() : url.getHost() + ":" + port;
+
+		Authentication authentication = config.getAuthentication();
+		if (authentication != null) {
+			if (authentication.getScheme() != Scheme.BASIC) {
+				throw new IllegalArgumentException("Unsupported authentication: " + authentication.getScheme()
+						+ " Only BASIC is supported");
+			}
+			String encoded = Base64.encodeString(authentication.getUsername() + ":" + authentication.getPassword());
+			this.authorizationHeader = "Basic " + encoded;
+		} else {
+			this.authorizationHeader = null;
+		}
+
+		this.pipelining = config.getPipeliningDepth() > 1;
+		this.pool = new NioConnectionPool(this, config.getPoolMaximumSize(), config.getPipeliningDepth());
+
+		this.reactors = new NioReactor[config.getSelectorThreads()];
+		try {
+			for (int i = 0; i < reactors.length; ++i) {
+				reactors[i] = new NioReactor(this, "httl-nio-" + url.getHost() + ":" + port + "-" + i);
+			}
+		} catch (IOException iox) {
+			close();
+			throw new IllegalStateException("Failed to open Selector", iox);
+		}
+	}
+
+	@Override
+	public NioConfig getConfig() {
+		return config;
+	}
+
+	@Override
+	public HttlPoolStats getPoolStats() {
+		return pool.getStats();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		List<NioExchange> waiting = pool.close();
+		for (NioExchange exchange : waiting) {
+			exchange.fail(new IOException("Transport closed"));
+		}
+		for (NioReactor reactor : reactors) {
+			if (reactor != null) {
+				reactor.close();
+			}
+		}
+	}
+
+	@Override
+	public HttlResponse call(HttlRequest request) throws IOException {
+		BlockingCallback callback = new BlockingCallback();
+		NioExchange exchange = createExchange(request, getReadTimeout(request), callback, false, pipelining);
+		dispatch(exchange);
+		return callback.await(exchange);
+	}
+
+	@Override
+	public void call(HttlRequest request, HttlTransportCallback callback) {
+		if (callback == null) {
+			throw new IllegalArgumentException("Null callback");
+		}
+		NioExchange exchange;
+		try {
+			exchange = createExchange(request, getReadTimeout(request), callback, true, pipelining);
+		} catch (Exception x) {
+			callback.onRequestFailure(request, x);
+			return;
+		}
+		dispatch(exchange);
+	}
+
+	/**
+	 * FILE body is sent from FileChannel, never buffered in memory. Other bodies are buffered
+	 */
+	static NioExchange createExchange(HttlRequest request, int readTimeoutMillis, HttlTransportCallback callback,
+			boolean closeResponse, boolean pipelining) throws IOException {
+		HttlBody body = request.getBody();
+		if (body != null && body.getType() == HttlBody.Type.FILE) {
+			FileChannel file = new FileInputStream((File) body.getPayload()).getChannel();
+			try {
+				return new NioExchange(request, file, readTimeoutMillis, callback, closeResponse);
+			} catch (IOException iox) {
+				file.close();
+				throw iox;
+			}
+		}
+		return new NioExchange(request, prepareBody(request), readTimeoutMillis, callback, closeResponse, pipelining);
+	}
+
+	private int getReadTimeout(HttlRequest request) {
+		return request.getReadTimeoutMillis() != null ? request.getReadTimeoutMillis() : config.getReadTimeoutMillis();
+	}
+
+	/**
+	 * @return request body wrapping byte array or null when request has no body
+	 */
+	private static ByteBuffer prepareBody(HttlRequest request) throws IOException {
+		HttlBody body = request.getBody();
+		if (body == null) {
+			return null;
+		}
+		switch (body.getType()) {
+		case BYTES:
+			return ByteBuffer.wrap((byte[]) body.getPayload(), 0, body.getLength());
+		case STRING:
+			return ByteBuffer.wrap(((String) body.getPayload()).getBytes(Charset.forName(request.getCharset())));
+		case MARSHALL:
+			BodyBuffer buffer = new BodyBuffer(1024);
+			request.getSender().getMarshaller()
+					.marshall(body.getPayload(), request.getMediaType(), request.getCharset(), buffer);
+			return buffer.toByteBuffer();
+		case STREAM:
+			return ByteBuffer.wrap(HttlUtil.readAsBytes((InputStream) body.getPayload(), HttlUtil.KILO16));
+		case READER:
+			InputStream stream = new ReaderInputStream((Reader) body.getPayload(), request.getCharset());
+			return ByteBuffer.wrap(HttlUtil.readAsBytes(stream, HttlUtil.KILO16));
+		default:
+			throw new IllegalStateException("Unsupported HttlBody type: " + body.getType());
+		}
+	}
+
+	/**
+	 * Send exchange using pooled connection or queue it until some is released
+	 */
+	void dispatch(final NioExchange exchange) {
+		if (exchange.isCompleted()) {
+			return; //cancelled meanwhile
+		}
+		final NioConnection connection;
+		try {
+			if (closed) {
+				throw new IllegalStateException("Transport is closed");
+			}
+			long poolDeadline = System.currentTimeMillis() + config.getPoolAcquireTimeoutMillis();
+			connection = pool.lease(exchange, poolDeadline);
+			if (connection != null) {
+				connection.getReactor().execute(new Runnable() {
+
+					@Override
+					public void run() {
+						connection.start(exchange);
+					}
+				});
+			}
+		} catch (IllegalStateException isx) {
+			exchange.fail(new IOException("Transport closed"));
+		}
+	}
+
+	NioConnection newConnection() {
+		int index = (reactorIndex.getAndIncrement() & Integer.MAX_VALUE) % reactors.length;
+		return new NioConnection(this, reactors[index], config.getBufferSize());
+	}
+
+	NioExchange release(NioConnection connection) {
+		return pool.release(connection);
+	}
+
+	boolean removeIdle(NioConnection connection) {
+		return pool.removeIdle(connection);
+	}
+
+	void closed(NioConnection connection) {
+		NioExchange waiting = pool.closed(connection);
+		if (waiting != null) {
+			dispatch(waiting);
+		}
+	}
+
+	void expirePending(long now) {
+		List<NioExchange> expired = pool.expired(now);
+		if (expired != null) {
+			for (NioExchange exchange : expired) {
+				exchange.fail(new ConnectException("Pool timeout " + config.getPoolAcquireTimeoutMillis() + " ms"));
+			}
+		}
+	}
+
+	InetSocketAddress getAddress() {
+		return address;
+	}
+
+	String getHostHeader() {
+		return hostHeader;
+	}
+
+	String getAuthorizationHeader() {
+		return authorizationHeader;
+	}
+
+	@Override
+	public String toString() {
+		return "NioTransport [" + config.getUrl() + "]";
+	}
+}
@@ -0,0 +1,52 @@
+package net.anthavio.httl.transport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.anthavio.httl.HttlPoolStats;
+
+/**
+ * Counters of connection pool that underlying pool implementations do not track themselves
+ * 
+ * @author martin.vanek
+ *
+ */
+class PoolMeter {
+
+	final AtomicLong created = new AtomicLong();
+
+	final AtomicLong closed = new AtomicLong();
+
+	final AtomicInteger pending = new AtomicInteger();
+
+	private final AtomicLong acquired = new AtomicLong();
+
+	private final AtomicLong acquireNanos = new AtomicLong();
+
+	private final AtomicLong acquireMaxNanos = new AtomicLong();
+
+	public void acquired(long nanos) {
+		acquired.incrementAndGet();
+		acquireNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = acquireMaxNanos.get())) {
+			if (acquireMaxNanos.compareAndSet(max, nanos)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * When pool implementation does not notify about closing, every connection not in pool is closed
+	 */
+	public HttlPoolStats stats(int maximum, int leased, int available, int pending) {
+		long created = this.created.get();
+		return stats(maximum, leased, available, pending, Math.max(0, created - leased - available));
+	}
+
+	public HttlPoolStats stats(int maximum, int leased, int available, int pending, long closed) {
+		return new HttlPoolStats(maximum, leased, available, pending, created.get(), closed, acquired.get(),
+				acquireNanos.get(), acquireMaxNanos.get());
+	}
+
+}
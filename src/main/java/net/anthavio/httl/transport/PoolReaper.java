@@ -0,0 +1,62 @@
+package net.anthavio.httl.transport;
+
+import java.net.URL;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background eviction of idle and expired pooled connections. Dead connections are closed before request picks them
+ * from pool, instead of failing it.
+ * 
+ * @author martin.vanek
+ *
+ */
+class PoolReaper {
+
+	private static final Logger logger = LoggerFactory.getLogger(PoolReaper.class);
+
+	static final int MIN_INTERVAL_MILLIS = 100;
+
+	/**
+	 * @return started daemon Timer or null when neither maxIdleMillis nor maxLifetimeMillis is set
+	 */
+	public static Timer start(URL url, int maxIdleMillis, int maxLifetimeMillis, final Runnable reap) {
+		long interval = getInterval(maxIdleMillis, maxLifetimeMillis);
+		if (interval == 0) {
+			return null;
+		}
+		Timer timer = new Timer("httl-reaper-" + url.getHost() + ":" + url.getPort(), true);
+		timer.schedule(new TimerTask() {
+
+			@Override
+			public void run() {
+				try {
+					reap.run();
+				} catch (Exception x) {
+					logger.warn("Pool reaping failed", x);
+				}
+			}
+		}, interval, interval);
+		return timer;
+	}
+
+	/**
+	 * Half of the shortest limit, so connection is not kept much longer than allowed
+	 */
+	static long getInterval(int maxIdleMillis, int maxLifetimeMillis) {
+		int shortest;
+		if (maxIdleMillis > 0 && maxLifetimeMillis > 0) {
+			shortest = Math.min(maxIdleMillis, maxLifetimeMillis);
+		} else if (maxIdleMillis > 0) {
+			shortest = maxIdleMillis;
+		} else if (maxLifetimeMillis > 0) {
+			shortest = maxLifetimeMillis;
+		} else {
+			return 0;
+		}
+		return Math.max(MIN_INTERVAL_MILLIS, shortest / 2);
+	}
+}
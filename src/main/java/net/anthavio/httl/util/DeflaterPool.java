@@ -0,0 +1,75 @@
+package net.anthavio.httl.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * Bounded pool of Deflaters. Every Deflater holds native zlib state, which is expensive to allocate and
+ * released only by end() or finalization. Deflaters returned over pool capacity are ended immediately.
+ *
+ * @author martin.vanek
+ *
+ */
+public class DeflaterPool {
+
+	private final int level;
+
+	private final boolean nowrap;
+
+	private final BlockingQueue<Deflater> pool;
+
+	/**
+	 * @param level - compression level 0-9 or Deflater.DEFAULT_COMPRESSION
+	 * @param nowrap - raw deflate (for GZIP) instead of ZLIB format
+	 * @param maximumSize - maximum number of idle Deflaters kept
+	 */
+	public DeflaterPool(int level, boolean nowrap, int maximumSize) {
+		if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be > 0");
+		}
+		this.level = level;
+		this.nowrap = nowrap;
+		this.pool = new ArrayBlockingQueue<Deflater>(maximumSize);
+	}
+
+	public Deflater acquire() {
+		Deflater deflater = pool.poll();
+		if (deflater == null) {
+			deflater = new Deflater(level, nowrap);
+		}
+		return deflater;
+	}
+
+	public void release(Deflater deflater) {
+		deflater.reset();
+		if (!pool.offer(deflater)) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * @return number of idle Deflaters
+	 */
+	public int getIdle() {
+		return pool.size();
+	}
+
+	/**
+	 * End all idle Deflaters
+	 */
+	public void close() {
+		Deflater deflater;
+		while ((deflater = pool.poll()) != null) {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DeflaterPool [level=" + level + ", nowrap=" + nowrap + ", idle=" + pool.size() + "]";
+	}
+}
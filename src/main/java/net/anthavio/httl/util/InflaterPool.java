@@ -0,0 +1,68 @@
+package net.anthavio.httl.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pool of Inflaters. Same as DeflaterPool - native zlib state is reused instead of allocated per response.
+ * Inflaters returned over pool capacity are ended immediately.
+ *
+ * @author martin.vanek
+ *
+ */
+public class InflaterPool {
+
+	private final boolean nowrap;
+
+	private final BlockingQueue<Inflater> pool;
+
+	/**
+	 * @param nowrap - raw deflate (for GZIP) instead of ZLIB format
+	 * @param maximumSize - maximum number of idle Inflaters kept
+	 */
+	public InflaterPool(boolean nowrap, int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be > 0");
+		}
+		this.nowrap = nowrap;
+		this.pool = new ArrayBlockingQueue<Inflater>(maximumSize);
+	}
+
+	public Inflater acquire() {
+		Inflater inflater = pool.poll();
+		if (inflater == null) {
+			inflater = new Inflater(nowrap);
+		}
+		return inflater;
+	}
+
+	public void release(Inflater inflater) {
+		inflater.reset();
+		if (!pool.offer(inflater)) {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @return number of idle Inflaters
+	 */
+	public int getIdle() {
+		return pool.size();
+	}
+
+	/**
+	 * End all idle Inflaters
+	 */
+	public void close() {
+		Inflater inflater;
+		while ((inflater = pool.poll()) != null) {
+			inflater.end();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "InflaterPool [nowrap=" + nowrap + ", idle=" + pool.size() + "]";
+	}
+}
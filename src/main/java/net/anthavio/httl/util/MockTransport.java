@@ -1,6 +1,9 @@
 package net.anthavio.httl.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -149,7 +152,8 @@ public class MockTransport extends BaseTransBuilder<MockTransport> implements Ht
 					response = new MockResponse(request, 200, "OK", request.getHeaders(), (String) body.getPayload());
 					break;
 				case BYTES:
-					response = new MockResponse(request, 200, "OK", request.getHeaders(), (byte[]) body.getPayload());
+					response = new MockResponse(request, 200, "OK", request.getHeaders(), new ByteArrayInputStream(
+							(byte[]) body.getPayload(), 0, body.getLength()));
 					break;
 				case STREAM:
 					response = new MockResponse(request, 200, "OK", request.getHeaders(), (InputStream) body.getPayload());
@@ -158,6 +162,10 @@ public class MockTransport extends BaseTransBuilder<MockTransport> implements Ht
 					response = new MockResponse(request, 200, "OK", request.getHeaders(), new ReaderInputStream(
 							(Reader) body.getPayload()));
 					break;
+				case FILE:
+					response = new MockResponse(request, 200, "OK", request.getHeaders(), new FileInputStream(
+							(File) body.getPayload()));
+					break;
 				default:
 					throw new IllegalStateException("Unsupported HttlBody type: " + body.getType());
 				}
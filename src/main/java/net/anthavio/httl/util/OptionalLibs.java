@@ -36,6 +36,10 @@ public class OptionalLibs {
 
 	public static boolean isHttpClient4 = isClassPresent("org.apache.http.client.HttpClient");
 
+	public static boolean isHttpAsyncClient4 = isClassPresent("org.apache.http.impl.nio.client.DefaultHttpAsyncClient");
+
+	public static boolean isNing = isClassPresent("com.ning.http.client.AsyncHttpClient");
+
 	/*
 	private static boolean isHttpClient41 = isClassPresent("org.apache.http.impl.client.ContentEncodingHttpClient");
 	private static boolean isHttpClient42 = isClassPresent("org.apache.http.impl.client.SystemDefaultHttpClient");
@@ -0,0 +1,130 @@
+package net.anthavio.httl.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.anthavio.httl.HttlPoolStats;
+import net.anthavio.httl.HttlPoolingTransport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes HttlPoolingTransport pool stats as JMX MBean named net.anthavio.httl:type=ConnectionPool,name=...
+ * 
+ * @author martin.vanek
+ *
+ */
+public class PoolStatsMonitor implements PoolStatsMonitorMBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(PoolStatsMonitor.class);
+
+	private static final HttlPoolStats EMPTY = new HttlPoolStats(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+	private final HttlPoolingTransport transport;
+
+	private final ObjectName objectName;
+
+	public PoolStatsMonitor(HttlPoolingTransport transport, String name) {
+		if (transport == null) {
+			throw new IllegalArgumentException("Null transport");
+		}
+		if (Cutils.isEmpty(name)) {
+			throw new IllegalArgumentException("Empty name");
+		}
+		this.transport = transport;
+		try {
+			this.objectName = new ObjectName("net.anthavio.httl:type=ConnectionPool,name=" + ObjectName.quote(name));
+		} catch (JMException jmx) {
+			throw new IllegalArgumentException("Invalid name " + name, jmx);
+		}
+	}
+
+	/**
+	 * Register into platform MBeanServer. Failure is only logged
+	 */
+	public boolean register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(this, objectName);
+			return true;
+		} catch (JMException jmx) {
+			logger.warn("Failed to register MBean " + objectName, jmx);
+			return false;
+		}
+	}
+
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException jmx) {
+			logger.warn("Failed to unregister MBean " + objectName, jmx);
+		}
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	private HttlPoolStats stats() {
+		HttlPoolStats stats = transport.getPoolStats();
+		return stats != null ? stats : EMPTY;
+	}
+
+	@Override
+	public int getMaximum() {
+		return stats().getMaximum();
+	}
+
+	@Override
+	public int getLeased() {
+		return stats().getLeased();
+	}
+
+	@Override
+	public int getAvailable() {
+		return stats().getAvailable();
+	}
+
+	@Override
+	public int getPending() {
+		return stats().getPending();
+	}
+
+	@Override
+	public long getCreated() {
+		return stats().getCreated();
+	}
+
+	@Override
+	public long getClosed() {
+		return stats().getClosed();
+	}
+
+	@Override
+	public long getAcquired() {
+		return stats().getAcquired();
+	}
+
+	@Override
+	public double getAcquireWaitMillisAverage() {
+		return stats().getAcquireWaitMillisAverage();
+	}
+
+	@Override
+	public long getAcquireWaitMillisMax() {
+		return stats().getAcquireWaitMillisMax();
+	}
+
+	@Override
+	public String toString() {
+		return "PoolStatsMonitor [objectName=" + objectName + ", transport=" + transport + "]";
+	}
+
+}
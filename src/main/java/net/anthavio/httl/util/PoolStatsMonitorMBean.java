@@ -0,0 +1,29 @@
+package net.anthavio.httl.util;
+
+/**
+ * JMX interface of PoolStatsMonitor
+ * 
+ * @author martin.vanek
+ *
+ */
+public interface PoolStatsMonitorMBean {
+
+	public int getMaximum();
+
+	public int getLeased();
+
+	public int getAvailable();
+
+	public int getPending();
+
+	public long getCreated();
+
+	public long getClosed();
+
+	public long getAcquired();
+
+	public double getAcquireWaitMillisAverage();
+
+	public long getAcquireWaitMillisMax();
+
+}
@@ -0,0 +1,302 @@
+package net.anthavio.httl.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import net.anthavio.httl.HttlContentDecoder;
+
+/**
+ * Decodes gzip and deflate content using pooled Inflaters and large input buffer.
+ *
+ * Inflater is acquired lazily on first read and released back into pool when end of content is reached
+ * or when stream is closed, whichever comes first.
+ *
+ * @author martin.vanek
+ *
+ */
+public class PooledContentDecoder implements HttlContentDecoder {
+
+	/**
+	 * Shared by all senders unless configured otherwise
+	 */
+	public static final PooledContentDecoder DEFAULT = new PooledContentDecoder(Runtime.getRuntime()
+			.availableProcessors() * 4, HttlUtil.KILO16);
+
+	private final InflaterPool gzipPool;
+
+	private final InflaterPool deflatePool;
+
+	private final int bufferSize;
+
+	/**
+	 * @param poolSize - maximum number of idle Inflaters kept for each encoding
+	 * @param bufferSize - compressed input buffer size
+	 */
+	public PooledContentDecoder(int poolSize, int bufferSize) {
+		if (bufferSize < 512) {
+			throw new IllegalArgumentException("Buffer size must be >= 512");
+		}
+		this.gzipPool = new InflaterPool(true, poolSize);
+		this.deflatePool = new InflaterPool(false, poolSize);
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public InputStream decode(String contentEncoding, InputStream stream) throws IOException {
+		if (contentEncoding.indexOf("gzip") != -1) {
+			return new InflatingInputStream(stream, gzipPool, bufferSize, true);
+		} else if (contentEncoding.indexOf("deflate") != -1) {
+			return new InflatingInputStream(stream, deflatePool, bufferSize, false);
+		} else {
+			return stream;
+		}
+	}
+
+	public InflaterPool getGzipPool() {
+		return gzipPool;
+	}
+
+	public InflaterPool getDeflatePool() {
+		return deflatePool;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	@Override
+	public String toString() {
+		return "PooledContentDecoder [gzipPool=" + gzipPool + ", deflatePool=" + deflatePool + ", bufferSize="
+				+ bufferSize + "]";
+	}
+
+	/**
+	 * Single member GZIP (RFC 1952) or ZLIB (RFC 1950) decompressing stream
+	 */
+	static class InflatingInputStream extends InputStream {
+
+		private static final int FHCRC = 2;
+		private static final int FEXTRA = 4;
+		private static final int FNAME = 8;
+		private static final int FCOMMENT = 16;
+
+		private final InputStream input;
+
+		private final InflaterPool pool;
+
+		private final int bufferSize;
+
+		private final boolean gzip;
+
+		private Inflater inflater;
+
+		private CRC32 crc;
+
+		private byte[] buffer;
+
+		private final byte[] single = new byte[1];
+
+		private int length; //of last input passed to inflater
+
+		private boolean eof;
+
+		private boolean closed;
+
+		InflatingInputStream(InputStream input, InflaterPool pool, int bufferSize, boolean gzip) {
+			this.input = input;
+			this.pool = pool;
+			this.bufferSize = bufferSize;
+			this.gzip = gzip;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = read(single, 0, 1);
+			return read == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int count) throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			if (eof) {
+				return -1;
+			}
+			if (count == 0) {
+				return 0;
+			}
+			if (inflater == null && !start()) {
+				eof = true; //empty content
+				return -1;
+			}
+			try {
+				while (true) {
+					int inflated = inflater.inflate(bytes, offset, count);
+					if (inflated != 0) {
+						if (crc != null) {
+							crc.update(bytes, offset, inflated);
+						}
+						return inflated;
+					}
+					if (inflater.finished()) {
+						finish();
+						return -1;
+					} else if (inflater.needsDictionary()) {
+						throw new ZipException("Preset dictionary is not supported");
+					} else if (inflater.needsInput()) {
+						length = input.read(buffer, 0, buffer.length);
+						if (length == -1) {
+							throw new EOFException("Unexpected end of compressed content");
+						}
+						inflater.setInput(buffer, 0, length);
+					}
+				}
+			} catch (DataFormatException dfx) {
+				String message = dfx.getMessage();
+				throw new ZipException(message != null ? message : "Invalid compressed content");
+			}
+		}
+
+		/**
+		 * @return false when there is no content at all
+		 */
+		private boolean start() throws IOException {
+			if (gzip) {
+				int first = input.read();
+				if (first == -1) {
+					return false;
+				}
+				readHeader(first);
+				crc = new CRC32();
+			}
+			buffer = new byte[bufferSize];
+			inflater = pool.acquire();
+			return true;
+		}
+
+		private void readHeader(int first) throws IOException {
+			if (first != 0x1f || readByte(input) != 0x8b) {
+				throw new ZipException("Not in GZIP format");
+			}
+			if (readByte(input) != 8) {
+				throw new ZipException("Unsupported GZIP compression method");
+			}
+			int flags = readByte(input);
+			skip(input, 6); //MTIME, XFL, OS
+			if ((flags & FEXTRA) != 0) {
+				skip(input, readByte(input) | (readByte(input) << 8));
+			}
+			if ((flags & FNAME) != 0) {
+				while (readByte(input) != 0) {
+				}
+			}
+			if ((flags & FCOMMENT) != 0) {
+				while (readByte(input) != 0) {
+				}
+			}
+			if ((flags & FHCRC) != 0) {
+				skip(input, 2);
+			}
+		}
+
+		/**
+		 * End of deflated data - verify GZIP trailer and return Inflater
+		 */
+		private void finish() throws IOException {
+			eof = true;
+			try {
+				if (gzip) {
+					//trailer might be partially in buffer already passed to inflater
+					int remaining = inflater.getRemaining();
+					InputStream trailer = new TrailerInputStream(buffer, length - remaining, remaining, input);
+					long checksum = readIntLE(trailer);
+					long size = readIntLE(trailer);
+					if (checksum != crc.getValue() || size != (inflater.getBytesWritten() & 0xffffffffL)) {
+						throw new ZipException("Corrupt GZIP trailer");
+					}
+				}
+			} finally {
+				release();
+			}
+		}
+
+		private void release() {
+			if (inflater != null) {
+				pool.release(inflater);
+				inflater = null;
+				buffer = null;
+			}
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (closed) {
+				throw new IOException("Stream closed");
+			}
+			return eof ? 0 : 1;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				release();
+				input.close();
+			}
+		}
+
+		private static int readByte(InputStream input) throws IOException {
+			int b = input.read();
+			if (b == -1) {
+				throw new EOFException("Unexpected end of GZIP content");
+			}
+			return b;
+		}
+
+		private static long readIntLE(InputStream input) throws IOException {
+			return (readByte(input) | (readByte(input) << 8) | (readByte(input) << 16) | ((long) readByte(input) << 24));
+		}
+
+		private static void skip(InputStream input, int count) throws IOException {
+			for (int i = 0; i < count; ++i) {
+				readByte(input);
+			}
+		}
+	}
+
+	/**
+	 * Unused tail of the buffer followed by the rest of the stream
+	 */
+	private static class TrailerInputStream extends InputStream {
+
+		private final byte[] buffer;
+
+		private int offset;
+
+		private int remaining;
+
+		private final InputStream input;
+
+		TrailerInputStream(byte[] buffer, int offset, int remaining, InputStream input) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.remaining = remaining;
+			this.input = input;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining > 0) {
+				--remaining;
+				return buffer[offset++] & 0xff;
+			}
+			return input.read();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package net.anthavio.httl.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel. Single daemon thread serves any number of timeouts with tickMillis precision.
+ * Scheduling and cancelling is O(1) and lock-free, so it is cheap enough to arm timer for every request.
+ *
+ * Tasks are executed by the wheel thread, so they must be short and must not block.
+ *
+ * @author martin.vanek
+ *
+ */
+public class TimerWheel {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+	private static volatile TimerWheel shared;
+
+	/**
+	 * @return lazily created TimerWheel with 10 ms tick shared by all HttlSenders
+	 */
+	public static TimerWheel shared() {
+		if (shared == null) {
+			synchronized (TimerWheel.class) {
+				if (shared == null) {
+					shared = new TimerWheel("httl-timer-wheel", 10, 512);
+				}
+			}
+		}
+		return shared;
+	}
+
+	private final String name;
+
+	private final long tickMillis;
+
+	private final List<LinkedList<Timeout>> wheel;
+
+	private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+
+	private final Object monitor = new Object();
+
+	private Thread worker;
+
+	private volatile boolean stopped;
+
+	private long tick; //guarded by worker thread
+
+	private long startMillis; //guarded by worker thread
+
+	/**
+	 * @param tickMillis - timer precision
+	 * @param wheelSize - number of slots, timeouts longer than tickMillis * wheelSize make more rounds
+	 */
+	public TimerWheel(String name, int tickMillis, int wheelSize) {
+		if (name == null || name.isEmpty()) {
+			throw new IllegalArgumentException("Null or empty name");
+		}
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("Tick must be > 0");
+		}
+		if (wheelSize < 1) {
+			throw new IllegalArgumentException("Wheel size must be > 0");
+		}
+		this.name = name;
+		this.tickMillis = tickMillis;
+		this.wheel = new ArrayList<LinkedList<Timeout>>(wheelSize);
+		for (int i = 0; i < wheelSize; ++i) {
+			wheel.add(new LinkedList<Timeout>());
+		}
+	}
+
+	/**
+	 * @return Timeout executing task after delayMillis unless it is cancelled before
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		if (task == null) {
+			throw new IllegalArgumentException("Null task");
+		}
+		if (stopped) {
+			throw new IllegalStateException(name + " is stopped");
+		}
+		Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(0, delayMillis));
+		added.add(timeout);
+		if (worker == null) {
+			start();
+		}
+		return timeout;
+	}
+
+	private synchronized void start() {
+		if (worker == null) {
+			worker = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					work();
+				}
+			}, name);
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stop wheel thread. Pending timeouts are never executed
+	 */
+	public void stop() {
+		stopped = true;
+		synchronized (monitor) {
+			monitor.notifyAll();
+		}
+	}
+
+	private void work() {
+		startMillis = System.currentTimeMillis();
+		while (!stopped) {
+			long next = startMillis + (tick + 1) * tickMillis;
+			long sleep = next - System.currentTimeMillis();
+			if (sleep > 0) {
+				synchronized (monitor) {
+					try {
+						monitor.wait(sleep);
+					} catch (InterruptedException ix) {
+						break;
+					}
+				}
+				continue;
+			}
+			transfer();
+			expire(wheel.get((int) (tick % wheel.size())), System.currentTimeMillis());
+			++tick;
+		}
+		logger.debug(name + " stopped");
+	}
+
+	/**
+	 * Move newly scheduled timeouts into their slots
+	 */
+	private void transfer() {
+		Timeout timeout;
+		while ((timeout = added.poll()) != null) {
+			if (timeout.state.get() != Timeout.PENDING) {
+				continue;
+			}
+			long ticks = Math.max(tick, (timeout.deadline - startMillis) / tickMillis);
+			timeout.rounds = (ticks - tick) / wheel.size();
+			wheel.get((int) (ticks % wheel.size())).add(timeout);
+		}
+	}
+
+	private void expire(LinkedList<Timeout> slot, long now) {
+		Iterator<Timeout> iterator = slot.iterator();
+		while (iterator.hasNext()) {
+			Timeout timeout = iterator.next();
+			if (timeout.state.get() != Timeout.PENDING) {
+				iterator.remove();
+			} else if (timeout.rounds <= 0 && timeout.deadline <= now) {
+				iterator.remove();
+				if (timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+					try {
+						timeout.task.run();
+					} catch (Exception x) {
+						logger.warn(name + " task " + timeout.task + " failed", x);
+					}
+				}
+			} else {
+				--timeout.rounds;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "TimerWheel [name=" + name + ", tickMillis=" + tickMillis + ", wheelSize=" + wheel.size() + "]";
+	}
+
+	/**
+	 * Scheduled task handle
+	 */
+	public static class Timeout {
+
+		private static final int PENDING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		private volatile Runnable task; //released when cancelled
+
+		private final long deadline;
+
+		private long rounds; //guarded by worker thread
+
+		Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return false when task was already executed (or cancelled)
+		 */
+		public boolean cancel() {
+			if (state.compareAndSet(PENDING, CANCELLED)) {
+				task = null; //do not keep task referenced until wheel reaches its slot
+				return true;
+			}
+			return false;
+		}
+
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+	}
+}
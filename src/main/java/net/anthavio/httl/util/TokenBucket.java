@@ -0,0 +1,106 @@
+package net.anthavio.httl.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in form of generic cell rate algorithm. Single AtomicLong holds theoretical arrival time
+ * of next permit, so acquiring permit is one CAS. Bucket refills permitsPerSecond and holds up to burst permits.
+ *
+ * Permit is reserved first and caller sleeps until its time comes afterwards, so waiting threads are served
+ * in order of reservation.
+ *
+ * @author martin.vanek
+ *
+ */
+public class TokenBucket {
+
+	private final double permitsPerSecond;
+
+	private final int burst;
+
+	private final long intervalNanos;
+
+	private final long toleranceNanos;
+
+	private final AtomicLong arrival;
+
+	public TokenBucket(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("Permits per second must be > 0");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("Burst must be > 0");
+		}
+		this.permitsPerSecond = permitsPerSecond;
+		this.burst = burst;
+		this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+		this.toleranceNanos = intervalNanos * (burst - 1);
+		this.arrival = new AtomicLong(System.nanoTime()); //full bucket
+	}
+
+	/**
+	 * Non-blocking acquire
+	 */
+	public boolean tryAcquire() {
+		return reserve(0) != -1;
+	}
+
+	/**
+	 * Blocks up to timeout waiting for permit
+	 * 
+	 * @return false when permit will not be available within timeout (without waiting)
+	 */
+	public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+		long wait = reserve(unit.toNanos(timeout));
+		if (wait == -1) {
+			return false;
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+		return true;
+	}
+
+	/**
+	 * @return nanos to wait for reserved permit or -1 when permit cannot be reserved within maxWaitNanos
+	 */
+	public long reserve(long maxWaitNanos) {
+		for (;;) {
+			long now = System.nanoTime();
+			long current = arrival.get();
+			long wait = Math.max(0, current - toleranceNanos - now);
+			if (wait > maxWaitNanos) {
+				return -1;
+			}
+			if (arrival.compareAndSet(current, Math.max(current, now) + intervalNanos)) {
+				return wait;
+			}
+		}
+	}
+
+	/**
+	 * Return reserved permit that was not used, for example because other limit rejected request
+	 */
+	public void refund() {
+		for (;;) {
+			long current = arrival.get();
+			if (arrival.compareAndSet(current, current - intervalNanos)) {
+				return;
+			}
+		}
+	}
+
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	@Override
+	public String toString() {
+		return "TokenBucket [permitsPerSecond=" + permitsPerSecond + ", burst=" + burst + "]";
+	}
+}
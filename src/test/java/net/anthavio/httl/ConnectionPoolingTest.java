@@ -3,14 +3,20 @@ package net.anthavio.httl;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.net.HttpURLConnection;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import net.anthavio.httl.transport.HttpClient3Response;
 import net.anthavio.httl.transport.HttpClient3Transport;
 import net.anthavio.httl.transport.HttpClient4Response;
 import net.anthavio.httl.transport.HttpClient4Transport;
+import net.anthavio.httl.transport.HttpUrlTransport;
+import net.anthavio.httl.util.HttlUtil;
 
 import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
@@ -77,6 +83,37 @@ public class ConnectionPoolingTest {
 		*/
 	}
 
+	@Test
+	public void httpUrlInflightConnections() throws IOException, Exception {
+		//Given
+		String url = "http://localhost:" + server.getPortHttp();
+		HttlSender sender = HttlBuilder.sender(url).build();
+		HttpUrlTransport transport = (HttpUrlTransport) sender.getTransport();
+
+		//When - two concurrent responses
+		HttlResponse response1 = sender.GET("/").execute();
+		HttlResponse response2 = sender.GET("/").execute();
+		//Then
+		assertThat(transport.getActiveConnections()).isEqualTo(2);
+
+		response1.close();
+		assertThat(transport.getActiveConnections()).isEqualTo(1);
+
+		//When - error response
+		HttlResponse error = sender.GET("/").param("dostatus", 500).execute();
+		//Then - body is buffered and connection is released immediately
+		assertThat(error.getHttpStatusCode()).isEqualTo(HttpURLConnection.HTTP_INTERNAL_ERROR);
+		assertThat(transport.getActiveConnections()).isEqualTo(1);
+		assertThat(HttlUtil.readAsString(error)).contains("Dostatus 500");
+		error.close();
+
+		//When - sender closed
+		sender.close();
+		//Then - only unclosed response is disconnected
+		assertThat(transport.getActiveConnections()).isEqualTo(0);
+		response2.close();
+	}
+
 	@Test
 	public void httpClient3pooling() throws IOException, Exception {
 		String url = "http://localhost:" + server.getPortHttp();
@@ -246,6 +283,165 @@ public class ConnectionPoolingTest {
 		assertThat(connectionManager.getTotalStats().getPending()).isEqualTo(0);
 	}
 
+	@Test
+	public void httpClient4warmup() throws IOException, Exception {
+		String url = "http://localhost:" + server.getPortHttp();
+		int requestCount = server.getRequestCount();
+		//When - server sleep keeps connections leased so they cannot be reused during warm-up
+		SenderConfigurer config = HttlBuilder.transport(url).httpClient4().setPoolMaximumSize(3).sender()
+				.setWarmup(5, "/?sleep=1", 5000);
+		HttlSender sender = config.build();
+
+		//Then - limited by pool maximum size
+		SenderWarmup.WarmupReport report = sender.getWarmupReport();
+		assertThat(report.getRequested()).isEqualTo(3);
+		assertThat(report.getSucceeded()).isEqualTo(3);
+		assertThat(report.getPending()).isEqualTo(0);
+		assertThat(server.getRequestCount()).isEqualTo(requestCount + 3);
+
+		HttpClient4Transport transport = (HttpClient4Transport) sender.getTransport();
+		PoolingClientConnectionManager connectionManager = (PoolingClientConnectionManager) transport.getHttpClient()
+				.getConnectionManager();
+		assertThat(connectionManager.getTotalStats().getAvailable()).isEqualTo(3);
+		assertThat(connectionManager.getTotalStats().getLeased()).isEqualTo(0);
+		sender.close();
+
+		//When - warm-up takes longer then timeout
+		config = HttlBuilder.transport(url).httpClient4().sender().setWarmup(2, "/?sleep=2", 100);
+		sender = config.build();
+		//Then - build does not wait
+		report = sender.getWarmupReport();
+		assertThat(report.getPending()).isEqualTo(2);
+		assertThat(report.getMillis()).isLessThan(1000);
+		//Then - pending requests are cancelled before server responds
+		long until = System.currentTimeMillis() + 1000;
+		while (warmupThreads() != 0 && System.currentTimeMillis() < until) {
+			Thread.sleep(50);
+		}
+		assertThat(warmupThreads()).isEqualTo(0);
+		sender.close();
+	}
+
+	private static int warmupThreads() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("httl-warmup-")) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void poolStats() throws Exception {
+		String url = "http://localhost:" + server.getPortHttp();
+		poolStats(HttlBuilder.transport(url).httpClient4().sender());
+		poolStats(HttlBuilder.transport(url).httpClient3().sender());
+		poolStats(HttlBuilder.transport(url).httpAsyncClient4().sender());
+		poolStats(HttlBuilder.transport(url).nio().sender());
+	}
+
+	private void poolStats(SenderConfigurer config) throws Exception {
+		HttlSender sender = config.setPoolMBeanName("test").build();
+		HttlPoolingTransport transport = (HttlPoolingTransport) sender.getTransport();
+		HttlPoolStats stats = transport.getPoolStats();
+		assertThat(stats.getMaximum()).isEqualTo(10);
+		assertThat(stats.getCreated()).isEqualTo(0);
+		assertThat(stats.getAcquired()).isEqualTo(0);
+
+		//When - sequential requests
+		for (int i = 0; i < 3; ++i) {
+			HttlResponse response = sender.GET("/").execute();
+			HttlUtil.readAsString(response);
+			response.close();
+		}
+		//Then - single connection is reused
+		stats = transport.getPoolStats();
+		assertThat(stats.getCreated()).isEqualTo(1);
+		assertThat(stats.getAcquired()).isEqualTo(3);
+		assertThat(stats.getLeased()).isEqualTo(0);
+		assertThat(stats.getAvailable()).isEqualTo(1);
+		assertThat(stats.getPending()).isEqualTo(0);
+		assertThat(stats.getClosed()).isEqualTo(0);
+
+		//And - published via JMX
+		ObjectName name = new ObjectName("net.anthavio.httl:type=ConnectionPool,name=\"test\"");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertThat(server.getAttribute(name, "Created")).isEqualTo(1L);
+		assertThat(server.getAttribute(name, "Available")).isEqualTo(1);
+
+		//When
+		sender.close();
+		//Then
+		assertThat(server.isRegistered(name)).isFalse();
+		stats = transport.getPoolStats();
+		assertThat(stats.getAvailable()).isEqualTo(0);
+		assertThat(stats.getClosed()).isEqualTo(1);
+	}
+
+	@Test
+	public void poolReaper() throws Exception {
+		String url = "http://localhost:" + server.getPortHttp();
+		poolReaper(HttlBuilder.transport(url).httpClient4().setPoolMaxIdleMillis(300).sender().build());
+		poolReaper(HttlBuilder.transport(url).httpClient3().setPoolMaxIdleMillis(300).sender().build());
+	}
+
+	private void poolReaper(HttlSender sender) throws Exception {
+		HttlPoolingTransport transport = (HttlPoolingTransport) sender.getTransport();
+		HttlResponse response = sender.GET("/").execute();
+		response.close();
+		assertThat(transport.getPoolStats().getAvailable()).isEqualTo(1);
+
+		//When
+		Thread.sleep(1000);
+		//Then - idle connection is closed in background
+		HttlPoolStats stats = transport.getPoolStats();
+		assertThat(stats.getAvailable()).isEqualTo(0);
+		assertThat(stats.getClosed()).isEqualTo(1);
+		sender.close();
+	}
+
+	@Test
+	public void poolValidation() throws Exception {
+		String url = "http://localhost:" + server.getPortHttp();
+		poolValidation(HttlBuilder.transport(url).httpClient4().setPoolValidateAfterInactivityMillis(100).sender()
+				.build());
+		poolValidation(HttlBuilder.transport(url).httpClient3().setPoolValidateAfterInactivityMillis(100).sender()
+				.build());
+	}
+
+	private void poolValidation(HttlSender sender) throws Exception {
+		HttlPoolingTransport transport = (HttlPoolingTransport) sender.getTransport();
+		//When - validated only after inactivity, live connection stays
+		for (int i = 0; i < 3; ++i) {
+			HttlResponse response = sender.GET("/").execute();
+			response.close();
+			Thread.sleep(i * 150);
+		}
+		//Then
+		assertThat(transport.getPoolStats().getCreated()).isEqualTo(1);
+		sender.close();
+	}
+
+	@Test
+	public void httpClient3lifetime() throws Exception {
+		String url = "http://localhost:" + server.getPortHttp();
+		HttlSender sender = HttlBuilder.transport(url).httpClient3().setPoolMaxLifetimeMillis(200).sender().build();
+		HttlPoolingTransport transport = (HttlPoolingTransport) sender.getTransport();
+		sender.GET("/").execute().close();
+		sender.GET("/").execute().close();
+		assertThat(transport.getPoolStats().getCreated()).isEqualTo(1);
+		//When
+		Thread.sleep(300);
+		sender.GET("/").execute().close();
+		//Then - expired connection is closed on release
+		HttlPoolStats stats = transport.getPoolStats();
+		assertThat(stats.getCreated()).isEqualTo(1);
+		assertThat(stats.getClosed()).isEqualTo(1);
+		assertThat(stats.getAvailable()).isEqualTo(0);
+		sender.close();
+	}
+
 	/**
 	 * Helper for accessing http client 4 internal connection pools
 	 */
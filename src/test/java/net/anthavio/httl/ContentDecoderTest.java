@@ -0,0 +1,137 @@
+package net.anthavio.httl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import net.anthavio.httl.HttlSender.Multival;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.MockTransport;
+import net.anthavio.httl.util.PooledContentDecoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class ContentDecoderTest {
+
+	private static final String CONTENT = content();
+
+	@Test
+	public void pooled() throws IOException {
+		PooledContentDecoder decoder = new PooledContentDecoder(1, 1024);
+
+		//When
+		InputStream stream = decoder.decode("gzip", new ByteArrayInputStream(gzip(CONTENT)));
+		//Then - Inflater is acquired on first read and returned at the end of content
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(0);
+		byte[] bytes = new byte[CONTENT.length() + 1];
+		int offset = 0;
+		int read;
+		while ((read = stream.read(bytes, offset, bytes.length - offset)) != -1) {
+			offset += read;
+		}
+		assertThat(new String(bytes, 0, offset, "utf-8")).isEqualTo(CONTENT);
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(1);
+		stream.close();
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(1);
+
+		//When - pooled Inflater is reused
+		stream = decoder.decode("deflate", new ByteArrayInputStream(deflate(CONTENT)));
+		assertThat(read(stream)).isEqualTo(CONTENT);
+		stream = decoder.decode("gzip", new ByteArrayInputStream(gzip(CONTENT)));
+		assertThat(read(stream)).isEqualTo(CONTENT);
+		//Then
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(1);
+		assertThat(decoder.getDeflatePool().getIdle()).isEqualTo(1);
+
+		//When - closed before fully read
+		stream = decoder.decode("gzip", new ByteArrayInputStream(gzip(CONTENT)));
+		stream.read(new byte[10]);
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(0);
+		stream.close();
+		//Then
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(1);
+
+		//When - empty content
+		stream = decoder.decode("gzip", new ByteArrayInputStream(new byte[0]));
+		//Then
+		assertThat(stream.read()).isEqualTo(-1);
+
+		//When - corrupted trailer
+		byte[] corrupted = gzip(CONTENT);
+		corrupted[corrupted.length - 5] ^= 1;
+		stream = decoder.decode("gzip", new ByteArrayInputStream(corrupted));
+		try {
+			read(stream);
+			Assert.fail("Previous statement must throw ZipException");
+		} catch (ZipException zx) {
+			assertThat(zx.getMessage()).isEqualTo("Corrupt GZIP trailer");
+		}
+		//Then - still returned
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(1);
+	}
+
+	@Test
+	public void response() throws IOException {
+		//Given
+		PooledContentDecoder decoder = new PooledContentDecoder(1, 1024);
+		HttlSender sender = new MockTransport().sender().setContentDecoder(decoder).build();
+		HttlRequest request = sender.GET("/").build();
+		Multival<String> headers = new Multival<String>();
+		headers.set("Content-Type", "text/plain");
+		headers.set("Content-Encoding", "gzip");
+
+		//When
+		HttlResponse response = new HttlResponse(request, 200, "OK", headers, new ByteArrayInputStream(gzip(CONTENT))) {
+
+			private static final long serialVersionUID = 1L;
+		};
+		//Then - decoded using sender's decoder
+		assertThat(HttlUtil.readAsString(response)).isEqualTo(CONTENT);
+		response.close();
+		assertThat(decoder.getGzipPool().getIdle()).isEqualTo(1);
+		sender.close();
+	}
+
+	private static String read(InputStream stream) throws IOException {
+		return new String(HttlUtil.readAsBytes(stream, HttlUtil.KILO16), "utf-8");
+	}
+
+	private static byte[] gzip(String string) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(baos);
+		gzip.write(string.getBytes("utf-8"));
+		gzip.close();
+		return baos.toByteArray();
+	}
+
+	private static byte[] deflate(String string) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DeflaterOutputStream deflate = new DeflaterOutputStream(baos);
+		deflate.write(string.getBytes("utf-8"));
+		deflate.close();
+		return baos.toByteArray();
+	}
+
+	private static String content() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; ++i) {
+			sb.append("Line ").append(i).append('\n');
+		}
+		char[] chars = new char[1000];
+		Arrays.fill(chars, 'z');
+		return sb.append(chars).toString();
+	}
+}
@@ -0,0 +1,275 @@
+package net.anthavio.httl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.api.HttlApiBuilder;
+import net.anthavio.httl.api.HttlCall;
+import net.anthavio.httl.async.HttlFuture;
+import net.anthavio.httl.filter.RetryFilter;
+import net.anthavio.httl.transport.HttpUrlConfig;
+import net.anthavio.httl.util.MockTransport;
+import net.anthavio.httl.util.TimerWheel;
+import net.anthavio.httl.util.TimerWheel.Timeout;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class DeadlineTest {
+
+	private static JokerServer server = new JokerServer();
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		server.start();
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void trickleRead() throws Exception {
+		//Given - read timeout would allow 2 seconds response
+		HttlSender sender = new HttpUrlConfig("http://localhost:" + server.getPortHttp()).setReadTimeoutMillis(5000)
+				.sender().build();
+		HttlRequest request = sender.GET("/").param("sleep", "2").totalTimeout(500, TimeUnit.MILLISECONDS).build();
+		//When
+		long started = System.currentTimeMillis();
+		try {
+			sender.execute(request);
+			fail("Expected " + HttlDeadlineException.class);
+		} catch (HttlRequestException hrx) {
+			//Then
+			assertThat(hrx.getCause()).isInstanceOf(HttlDeadlineException.class);
+		}
+		assertThat(System.currentTimeMillis() - started).isLessThan(1500);
+		sender.close();
+	}
+
+	@Test
+	public void trickleBody() throws Exception {
+		//Given - headers arrive at once, but 50 bytes body takes 5 seconds
+		HttlSender sender = new HttpUrlConfig("http://localhost:" + server.getPortHttp()).setReadTimeoutMillis(5000)
+				.sender().build();
+		HttlRequest request = sender.GET("/").param("dotrickle", "50").totalTimeout(500, TimeUnit.MILLISECONDS).build();
+		//other timer due while body is trickling
+		final long[] firedAt = new long[1];
+		final CountDownLatch fired = new CountDownLatch(1);
+		long scheduledAt = System.currentTimeMillis();
+		TimerWheel.shared().schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				firedAt[0] = System.currentTimeMillis();
+				fired.countDown();
+			}
+		}, 700);
+		//When
+		long started = System.currentTimeMillis();
+		try {
+			sender.extract(request, String.class);
+			fail("Expected " + HttlDeadlineException.class);
+		} catch (HttlResponseException hrx) {
+			//Then - connection aborted, not drained
+			assertThat(hrx.getCause()).isInstanceOf(HttlDeadlineException.class);
+		}
+		assertThat(System.currentTimeMillis() - started).isLessThan(1500);
+		//Then - timer thread was not blocked by expiry
+		assertThat(fired.await(2, TimeUnit.SECONDS)).isTrue();
+		assertThat(firedAt[0] - scheduledAt - 700).isLessThan(200);
+		sender.close();
+	}
+
+	@Test
+	public void closeCancelsDeadline() throws Exception {
+		//Given
+		HttlSender sender = new HttpUrlConfig("http://localhost:" + server.getPortHttp()).sender().build();
+		HttlRequest request = sender.GET("/").totalTimeout(300, TimeUnit.MILLISECONDS).build();
+		//When - response read and closed well before deadline
+		HttlResponse response = sender.execute(request);
+		response.close();
+		Thread.sleep(500);
+		//Then
+		assertThat(response.isAborted()).isFalse();
+		sender.close();
+	}
+
+	@Test
+	public void blockingCallInterrupted() throws Exception {
+		//Given - transport blocked like in pool acquire
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		MockTransport transport = new MockTransport() {
+
+			@Override
+			public HttlResponse call(HttlRequest request) throws IOException {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException ix) {
+					interrupted.countDown();
+					throw new IOException("Interrupted");
+				}
+				return super.call(request);
+			}
+		};
+		HttlSender sender = transport.sender().build();
+		//When
+		try {
+			sender.GET("/").totalTimeout(200, TimeUnit.MILLISECONDS).execute();
+			fail("Expected " + HttlDeadlineException.class);
+		} catch (HttlRequestException hrx) {
+			//Then
+			assertThat(hrx.getCause()).isInstanceOf(HttlDeadlineException.class);
+		}
+		assertThat(interrupted.getCount()).isEqualTo(0);
+		assertThat(Thread.currentThread().isInterrupted()).isFalse();
+		//request without deadline is unaffected
+		assertThat(sender.GET("/").build().getDeadline()).isEqualTo(0);
+		sender.close();
+	}
+
+	@Test
+	public void applicationInterruptKept() throws Exception {
+		//Given - application interrupts caller, transport ignores interrupts until deadline passes
+		MockTransport transport = new MockTransport() {
+
+			@Override
+			public HttlResponse call(HttlRequest request) throws IOException {
+				Thread.currentThread().interrupt();
+				long until = System.currentTimeMillis() + 300;
+				while (System.currentTimeMillis() < until) {
+					Thread.yield();
+				}
+				return super.call(request);
+			}
+		};
+		HttlSender sender = transport.sender().build();
+		//When
+		try {
+			sender.GET("/").totalTimeout(100, TimeUnit.MILLISECONDS).execute();
+			fail("Expected " + HttlDeadlineException.class);
+		} catch (HttlRequestException hrx) {
+			assertThat(hrx.getCause()).isInstanceOf(HttlDeadlineException.class);
+		}
+		//Then - interrupt was not sent by expiry, so it is not cleared
+		assertThat(Thread.interrupted()).isTrue();
+		sender.close();
+	}
+
+	@Test
+	public void retryRespectsDeadline() throws Exception {
+		//Given - retry backoff 200 ms, deadline 300 ms
+		final AtomicInteger calls = new AtomicInteger();
+		MockTransport transport = new MockTransport() {
+
+			@Override
+			public HttlResponse call(HttlRequest request) throws IOException {
+				calls.incrementAndGet();
+				return super.call(request);
+			}
+		};
+		transport.setException(new ConnectException("Refused"));
+		HttlSender sender = transport.sender().addExecutionFilter(new RetryFilter(10, 200, 200, 100, 10)).build();
+		//When
+		long started = System.currentTimeMillis();
+		try {
+			sender.GET("/").totalTimeout(300, TimeUnit.MILLISECONDS).execute();
+			fail("Expected " + ConnectException.class);
+		} catch (HttlRequestException hrx) {
+			//Then - no retry started after deadline
+			assertThat(hrx.getCause()).isInstanceOf(ConnectException.class);
+		}
+		assertThat(System.currentTimeMillis() - started).isLessThan(1000);
+		assertThat(calls.get()).isLessThan(10);
+		sender.close();
+	}
+
+	@Test
+	public void asyncDeadline() throws Exception {
+		//Given - transport never calling back
+		MockTransport transport = new MockTransport() {
+
+			@Override
+			public void call(HttlRequest request, HttlTransportCallback callback) {
+				//lost
+			}
+		};
+		HttlSender sender = transport.sender().build();
+		HttlRequest request = sender.GET("/").totalTimeout(100, TimeUnit.MILLISECONDS).build();
+		//When
+		HttlFuture<ExtractedResponse<String>> future = sender.startAsync(request, String.class);
+		//Then
+		try {
+			future.get(2, TimeUnit.SECONDS);
+			fail("Expected " + HttlDeadlineException.class);
+		} catch (ExecutionException ex) {
+			assertThat(ex.getCause()).isInstanceOf(HttlDeadlineException.class);
+		}
+		sender.close();
+	}
+
+	@Test
+	public void apiTimeout() throws Exception {
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().build();
+		TimedApi api = HttlApiBuilder.with(sender).build(TimedApi.class);
+
+		api.timed();
+		assertThat(transport.getLastRequest().getTotalTimeoutMillis()).isEqualTo(1500);
+		assertThat(transport.getLastRequest().getDeadline()).isGreaterThan(0);
+
+		api.untimed();
+		assertThat(transport.getLastRequest().getTotalTimeoutMillis()).isNull();
+		sender.close();
+	}
+
+	@Test
+	public void timerWheel() throws Exception {
+		TimerWheel wheel = new TimerWheel("test-wheel", 5, 8);
+		final CountDownLatch fired = new CountDownLatch(2);
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				fired.countDown();
+			}
+		};
+		long started = System.currentTimeMillis();
+		Timeout shortOne = wheel.schedule(task, 20);
+		Timeout longOne = wheel.schedule(task, 100); //more rounds than wheel size
+		Timeout cancelled = wheel.schedule(task, 30);
+		assertThat(cancelled.cancel()).isTrue();
+
+		assertThat(fired.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(System.currentTimeMillis() - started).isGreaterThanOrEqualTo(100);
+		assertThat(shortOne.isExpired()).isTrue();
+		assertThat(longOne.isExpired()).isTrue();
+		assertThat(longOne.cancel()).isFalse();
+		assertThat(cancelled.isCancelled()).isTrue();
+		wheel.stop();
+	}
+
+	static interface TimedApi {
+
+		@HttlCall(value = "GET /timed", timeout = 1500)
+		public String timed();
+
+		@HttlCall("GET /untimed")
+		public String untimed();
+	}
+}
@@ -1,6 +1,9 @@
 package net.anthavio.httl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.ServerSocket;
@@ -292,6 +295,48 @@ public class JokerServer {
 				}
 			}
 
+			if (request.getParameter("doecho") != null) {
+				//copy request body back including Content-Length header it was sent with
+				//read whole body first - some clients stop sending when response arrives early
+				InputStream input = request.getInputStream();
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = input.read(buffer)) != -1) {
+					body.write(buffer, 0, read);
+				}
+				response.setStatus(HttpServletResponse.SC_OK);
+				response.setContentType(request.getContentType());
+				response.setHeader("X-Request-Length", request.getHeader("Content-Length"));
+				body.writeTo(response.getOutputStream());
+				((Request) request).setHandled(true);
+				return;
+			}
+
+			String ptrickle = request.getParameter("dotrickle");
+			if (ptrickle != null) {
+				//headers go out immediately, then body byte every 100 millis
+				int length = Integer.parseInt(ptrickle);
+				response.setStatus(HttpServletResponse.SC_OK);
+				response.setContentType("text/plain");
+				response.setContentLength(length);
+				response.flushBuffer();
+				OutputStream output = response.getOutputStream();
+				try {
+					for (int i = 0; i < length; ++i) {
+						Thread.sleep(100);
+						output.write('x');
+						output.flush();
+					}
+				} catch (InterruptedException ix) {
+					//nothing
+				} catch (IOException iox) {
+					logger.info("trickle aborted by client: " + iox);
+				}
+				((Request) request).setHandled(true);
+				return;
+			}
+
 			String pstatus = request.getParameter("dostatus");
 			if (pstatus != null) {
 				int status = Integer.parseInt(pstatus);
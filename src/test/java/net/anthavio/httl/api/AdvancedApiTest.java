@@ -76,6 +76,7 @@ public class AdvancedApiTest {
 		Assertions.assertThat(request.getPathAndQuery()).isEqualTo("/store/replaced?api-key=zxzxzx-zxzxzx-zxzxzx-zxzxzx");
 		Assertions.assertThat(request.getFirstHeader("Content-Type")).isEqualTo("application/json; charset=utf-8");
 		Assertions.assertThat(request.getFirstHeader("Accept")).isEqualTo("application/xml");
+		Assertions.assertThat(request.getOperation()).isEqualTo("WithUrlParameter.store");
 
 		Multival<String> parameters = request.getParameters();
 		Assertions.assertThat(parameters.getFirst("api-key")).isEqualTo("zxzxzx-zxzxzx-zxzxzx-zxzxzx");
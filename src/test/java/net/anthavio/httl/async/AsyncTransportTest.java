@@ -0,0 +1,297 @@
+package net.anthavio.httl.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.httl.HttlBuilder;
+import net.anthavio.httl.HttlException;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.HttlTransport;
+import net.anthavio.httl.HttlTransport.HttlTransportCallback;
+import net.anthavio.httl.JokerServer;
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+import net.anthavio.httl.transport.NioConfig;
+import net.anthavio.httl.util.HttlUtil;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Transports with true asynchronous (non blocking) call(request, callback)
+ *
+ * @author martin.vanek
+ *
+ */
+public class AsyncTransportTest {
+
+	private static JokerServer server = new JokerServer();
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		server.start();
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void ning() throws Exception {
+		doTest(HttlBuilder.ning("localhost:" + server.getPortHttp()));
+		doRefused(HttlBuilder.ning("localhost:" + unusedPort()));
+	}
+
+	@Test
+	public void httpAsyncClient4() throws Exception {
+		doTest(HttlBuilder.httpAsyncClient4("localhost:" + server.getPortHttp()));
+		doRefused(HttlBuilder.httpAsyncClient4("localhost:" + unusedPort()));
+	}
+
+	@Test
+	public void nio() throws Exception {
+		doTest(HttlBuilder.nio("localhost:" + server.getPortHttp()));
+		doRefused(HttlBuilder.nio("localhost:" + unusedPort()));
+	}
+
+	@Test
+	public void nioPooling() throws Exception {
+		NioConfig config = HttlBuilder.nio("localhost:" + server.getPortHttp());
+		config.setPoolMaximumSize(1);
+		config.setPoolAcquireTimeoutMillis(300);
+		HttlSender sender = config.sender().build();
+		try {
+			//requests are queued until single connection is released
+			RecordingCallback[] callbacks = new RecordingCallback[5];
+			for (int i = 0; i < callbacks.length; ++i) {
+				callbacks[i] = new RecordingCallback();
+				sender.getTransport().call(sender.GET("/").param("i", i).build(), callbacks[i]);
+			}
+			for (RecordingCallback callback : callbacks) {
+				callback.await();
+				assertThat(callback.exception).isNull();
+				assertThat(callback.status).isEqualTo(HttpURLConnection.HTTP_OK);
+			}
+
+			//queued request timeouts while the only connection is busy
+			RecordingCallback sleeping = new RecordingCallback();
+			sender.getTransport().call(sender.GET("/").param("sleep", 1).build(), sleeping);
+			try {
+				sender.GET("/").execute();
+				Assert.fail("Previous statement must throw ConnectException");
+			} catch (HttlException hx) {
+				assertThat(hx.getMessage()).isEqualTo("java.net.ConnectException: Pool timeout 300 ms");
+			}
+			sleeping.await();
+			assertThat(sleeping.status).isEqualTo(HttpURLConnection.HTTP_OK);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void nioInterrupted() throws Exception {
+		NioConfig config = HttlBuilder.nio("localhost:" + server.getPortHttp());
+		config.setPoolMaximumSize(1);
+		config.setPoolAcquireTimeoutMillis(5000);
+		config.setReadTimeoutMillis(5000);
+		final HttlSender sender = config.sender().build();
+		try {
+			int before = server.getRequestCount();
+			//queued behind sleeping request, then interrupted
+			RecordingCallback sleeping = new RecordingCallback();
+			sender.getTransport().call(sender.GET("/").param("sleep", 1).build(), sleeping);
+			Exception queued = interrupted(sender, sender.GET("/").param("queued", 1).build());
+			assertThat(queued.getCause()).isInstanceOf(InterruptedIOException.class);
+			sleeping.await();
+			assertThat(sleeping.status).isEqualTo(HttpURLConnection.HTTP_OK);
+			Thread.sleep(100);
+			assertThat(server.getRequestCount() - before).isEqualTo(1); //queued was never sent
+
+			//interrupted while waiting for response - connection is closed, so the only pool slot is free
+			Exception inflight = interrupted(sender, sender.GET("/").param("sleep", 2).build());
+			assertThat(inflight.getCause()).isInstanceOf(InterruptedIOException.class);
+			long started = System.currentTimeMillis();
+			sender.GET("/").execute().close();
+			assertThat(System.currentTimeMillis() - started).isLessThan(1000);
+		} finally {
+			sender.close();
+		}
+	}
+
+	/**
+	 * Execute request in another thread and interrupt it after 200 ms
+	 */
+	private Exception interrupted(final HttlSender sender, final HttlRequest request) throws InterruptedException {
+		final Exception[] failure = new Exception[1];
+		Thread caller = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					sender.execute(request).close();
+				} catch (Exception x) {
+					failure[0] = x;
+				}
+			}
+		};
+		caller.start();
+		Thread.sleep(200);
+		caller.interrupt();
+		caller.join(1000);
+		return failure[0];
+	}
+
+	@Test
+	public void nioPipelining() throws Exception {
+		NioConfig config = HttlBuilder.nio("localhost:" + server.getPortHttp());
+		config.setPoolMaximumSize(1);
+		config.setPipeliningDepth(4);
+		HttlSender sender = config.sender().build();
+		try {
+			//safe requests share single connection, POST waits for it
+			RecordingCallback[] callbacks = new RecordingCallback[9];
+			for (int i = 0; i < callbacks.length; ++i) {
+				callbacks[i] = new RecordingCallback();
+				if (i == 4) {
+					sender.getTransport().call(sender.POST("/").body("{}", "application/json").build(), callbacks[i]);
+				} else {
+					sender.getTransport().call(sender.GET("/").param("i", i).build(), callbacks[i]);
+				}
+			}
+			for (RecordingCallback callback : callbacks) {
+				callback.await();
+				assertThat(callback.exception).isNull();
+				assertThat(callback.status).isEqualTo(HttpURLConnection.HTTP_OK);
+			}
+			//after pipelined responses, connection is usable for synchronous call
+			HttlResponse response = sender.GET("/").execute();
+			assertThat(HttlUtil.readAsString(response)).contains("Hello");
+		} finally {
+			sender.close();
+		}
+	}
+
+	protected void doTest(BaseTransBuilder<?> config) throws Exception {
+		config.setReadTimeoutMillis(1300);
+		HttlSender sender = config.sender().build();
+		HttlTransport transport = sender.getTransport();
+		try {
+			//synchronous
+			HttlResponse response = sender.GET("/").param("x", "y").execute();
+			assertThat(response.getHttpStatusCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+			assertThat(HttlUtil.readAsString(response)).contains("Hello");
+
+			String body = sender.POST("/").body("{\"message\" : \"Hello from client\"}", "application/json")
+					.header("Accept", "application/json").extract(String.class).getBody();
+			assertThat(body).contains("Hello from client");
+
+			HttlRequest timeouting = sender.GET("/").param("sleep", 2).timeout(900, TimeUnit.MILLISECONDS).build();
+			try {
+				sender.execute(timeouting);
+				Assert.fail("Previous statement must throw SocketTimeoutException");
+			} catch (HttlException hx) {
+				assertThat(hx.getMessage()).isEqualTo("java.net.SocketTimeoutException: Read timeout 900 ms");
+			}
+
+			//asynchronous
+			RecordingCallback callback = new RecordingCallback();
+			transport.call(sender.GET("/").param("x", "y").build(), callback);
+			callback.await();
+			assertThat(callback.exception).isNull();
+			assertThat(callback.status).isEqualTo(HttpURLConnection.HTTP_OK);
+			assertThat(callback.body).contains("Hello");
+
+			callback = new RecordingCallback();
+			transport.call(timeouting, callback);
+			callback.await();
+			assertThat(callback.requestFailure).isFalse();
+			assertThat(callback.exception).isInstanceOf(SocketTimeoutException.class);
+			assertThat(callback.exception.getMessage()).isEqualTo("Read timeout 900 ms");
+		} finally {
+			sender.close();
+		}
+	}
+
+	protected void doRefused(BaseTransBuilder<?> config) throws Exception {
+		HttlSender sender = config.sender().build();
+		try {
+			try {
+				sender.GET("/").execute();
+				Assert.fail("Previous statement must throw ConnectException");
+			} catch (HttlException hx) {
+				assertThat(hx.getCause()).isInstanceOf(ConnectException.class);
+			}
+
+			RecordingCallback callback = new RecordingCallback();
+			sender.getTransport().call(sender.GET("/").build(), callback);
+			callback.await();
+			assertThat(callback.requestFailure).isTrue();
+			assertThat(callback.exception).isInstanceOf(ConnectException.class);
+		} finally {
+			sender.close();
+		}
+	}
+
+	private static int unusedPort() throws IOException {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		return port;
+	}
+
+	static class RecordingCallback implements HttlTransportCallback {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		volatile int status;
+
+		volatile String body;
+
+		volatile Exception exception;
+
+		volatile boolean requestFailure;
+
+		@Override
+		public void onRequestFailure(HttlRequest request, Exception exception) {
+			this.requestFailure = true;
+			this.exception = exception;
+			latch.countDown();
+		}
+
+		@Override
+		public void onResponseFailure(HttlRequest request, Exception exception) {
+			this.exception = exception;
+			latch.countDown();
+		}
+
+		@Override
+		public void onResponse(HttlResponse response) {
+			try {
+				this.status = response.getHttpStatusCode();
+				this.body = HttlUtil.readAsString(response);
+			} catch (IOException iox) {
+				this.exception = iox;
+			}
+			latch.countDown();
+		}
+
+		public void await() throws InterruptedException {
+			if (!latch.await(5, TimeUnit.SECONDS)) {
+				Assert.fail("Callback not invoked in 5 seconds");
+			}
+		}
+	}
+}
@@ -0,0 +1,253 @@
+package net.anthavio.httl.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttlBatchTest {
+
+	@Test
+	public void orderedResults() throws Exception {
+		//Given - request i sleeps (10 - i) * 5 ms, so they complete in reverse order, /fail/* requests fail
+		ExecutorService executor = Executors.newCachedThreadPool();
+		SleepingFilter filter = new SleepingFilter();
+		HttlSender sender = new MockTransport().sender().setExecutorService(executor).addExecutionFilter(filter).build();
+		List<HttlRequest> requests = new ArrayList<HttlRequest>();
+		for (int i = 0; i < 10; ++i) {
+			requests.add(sender.GET(i % 3 == 0 ? "/fail/" + i : "/item/" + i).param("sleep", (10 - i) * 5).build());
+		}
+		final List<Integer> completions = new ArrayList<Integer>();
+
+		//When
+		List<HttlBatch.Result<String>> results = sender.executeAll(requests, String.class, 3, 5000,
+				new HttlBatch.Listener<String>() {
+
+					@Override
+					public void onResult(HttlBatch.Result<String> result) {
+						synchronized (completions) {
+							completions.add(result.getIndex());
+						}
+					}
+				});
+
+		//Then
+		assertThat(results).hasSize(10);
+		for (int i = 0; i < 10; ++i) {
+			HttlBatch.Result<String> result = results.get(i);
+			assertThat(result.getIndex()).isEqualTo(i);
+			if (i % 3 == 0) {
+				assertThat(result.isSuccess()).isFalse();
+				assertThat(result.getFailure().getCause()).isInstanceOf(ConnectException.class);
+			} else {
+				assertThat(result.isSuccess()).isTrue();
+				assertThat(result.getBody()).isEqualTo("MockResponse to GET /item/" + i + "?sleep=" + (10 - i) * 5);
+			}
+		}
+		assertThat(completions).hasSize(10);
+		assertThat(filter.maxInflight.get()).isLessThanOrEqualTo(3);
+
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void deadline() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		SleepingFilter filter = new SleepingFilter();
+		HttlSender sender = new MockTransport().sender().setExecutorService(executor).addExecutionFilter(filter).build();
+		List<HttlRequest> requests = new ArrayList<HttlRequest>();
+		requests.add(sender.GET("/fast").param("sleep", 0).build());
+		requests.add(sender.GET("/slow").param("sleep", 5000).build());
+		requests.add(sender.GET("/never").param("sleep", 0).build()); //waits for permit
+
+		long started = System.currentTimeMillis();
+		List<HttlBatch.Result<String>> results = sender.executeAll(requests, String.class, 1, 300, null);
+
+		assertThat(System.currentTimeMillis() - started).isLessThan(2000);
+		assertThat(results.get(0).isSuccess()).isTrue();
+		assertThat(results.get(1).isTimeout()).isTrue();
+		assertThat(results.get(2).isTimeout()).isTrue();
+		Thread.sleep(100);
+		assertThat(filter.interrupted.get()).isEqualTo(1); //straggler cancelled
+
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void scatterGather() throws Exception {
+		//Given - 4 shards, shard 2 is slow and shard 3 is failing
+		ExecutorService executor = Executors.newCachedThreadPool();
+		SleepingFilter filter = new SleepingFilter(4); //all shards meet before sleeping
+		HttlSender sender = new MockTransport().sender().setExecutorService(executor).addExecutionFilter(filter).build();
+		List<HttlRequest> requests = new ArrayList<HttlRequest>();
+		requests.add(sender.GET("/shard/0").param("sleep", 10).build());
+		requests.add(sender.GET("/shard/1").param("sleep", 20).build());
+		requests.add(sender.GET("/shard/2").param("sleep", 5000).build());
+		requests.add(sender.GET("/fail/3").param("sleep", 0).build());
+
+		//When
+		long started = System.currentTimeMillis();
+		HttlBatch.Gathered<String> gathered = sender.scatterGather(requests, String.class, 300);
+
+		//Then - all shards started at once, answer within budget
+		assertThat(System.currentTimeMillis() - started).isLessThan(2000);
+		assertThat(filter.maxInflight.get()).isEqualTo(4);
+		assertThat(gathered.isComplete()).isFalse();
+		assertThat(gathered.getStragglers()).containsExactly(requests.get(2));
+		assertThat(gathered.getCompleted()).hasSize(3);
+		assertThat(gathered.getCompleted().get(2).getFailure().getCause()).isInstanceOf(ConnectException.class);
+		assertThat(gathered.getBodies()).containsExactly("MockResponse to GET /shard/0?sleep=10",
+				"MockResponse to GET /shard/1?sleep=20");
+		Thread.sleep(100);
+		assertThat(filter.interrupted.get()).isEqualTo(1); //straggler cancelled
+
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void requestDeadline() throws Exception {
+		//Given
+		ExecutorService executor = Executors.newCachedThreadPool();
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().setExecutorService(executor).build();
+		List<HttlRequest> requests = new ArrayList<HttlRequest>();
+		requests.add(sender.GET("/sooner").totalTimeout(100, TimeUnit.MILLISECONDS).build());
+		requests.add(sender.GET("/later").build());
+
+		//When
+		long started = System.currentTimeMillis();
+		sender.executeAll(requests, String.class, 1, 5000, null);
+
+		//Then - batch deadline is pushed into request, so transport can stop straggler
+		assertThat(transport.getLastRequest().getPathAndQuery()).isEqualTo("/later");
+		assertThat(transport.getLastRequest().getDeadline()).isBetween(started + 5000,
+				System.currentTimeMillis() + 5000);
+		//own sooner deadline is kept
+		HttlRequest sooner = requests.get(0).withDeadline(started + 5000);
+		assertThat(sooner.getDeadline()).isLessThan(started + 5000);
+		assertThat(sooner.withDeadline(started + 5000)).isSameAs(sooner);
+
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void interrupted() throws Exception {
+		//Given - batch without deadline
+		ExecutorService executor = Executors.newCachedThreadPool();
+		HttlSender sender = new MockTransport().sender().setExecutorService(executor)
+				.addExecutionFilter(new SleepingFilter()).build();
+		final List<HttlRequest> requests = new ArrayList<HttlRequest>();
+		requests.add(sender.GET("/slow").param("sleep", 5000).build());
+		final List<HttlBatch.Result<String>> notified = new ArrayList<HttlBatch.Result<String>>();
+		final HttlBatch<String> batch = new HttlBatch<String>(sender, requests, String.class, 1, 0)
+				.setListener(new HttlBatch.Listener<String>() {
+
+					@Override
+					public void onResult(HttlBatch.Result<String> result) {
+						synchronized (notified) {
+							notified.add(result);
+						}
+					}
+				});
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Thread caller = new Thread() {
+
+			@Override
+			public void run() {
+				try {
+					batch.execute();
+				} catch (InterruptedException ix) {
+					interrupted.countDown();
+				}
+			}
+		};
+		caller.start();
+
+		//When
+		Thread.sleep(100);
+		caller.interrupt();
+
+		//Then - reported as cancelled, not as timeout
+		assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+		synchronized (notified) {
+			assertThat(notified).hasSize(1);
+			assertThat(notified.get(0).isCancelled()).isTrue();
+			assertThat(notified.get(0).isTimeout()).isFalse();
+		}
+
+		sender.close();
+		executor.shutdown();
+	}
+
+	/**
+	 * Sleeps for "sleep" parameter millis and fails /fail/ requests. Optionally waits until given number
+	 * of requests is in flight, so they are provably executed concurrently
+	 */
+	static class SleepingFilter implements HttlExecutionFilter {
+
+		final CountDownLatch started;
+
+		final AtomicInteger inflight = new AtomicInteger();
+
+		final AtomicInteger maxInflight = new AtomicInteger();
+
+		final AtomicInteger interrupted = new AtomicInteger();
+
+		SleepingFilter() {
+			this(0);
+		}
+
+		SleepingFilter(int parties) {
+			this.started = new CountDownLatch(parties);
+		}
+
+		@Override
+		public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+			int current = inflight.incrementAndGet();
+			synchronized (maxInflight) {
+				maxInflight.set(Math.max(maxInflight.get(), current));
+			}
+			try {
+				started.countDown();
+				if (!started.await(1, TimeUnit.SECONDS)) {
+					throw new IOException("Parties did not meet");
+				}
+				Thread.sleep(Long.parseLong(request.getParameters().getFirst("sleep")));
+			} catch (InterruptedException ix) {
+				interrupted.incrementAndGet();
+				throw new IOException("Interrupted");
+			} finally {
+				inflight.decrementAndGet();
+			}
+			if (request.getPathAndQuery().startsWith("/fail/")) {
+				throw new ConnectException("Refused " + request.getPathAndQuery());
+			}
+			return chain.next(request);
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package net.anthavio.httl.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlResponseExtractor;
+import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class HttlFutureTest {
+
+	@Test
+	public void inlineExtraction() throws Exception {
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().build();
+
+		HttlFuture<ExtractedResponse<String>> future = sender.startAsync(sender.GET("/async").build(), String.class);
+
+		assertThat(future.isDone()).isTrue(); //MockTransport calls back synchronously
+		assertThat(future.get().getBody()).isEqualTo("MockResponse to GET /async");
+		sender.close();
+	}
+
+	@Test
+	public void executorExtraction() throws Exception {
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().build();
+		ExecutorService extraction = Executors.newSingleThreadExecutor();
+		final AtomicReference<String> thread = new AtomicReference<String>();
+
+		HttlFuture<ExtractedResponse<String>> future = sender.startAsync(sender.GET("/async").build(),
+				new HttlResponseExtractor<String>() {
+
+					@Override
+					public String extract(HttlResponse response) throws IOException {
+						thread.set(Thread.currentThread().getName());
+						return HttlUtil.readAsString(response);
+					}
+				}, extraction);
+
+		assertThat(future.get(1, TimeUnit.SECONDS).getBody()).isEqualTo("MockResponse to GET /async");
+		assertThat(thread.get()).isNotEqualTo(Thread.currentThread().getName());
+		extraction.shutdown();
+		sender.close();
+	}
+
+	@Test
+	public void failure() throws Exception {
+		MockTransport transport = new MockTransport();
+		transport.setException(new ConnectException("Refused"));
+		HttlSender sender = transport.sender().build();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		HttlFuture<ExtractedResponse<String>> future = sender.startAsync(sender.GET("/async").build(), String.class);
+		future.addListener(new HttlFuture.Listener<ExtractedResponse<String>>() {
+
+			@Override
+			public void onSuccess(ExtractedResponse<String> result) {
+				fail("Success not expected");
+			}
+
+			@Override
+			public void onFailure(Throwable x) {
+				failure.set(x);
+			}
+		});
+
+		assertThat(failure.get()).isInstanceOf(ConnectException.class);
+		try {
+			future.get();
+			fail("Expected " + ExecutionException.class);
+		} catch (ExecutionException ex) {
+			assertThat(ex.getCause()).isInstanceOf(ConnectException.class);
+		}
+		sender.close();
+	}
+
+	@Test
+	public void listenerAndTimeout() throws Exception {
+		final HttlFuture<String> future = new HttlFuture<String>();
+		final CountDownLatch notified = new CountDownLatch(1);
+		future.addListener(new HttlFuture.Listener<String>() {
+
+			@Override
+			public void onSuccess(String result) {
+				notified.countDown();
+			}
+
+			@Override
+			public void onFailure(Throwable failure) {
+			}
+		});
+		try {
+			future.get(50, TimeUnit.MILLISECONDS);
+			fail("Expected " + TimeoutException.class);
+		} catch (TimeoutException tx) {
+			//ok
+		}
+		assertThat(future.complete("done")).isTrue();
+		assertThat(future.complete("again")).isFalse();
+		assertThat(notified.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(future.get()).isEqualTo("done");
+	}
+
+	@Test
+	public void cancelAttachedTask() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Future<?> task = executor.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException ix) {
+					interrupted.countDown();
+				}
+			}
+		});
+		HttlFuture<String> future = new HttlFuture<String>();
+		future.attach(task);
+		assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(future.cancel(true)).isTrue();
+
+		assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(future.isCancelled()).isTrue();
+		assertThat(future.complete("late")).isFalse();
+		try {
+			future.get();
+			fail("Expected " + CancellationException.class);
+		} catch (CancellationException cx) {
+			//ok
+		}
+		executor.shutdown();
+	}
+}
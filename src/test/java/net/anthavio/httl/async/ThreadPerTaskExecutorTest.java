@@ -0,0 +1,155 @@
+package net.anthavio.httl.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class ThreadPerTaskExecutorTest {
+
+	@Test
+	public void boundedConcurrency() throws Exception {
+		ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new NamedDeamonThreadFactory("tpt-"), 2, 1);
+		final CountDownLatch started = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				int current = running.incrementAndGet();
+				synchronized (maxRunning) {
+					maxRunning.set(Math.max(maxRunning.get(), current));
+				}
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException ix) {
+					Thread.currentThread().interrupt();
+				}
+				running.decrementAndGet();
+			}
+		};
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		futures.add(executor.submit(task));
+		futures.add(executor.submit(task));
+		futures.add(executor.submit(task)); //waits for permit
+		try {
+			executor.submit(task);
+			fail("Expected " + RejectedExecutionException.class);
+		} catch (RejectedExecutionException rex) {
+			assertThat(rex.getMessage()).contains("running: 2 of 2").contains("waiting: 1 of 1");
+		}
+		assertThat(executor.getRunning()).isEqualTo(2);
+		assertThat(executor.getWaiting()).isEqualTo(1);
+
+		assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+		release.countDown();
+		for (Future<?> future : futures) {
+			future.get(1, TimeUnit.SECONDS);
+		}
+		assertThat(maxRunning.get()).isEqualTo(2);
+
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.getRunning()).isEqualTo(0);
+		try {
+			executor.submit(task);
+			fail("Expected " + RejectedExecutionException.class);
+		} catch (RejectedExecutionException rex) {
+			//ok
+		}
+	}
+
+	@Test
+	public void shutdownNowInterrupts() throws Exception {
+		ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(new NamedDeamonThreadFactory("tpt-"), 1, 0);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(5000);
+				} catch (InterruptedException ix) {
+					interrupted.countDown();
+				}
+			}
+		});
+		executor.shutdownNow();
+		assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	public void platformFallback() throws Exception {
+		//Given - fallback used before JDK 21 with waiting queue
+		ThreadPoolExecutor executor = ExecutorServiceBuilder.begin().setMaximumPoolSize(4).setMaximumQueueSize(10)
+				.buildBounded();
+		assertThat(executor.getCorePoolSize()).isEqualTo(4);
+		assertThat(executor.allowsCoreThreadTimeOut()).isTrue();
+		final CountDownLatch started = new CountDownLatch(4);
+		final CountDownLatch release = new CountDownLatch(1);
+		Runnable task = new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException ix) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		//When
+		for (int i = 0; i < 5; ++i) {
+			executor.execute(task);
+		}
+		//Then - maximumPoolSize tasks run concurrently although queue is not full
+		assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(executor.getActiveCount()).isEqualTo(4);
+		assertThat(executor.getQueue().size()).isEqualTo(1);
+		release.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	public void senderVirtualThreads() throws Exception {
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().setVirtualThreads(100, 0).build();
+		if (VirtualThreads.isAvailable()) {
+			assertThat(sender.getExecutor()).isInstanceOf(ThreadPerTaskExecutor.class);
+		} else {
+			assertThat(sender.getExecutor()).isInstanceOf(ThreadPoolExecutor.class); //fallback
+		}
+
+		Future<ExtractedResponse<String>> future = sender.start(sender.GET("/virtual").build(), String.class);
+		assertThat(future.get(1, TimeUnit.SECONDS).getBody()).isEqualTo("MockResponse to GET /virtual");
+
+		ExecutorService executor = sender.getExecutor();
+		sender.close();
+		executor.shutdown();
+	}
+}
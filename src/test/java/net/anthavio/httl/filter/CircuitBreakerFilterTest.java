@@ -0,0 +1,127 @@
+package net.anthavio.httl.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.filter.CircuitBreakerFilter.CircuitOpenException;
+import net.anthavio.httl.filter.CircuitBreakerFilter.Scope;
+import net.anthavio.httl.filter.CircuitBreakerFilter.State;
+import net.anthavio.httl.filter.CircuitBreakerFilter.StateListener;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class CircuitBreakerFilterTest {
+
+	@Test
+	public void failureRate() throws Exception {
+		//Given
+		MockTransport transport = new MockTransport(503, "text/plain", "Unavailable");
+		final List<String> transitions = new ArrayList<String>();
+		CircuitBreakerFilter breaker = new CircuitBreakerFilter(Scope.SENDER, 10, 4, 50, 200, 2)
+				.setListener(new StateListener() {
+
+					@Override
+					public void onStateChange(String key, State from, State to) {
+						transitions.add(from + "->" + to);
+					}
+				});
+		HttlSender sender = transport.sender().addExecutionFilter(breaker).build();
+
+		//When - minimum calls failed
+		for (int i = 0; i < 4; ++i) {
+			sender.GET("/").execute().close();
+		}
+		//Then - circuit opens and rejects without calling transport
+		assertThat(breaker.getState(null)).isEqualTo(State.OPEN);
+		assertRejected(sender);
+		assertThat(transport.getExecutionCount()).isEqualTo(4);
+		assertThat(breaker.getRejected()).isEqualTo(1);
+
+		//When - open time elapses, but probe fails
+		Thread.sleep(250);
+		sender.GET("/").execute().close();
+		//Then - opened again
+		assertThat(breaker.getState(null)).isEqualTo(State.OPEN);
+		assertRejected(sender);
+
+		//When - backend recovers
+		Thread.sleep(250);
+		transport.setStaticResponse(200, "text/plain", "OK");
+		sender.GET("/").execute().close();
+		assertThat(breaker.getState(null)).isEqualTo(State.HALF_OPEN);
+		sender.GET("/").execute().close();
+		//Then - closed after all probes succeeded
+		assertThat(breaker.getState(null)).isEqualTo(State.CLOSED);
+		assertThat(breaker.getCircuits().get("*").getFailureRate()).isEqualTo(0);
+		assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN", "OPEN->HALF_OPEN",
+				"HALF_OPEN->CLOSED");
+		assertThat(breaker.getOpened()).isEqualTo(2);
+		assertThat(breaker.getClosed()).isEqualTo(1);
+		sender.close();
+	}
+
+	@Test
+	public void slowCallRate() throws Exception {
+		MockTransport transport = new MockTransport();
+		CircuitBreakerFilter breaker = new CircuitBreakerFilter(Scope.SENDER, 10, 4, 50, 10000, 1).setSlowCall(20, 50);
+		HttlSender sender = transport.sender().addExecutionFilter(breaker).addExecutionFilter(new HttlExecutionFilter() {
+
+			@Override
+			public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+				try {
+					Thread.sleep(30);
+				} catch (InterruptedException ix) {
+					Thread.currentThread().interrupt();
+				}
+				return chain.next(request);
+			}
+		}).build();
+
+		for (int i = 0; i < 4; ++i) {
+			sender.GET("/").execute().close();
+		}
+		assertThat(breaker.getState(null)).isEqualTo(State.OPEN);
+		assertThat(breaker.getCircuits().get("*").getSlowCallRate()).isEqualTo(100);
+		sender.close();
+	}
+
+	@Test
+	public void operationScope() throws Exception {
+		MockTransport transport = new MockTransport(500, "text/plain", "Error");
+		CircuitBreakerFilter breaker = new CircuitBreakerFilter(Scope.OPERATION, 10, 2, 50, 10000, 1);
+		HttlSender sender = transport.sender().addExecutionFilter(breaker).build();
+
+		sender.GET("/a").operation("Api.a").execute().close();
+		sender.GET("/a").operation("Api.a").execute().close();
+		assertThat(breaker.getState("Api.a")).isEqualTo(State.OPEN);
+		//Then - other operation is not affected
+		sender.GET("/b").operation("Api.b").execute().close();
+		assertThat(breaker.getState("Api.b")).isEqualTo(State.CLOSED);
+		assertThat(breaker.getState(null)).isEqualTo(State.CLOSED);
+		sender.close();
+	}
+
+	private void assertRejected(HttlSender sender) {
+		try {
+			sender.GET("/").execute();
+			Assert.fail("Expected " + CircuitOpenException.class.getName());
+		} catch (CircuitOpenException cox) {
+			assertThat(cox.getKey()).isEqualTo("*");
+		}
+	}
+}
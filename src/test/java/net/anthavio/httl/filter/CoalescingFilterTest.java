@@ -0,0 +1,176 @@
+package net.anthavio.httl.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.httl.HttlDeadlineException;
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class CoalescingFilterTest {
+
+	@Test
+	public void coalesce() throws Exception {
+		//Given - upstream call blocked until released
+		MockTransport transport = new MockTransport();
+		CoalescingFilter coalescing = new CoalescingFilter();
+		final CountDownLatch release = new CountDownLatch(1);
+		final HttlSender sender = transport.sender().addExecutionFilter(coalescing)
+				.addExecutionFilter(new HttlExecutionFilter() {
+
+					@Override
+					public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+						try {
+							release.await(5, TimeUnit.SECONDS);
+						} catch (InterruptedException ix) {
+							Thread.currentThread().interrupt();
+						}
+						return chain.next(request);
+					}
+				}).build();
+
+		//When - 5 concurrent identical requests
+		ExecutorService executor = Executors.newFixedThreadPool(5);
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 5; ++i) {
+			futures.add(executor.submit(new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+					HttlResponse response = sender.GET("/config").param("x", 1).execute();
+					try {
+						return HttlUtil.readAsString(response);
+					} finally {
+						response.close();
+					}
+				}
+			}));
+		}
+		long deadline = System.currentTimeMillis() + 2000;
+		while (coalescing.getCoalesced() != 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+
+		//Then - single upstream call and every caller gets own readable copy
+		for (Future<String> future : futures) {
+			assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo("MockResponse to GET /config?x=1");
+		}
+		assertThat(transport.getExecutionCount()).isEqualTo(1);
+		assertThat(coalescing.getInFlight()).isEqualTo(0);
+
+		//Then - nothing is cached
+		sender.GET("/config").param("x", 1).execute().close();
+		assertThat(transport.getExecutionCount()).isEqualTo(2);
+
+		//Then - different requests and unsafe methods are not coalesced
+		sender.GET("/config").param("x", 2).execute().close();
+		sender.POST("/config").body("x", "text/plain").execute().close();
+		assertThat(transport.getExecutionCount()).isEqualTo(4);
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void failure() throws Exception {
+		MockTransport transport = new MockTransport();
+		transport.setException(new IOException("Boom"));
+		HttlSender sender = transport.sender().addExecutionFilter(new CoalescingFilter()).build();
+		try {
+			sender.GET("/").execute();
+		} catch (HttlRequestException hrx) {
+			assertThat(hrx.getCause().getMessage()).isEqualTo("Boom");
+		}
+		//failed flight is removed
+		transport.setException(null);
+		assertThat(sender.GET("/").execute().getHttpStatusCode()).isEqualTo(200);
+		sender.close();
+	}
+
+	@Test
+	public void followers() throws Exception {
+		//Given - leader blocked until released and then failing
+		MockTransport transport = new MockTransport();
+		transport.setException(new ConnectException("Refused"));
+		final CountDownLatch release = new CountDownLatch(1);
+		CoalescingFilter coalescing = new CoalescingFilter();
+		final HttlSender sender = transport.sender().addExecutionFilter(coalescing)
+				.addExecutionFilter(new HttlExecutionFilter() {
+
+					@Override
+					public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+						try {
+							release.await(5, TimeUnit.SECONDS);
+						} catch (InterruptedException ix) {
+							Thread.currentThread().interrupt();
+						}
+						return chain.next(request);
+					}
+				}).build();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Callable<HttlResponse> call = new Callable<HttlResponse>() {
+
+			@Override
+			public HttlResponse call() throws Exception {
+				return sender.GET("/").execute();
+			}
+		};
+		Future<HttlResponse> leader = executor.submit(call);
+		Future<HttlResponse> follower = executor.submit(call);
+		long deadline = System.currentTimeMillis() + 2000;
+		while (coalescing.getCoalesced() != 1 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		//When - follower with own deadline
+		long started = System.currentTimeMillis();
+		try {
+			sender.GET("/").totalTimeout(100, TimeUnit.MILLISECONDS).execute();
+			Assert.fail("Expected " + HttlDeadlineException.class);
+		} catch (HttlRequestException hrx) {
+			//Then - it does not wait for leader
+			assertThat(hrx.getCause()).isInstanceOf(HttlDeadlineException.class);
+		}
+		assertThat(System.currentTimeMillis() - started).isLessThan(1000);
+
+		//Then - follower fails with the same exception type as leader
+		release.countDown();
+		for (Future<HttlResponse> future : Arrays.asList(leader, follower)) {
+			try {
+				future.get(1, TimeUnit.SECONDS);
+				Assert.fail("Expected " + ConnectException.class);
+			} catch (ExecutionException ex) {
+				assertThat(ex.getCause().getCause()).isInstanceOf(ConnectException.class);
+			}
+		}
+		assertThat(transport.getExecutionCount()).isEqualTo(1);
+		sender.close();
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,130 @@
+package net.anthavio.httl.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlBuilder;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.JokerServer;
+import net.anthavio.httl.TestBodyRequest;
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+import net.anthavio.httl.filter.CompressionFilter.Encoding;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class CompressionFilterTest {
+
+	@Test
+	public void gzip() throws IOException {
+		//Given
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().addExecutionFilter(new CompressionFilter(Encoding.GZIP, 100)).build();
+		String big = repeat('x', 5000);
+
+		//When - string above threshold
+		HttlResponse response = sender.POST("/").body(big, "text/plain").execute();
+		//Then - mock transport echoes headers and body
+		HttlRequest sent = transport.getLastRequest();
+		assertThat(sent.getFirstHeader("Content-Encoding")).isEqualTo("gzip");
+		assertThat(sent.getBody().getType()).isEqualTo(HttlBody.Type.BYTES);
+		assertThat(sent.getBody().getLength()).isLessThan(big.length());
+		assertThat(read(new GZIPInputStream(response.getStream()))).isEqualTo(big);
+
+		//When - bytes above threshold
+		response = sender.POST("/").body(big.getBytes("utf-8"), "application/octet-stream").execute();
+		//Then
+		assertThat(transport.getLastRequest().getFirstHeader("Content-Encoding")).isEqualTo("gzip");
+		assertThat(read(new GZIPInputStream(response.getStream()))).isEqualTo(big);
+
+		//When - below threshold
+		response = sender.POST("/").body("small", "text/plain").execute();
+		//Then - untouched
+		sent = transport.getLastRequest();
+		assertThat(sent.getFirstHeader("Content-Encoding")).isNull();
+		assertThat(sent.getBody().getType()).isEqualTo(HttlBody.Type.STRING);
+		assertThat(HttlUtil.readAsString(response)).isEqualTo("small");
+		sender.close();
+	}
+
+	@Test
+	public void marshall() throws IOException {
+		//Given
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().addExecutionFilter(new CompressionFilter(Encoding.DEFLATE, 100)).build();
+
+		//When - marshalled body grows over threshold
+		TestBodyRequest bean = new TestBodyRequest(repeat('y', 1000));
+		HttlResponse response = sender.POST("/").body(bean, "application/json").execute();
+		//Then
+		assertThat(transport.getLastRequest().getFirstHeader("Content-Encoding")).isEqualTo("deflate");
+		assertThat(read(new InflaterInputStream(response.getStream()))).contains(bean.getMessage());
+
+		//When - marshalled body stays under threshold
+		bean = new TestBodyRequest("y");
+		response = sender.POST("/").body(bean, "application/json").execute();
+		//Then - marshalled, but not compressed
+		HttlRequest sent = transport.getLastRequest();
+		assertThat(sent.getFirstHeader("Content-Encoding")).isNull();
+		assertThat(sent.getBody().getType()).isEqualTo(HttlBody.Type.BYTES);
+		assertThat(HttlUtil.readAsString(response)).contains("\"y\"");
+		sender.close();
+	}
+
+	@Test
+	public void transports() throws IOException {
+		JokerServer server = new JokerServer().start();
+		try {
+			String url = "localhost:" + server.getPortHttp();
+			doTest(HttlBuilder.httpUrl(url));
+			doTest(HttlBuilder.httpClient3(url));
+			doTest(HttlBuilder.httpClient4(url));
+			doTest(HttlBuilder.httpAsyncClient4(url));
+			doTest(HttlBuilder.ning(url));
+			doTest(HttlBuilder.nio(url));
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Compressed body is sent from Compressor buffer, which is bigger than its content
+	 */
+	private void doTest(BaseTransBuilder<?> config) throws IOException {
+		HttlSender sender = config.sender().addExecutionFilter(new CompressionFilter(Encoding.GZIP, 100)).build();
+		try {
+			String big = repeat('z', 5000);
+			HttlResponse response = sender.PUT("/").param("doecho", true).body(big, "text/plain").execute();
+			byte[] echoed = HttlUtil.readAsBytes(response);
+			assertThat(response.getFirstHeader("X-Request-Length")).isEqualTo(String.valueOf(echoed.length));
+			assertThat(read(new GZIPInputStream(new ByteArrayInputStream(echoed)))).isEqualTo(big);
+		} finally {
+			sender.close();
+		}
+	}
+
+	private static String read(InputStream stream) throws IOException {
+		return new String(HttlUtil.readAsBytes(stream, HttlUtil.KILO16), "utf-8");
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
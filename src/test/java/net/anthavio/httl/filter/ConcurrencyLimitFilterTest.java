@@ -0,0 +1,156 @@
+package net.anthavio.httl.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.filter.ConcurrencyLimitFilter.AimdLimit;
+import net.anthavio.httl.filter.ConcurrencyLimitFilter.GradientLimit;
+import net.anthavio.httl.filter.ConcurrencyLimitFilter.LimitExceededException;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class ConcurrencyLimitFilterTest {
+
+	@Test
+	public void reject() throws Exception {
+		//Given - limit 2
+		ConcurrencyLimitFilter limiter = new ConcurrencyLimitFilter(new AimdLimit(2, 1, 10, 0.5, 0));
+		LatchFilter latch = new LatchFilter(2);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		HttlSender sender = new MockTransport().sender().setExecutorService(executor).addExecutionFilter(limiter)
+				.addExecutionFilter(latch).build();
+
+		//When - 2 requests in flight
+		Future<ExtractedResponse<String>> future1 = sender.start(sender.GET("/").build(), String.class);
+		Future<ExtractedResponse<String>> future2 = sender.start(sender.GET("/").build(), String.class);
+		assertThat(latch.entered.await(1, TimeUnit.SECONDS)).isTrue();
+		assertThat(limiter.getInflight()).isEqualTo(2);
+
+		//Then - async is rejected before submitting into executor
+		try {
+			sender.start(sender.GET("/").build(), String.class);
+			Assert.fail("Expected " + LimitExceededException.class.getName());
+		} catch (LimitExceededException lex) {
+			//ok
+		}
+		//Then - sync is rejected
+		try {
+			sender.GET("/").execute();
+			Assert.fail("Expected " + LimitExceededException.class.getName());
+		} catch (LimitExceededException lex) {
+			//ok
+		}
+		assertThat(limiter.getRejected()).isEqualTo(2);
+
+		latch.release.countDown();
+		assertThat(future1.get(1, TimeUnit.SECONDS).getBody()).isEqualTo("MockResponse to GET /");
+		assertThat(future2.get(1, TimeUnit.SECONDS).getBody()).isEqualTo("MockResponse to GET /");
+		assertThat(limiter.getInflight()).isEqualTo(0);
+		//Then - limit is free again
+		sender.GET("/").execute().close();
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void queue() throws Exception {
+		//Given - limit 1 with queue
+		ConcurrencyLimitFilter limiter = new ConcurrencyLimitFilter(new AimdLimit(1, 1, 1, 0.5, 0), 1, 2000);
+		LatchFilter latch = new LatchFilter(1);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		HttlSender sender = new MockTransport().sender().setExecutorService(executor).addExecutionFilter(limiter)
+				.addExecutionFilter(latch).build();
+
+		Future<ExtractedResponse<String>> future1 = sender.start(sender.GET("/").build(), String.class);
+		assertThat(latch.entered.await(1, TimeUnit.SECONDS)).isTrue();
+		Future<ExtractedResponse<String>> future2 = sender.start(sender.GET("/").build(), String.class);
+		Thread.sleep(100);
+		assertThat(limiter.getQueued()).isEqualTo(1);
+
+		//When
+		latch.release.countDown();
+		//Then - queued request is executed
+		assertThat(future1.get(1, TimeUnit.SECONDS).getBody()).isEqualTo("MockResponse to GET /");
+		assertThat(future2.get(1, TimeUnit.SECONDS).getBody()).isEqualTo("MockResponse to GET /");
+		assertThat(limiter.getRejected()).isEqualTo(0);
+		sender.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void aimd() {
+		AimdLimit limit = new AimdLimit(10, 1, 20, 0.5, 100);
+		//low utilization - no change
+		limit.onSample(1000000, 2, false);
+		assertThat(limit.getLimit()).isEqualTo(10);
+		//additive increase
+		limit.onSample(1000000, 5, false);
+		limit.onSample(1000000, 6, false);
+		assertThat(limit.getLimit()).isEqualTo(12);
+		//multiplicative decrease on drop and on timeout
+		limit.onSample(1000000, 12, true);
+		assertThat(limit.getLimit()).isEqualTo(6);
+		limit.onSample(200 * 1000000L, 6, false);
+		assertThat(limit.getLimit()).isEqualTo(3);
+	}
+
+	@Test
+	public void gradient() {
+		GradientLimit limit = new GradientLimit(10, 1, 100, 0.5, 1000);
+		//steady RTT under load - limit grows
+		for (int i = 0; i < 10; ++i) {
+			limit.onSample(10000000, limit.getLimit(), false);
+		}
+		int grown = limit.getLimit();
+		assertThat(grown).isGreaterThan(10);
+		//RTT grows well above unloaded RTT - limit shrinks
+		for (int i = 0; i < 50; ++i) {
+			limit.onSample(100000000, limit.getLimit(), false);
+		}
+		assertThat(limit.getLimit()).isLessThan(grown);
+	}
+
+	/**
+	 * Blocks requests until released
+	 */
+	static class LatchFilter implements HttlExecutionFilter {
+
+		final CountDownLatch entered;
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		LatchFilter(int entries) {
+			this.entered = new CountDownLatch(entries);
+		}
+
+		@Override
+		public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+			entered.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ix) {
+				Thread.currentThread().interrupt();
+			}
+			return chain.next(request);
+		}
+	}
+}
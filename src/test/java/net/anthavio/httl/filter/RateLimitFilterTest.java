@@ -0,0 +1,148 @@
+package net.anthavio.httl.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.api.HttlApiBuilder;
+import net.anthavio.httl.api.HttlCall;
+import net.anthavio.httl.api.HttlRateLimit;
+import net.anthavio.httl.filter.RateLimitFilter.RateLimitExceededException;
+import net.anthavio.httl.util.MockTransport;
+import net.anthavio.httl.util.TokenBucket;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class RateLimitFilterTest {
+
+	@Test
+	public void bucket() throws Exception {
+		TokenBucket bucket = new TokenBucket(10, 3);
+		//full bucket allows burst
+		for (int i = 0; i < 3; ++i) {
+			assertThat(bucket.tryAcquire()).isTrue();
+		}
+		assertThat(bucket.tryAcquire()).isFalse();
+
+		//next permit comes in 100 ms
+		long started = System.nanoTime();
+		assertThat(bucket.tryAcquire(500, TimeUnit.MILLISECONDS)).isTrue();
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		assertThat(waited).isGreaterThanOrEqualTo(50).isLessThan(300);
+
+		//not within timeout
+		assertThat(bucket.tryAcquire(10, TimeUnit.MILLISECONDS)).isFalse();
+	}
+
+	@Test
+	public void sender() throws Exception {
+		//Given - non-blocking
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().setRateLimit(1, 2, 0).build();
+		RateLimitFilter filter = (RateLimitFilter) sender.getConfig().getExecutionFilters().get(0);
+
+		sender.GET("/").execute().close();
+		sender.GET("/").execute().close();
+		try {
+			sender.GET("/").execute();
+			Assert.fail("Expected " + RateLimitExceededException.class.getName());
+		} catch (RateLimitExceededException rlex) {
+			//ok
+		}
+		assertThat(transport.getExecutionCount()).isEqualTo(2);
+		assertThat(filter.getRejected()).isEqualTo(1);
+		sender.close();
+	}
+
+	@Test
+	public void operation() throws Exception {
+		MockTransport transport = new MockTransport();
+		RateLimitFilter filter = new RateLimitFilter(1000, 100, 0).setOperationLimit("Api.slow", 1, 1);
+		HttlSender sender = transport.sender().addExecutionFilter(filter).build();
+
+		sender.GET("/").operation("Api.slow").execute().close();
+		try {
+			sender.GET("/").operation("Api.slow").execute();
+			Assert.fail("Expected " + RateLimitExceededException.class.getName());
+		} catch (RateLimitExceededException rlex) {
+			assertThat(rlex.getMessage()).contains("Api.slow");
+		}
+		//other operations are limited only by sender limit
+		sender.GET("/").operation("Api.fast").execute().close();
+		sender.GET("/").execute().close();
+		assertThat(transport.getExecutionCount()).isEqualTo(3);
+		sender.close();
+	}
+
+	@Test
+	public void operationRejectRefunds() throws Exception {
+		//Given - sender allows 2, operation only 1
+		MockTransport transport = new MockTransport();
+		RateLimitFilter filter = new RateLimitFilter(1, 2, 0).setOperationLimit("Api.slow", 1, 1);
+		HttlSender sender = transport.sender().addExecutionFilter(filter).build();
+
+		sender.GET("/").operation("Api.slow").execute().close();
+		try {
+			sender.GET("/").operation("Api.slow").execute();
+			Assert.fail("Expected " + RateLimitExceededException.class.getName());
+		} catch (RateLimitExceededException rlex) {
+			assertThat(rlex.getMessage()).contains("Api.slow");
+		}
+		//Then - sender permit of rejected request was returned
+		sender.GET("/").execute().close();
+		try {
+			sender.GET("/").execute();
+			Assert.fail("Expected " + RateLimitExceededException.class.getName());
+		} catch (RateLimitExceededException rlex) {
+			//ok
+		}
+		assertThat(transport.getExecutionCount()).isEqualTo(2);
+		assertThat(filter.getRejected()).isEqualTo(2);
+		sender.close();
+	}
+
+	@Test
+	public void annotation() throws Exception {
+		MockTransport transport = new MockTransport();
+		HttlSender sender = transport.sender().build();
+		LimitedApi api = HttlApiBuilder.with(sender).build(LimitedApi.class);
+
+		//method own limit
+		api.own();
+		try {
+			api.own();
+			Assert.fail("Expected " + RateLimitExceededException.class.getName());
+		} catch (RateLimitExceededException rlex) {
+			assertThat(rlex.getMessage()).contains("LimitedApi.own");
+		}
+		//interface shared limit blocks until permit comes
+		long started = System.currentTimeMillis();
+		api.shared1();
+		api.shared2();
+		api.shared1();
+		assertThat(System.currentTimeMillis() - started).isGreaterThanOrEqualTo(50);
+		assertThat(transport.getExecutionCount()).isEqualTo(4);
+		sender.close();
+	}
+
+	@HttlRateLimit(value = 10, burst = 2, timeoutMillis = 1000)
+	static interface LimitedApi {
+
+		@HttlCall("GET /shared")
+		public String shared1();
+
+		@HttlCall("GET /shared")
+		public String shared2();
+
+		@HttlRateLimit(1)
+		@HttlCall("GET /own")
+		public String own();
+	}
+}
@@ -0,0 +1,180 @@
+package net.anthavio.httl.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.anthavio.httl.HttlBody;
+import net.anthavio.httl.HttlExecutionChain;
+import net.anthavio.httl.HttlExecutionFilter;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class RetryFilterTest {
+
+	@Test
+	public void requestFailure() throws IOException {
+		//Given - connection refused twice
+		FailingTransport transport = new FailingTransport(new ConnectException("Connection refused"), 2);
+		RetryFilter retry = new RetryFilter(3, 0, 0);
+		CountingFilter counting = new CountingFilter();
+		HttlSender sender = transport.sender().addExecutionFilter(retry).addExecutionFilter(counting).build();
+
+		//When - even POST is retried because it was never delivered
+		HttlResponse response = sender.POST("/").body("x", "text/plain").execute();
+		//Then
+		assertThat(response.getHttpStatusCode()).isEqualTo(200);
+		assertThat(transport.getExecutionCount()).isEqualTo(3);
+		assertThat(retry.getRetries()).isEqualTo(2);
+		//Then - rest of the chain is executed for every attempt
+		assertThat(counting.count.get()).isEqualTo(3);
+		sender.close();
+	}
+
+	@Test
+	public void responseFailure() throws IOException {
+		//Given - read timeout
+		FailingTransport transport = new FailingTransport(new SocketTimeoutException("Read timed out"), 1);
+		RetryFilter retry = new RetryFilter(3, 0, 0);
+		HttlSender sender = transport.sender().addExecutionFilter(retry).build();
+
+		//When - POST might be already processed by server
+		try {
+			sender.POST("/").body("x", "text/plain").execute();
+			Assert.fail("Expected " + HttlRequestException.class.getName());
+		} catch (HttlRequestException hrx) {
+			//Then - not retried
+			assertThat(hrx.getCause()).isInstanceOf(SocketTimeoutException.class);
+		}
+		assertThat(transport.getExecutionCount()).isEqualTo(1);
+
+		//When - idempotent PUT
+		transport.reset(1);
+		HttlResponse response = sender.PUT("/").body("x", "text/plain").execute();
+		//Then - retried
+		assertThat(response.getHttpStatusCode()).isEqualTo(200);
+		assertThat(transport.getExecutionCount()).isEqualTo(3);
+		sender.close();
+	}
+
+	@Test
+	public void unavailable() throws IOException {
+		MockTransport transport = new MockTransport(503, "text/plain", "Unavailable");
+		RetryFilter retry = new RetryFilter(2, 0, 0);
+		HttlSender sender = transport.sender().addExecutionFilter(retry).build();
+
+		//When
+		HttlResponse response = sender.GET("/").execute();
+		//Then - last response is returned when retries are exhausted
+		assertThat(response.getHttpStatusCode()).isEqualTo(503);
+		assertThat(transport.getExecutionCount()).isEqualTo(3);
+
+		//When - not idempotent
+		sender.POST("/").body("x", "text/plain").execute();
+		//Then
+		assertThat(transport.getExecutionCount()).isEqualTo(4);
+		sender.close();
+	}
+
+	@Test
+	public void budget() throws IOException {
+		//Given - budget for single retry without any refill
+		MockTransport transport = new MockTransport(503, "text/plain", "Unavailable");
+		RetryFilter retry = new RetryFilter(3, 0, 0, 0, 1);
+		HttlSender sender = transport.sender().addExecutionFilter(retry).build();
+
+		sender.GET("/").execute();
+		assertThat(transport.getExecutionCount()).isEqualTo(2);
+		assertThat(retry.getBudgetExhausted()).isEqualTo(1);
+
+		sender.GET("/").execute();
+		assertThat(transport.getExecutionCount()).isEqualTo(3);
+		assertThat(retry.getRetries()).isEqualTo(1);
+		assertThat(retry.getBudgetExhausted()).isEqualTo(2);
+		sender.close();
+	}
+
+	@Test
+	public void streams() throws IOException {
+		FailingTransport transport = new FailingTransport(new ConnectException("Connection refused"), 1);
+		RetryFilter retry = new RetryFilter(3, 0, 0);
+		HttlSender sender = transport.sender().addExecutionFilter(retry).build();
+
+		//When - one-shot stream
+		try {
+			sender.POST("/").body(new ByteArrayInputStream("x".getBytes()), "text/plain").execute();
+			Assert.fail("Expected " + HttlRequestException.class.getName());
+		} catch (HttlRequestException hrx) {
+			//Then - not retried
+			assertThat(hrx.getCause()).isInstanceOf(ConnectException.class);
+		}
+		assertThat(transport.getExecutionCount()).isEqualTo(1);
+
+		//When - buffered
+		retry.setBufferStreams(true);
+		transport.reset(1);
+		HttlResponse response = sender.POST("/").body(new ByteArrayInputStream("stream".getBytes()), "text/plain")
+				.execute();
+		//Then - retried with buffered body
+		assertThat(transport.getExecutionCount()).isEqualTo(3);
+		assertThat(transport.getLastRequest().getBody().getType()).isEqualTo(HttlBody.Type.BYTES);
+		assertThat(HttlUtil.readAsString(response)).isEqualTo("stream");
+		sender.close();
+	}
+
+	static class CountingFilter implements HttlExecutionFilter {
+
+		final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public HttlResponse filter(HttlRequest request, HttlExecutionChain chain) throws IOException {
+			count.incrementAndGet();
+			return chain.next(request);
+		}
+	}
+
+	/**
+	 * Throws exception for first n calls
+	 */
+	static class FailingTransport extends MockTransport {
+
+		private final IOException exception;
+
+		private final AtomicInteger failures = new AtomicInteger();
+
+		public FailingTransport(IOException exception, int failures) {
+			this.exception = exception;
+			this.failures.set(failures);
+		}
+
+		public void reset(int failures) {
+			this.failures.set(failures);
+		}
+
+		@Override
+		public HttlResponse call(HttlRequest request) throws IOException {
+			if (failures.getAndDecrement() > 0) {
+				setException(exception);
+			} else {
+				setException(null);
+			}
+			return super.call(request);
+		}
+	}
+}
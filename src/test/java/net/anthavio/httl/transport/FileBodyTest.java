@@ -0,0 +1,165 @@
+package net.anthavio.httl.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Random;
+
+import net.anthavio.httl.HttlBuilder;
+import net.anthavio.httl.HttlRequestException;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlResponseException;
+import net.anthavio.httl.HttlResponseExtractor.ExtractedResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.HttlStatusException;
+import net.anthavio.httl.JokerServer;
+import net.anthavio.httl.TransportBuilder.BaseTransBuilder;
+import net.anthavio.httl.marshall.HttlTransferExtractor;
+import net.anthavio.httl.marshall.HttlTransferExtractor.Transfer;
+import net.anthavio.httl.util.HttlUtil;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * File request body must be sent with exact Content-Length by every transport.
+ * Echoed response body is streamed back into file or stream
+ *
+ * @author martin.vanek
+ *
+ */
+public class FileBodyTest {
+
+	private static JokerServer server = new JokerServer();
+
+	private static File file;
+
+	private static byte[] content;
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		server.start();
+		//bigger than any socket buffer
+		content = new byte[3 * 1024 * 1024 + 7];
+		new Random(0).nextBytes(content);
+		file = File.createTempFile("httl-", ".bin");
+		file.deleteOnExit();
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(content);
+		} finally {
+			output.close();
+		}
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		server.stop();
+		file.delete();
+	}
+
+	@Test
+	public void transports() throws Exception {
+		String url = "localhost:" + server.getPortHttp();
+		doTest(HttlBuilder.httpUrl(url));
+		doTest(HttlBuilder.httpClient3(url));
+		doTest(HttlBuilder.httpClient4(url));
+		doTest(HttlBuilder.httpAsyncClient4(url));
+		doTest(HttlBuilder.ning(url));
+		doTest(HttlBuilder.nio(url));
+	}
+
+	@Test
+	public void http2() throws Exception {
+		//file is much bigger than server's stream window - streamed as window updates arrive
+		H2cServer h2c = new H2cServer(100, 16 * 1024);
+		h2c.start();
+		HttlSender sender = HttlBuilder.http2("localhost:" + h2c.getPort()).sender().build();
+		try {
+			//twice to verify that connection is reusable
+			for (int i = 0; i < 2; ++i) {
+				HttlResponse response = sender.POST("/").body(file, "application/octet-stream").execute();
+				assertThat(response.getHttpStatusCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+				assertThat(HttlUtil.readAsBytes(response)).isEqualTo(content);
+				response.close();
+			}
+			assertThat(h2c.getConnections()).isEqualTo(1);
+		} finally {
+			sender.close();
+			h2c.stop();
+		}
+	}
+
+	@Test
+	public void mock() throws IOException {
+		HttlSender sender = HttlBuilder.mock().sender().build();
+		HttlResponse response = sender.POST("/").body(file, "application/octet-stream").execute();
+		assertThat(HttlUtil.readAsBytes(response)).isEqualTo(content);
+	}
+
+	@Test
+	public void transfer() throws IOException {
+		HttlSender sender = HttlBuilder.httpUrl("localhost:" + server.getPortHttp()).sender().build();
+		try {
+			File download = File.createTempFile("httl-", ".download");
+			download.deleteOnExit();
+			ExtractedResponse<Transfer> extracted = sender.PUT("/").param("doecho", true)
+					.body(file, "application/octet-stream").extract(HttlTransferExtractor.toFile(download));
+			assertThat(extracted.getBody().getBytes()).isEqualTo(content.length);
+			assertThat(download.length()).isEqualTo(content.length);
+			download.delete();
+
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			extracted = sender.PUT("/").param("doecho", true).body(file, "application/octet-stream")
+					.extract(HttlTransferExtractor.toStream(stream));
+			assertThat(extracted.getBody().getBytes()).isEqualTo(content.length);
+			assertThat(stream.toByteArray()).isEqualTo(content);
+
+			//status is checked before anything is written
+			stream.reset();
+			try {
+				sender.GET("/").param("dostatus", 500).extract(HttlTransferExtractor.toStream(stream));
+				Assert.fail("Previous statement must throw HttlResponseException");
+			} catch (HttlResponseException rx) {
+				assertThat(rx.getCause()).isInstanceOf(HttlStatusException.class);
+			}
+			assertThat(stream.size()).isEqualTo(0);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void missing() {
+		HttlSender sender = HttlBuilder.mock().sender().build();
+		try {
+			sender.POST("/").body(new File(file.getPath() + ".missing"), "application/octet-stream");
+			Assert.fail("Previous statement must throw HttlRequestException");
+		} catch (HttlRequestException rx) {
+			assertThat(rx.getMessage()).startsWith("Payload file is not readable");
+		}
+	}
+
+	private void doTest(BaseTransBuilder<?> config) throws IOException {
+		HttlSender sender = config.sender().build();
+		try {
+			//twice to verify that connection is reusable
+			for (int i = 0; i < 2; ++i) {
+				HttlResponse response = sender.PUT("/").param("doecho", true).body(file, "application/octet-stream")
+						.execute();
+				assertThat(response.getHttpStatusCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+				assertThat(response.getFirstHeader("X-Request-Length")).isEqualTo(String.valueOf(content.length));
+				assertThat(HttlUtil.readAsBytes(response)).isEqualTo(content);
+				response.close();
+			}
+		} finally {
+			sender.close();
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package net.anthavio.httl.transport;
+
+import static net.anthavio.httl.transport.Http2Connection.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal h2c (prior knowledge) server for Http2Transport testing
+ *
+ * GET returns "Hello" text, POST echoes request body, sleep=N parameter delays response for N seconds
+ * and /goaway path closes connection with GOAWAY after response is sent
+ *
+ * @author martin.vanek
+ *
+ */
+public class H2cServer implements Runnable {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private final AtomicInteger cancels = new AtomicInteger();
+
+	private final int maxConcurrentStreams;
+
+	private final int initialWindowSize;
+
+	private ServerSocket serverSocket;
+
+	private volatile boolean running;
+
+	/**
+	 * @param maxConcurrentStreams announced SETTINGS_MAX_CONCURRENT_STREAMS
+	 * @param initialWindowSize announced SETTINGS_INITIAL_WINDOW_SIZE
+	 */
+	public H2cServer(int maxConcurrentStreams, int initialWindowSize) {
+		this.maxConcurrentStreams = maxConcurrentStreams;
+		this.initialWindowSize = initialWindowSize;
+	}
+
+	public void start() throws IOException {
+		serverSocket = new ServerSocket(0);
+		running = true;
+		Thread thread = new Thread(this, "h2c-server");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() throws IOException {
+		running = false;
+		serverSocket.close();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return number of accepted connections
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * @return number of RST_STREAM frames with CANCEL error code received
+	 */
+	public int getCancels() {
+		return cancels.get();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true); //frame header and payload are written separately
+				connections.incrementAndGet();
+				Thread thread = new Thread(new ServerConnection(socket), "h2c-connection-" + connections.get());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException iox) {
+				if (running) {
+					logger.warn("Accept failed", iox);
+				}
+			}
+		}
+	}
+
+	private class ServerConnection implements Runnable {
+
+		private final Socket socket;
+
+		private final Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+
+		private final Hpack.Encoder encoder = new Hpack.Encoder();
+
+		private final Map<Integer, ServerStream> streams = new HashMap<Integer, ServerStream>();
+
+		private OutputStream output;
+
+		private ByteArrayOutputStream headerBlock;
+
+		private int headerFlags;
+
+		ServerConnection(Socket socket) {
+			this.socket = socket;
+		}
+
+		@Override
+		public void run() {
+			try {
+				DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				output = socket.getOutputStream();
+				byte[] preface = new byte[PREFACE.length];
+				input.readFully(preface);
+				byte[] settings = new byte[12];
+				settings[1] = SETTINGS_MAX_CONCURRENT_STREAMS;
+				putInt(settings, 2, maxConcurrentStreams);
+				settings[7] = SETTINGS_INITIAL_WINDOW_SIZE;
+				putInt(settings, 8, initialWindowSize);
+				write(SETTINGS, 0, 0, settings, 0, settings.length);
+
+				byte[] payload = new byte[DEFAULT_FRAME_SIZE];
+				while (true) {
+					int length = (input.readUnsignedByte() << 16) | (input.readUnsignedByte() << 8) | input.readUnsignedByte();
+					int type = input.readUnsignedByte();
+					int flags = input.readUnsignedByte();
+					int streamId = input.readInt() & 0x7FFFFFFF;
+					input.readFully(payload, 0, length);
+					switch (type) {
+					case HEADERS:
+						headerBlock = new ByteArrayOutputStream();
+						headerBlock.write(payload, 0, length);
+						headerFlags = flags;
+						if ((flags & FLAG_END_HEADERS) != 0) {
+							onHeaders(streamId);
+						}
+						break;
+					case CONTINUATION:
+						headerBlock.write(payload, 0, length);
+						if ((flags & FLAG_END_HEADERS) != 0) {
+							onHeaders(streamId);
+						}
+						break;
+					case DATA:
+						ServerStream stream = streams.get(streamId);
+						stream.body.write(payload, 0, length);
+						if (length != 0) {
+							//consumed immediately
+							byte[] increment = new byte[4];
+							putInt(increment, 0, length);
+							write(WINDOW_UPDATE, 0, 0, increment, 0, 4);
+							write(WINDOW_UPDATE, 0, streamId, increment, 0, 4);
+						}
+						if ((flags & FLAG_END_STREAM) != 0) {
+							respond(stream);
+						}
+						break;
+					case SETTINGS:
+						if ((flags & FLAG_ACK) == 0) {
+							write(SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+						}
+						break;
+					case PING:
+						write(PING, FLAG_ACK, 0, payload, 0, length);
+						break;
+					case GOAWAY:
+						socket.close();
+						return;
+					case RST_STREAM:
+						int code = (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16 | (payload[2] & 0xFF) << 8
+								| (payload[3] & 0xFF);
+						if (code == CANCEL) {
+							cancels.incrementAndGet();
+						}
+						break;
+					default:
+						//WINDOW_UPDATE - responses are small
+					}
+				}
+			} catch (IOException iox) {
+				logger.debug("Connection closed " + iox);
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException iox) {
+					//ignore
+				}
+			}
+		}
+
+		private void onHeaders(int streamId) throws IOException {
+			byte[] block = headerBlock.toByteArray();
+			List<String[]> fields = new ArrayList<String[]>();
+			decoder.decode(block, 0, block.length, fields);
+			ServerStream stream = new ServerStream(streamId);
+			for (String[] field : fields) {
+				if (field[0].equals(":path")) {
+					stream.path = field[1];
+				} else if (field[0].equals(":method")) {
+					stream.method = field[1];
+				} else if (field[0].equals("content-type")) {
+					stream.contentType = field[1];
+				}
+			}
+			streams.put(streamId, stream);
+			if ((headerFlags & FLAG_END_STREAM) != 0) {
+				respond(stream);
+			}
+		}
+
+		private void respond(final ServerStream stream) {
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						int sleep = stream.path.indexOf("sleep=");
+						if (sleep != -1) {
+							Thread.sleep(Integer.parseInt(stream.path.substring(sleep + 6, sleep + 7)) * 1000);
+						}
+						byte[] body;
+						String contentType;
+						if (stream.method.equals("POST")) {
+							body = stream.body.toByteArray();
+							contentType = stream.contentType;
+						} else {
+							body = ("Hello " + stream.path).getBytes("utf-8");
+							contentType = "text/plain; charset=utf-8";
+						}
+						synchronized (ServerConnection.this) {
+							ByteArrayOutputStream block = new ByteArrayOutputStream();
+							encoder.begin(block);
+							encoder.encode(block, ":status", "200", false);
+							encoder.encode(block, "content-type", contentType, false);
+							encoder.encode(block, "content-length", String.valueOf(body.length), false);
+							encoder.encode(block, "x-stream-id", String.valueOf(stream.id), false);
+							byte[] bytes = block.toByteArray();
+							write(HEADERS, FLAG_END_HEADERS, stream.id, bytes, 0, bytes.length);
+							int offset = 0;
+							do {
+								int length = Math.min(body.length - offset, DEFAULT_FRAME_SIZE);
+								boolean last = offset + length == body.length;
+								write(DATA, last ? FLAG_END_STREAM : 0, stream.id, body, offset, length);
+								offset += length;
+							} while (offset < body.length);
+							if (stream.path.startsWith("/goaway")) {
+								byte[] goaway = new byte[8];
+								putInt(goaway, 0, stream.id);
+								write(GOAWAY, 0, 0, goaway, 0, 8);
+								socket.close();
+							}
+						}
+					} catch (Exception x) {
+						logger.debug("Response failed " + x);
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		private synchronized void write(int type, int flags, int streamId, byte[] bytes, int offset, int length)
+				throws IOException {
+			byte[] header = new byte[9];
+			header[0] = (byte) (length >>> 16);
+			header[1] = (byte) (length >>> 8);
+			header[2] = (byte) length;
+			header[3] = (byte) type;
+			header[4] = (byte) flags;
+			putInt(header, 5, streamId);
+			output.write(header);
+			output.write(bytes, offset, length);
+			output.flush();
+		}
+	}
+
+	private static class ServerStream {
+
+		final int id;
+
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		String method;
+
+		String path;
+
+		String contentType;
+
+		ServerStream(int id) {
+			this.id = id;
+		}
+	}
+}
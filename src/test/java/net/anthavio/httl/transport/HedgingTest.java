@@ -0,0 +1,214 @@
+package net.anthavio.httl.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.anthavio.httl.HttlBuilder;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.HttlTransport.HttlTransportCallback;
+import net.anthavio.httl.SenderConfigurer;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author martin.vanek
+ *
+ */
+public class HedgingTest {
+
+	@Test
+	public void hedgeWins() throws Exception {
+		SlowTransport slow = new SlowTransport(1000, 1); //only first call is slow
+		HttlSender sender = HttlBuilder.hedging(slow).setDelayMillis(50).sender().build();
+		HedgingTransport transport = (HedgingTransport) sender.getTransport();
+
+		long started = System.currentTimeMillis();
+		HttlResponse response = sender.GET("/").execute();
+		assertThat(response.getHttpStatusCode()).isEqualTo(200);
+		response.close();
+		assertThat(System.currentTimeMillis() - started).isLessThan(500);
+		assertThat(slow.getCalls()).isEqualTo(2);
+		assertThat(transport.getHedged()).isEqualTo(1);
+		assertThat(transport.getHedgeWins()).isEqualTo(1);
+
+		//fast response - no hedge
+		sender.GET("/").execute().close();
+		assertThat(slow.getCalls()).isEqualTo(3);
+		assertThat(transport.getHedged()).isEqualTo(1);
+		sender.close();
+		assertThat(slow.isClosed()).isTrue();
+	}
+
+	@Test
+	public void notIdempotent() throws Exception {
+		SlowTransport slow = new SlowTransport(200, Integer.MAX_VALUE);
+		HttlSender sender = HttlBuilder.hedging(slow).setDelayMillis(20).sender().build();
+		HedgingTransport transport = (HedgingTransport) sender.getTransport();
+
+		sender.POST("/").body("x", "text/plain").execute().close();
+		assertThat(slow.getCalls()).isEqualTo(1);
+		assertThat(transport.getHedged()).isEqualTo(0);
+
+		sender.PUT("/").body("x", "text/plain").execute().close();
+		assertThat(slow.getCalls()).isEqualTo(3);
+		assertThat(transport.getHedged()).isEqualTo(1);
+		sender.close();
+	}
+
+	@Test
+	public void budget() throws Exception {
+		SlowTransport slow = new SlowTransport(50, Integer.MAX_VALUE);
+		HttlSender sender = HttlBuilder.hedging(slow).setDelayMillis(5).setBudgetPercent(1).sender().build();
+		HedgingTransport transport = (HedgingTransport) sender.getTransport();
+
+		for (int i = 0; i < 15; ++i) {
+			sender.GET("/").execute().close();
+		}
+		//initial burst only
+		assertThat(transport.getHedged()).isEqualTo(10);
+		sender.close();
+	}
+
+	@Test
+	public void percentile() throws Exception {
+		SlowTransport slow = new SlowTransport(10, Integer.MAX_VALUE);
+		HedgingTransport transport = HttlBuilder.hedging(slow).setWindow(100).setMinDelayMillis(1).build();
+		HttlSender sender = new SenderConfigurer(transport).build();
+		assertThat(transport.getHedgeDelayMillis()).isEqualTo(-1);
+		for (int i = 0; i < 10; ++i) {
+			sender.GET("/").execute().close();
+		}
+		assertThat(transport.getHedged()).isEqualTo(0);
+		assertThat(transport.getHedgeDelayMillis()).isGreaterThanOrEqualTo(10);
+		sender.close();
+	}
+
+	@Test
+	public void failure() throws Exception {
+		SlowTransport slow = new SlowTransport(10, Integer.MAX_VALUE);
+		slow.setException(new IOException("Boom"));
+		HttlSender sender = HttlBuilder.hedging(slow).setDelayMillis(100).sender().build();
+		try {
+			sender.GET("/").execute();
+			org.junit.Assert.fail("Expected exception");
+		} catch (Exception x) {
+			assertThat(x.getMessage()).contains("Boom");
+		}
+		//failure does not trigger hedge
+		assertThat(slow.getCalls()).isEqualTo(1);
+		sender.close();
+	}
+
+	@Test
+	public void asyncBoundedExecutor() throws Exception {
+		//Given - 4 asynchronous calls, but only 2 threads for attempts
+		SlowTransport slow = new SlowTransport(100, Integer.MAX_VALUE);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		HedgingTransport transport = HttlBuilder.hedging(slow).setDelayMillis(20).setExecutor(executor).build();
+		HttlRequest request = new SenderConfigurer(transport).build().GET("/").build();
+		final CountDownLatch responses = new CountDownLatch(4);
+		HttlTransportCallback callback = new HttlTransportCallback() {
+
+			@Override
+			public void onRequestFailure(HttlRequest request, Exception exception) {
+			}
+
+			@Override
+			public void onResponseFailure(HttlRequest request, Exception exception) {
+			}
+
+			@Override
+			public void onResponse(HttlResponse response) {
+				responses.countDown();
+			}
+		};
+		//When
+		for (int i = 0; i < 4; ++i) {
+			transport.call(request, callback);
+		}
+		//Then - waiting calls do not occupy executor
+		assertThat(responses.await(2, TimeUnit.SECONDS)).isTrue();
+		transport.close();
+		executor.shutdown();
+	}
+
+	@Test
+	public void loserAborted() throws Exception {
+		//Given - first call ignores interrupt and completes late
+		final List<HttlResponse> responses = new CopyOnWriteArrayList<HttlResponse>();
+		MockTransport stubborn = new MockTransport("http://stubborn:8080") {
+
+			private final AtomicInteger calls = new AtomicInteger();
+
+			@Override
+			public HttlResponse call(HttlRequest request) throws IOException {
+				if (calls.incrementAndGet() == 1) {
+					long until = System.currentTimeMillis() + 300;
+					while (System.currentTimeMillis() < until) {
+						Thread.yield();
+					}
+				}
+				HttlResponse response = super.call(request);
+				responses.add(response);
+				return response;
+			}
+		};
+		HttlSender sender = HttlBuilder.hedging(stubborn).setDelayMillis(50).sender().build();
+		//When
+		HttlResponse response = sender.GET("/").execute();
+		//Then
+		assertThat(response.isAborted()).isFalse();
+		response.close();
+		long until = System.currentTimeMillis() + 1000;
+		while ((responses.size() < 2 || !responses.get(1).isAborted()) && System.currentTimeMillis() < until) {
+			Thread.sleep(10);
+		}
+		assertThat(responses).hasSize(2);
+		assertThat(responses.get(1).isAborted()).isTrue(); //loser
+		sender.close();
+	}
+
+	static class SlowTransport extends MockTransport {
+
+		private final AtomicInteger calls = new AtomicInteger();
+
+		private final int sleepMillis;
+
+		private final int slowCalls;
+
+		public SlowTransport(int sleepMillis, int slowCalls) {
+			super("http://slow:8080");
+			this.sleepMillis = sleepMillis;
+			this.slowCalls = slowCalls;
+		}
+
+		@Override
+		public HttlResponse call(HttlRequest request) throws IOException {
+			if (calls.incrementAndGet() <= slowCalls) {
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException ix) {
+					throw new InterruptedIOException("Cancelled");
+				}
+			}
+			return super.call(request);
+		}
+
+		public int getCalls() {
+			return calls.get();
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package net.anthavio.httl.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.anthavio.httl.HttlBuilder;
+import net.anthavio.httl.HttlException;
+import net.anthavio.httl.HttlRequest;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.HttlTransport.HttlTransportCallback;
+import net.anthavio.httl.util.HttlUtil;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author martin.vanek
+ *
+ */
+public class Http2TransportTest {
+
+	//small window forces request body flow control
+	private static H2cServer server = new H2cServer(100, 16 * 1024);
+
+	@BeforeClass
+	public static void setup() throws Exception {
+		server.start();
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void simple() throws Exception {
+		Http2Config config = HttlBuilder.http2("localhost:" + server.getPort());
+		config.setReadTimeoutMillis(1300);
+		HttlSender sender = config.sender().build();
+		try {
+			HttlResponse response = sender.GET("/").param("x", "y").execute();
+			assertThat(response.getHttpStatusCode()).isEqualTo(HttpURLConnection.HTTP_OK);
+			assertThat(response.getMediaType()).isEqualTo("text/plain");
+			assertThat(HttlUtil.readAsString(response)).isEqualTo("Hello /?x=y");
+
+			//body much bigger than server's stream window
+			char[] chars = new char[200 * 1024];
+			Arrays.fill(chars, 'x');
+			String big = new String(chars);
+			String body = sender.POST("/").body(big, "text/plain").extract(String.class).getBody();
+			assertThat(body).isEqualTo(big);
+
+			HttlRequest timeouting = sender.GET("/").param("sleep", 2).timeout(900, TimeUnit.MILLISECONDS).build();
+			try {
+				sender.execute(timeouting);
+				Assert.fail("Previous statement must throw SocketTimeoutException");
+			} catch (HttlException hx) {
+				assertThat(hx.getMessage()).isEqualTo("java.net.SocketTimeoutException: Read timeout 900 ms");
+			}
+
+			//asynchronous on the same connection
+			RecordingCallback callback = new RecordingCallback();
+			sender.getTransport().call(sender.GET("/async").build(), callback);
+			callback.await();
+			assertThat(callback.body).isEqualTo("Hello /async");
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void multiplexing() throws Exception {
+		int before = server.getConnections();
+		Http2Config config = HttlBuilder.http2("localhost:" + server.getPort());
+		HttlSender sender = config.sender().build();
+		try {
+			long started = System.currentTimeMillis();
+			RecordingCallback[] callbacks = new RecordingCallback[20];
+			for (int i = 0; i < callbacks.length; ++i) {
+				callbacks[i] = new RecordingCallback();
+				sender.getTransport().call(sender.GET("/").param("sleep", 1).param("i", i).build(), callbacks[i]);
+			}
+			for (int i = 0; i < callbacks.length; ++i) {
+				callbacks[i].await();
+				assertThat(callbacks[i].body).isEqualTo("Hello /?i=" + i + "&sleep=1");
+			}
+			//all sleeping concurrently over single connection
+			assertThat(System.currentTimeMillis() - started).isLessThan(3000);
+			assertThat(server.getConnections() - before).isEqualTo(1);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void interrupted() throws Exception {
+		int connections = server.getConnections();
+		int cancels = server.getCancels();
+		Http2Config config = HttlBuilder.http2("localhost:" + server.getPort());
+		config.setReadTimeoutMillis(5000);
+		final HttlSender sender = config.sender().build();
+		try {
+			sender.GET("/").execute().close(); //open connection
+			final Exception[] failure = new Exception[1];
+			Thread caller = new Thread() {
+
+				@Override
+				public void run() {
+					try {
+						sender.GET("/").param("sleep", 2).execute();
+					} catch (Exception x) {
+						failure[0] = x;
+					}
+				}
+			};
+			caller.start();
+			Thread.sleep(200);
+			caller.interrupt();
+			caller.join(1000);
+			assertThat(failure[0].getCause()).isInstanceOf(InterruptedIOException.class);
+
+			//stream is reset with CANCEL well before read timeout, connection is kept
+			long until = System.currentTimeMillis() + 1000;
+			while (server.getCancels() == cancels && System.currentTimeMillis() < until) {
+				Thread.sleep(10);
+			}
+			assertThat(server.getCancels() - cancels).isEqualTo(1);
+			sender.GET("/").execute().close();
+			assertThat(server.getConnections() - connections).isEqualTo(1);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void maxConcurrentStreams() throws Exception {
+		H2cServer limited = new H2cServer(1, 65535);
+		limited.start();
+		Http2Config config = HttlBuilder.http2("localhost:" + limited.getPort());
+		config.setPoolAcquireTimeoutMillis(300);
+		HttlSender sender = config.sender().build();
+		try {
+			sender.GET("/").execute().close(); //receive SETTINGS
+
+			RecordingCallback sleeping = new RecordingCallback();
+			sender.getTransport().call(sender.GET("/").param("sleep", 1).build(), sleeping);
+			try {
+				sender.GET("/").execute();
+				Assert.fail("Previous statement must throw ConnectException");
+			} catch (HttlException hx) {
+				assertThat(hx.getMessage()).isEqualTo("java.net.ConnectException: Pool timeout 300 ms");
+			}
+			sleeping.await();
+			assertThat(sleeping.status).isEqualTo(HttpURLConnection.HTTP_OK);
+		} finally {
+			sender.close();
+			limited.stop();
+		}
+	}
+
+	@Test
+	public void goaway() throws Exception {
+		int before = server.getConnections();
+		Http2Config config = HttlBuilder.http2("localhost:" + server.getPort());
+		HttlSender sender = config.sender().build();
+		try {
+			assertThat(sender.GET("/goaway").extract(String.class).getBody()).isEqualTo("Hello /goaway");
+			//new connection replaces closed one
+			assertThat(sender.GET("/").extract(String.class).getBody()).isEqualTo("Hello /");
+			assertThat(server.getConnections() - before).isEqualTo(2);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void refused() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		HttlSender sender = HttlBuilder.http2("localhost:" + port).sender().build();
+		try {
+			sender.GET("/").execute();
+			Assert.fail("Previous statement must throw ConnectException");
+		} catch (HttlException hx) {
+			assertThat(hx.getCause()).isInstanceOf(ConnectException.class);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void hpack() throws IOException {
+		Hpack.Encoder encoder = new Hpack.Encoder();
+		Hpack.Decoder decoder = new Hpack.Decoder(Hpack.DEFAULT_TABLE_SIZE);
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+		for (int i = 0; i < 3; ++i) {
+			block.reset();
+			encoder.begin(block);
+			encoder.encode(block, ":method", "GET", false);
+			encoder.encode(block, "x-custom", "some-value-" + (i % 2), false);
+			encoder.encode(block, "authorization", "Basic c2VjcmV0", true);
+			byte[] bytes = block.toByteArray();
+			List<String[]> headers = new ArrayList<String[]>();
+			decoder.decode(bytes, 0, bytes.length, headers);
+			assertThat(headers).hasSize(3);
+			assertThat(headers.get(1)).containsExactly("x-custom", "some-value-" + (i % 2));
+			assertThat(headers.get(2)).containsExactly("authorization", "Basic c2VjcmV0");
+			if (i == 2) {
+				//indexed from dynamic table: 1 byte :method + 1 byte x-custom
+				assertThat(bytes[1] & 0x80).isEqualTo(0x80);
+			}
+		}
+		//RFC 7541 C.4.1 Huffman encoded www.example.com
+		block.reset();
+		Hpack.huffmanEncode("www.example.com", block);
+		assertThat(new BigInteger(1, block.toByteArray()).toString(16)).isEqualTo("f1e3c2e5f23a6ba0ab90f4ff");
+	}
+
+	static class RecordingCallback implements HttlTransportCallback {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		volatile int status;
+
+		volatile String body;
+
+		volatile Exception exception;
+
+		@Override
+		public void onRequestFailure(HttlRequest request, Exception exception) {
+			this.exception = exception;
+			latch.countDown();
+		}
+
+		@Override
+		public void onResponseFailure(HttlRequest request, Exception exception) {
+			this.exception = exception;
+			latch.countDown();
+		}
+
+		@Override
+		public void onResponse(HttlResponse response) {
+			try {
+				this.status = response.getHttpStatusCode();
+				this.body = HttlUtil.readAsString(response);
+			} catch (IOException iox) {
+				this.exception = iox;
+			}
+			latch.countDown();
+		}
+
+		public void await() throws InterruptedException {
+			if (!latch.await(5, TimeUnit.SECONDS)) {
+				Assert.fail("Callback not invoked in 5 seconds");
+			}
+			assertThat(exception).isNull();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package net.anthavio.httl.transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.ConnectException;
+import java.net.ServerSocket;
+
+import net.anthavio.httl.HttlBuilder;
+import net.anthavio.httl.HttlResponse;
+import net.anthavio.httl.HttlSender;
+import net.anthavio.httl.JokerServer;
+import net.anthavio.httl.transport.LoadBalancingTransport.Backend;
+import net.anthavio.httl.transport.LoadBalancingTransport.LeastOutstanding;
+import net.anthavio.httl.transport.LoadBalancingTransport.PowerOfTwoChoices;
+import net.anthavio.httl.util.HttlUtil;
+import net.anthavio.httl.util.MockTransport;
+
+import org.junit.Test;
+
+/**
+ * 
+ * @author martin.vanek
+ *
+ */
+public class LoadBalancingTest {
+
+	@Test
+	public void roundRobin() throws Exception {
+		MockTransport one = new MockTransport("http://one:8080");
+		MockTransport two = new MockTransport("http://two:8080");
+		HttlSender sender = HttlBuilder.loadBalancing(one, two).sender().build();
+		assertThat(sender.getConfig().getUrl().toString()).isEqualTo("http://one:8080");
+
+		for (int i = 0; i < 6; ++i) {
+			sender.GET("/").execute().close();
+		}
+		assertThat(one.getExecutionCount()).isEqualTo(3);
+		assertThat(two.getExecutionCount()).isEqualTo(3);
+		sender.close();
+		assertThat(one.isClosed()).isTrue();
+		assertThat(two.isClosed()).isTrue();
+	}
+
+	@Test
+	public void ejection() throws Exception {
+		MockTransport one = new MockTransport("http://one:8080");
+		MockTransport two = new MockTransport(503, "text/plain", "Unavailable");
+		HttlSender sender = HttlBuilder.loadBalancing(one, two).setEjectionFailures(2).setEjectionMillis(500).sender()
+				.build();
+		//When - 2 failures of second backend
+		for (int i = 0; i < 4; ++i) {
+			sender.GET("/").execute().close();
+		}
+		assertThat(two.getExecutionCount()).isEqualTo(2);
+		//Then - it is ejected
+		for (int i = 0; i < 4; ++i) {
+			sender.GET("/").execute().close();
+		}
+		assertThat(one.getExecutionCount()).isEqualTo(6);
+		assertThat(two.getExecutionCount()).isEqualTo(2);
+
+		//When - ejection elapses
+		Thread.sleep(600);
+		for (int i = 0; i < 2; ++i) {
+			sender.GET("/").execute().close();
+		}
+		//Then - back in rotation
+		assertThat(two.getExecutionCount()).isEqualTo(3);
+		sender.close();
+	}
+
+	@Test
+	public void refused() throws Exception {
+		MockTransport one = new MockTransport("http://one:8080");
+		one.setException(new ConnectException("Connection refused"));
+		MockTransport two = new MockTransport("http://two:8080");
+		HttlSender sender = HttlBuilder.loadBalancing(one, two).sender().build();
+		//When - refused request is resent to another backend
+		for (int i = 0; i < 4; ++i) {
+			HttlResponse response = sender.POST("/").body("x", "text/plain").execute();
+			assertThat(response.getHttpStatusCode()).isEqualTo(200);
+			response.close();
+		}
+		//Then
+		assertThat(two.getExecutionCount()).isEqualTo(4);
+		sender.close();
+	}
+
+	@Test
+	public void strategies() throws Exception {
+		MockTransport one = new MockTransport("http://one:8080");
+		MockTransport two = new MockTransport("http://two:8080");
+		LoadBalancingTransport transport = HttlBuilder.loadBalancing(one, two).build();
+		Backend backend1 = transport.getBackends().get(0);
+		Backend backend2 = transport.getBackends().get(1);
+
+		//one request in flight on first backend
+		long started = backend1.started();
+		LeastOutstanding least = new LeastOutstanding();
+		for (int i = 0; i < 4; ++i) {
+			assertThat(least.select(transport.getBackends())).isSameAs(backend2);
+		}
+		backend1.completed(started, true);
+
+		//first backend is much faster
+		backend1.completed(backend1.started() + 1000000, true);
+		backend2.completed(backend2.started() - 1000000000, true);
+		assertThat(backend1.getEwmaNanos()).isLessThan(backend2.getEwmaNanos());
+		PowerOfTwoChoices p2c = new PowerOfTwoChoices();
+		for (int i = 0; i < 4; ++i) {
+			assertThat(p2c.select(transport.getBackends())).isSameAs(backend1);
+		}
+		transport.close();
+	}
+
+	@Test
+	public void failover() throws Exception {
+		JokerServer server = new JokerServer().start();
+		ServerSocket socket = new ServerSocket(0);
+		int closedPort = socket.getLocalPort();
+		socket.close();
+		try {
+			HttlSender sender = HttlBuilder
+					.loadBalancing(HttlBuilder.httpClient4("http://localhost:" + closedPort),
+							HttlBuilder.httpClient4("http://localhost:" + server.getPortHttp()))
+					.setStrategy(new LeastOutstanding()).sender().build();
+			for (int i = 0; i < 4; ++i) {
+				HttlResponse response = sender.GET("/").param("dostatus", 200).execute();
+				assertThat(response.getHttpStatusCode()).isEqualTo(200);
+				assertThat(HttlUtil.readAsString(response)).contains("Dostatus 200");
+			}
+			//refused connections are not counted, response streams were fully read so single connection is reused
+			assertThat(((LoadBalancingTransport) sender.getTransport()).getPoolStats().getCreated()).isEqualTo(1);
+			sender.close();
+		} finally {
+			server.stop();
+		}
+	}
+}